@@ -0,0 +1,158 @@
+package oopsc;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import oopsc.parser.ResolvableIdentifier;
+import oopsc.parser.SyntaxAnalysis;
+import oopsc.streams.CodeStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks der einzelnen Phasen des Übersetzers auf künstlichen Programmen
+ * unterschiedlicher Größe (siehe {@link SyntheticProgram SyntheticProgram}).
+ * Da Kontextanalyse, Optimierung und Code-Erzeugung den Syntaxbaum verändern,
+ * wird er für jeden Aufruf neu aufgebaut. Diese Vorbereitung wird nicht mitgemessen.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilerBenchmark {
+    /** Ein Datenstrom, der alle Ausgaben verwirft. */
+    private static final OutputStream NOWHERE = new OutputStream() {
+        public void write(int b) {
+        }
+
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    /**
+     * Das übersetzte Programm. Die Größe wird über den Parameter
+     * classes festgelegt.
+     */
+    @State(Scope.Thread)
+    public static class Source {
+        /** Die Anzahl der Klassen im künstlichen Programm. */
+        @Param({"10", "100", "1000"})
+        public int classes;
+
+        /** Der Name der Quelldatei. */
+        String fileName;
+
+        /**
+         * Erzeugt die Quelldatei.
+         * @throws Exception Die Datei konnte nicht geschrieben werden.
+         */
+        @Setup(Level.Trial)
+        public void write() throws Exception {
+            fileName = SyntheticProgram.write(classes);
+        }
+
+        /**
+         * Die Methode führt die Syntaxanalyse durch.
+         * @return Der Syntaxbaum.
+         * @throws Exception Das Programm konnte nicht gelesen werden.
+         */
+        Program parse() throws Exception {
+            ResolvableIdentifier.clear();
+            return new SyntaxAnalysis(fileName, false).parse();
+        }
+    }
+
+    /** Ein Syntaxbaum direkt nach der Syntaxanalyse. */
+    @State(Scope.Thread)
+    public static class Parsed {
+        /** Der Syntaxbaum. */
+        Program program;
+
+        /**
+         * Baut den Syntaxbaum neu auf.
+         * @param source Das Programm.
+         * @throws Exception Das Programm konnte nicht gelesen werden.
+         */
+        @Setup(Level.Invocation)
+        public void parse(Source source) throws Exception {
+            program = source.parse();
+        }
+    }
+
+    /** Ein Syntaxbaum nach der Kontextanalyse. */
+    @State(Scope.Thread)
+    public static class Analyzed {
+        /** Der Syntaxbaum. */
+        Program program;
+
+        /**
+         * Baut den Syntaxbaum neu auf und führt die Kontextanalyse durch.
+         * @param source Das Programm.
+         * @throws Exception Das Programm ist fehlerhaft.
+         */
+        @Setup(Level.Invocation)
+        public void analyze(Source source) throws Exception {
+            program = source.parse();
+            program.contextAnalysis();
+        }
+    }
+
+    /**
+     * Misst die Syntaxanalyse einschließlich des Lesens der Datei.
+     * @param source Das Programm.
+     * @return Der Syntaxbaum.
+     * @throws Exception Das Programm konnte nicht gelesen werden.
+     */
+    @Benchmark
+    public Program parse(Source source) throws Exception {
+        return source.parse();
+    }
+
+    /**
+     * Misst die Kontextanalyse.
+     * @param parsed Der Syntaxbaum.
+     * @return Der Syntaxbaum.
+     * @throws Exception Das Programm ist fehlerhaft.
+     */
+    @Benchmark
+    public Program contextAnalysis(Parsed parsed) throws Exception {
+        parsed.program.contextAnalysis();
+        return parsed.program;
+    }
+
+    /**
+     * Misst die Optimierung des Syntaxbaums.
+     * @param analyzed Der Syntaxbaum.
+     * @return Der Syntaxbaum.
+     */
+    @Benchmark
+    public Program optimize(Analyzed analyzed) {
+        analyzed.program.optimize();
+        return analyzed.program;
+    }
+
+    /**
+     * Misst die Code-Erzeugung. Der Code wird als Text erzeugt und verworfen.
+     * @param analyzed Der Syntaxbaum.
+     * @return Der Datenstrom.
+     */
+    @Benchmark
+    public CodeStream generateCode(Analyzed analyzed) {
+        CodeStream stream = new CodeStream(NOWHERE);
+        analyzed.program.generateCode(stream, 100, 100);
+        stream.flush();
+        return stream;
+    }
+}
@@ -0,0 +1,98 @@
+package oopsc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Die Klasse erzeugt künstliche OOPS-Programme beliebiger Größe für die
+ * Benchmarks der Übersetzerphasen. Jede Klasse enthält Attribute, eine
+ * Methode mit Schleife, Verzweigungen und Aufruf der Basisklasse sowie
+ * eine Methode mit konstanten Ausdrücken, die der Optimierer falten kann.
+ * Jeweils zehn Klassen bilden eine Vererbungskette, damit die VMTs nicht
+ * quadratisch mit der Größe des Programms wachsen.
+ */
+public class SyntheticProgram {
+    /** Die Länge der Vererbungsketten. */
+    private static final int CHAIN = 10;
+
+    /**
+     * Die Methode erzeugt den Quelltext eines Programms.
+     * @param classes Die Anzahl der Klassen (ohne Main).
+     * @return Der Quelltext.
+     */
+    public static String generate(int classes) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < classes; ++i) {
+            b.append("CLASS C").append(i);
+            if (i % CHAIN != 0) {
+                b.append(" EXTENDS C").append(i - 1);
+            }
+            b.append(" IS\n");
+            b.append("    a").append(i).append(" : Integer;\n");
+            b.append("    b").append(i).append(" : Boolean;\n\n");
+            b.append("    METHOD f").append(i).append("(n : Integer) : Integer IS\n");
+            b.append("        k : Integer;\n");
+            b.append("        s : Integer;\n");
+            b.append("    BEGIN\n");
+            b.append("        k := 0;\n");
+            b.append("        s := 0;\n");
+            b.append("        WHILE k < n DO\n");
+            b.append("            IF k MOD 2 = 0 AND NOT b").append(i).append(" THEN\n");
+            b.append("                s := s + k * ").append(i).append(";\n");
+            b.append("            ELSEIF k > 3 OR ELSE s < 0 THEN\n");
+            b.append("                s := s - 1;\n");
+            b.append("            ELSE\n");
+            b.append("                s := s + a").append(i).append(";\n");
+            b.append("            END IF\n");
+            b.append("            k := k + 1;\n");
+            b.append("        END WHILE\n");
+            b.append("        a").append(i).append(" := s;\n");
+            if (i % CHAIN != 0) {
+                b.append("        RETURN s + f").append(i - 1).append("(n - 1);\n");
+            } else {
+                b.append("        RETURN s;\n");
+            }
+            b.append("    END METHOD\n\n");
+            b.append("    METHOD g").append(i).append(" IS\n");
+            b.append("    BEGIN\n");
+            b.append("        WRITE 'A' + 2 * 3 - 6;\n");
+            b.append("        IF TRUE OR b").append(i).append(" THEN\n");
+            b.append("            WRITE '\\n';\n");
+            b.append("        END IF\n");
+            b.append("    END METHOD\n");
+            b.append("END CLASS\n\n");
+        }
+        b.append("CLASS Main IS\n");
+        b.append("    METHOD main IS\n");
+        b.append("        c : C").append(classes - 1).append(";\n");
+        b.append("    BEGIN\n");
+        b.append("        c := NEW C").append(classes - 1).append(";\n");
+        b.append("        c.g").append(classes - 1).append(";\n");
+        b.append("        WRITE 'A' + c.f").append(classes - 1).append("(5) MOD 26;\n");
+        b.append("    END METHOD\n");
+        b.append("END CLASS\n");
+        return b.toString();
+    }
+
+    /**
+     * Die Methode erzeugt ein Programm in einer temporären Datei, die beim
+     * Beenden der virtuellen Maschine von Java gelöscht wird.
+     * @param classes Die Anzahl der Klassen (ohne Main).
+     * @return Der Name der Datei.
+     * @throws IOException Die Datei konnte nicht geschrieben werden.
+     */
+    public static String write(int classes) throws IOException {
+        File file = File.createTempFile("synthetic" + classes + "_", ".oops");
+        file.deleteOnExit();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(generate(classes));
+        } finally {
+            writer.close();
+        }
+        return file.getPath();
+    }
+}
@@ -0,0 +1,64 @@
+package oopsvm;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import oopsc.SyntheticProgram;
+import oopsc.Toolchain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark des Assemblers. Der Assembler-Quelltext wird einmal aus einem
+ * künstlichen OOPS-Programm erzeugt (siehe {@link SyntheticProgram SyntheticProgram})
+ * und dann wiederholt assembliert.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssemblerBenchmark {
+    /** Die Anzahl der Klassen im künstlichen Programm. */
+    @Param({"10", "100", "1000"})
+    public int classes;
+
+    /** Der Name der Assembler-Datei. */
+    private String fileName;
+
+    /**
+     * Übersetzt das künstliche Programm in eine Assembler-Datei.
+     * @throws Exception Das Programm konnte nicht übersetzt werden.
+     */
+    @Setup(Level.Trial)
+    public void compile() throws Exception {
+        File file = File.createTempFile("synthetic" + classes + "_", ".asm");
+        file.deleteOnExit();
+        fileName = file.getPath();
+        Toolchain toolchain = new Toolchain();
+        toolchain.setDumpFile(fileName);
+        toolchain.compile(SyntheticProgram.write(classes));
+    }
+
+    /**
+     * Misst das Assemblieren einschließlich des Lesens der Datei.
+     * @return Der erzeugte Hauptspeicher.
+     * @throws Exception Beim Assemblieren ist ein Fehler aufgetreten.
+     */
+    @Benchmark
+    public int[] assemble() throws Exception {
+        return new Assembler(false, false).assemble(fileName);
+    }
+}
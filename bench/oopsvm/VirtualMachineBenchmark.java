@@ -0,0 +1,144 @@
+package oopsvm;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import oopsc.Toolchain;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark der virtuellen Maschine auf typischen OOPS-Programmen aus dem
+ * Verzeichnis bench/workloads (änderbar über die Systemeigenschaft
+ * bench.workloads). Gemessen werden vollständige Programmläufe. Zusätzlich
+ * wird die Anzahl der ausgeführten Instruktionen als Zähler "instructions"
+ * ausgegeben, so dass der Durchsatz in Instruktionen pro Sekunde ablesbar ist.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VirtualMachineBenchmark {
+    /** Ein Datenstrom, der alle Ausgaben verwirft. */
+    private static final OutputStream NOWHERE = new OutputStream() {
+        public void write(int b) {
+        }
+
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    /** Das Programm: Rekursion, dynamisches Binden, Schleifen, Boxing oder Zugriffsmethoden. */
+    @Param({"recursion", "dispatch", "loops", "boxing", "accessors"})
+    public String workload;
+
+    /** Soll die Peephole-Optimierung eingeschaltet werden? */
+    @Param({"false", "true"})
+    public boolean optimized;
+
+    /** Soll das Programm vorab in JVM-Bytecode übersetzt werden? */
+    @Param({"false", "true"})
+    public boolean jvm;
+
+    /** Ab wie vielen Sprüngen an eine Adresse wird zur Laufzeit übersetzt (0: nie)? */
+    @Param({"0", "1000"})
+    public int jitThreshold;
+
+    /** Der Hauptspeicher nach dem Laden des Programms. */
+    private int[] image;
+
+    /** Das in JVM-Bytecode übersetzte Programm oder null. */
+    private JvmProgram program;
+
+    /** Die Anzahl der Instruktionen, die ein Programmlauf ausführt. */
+    private long instructionsPerRun;
+
+    /**
+     * Der Zähler der ausgeführten Instruktionen. JMH gibt ihn als
+     * Rate zusätzlich zum Ergebnis aus.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counter {
+        /** Die Anzahl der ausgeführten Instruktionen. */
+        public long instructions;
+
+        /** Setzt den Zähler zu Beginn jeder Iteration zurück. */
+        @Setup(Level.Iteration)
+        public void reset() {
+            instructions = 0;
+        }
+    }
+
+    /**
+     * Übersetzt das Programm und zählt einmal in Einzelschritten, wie viele
+     * Instruktionen ein Lauf ausführt.
+     * @throws Exception Das Programm konnte nicht übersetzt oder ausgeführt werden.
+     */
+    @Setup(Level.Trial)
+    public void load() throws Exception {
+        Toolchain toolchain = new Toolchain();
+        toolchain.setHeapSize(10000);
+        toolchain.setStackSize(1000);
+        toolchain.setOptimize(optimized);
+        toolchain.setPeephole(optimized);
+        Image compiled = toolchain.compile(System.getProperty("bench.workloads", "bench/workloads")
+                + "/" + workload + ".oops");
+        image = compiled.getMemory();
+        program = jvm ? new JvmProgram(compiled, 8) : null;
+
+        int[] memory = image.clone();
+        int[] registers = new int[8];
+        VirtualMachine vm = new VirtualMachine(memory, registers, false, false, false);
+        vm.setConsole(console());
+        instructionsPerRun = 0;
+        while (registers[0] >= 0 && registers[0] < memory.length) {
+            vm.step();
+            ++instructionsPerRun;
+        }
+    }
+
+    /**
+     * Erzeugt Ein- und Ausgabekanäle ohne Eingabe, die alle Ausgaben verwerfen.
+     * @return Die Kanäle.
+     */
+    private static Console console() {
+        return new Console(new ByteArrayInputStream(new byte[0]), NOWHERE, Console.DEFAULT_BUFFER_SIZE, false);
+    }
+
+    /**
+     * Misst einen vollständigen Programmlauf in der schnellen Ausführungseinheit
+     * oder im übersetzten JVM-Bytecode. Dazu gehört auch das Anlegen der Maschine
+     * auf einer Kopie des Speichers, nicht aber die Übersetzung im Voraus. Die zur
+     * Laufzeit übersetzten Blöcke werden zwischen den Läufen wiederverwendet.
+     * @param counter Der Zähler der ausgeführten Instruktionen.
+     * @return Der Hauptspeicher nach dem Lauf.
+     * @throws Exception Bei der Ausführung ist ein Fehler aufgetreten.
+     */
+    @Benchmark
+    public int[] run(Counter counter) throws Exception {
+        int[] memory = image.clone();
+        VirtualMachine vm = new VirtualMachine(memory, new int[8], false, false, false);
+        vm.setJvmProgram(program);
+        vm.setJitThreshold(jitThreshold);
+        vm.setConsole(console());
+        vm.run(-1, false, false, false);
+        counter.instructions += instructionsPerRun;
+        return memory;
+    }
+}
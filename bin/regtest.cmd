@@ -46,6 +46,9 @@
 
 :regtest
     set name=%~n2
+    set program=%name%.asm
+    rem Assembler-Dateien werden ohne den Compiler direkt ausgefuehrt
+    if /i "%~x2" == ".asm" set program=%2
     if not %ext% == compare goto generate
     <nul (set /p dummy=Testing %2 ... )
     goto compile
@@ -54,32 +57,62 @@
     echo Generating %name%.out ...
 
 :compile
+    if /i "%~x2" == ".asm" goto run
     java -ea -Dfile.encoding=UTF-8 -jar "%scriptpath%\%oopsc%" %2 %name%.asm >%name%.%ext%
     if errorlevel 1 goto compare
-    echo abc | java -Dfile.encoding=UTF-8 -jar "%scriptpath%\OOPSVM.jar" %name%.asm >%name%.%ext%
-    echo xyz | java -Dfile.encoding=UTF-8 -jar "%scriptpath%\OOPSVM.jar" %name%.asm >>%name%.%ext%
+:run
+    echo abc | java -Dfile.encoding=UTF-8 -jar "%scriptpath%\OOPSVM.jar" %program% >%name%.%ext%
+    echo xyz | java -Dfile.encoding=UTF-8 -jar "%scriptpath%\OOPSVM.jar" %program% >>%name%.%ext%
 
 :compare
     if not %ext% == compare goto delete
     fc %name%.out %name%.compare >nul
     if errorlevel 1 goto failed
+    rem Zusaetzliche Durchlaeufe mit den Optionen aus Zeilen "| OOPSC: <optionen>"
+    rem bzw. "| OOPSVM: <optionen>" (in Assembler-Dateien "; OOPSVM: <optionen>")
+    set failed=
+    for /f "tokens=1* delims=:" %%a in ('findstr /b /c:"| OOPSC:" %2') do if not defined failed call :pass "%%b" "" %2 OOPSC
+    for /f "tokens=1* delims=:" %%a in ('findstr /r /b /c:"[|;] OOPSVM:" %2') do if not defined failed call :pass "" "%%b" %2 OOPSVM
+    if defined failed goto failedwith
     echo Ok
     del %name%.compare
 :delete
-    if exist %name%.asm del %name%.asm
+    if /i not "%~x2" == ".asm" if exist %name%.asm del %name%.asm
     goto end
 
 :failed
     echo Failed (Check %name%.out/.compare)
     goto end
 
+:failedwith
+    echo Failed with%failed% (Check %name%.out/.compare)
+    goto end
+
+:pass
+    set compileroptions=%~1
+    set vmoptions=%~2
+    if /i "%~x3" == ".asm" goto passrun
+    java -ea -Dfile.encoding=UTF-8 -jar "%scriptpath%\%oopsc%" %compileroptions% %3 %name%.asm >%name%.compare
+    if errorlevel 1 goto passcompare
+:passrun
+    echo abc | java -Dfile.encoding=UTF-8 -jar "%scriptpath%\OOPSVM.jar" %vmoptions% %program% >%name%.compare
+    echo xyz | java -Dfile.encoding=UTF-8 -jar "%scriptpath%\OOPSVM.jar" %vmoptions% %program% >>%name%.compare
+:passcompare
+    fc %name%.out %name%.compare >nul
+    if errorlevel 1 set failed= %4%compileroptions%%vmoptions%
+    goto :eof
+
 :usage
     set x=?
-    echo Nutzung: regtest {optionen} ^<oops-dateien^> {optionen}
+    echo Nutzung: regtest {optionen} ^<oops-dateien^> {^<asm-dateien^>} {optionen}
     echo   Optionen:
     echo     /c ^<oopsc-jar^>  Eine bestimmte Version des OOPS-Compilers nutzen
     echo     /o              Erzeuge .out-Datei statt sie zu vergleichen
     echo     / ?              Zeige diese Hilfe
+    echo   Zeilen der Form "| OOPSC: <optionen>" bzw. "| OOPSVM: <optionen>" in
+    echo   einer oops-Datei fuehren zu weiteren Durchlaeufen mit diesen Optionen
+    echo   fuer den Compiler bzw. die virtuelle Maschine, die ebenfalls die
+    echo   erwartete Ausgabe erzeugen muessen.
 
 :cleanup
     endlocal
@@ -1,9 +1,17 @@
 package oopsc;
 
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.util.EnumSet;
+
+import oopsc.expressions.AlgebraicRule;
 import oopsc.parser.ResolvableIdentifier;
 import oopsc.parser.SyntaxAnalysis;
 import oopsc.streams.CodeStream;
+import oopsc.streams.PeepholeOptimizer;
+import oopsvm.Assembler;
+import oopsvm.Console;
+import oopsvm.VirtualMachine;
 
 /**
  * Diese Klasse stellt die Hauptmethode des Übersetzers für OOPS 
@@ -28,13 +36,33 @@ class OOPSC {
         boolean showIdentifiers = false;
         boolean showSyntax = false;
         boolean optimize = false;
+        boolean useRegisters = false;
+        boolean peephole = false;
+        boolean showPeephole = false;
+        boolean extended = false;
+        boolean execute = false;
         int heapSize = 100;
         int stackSize = 100;
+        EnumSet<AlgebraicRule> rules = EnumSet.allOf(AlgebraicRule.class);
 
         for (int i = 0; i < args.length; ++i) {
             String arg = args[i];
             if (arg.equals("-c")) {
                 showContext = true;
+            } else if (arg.equals("-d")) {
+                if (++i < args.length) {
+                    try {
+                        rules.remove(AlgebraicRule.valueOf(args[i].toUpperCase()));
+                    } catch (IllegalArgumentException e) {
+                        System.out.println("Unbekannte Regel " + args[i]);
+                        usage();
+                    }
+                } else {
+                    System.out.println("Fehlendes Argument fuer " + arg);
+                    usage();
+                }
+            } else if (arg.equals("-e")) {
+                execute = true;
             } else if (arg.equals("-h")) {
                 usage();
             } else if (arg.equals("-hs")) {
@@ -46,12 +74,21 @@ class OOPSC {
                 }
             } else if (arg.equals("-o")) {
             	optimize = true;
+            } else if (arg.equals("-p")) {
+                peephole = true;
+            } else if (arg.equals("-r")) {
+                peephole = true;
+                showPeephole = true;
+            } else if (arg.equals("-O2")) {
+                useRegisters = true;
             } else if (arg.equals("-i")) {
                 showIdentifiers = true;
             } else if (arg.equals("-l")) {
                 showSymbols = true;
             } else if (arg.equals("-s")) {
                 showSyntax = true;
+            } else if (arg.equals("-x")) {
+                extended = true;
             } else if (arg.equals("-ss")) {
                 if (++i < args.length) {
                     stackSize = Integer.parseInt(args[i]);
@@ -87,6 +124,7 @@ class OOPSC {
             p.contextAnalysis();
             
             if (optimize) {
+                AlgebraicRule.setEnabled(rules);
             	p.optimize();
             }
             
@@ -98,9 +136,33 @@ class OOPSC {
                 p.printTree();
             }
             
-            CodeStream stream = outFile == null ? new CodeStream() : new CodeStream(outFile);
+            CodeStream stream;
+            if (execute) {
+                stream = new CodeStream(new Assembler(false, false), 
+                        outFile == null ? null : new FileOutputStream(outFile));
+            } else {
+                stream = outFile == null ? new CodeStream() : new CodeStream(outFile);
+            }
+            stream.setRegisterMode(useRegisters);
+            stream.setExtendedMode(extended);
+            PeepholeOptimizer optimizer = peephole || extended ? new PeepholeOptimizer(peephole, extended) : null;
+            stream.setOptimizer(optimizer);
             p.generateCode(stream, stackSize, heapSize);
-            if (outFile != null) {
+            stream.flushOptimized();
+            if (showPeephole) {
+                optimizer.printReport(System.out);
+            }
+            if (execute) {
+                VirtualMachine vm = new VirtualMachine(stream.link().getMemory(), new int[8], false, false, false);
+                stream.close();
+                try {
+                    vm.setConsole(new Console(System.in, System.out, Console.DEFAULT_BUFFER_SIZE, false));
+                    vm.runProduction();
+                } catch (Exception e) {
+                    System.out.println(e.getMessage());
+                    System.exit(3);
+                }
+            } else if (outFile != null) {
                 stream.close();
             }
         } catch (CompileException e) {
@@ -118,15 +180,26 @@ class OOPSC {
      * Die Methode gibt eine Hilfe auf der Konsole aus und beendet das Programm.
      */
     private static void usage() {
-        System.out.println("java -jar OOPSC.jar [-c] [-h] [-hs <n>] [-i] [-l] [-s] [-ss <n>] <quelldatei> [<ausgabedatei>]");
+        System.out.println("java -jar OOPSC.jar [-c] [-d <r>] [-e] [-h] [-hs <n>] [-i] [-o] [-O2] [-p] [-r] [-l] [-s] [-ss <n>] [-x] <quelldatei> [<ausgabedatei>]");
         System.out.println("    -o       Optimiert den Syntaxbaum, bevor der Code generiert wird");
+        System.out.println("    -d <r>   Schaltet die Regel <r> bei -o ab (mehrfach moeglich). Regeln sind");
+        for (AlgebraicRule rule : AlgebraicRule.values()) {
+            System.out.println("             " + rule.name().toLowerCase());
+        }
+        System.out.println("    -O2      Werte Ausdruecke moeglichst in Registern statt auf dem Stapel aus");
+        System.out.println("    -p       Optimiert den erzeugten Assembler-Code (Peephole-Optimierung)");
+        System.out.println("    -r       Wie -p, zeigt zusaetzlich die entfernten Instruktionen je Methode");
         System.out.println("    -c       Zeige das Ergebnis der Kontextanalyse");
+        System.out.println("    -e       Fuehre das Programm direkt aus, ohne den Umweg ueber eine");
+        System.out.println("             Assembler-Datei (<ausgabedatei> erhaelt dann optional den Code)");
         System.out.println("    -h       Zeige diese Hilfe");
         System.out.println("    -hs <n>  Reserviere <n> Worte fuer den Heap (Standard ist 100)");
         System.out.println("    -i       Zeige die Zuordnung der Bezeichner");
         System.out.println("    -l       Zeige das Ergebnis der lexikalischen Analyse");
         System.out.println("    -s       Zeige das Ergebnis der syntaktischen Analyse");
         System.out.println("    -ss <n>  Reserviere <n> Worte fuer den Stapel (Standard ist 100)");
+        System.out.println("    -x       Verwende den erweiterten Befehlssatz der virtuellen Maschine");
+        System.out.println("             (PSH, POP, ADI, MRO, MMO, JEQ ... JGE, CAL, RET)");
         System.exit(2);
     }
 }
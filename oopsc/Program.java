@@ -1,6 +1,7 @@
 package oopsc;
 
 import java.util.LinkedList;
+import java.util.Map;
 
 import oopsc.declarations.ClassDeclaration;
 import oopsc.declarations.Declarations;
@@ -66,6 +67,12 @@ public class Program {
         for(ClassDeclaration cls : classes) {
         	cls.resolve();
         }
+        
+        // Klassenhierarchie-Analyse: nicht überschriebene Methoden bestimmen
+        ClassDeclaration.determineUniqueImplementations(classes);
+        
+        // Festlegen, ob sich verpackte Literale konstante Objekte teilen dürfen
+        ClassDeclaration.determineSharedConstants(classes);
 
         
         // Abhängigkeiten für Startup-Code auflösen
@@ -94,6 +101,11 @@ public class Program {
     	for(ClassDeclaration cls : classes) {
     		cls.optimize();
     	}
+    	
+    	// Erst jetzt steht fest, wie viele Variablen eingebettete Methoden brauchen
+    	for(ClassDeclaration cls : classes) {
+    		cls.reserveInlineVariables();
+    	}
     }
     
     
@@ -103,15 +115,15 @@ public class Program {
      * @param code Der Strom, in den die Ausgabe erfolgt.
      */
     void generateCode(CodeStream code, int stackSize, int heapSize) {
+        // Festlegen, welche Parameter und Ergebnisse unverpackt übergeben werden
+        ClassDeclaration.determineUnboxedValues(classes);
+        
         // Start-Code: Register initialisieren
         code.setNamespace("_init");
         code.println("MRI R1, 1 ; R1 ist immer 1");
         code.println("MRI R2, _stack ; R2 zeigt auf Stapel");
-        //code.println("MRI R4, _heap ; R4 zeigt auf die nächste freie Stelle auf dem Heap");
         code.println("MRI R5, _heap");
-        code.println("MRI R6, _heap");
-        code.println("ADD R6, R1");
-        code.println("MMR (R5), R6");
+        code.println("SYS 3, 5 ; Heap einrichten");
         
         // Ein Objekt der Klasse Main konstruieren und die Methode main aufrufen.
         main.generateCode(code);
@@ -122,11 +134,24 @@ public class Program {
         	cls.generateCode(code);
         }
         
+        // Konstante Objekte für verpackte Literale
+        for (Map.Entry<String, Object[]> constant : code.getConstants().entrySet()) {
+            ClassDeclaration cls = "Integer".equals(constant.getValue()[0]) ? 
+                    ClassDeclaration.INT_CLASS : ClassDeclaration.BOOL_CLASS;
+            code.println(constant.getKey() + ":");
+            code.println("DAT 1, " + cls.getIdentifier().getName());
+            code.println("DAT 1, " + constant.getValue()[1]);
+            if (cls.getObjectSize() > ClassDeclaration.HEADER_SIZE + 1) {
+                code.println("DAT " + (cls.getObjectSize() - ClassDeclaration.HEADER_SIZE - 1) + ", 0");
+            }
+        }
+        
         // Speicher für Stapel und Heap reservieren
         code.println("_stack: ; Hier fängt der Stapel an");
         code.println("DAT " + stackSize + ", 0");
-        code.println("_heap: ; Hier fängt der Heap an");
-        code.println("DAT " + (heapSize + 1) + ", 0");
+        code.println("_heap: ; Hier fängt der Heap an, die Speicherstelle enthält sein Ende");
+        code.println("DAT 1, _end");
+        code.println("DAT " + heapSize + ", 0");
         code.println("_end: ; Programmende");
     }
 }
@@ -0,0 +1,177 @@
+package oopsc;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.EnumSet;
+
+import oopsc.expressions.AlgebraicRule;
+
+import oopsc.parser.ResolvableIdentifier;
+import oopsc.parser.SyntaxAnalysis;
+import oopsc.streams.CodeStream;
+import oopsc.streams.PeepholeOptimizer;
+import oopsvm.Assembler;
+import oopsvm.Image;
+import oopsvm.VirtualMachine;
+
+/**
+ * Die Klasse übersetzt ein OOPS-Programm innerhalb eines Prozesses bis zu
+ * einer ladefertigen virtuellen Maschine. Der erzeugte Code wird dabei direkt
+ * an den {@link Assembler Assembler} übergeben, d.h. es wird keine
+ * Assembler-Datei geschrieben und wieder eingelesen. Auf Wunsch wird der
+ * Code trotzdem zusätzlich als Text in eine Datei ausgegeben.
+ * Die Methoden dürfen aus mehreren Threads gleichzeitig aufgerufen werden.
+ * Da sich alle Übersetzungen die vordefinierten Klassen, die Liste der
+ * Bezeichner und die eingeschalteten Regeln teilen, übersetzt aber immer
+ * nur ein Thread zur Zeit.
+ * <p>
+ * Beispiel:
+ * <pre>
+ * Toolchain toolchain = new Toolchain();
+ * toolchain.setOptimize(true);
+ * VirtualMachine vm = toolchain.load("tests/00_concepts.oops");
+ * vm.runProduction();
+ * </pre>
+ */
+public class Toolchain {
+    /** Die Sperre, unter der der gemeinsame Zustand des Übersetzers benutzt wird. */
+    private static final Object COMPILER_LOCK = new Object();
+
+    /** Soll der Syntaxbaum optimiert werden? */
+    private boolean optimize;
+
+    /** Die Regeln, die bei der Optimierung angewendet werden. */
+    private final EnumSet<AlgebraicRule> rules = EnumSet.allOf(AlgebraicRule.class);
+
+    /** Sollen Ausdrücke möglichst in Registern ausgewertet werden? */
+    private boolean registerMode;
+
+    /** Soll der erzeugte Code durch den Peephole-Optimierer laufen? */
+    private boolean peephole;
+
+    /** Darf der erweiterte Befehlssatz der virtuellen Maschine verwendet werden? */
+    private boolean extendedMode;
+
+    /** Die Größe des Heaps in Worten. */
+    private int heapSize = 100;
+
+    /** Die Größe des Stapels in Worten. */
+    private int stackSize = 100;
+
+    /** Die Datei, in die der Code zusätzlich als Text geschrieben wird, oder null. */
+    private String dumpFile;
+
+    /**
+     * Legt fest, ob der Syntaxbaum vor der Code-Erzeugung optimiert wird (wie OOPSC -o).
+     * @param optimize Soll optimiert werden?
+     */
+    public void setOptimize(boolean optimize) {
+        this.optimize = optimize;
+    }
+
+    /**
+     * Schaltet eine Regel der Optimierung ab (wie OOPSC -d).
+     * @param rule Die Regel, die nicht mehr angewendet wird.
+     */
+    public void disableRule(AlgebraicRule rule) {
+        rules.remove(rule);
+    }
+
+    /**
+     * Legt fest, ob Ausdrücke möglichst in Registern ausgewertet werden (wie OOPSC -O2).
+     * @param registerMode Sollen Register verwendet werden?
+     */
+    public void setRegisterMode(boolean registerMode) {
+        this.registerMode = registerMode;
+    }
+
+    /**
+     * Legt fest, ob der erzeugte Code optimiert wird (wie OOPSC -p).
+     * @param peephole Soll die Peephole-Optimierung durchgeführt werden?
+     */
+    public void setPeephole(boolean peephole) {
+        this.peephole = peephole;
+    }
+
+    /**
+     * Legt fest, ob der erweiterte Befehlssatz der virtuellen Maschine verwendet wird (wie OOPSC -x).
+     * @param extendedMode Soll der erweiterte Befehlssatz verwendet werden?
+     */
+    public void setExtendedMode(boolean extendedMode) {
+        this.extendedMode = extendedMode;
+    }
+
+    /**
+     * Setzt die Größe des Heaps (wie OOPSC -hs).
+     * @param heapSize Die Größe in Worten.
+     */
+    public void setHeapSize(int heapSize) {
+        this.heapSize = heapSize;
+    }
+
+    /**
+     * Setzt die Größe des Stapels (wie OOPSC -ss).
+     * @param stackSize Die Größe in Worten.
+     */
+    public void setStackSize(int stackSize) {
+        this.stackSize = stackSize;
+    }
+
+    /**
+     * Legt eine Datei fest, in die der erzeugte Code zusätzlich als
+     * Assembler-Text geschrieben wird.
+     * @param dumpFile Der Name der Datei oder null, wenn keine Textausgabe erfolgen soll.
+     */
+    public void setDumpFile(String dumpFile) {
+        this.dumpFile = dumpFile;
+    }
+
+    /**
+     * Die Methode übersetzt ein OOPS-Programm in ein ausführbares Abbild.
+     * @param fileName Der Name der Quelldatei.
+     * @return Das übersetzte Programm.
+     * @throws CompileException Das Programm enthält einen Fehler.
+     * @throws FileNotFoundException Eine Datei kann nicht gefunden oder erzeugt werden.
+     * @throws IOException Beim Lesen der Quelldatei ist ein Fehler aufgetreten.
+     * @throws Exception Der erzeugte Code konnte nicht gebunden werden.
+     */
+    public Image compile(String fileName) throws CompileException, FileNotFoundException, IOException, Exception {
+        synchronized (COMPILER_LOCK) {
+            ResolvableIdentifier.clear();
+            Program p = new SyntaxAnalysis(fileName, false).parse();
+            p.contextAnalysis();
+            if (optimize) {
+                AlgebraicRule.setEnabled(rules);
+                p.optimize();
+            }
+
+            CodeStream stream = new CodeStream(new Assembler(false, false),
+                    dumpFile == null ? null : new FileOutputStream(dumpFile));
+            try {
+                stream.setRegisterMode(registerMode);
+                stream.setExtendedMode(extendedMode);
+                stream.setOptimizer(peephole || extendedMode ? new PeepholeOptimizer(peephole, extendedMode) : null);
+                p.generateCode(stream, stackSize, heapSize);
+                stream.flushOptimized();
+                return stream.link();
+            } finally {
+                stream.close();
+            }
+        }
+    }
+
+    /**
+     * Die Methode übersetzt ein OOPS-Programm und lädt es in eine neue
+     * virtuelle Maschine, die ohne Ausgaben zur Fehlersuche arbeitet.
+     * @param fileName Der Name der Quelldatei.
+     * @return Die virtuelle Maschine, bereit zur Ausführung.
+     * @throws CompileException Das Programm enthält einen Fehler.
+     * @throws FileNotFoundException Eine Datei kann nicht gefunden oder erzeugt werden.
+     * @throws IOException Beim Lesen der Quelldatei ist ein Fehler aufgetreten.
+     * @throws Exception Der erzeugte Code konnte nicht gebunden werden.
+     */
+    public VirtualMachine load(String fileName) throws CompileException, FileNotFoundException, IOException, Exception {
+        return new VirtualMachine(compile(fileName).getMemory(), new int[8], false, false, false);
+    }
+}
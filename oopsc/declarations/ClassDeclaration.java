@@ -1,7 +1,9 @@
 package oopsc.declarations;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 
 import oopsc.CompileException;
 import oopsc.parser.Identifier;
@@ -78,6 +80,20 @@ public class ClassDeclaration extends Declaration {
     /** Die virtuelle Methodentabelle der Klasse. */
     private ArrayList<MethodDeclaration> virtualMethodTable = new ArrayList<MethodDeclaration>();
     
+    /**
+     * Die Methoden, die für die Einträge der VMT in dieser Klasse und allen
+     * abgeleiteten Klassen aufgerufen werden. Ein Eintrag ist null, wenn
+     * mindestens eine abgeleitete Klasse die Methode überschreibt.
+     */
+    private ArrayList<MethodDeclaration> uniqueImplementations = new ArrayList<MethodDeclaration>();
+    
+    /** 
+     * Dürfen verpackte Literale dieser Klasse auf ein gemeinsames konstantes
+     * Objekt verweisen? Wird durch {@link #determineSharedConstants(List)
+     * determineSharedConstants} festgelegt.
+     */
+    private boolean sharedConstants;
+    
     /**
      * Konstruktor.
      * @param name Der Name der deklarierten Klasse.
@@ -124,6 +140,26 @@ public class ClassDeclaration extends Declaration {
     }
 
     
+    /**
+     * Liefert ein Bitfeld, das angibt, welche Wörter eines Objekts dieser Klasse
+     * Referenzen enthalten. Bit i von Eintrag k steht für das Wort 32*k+i.
+     * Die Werte in Integer und Boolean (und davon abgeleiteten Klassen) sind
+     * keine Referenzen.
+     * @return Das Bitfeld mit mindestens einem Eintrag.
+     */
+    public int[] getReferenceMap() {
+        int[] map = new int[Math.max(1, (objectSize + 31) / 32)];
+        for (ClassDeclaration c = this; c != null; 
+                c = c.baseType == null ? null : (ClassDeclaration) c.baseType.getDeclaration()) {
+            if (c != INT_CLASS && c != BOOL_CLASS) {
+                for (VarDeclaration a : c.attributes) {
+                    map[a.getOffset() / 32] |= 1 << a.getOffset() % 32;
+                }
+            }
+        }
+        return map;
+    }
+    
     /**
      * Liefert die virtuelle Methodentabelle der Klasse.
      * @return Die virtuelle Methodentabelle der Klasse.
@@ -133,6 +169,18 @@ public class ClassDeclaration extends Declaration {
 	}
 
 
+    /**
+     * Liefert die Methode, die für einen Eintrag der VMT bei allen Objekten
+     * dieser Klasse und ihrer abgeleiteten Klassen aufgerufen wird.
+     * Ein Aufruf über diesen Eintrag kann dann statisch gebunden werden.
+     * @param index Der Index in der VMT.
+     * @return Die Methode oder null, wenn sie in einer abgeleiteten Klasse
+     *         überschrieben wird.
+     */
+    public MethodDeclaration getUniqueImplementation(int index) {
+        return index < uniqueImplementations.size() ? uniqueImplementations.get(index) : null;
+    }
+
 	/**
      * Die Methode führt die Kontextanalyse für diese Klassen-Deklaration durch.
      * Dabei analysiert diese nur Attribute
@@ -247,6 +295,140 @@ public class ClassDeclaration extends Declaration {
         }
     }
      
+    /**
+     * Die Methode legt fest, welche Parameter und Rückgabewerte unverpackt
+     * übergeben werden. Dies ist für einen Parameter vom Typ Integer oder Boolean
+     * möglich, wenn er in der Methode nur ausgepackt gelesen wird, und für
+     * ein Ergebnis, wenn immer ein frisch verpackter Wert zurückgeliefert wird.
+     * Da der Aufrufer bei dynamischer Bindung nicht weiß, welche Methode
+     * aufgerufen wird, muss die Bedingung für alle Methoden erfüllt sein,
+     * die sich gegenseitig überschreiben, d.h. in den VMTs denselben Platz belegen.
+     * Muss nach der Kontextanalyse und vor der Code-Erzeugung aufgerufen werden.
+     * @param classes Alle Klassen des Programms.
+     */
+    public static void determineUnboxedValues(List<ClassDeclaration> classes) {
+        // Gruppen sich überschreibender Methoden bilden (Union-Find)
+        HashMap<MethodDeclaration, MethodDeclaration> parents = new HashMap<MethodDeclaration, MethodDeclaration>();
+        for (ClassDeclaration c : classes) {
+            for (MethodDeclaration m : c.virtualMethodTable) {
+                if (!parents.containsKey(m)) {
+                    parents.put(m, m);
+                }
+            }
+        }
+        for (ClassDeclaration c : classes) {
+            if (c.baseType != null) {
+                ArrayList<MethodDeclaration> baseTable = ((ClassDeclaration) c.baseType.getDeclaration()).virtualMethodTable;
+                for (int i = 0; i < baseTable.size(); ++i) {
+                    parents.put(findGroup(parents, c.virtualMethodTable.get(i)), findGroup(parents, baseTable.get(i)));
+                }
+            }
+        }
+        HashMap<MethodDeclaration, ArrayList<MethodDeclaration>> groups = new HashMap<MethodDeclaration, ArrayList<MethodDeclaration>>();
+        for (MethodDeclaration m : parents.keySet()) {
+            MethodDeclaration root = findGroup(parents, m);
+            if (!groups.containsKey(root)) {
+                groups.put(root, new ArrayList<MethodDeclaration>());
+            }
+            groups.get(root).add(m);
+        }
+        
+        // Für jede Gruppe gemeinsam entscheiden
+        for (ArrayList<MethodDeclaration> group : groups.values()) {
+            boolean unboxed = true;
+            for (MethodDeclaration m : group) {
+                unboxed &= m.getResult().isValueOnly();
+            }
+            for (MethodDeclaration m : group) {
+                m.getResult().setUnboxed(unboxed);
+            }
+            for (int i = 0; i < group.get(0).getParams().size(); ++i) {
+                unboxed = true;
+                for (MethodDeclaration m : group) {
+                    unboxed &= m.getParams().get(i).isValueOnly();
+                }
+                for (MethodDeclaration m : group) {
+                    m.getParams().get(i).setUnboxed(unboxed);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Die Methode legt fest, ob verpackte Literale auf ein gemeinsames konstantes
+     * Objekt im Datenbereich verweisen dürfen, statt jedes Mal ein neues Objekt
+     * zu erzeugen. Das ist nur erlaubt, wenn das Programm nirgends Referenzen
+     * vergleicht, die auf verpackte Werte zeigen können, denn sonst würde
+     * sichtbar, dass gleiche Literale dasselbe Objekt sind.
+     * Muss nach der Kontextanalyse aufgerufen werden.
+     * @param classes Alle Klassen des Programms.
+     */
+    public static void determineSharedConstants(List<ClassDeclaration> classes) {
+        boolean shared = true;
+        for (ClassDeclaration c : classes) {
+            for (MethodDeclaration m : c.methods) {
+                shared &= !m.comparesBoxedValues();
+            }
+        }
+        INT_CLASS.sharedConstants = shared;
+        BOOL_CLASS.sharedConstants = shared;
+    }
+    
+    /**
+     * Dürfen verpackte Literale dieser Klasse auf ein gemeinsames konstantes
+     * Objekt verweisen?
+     * @return Werden konstante Objekte verwendet?
+     */
+    public boolean hasSharedConstants() {
+        return sharedConstants;
+    }
+    
+    /**
+     * Die Methode führt die Klassenhierarchie-Analyse durch: Für jede Klasse
+     * wird bestimmt, welche Einträge ihrer VMT in keiner abgeleiteten Klasse
+     * überschrieben werden. Da das ganze Programm bekannt ist, können Aufrufe
+     * über einen Empfänger dieser Klasse dann statisch gebunden werden.
+     * Muss nach der Kontextanalyse aufgerufen werden.
+     * @param classes Alle Klassen des Programms.
+     */
+    public static void determineUniqueImplementations(List<ClassDeclaration> classes) {
+        for (ClassDeclaration c : classes) {
+            c.uniqueImplementations = new ArrayList<MethodDeclaration>(c.virtualMethodTable);
+        }
+        
+        // Jede Klasse entfernt in allen Basisklassen die Einträge, die sie überschreibt
+        for (ClassDeclaration c : classes) {
+            for (ClassDeclaration b = c.getBaseClass(); b != null; b = b.getBaseClass()) {
+                for (int i = 0; i < b.uniqueImplementations.size(); ++i) {
+                    if (b.uniqueImplementations.get(i) != c.virtualMethodTable.get(i)) {
+                        b.uniqueImplementations.set(i, null);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Liefert die Basisklasse dieser Klasse.
+     * @return Die Basisklasse oder null, wenn es keine gibt.
+     */
+    private ClassDeclaration getBaseClass() {
+        return baseType == null ? null : (ClassDeclaration) baseType.getDeclaration();
+    }
+    
+    /**
+     * Liefert den Repräsentanten der Gruppe, zu der eine Methode gehört.
+     * @param parents Die Zuordnung jeder Methode zu einer Methode derselben Gruppe.
+     * @param m Die Methode.
+     * @return Der Repräsentant der Gruppe.
+     */
+    private static MethodDeclaration findGroup(HashMap<MethodDeclaration, MethodDeclaration> parents, MethodDeclaration m) {
+        while (parents.get(m) != m) {
+            m = parents.get(m);
+        }
+        return m;
+    }
+    
     /**
      * Die Methode prüft, ob dieser Typ kompatibel mit einem anderen Typ ist.
      * @param expected Der Typ, mit dem verglichen wird.
@@ -325,6 +507,16 @@ public class ClassDeclaration extends Declaration {
     	}
     }
     
+    /**
+     * Legt in allen Methoden die Variablen für eingebettete Aufrufe an.
+     * Muss nach der Optimierung aller Klassen aufgerufen werden.
+     */
+    public void reserveInlineVariables() {
+        for (MethodDeclaration m : methods) {
+            m.reserveInlineVariables();
+        }
+    }
+    
     
     /**
      * Generiert den Assembler-Code für diese Klasse. Dabei wird davon ausgegangen,
@@ -334,6 +526,13 @@ public class ClassDeclaration extends Declaration {
     public void generateCode(CodeStream code) {
         code.println("; CLASS " + getIdentifier().getName());
 
+        // Referenz-Bitfeld (rückwärts) und Objektgröße für die Speicherbereinigung
+        int[] referenceMap = getReferenceMap();
+        for (int i = referenceMap.length - 1; i >= 0; --i) {
+            code.println("DAT 1, " + referenceMap[i]);
+        }
+        code.println("DAT 1, " + objectSize);
+
         //Label für die VMT
         code.println(getIdentifier().getName() + ":");
         
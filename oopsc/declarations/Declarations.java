@@ -22,6 +22,9 @@ public class Declarations {
     
     private ClassDeclaration callerClass;
     
+    /** Die Methode, deren Rumpf gerade analysiert wird, oder null. */
+    private MethodDeclaration callerMethod;
+    
     /**
      * Die Method erstellt eine Kopie dieses Objekts. Dabei werden die Ebenen nicht kopiert,
      * sondern auch von der Kopie weiter benutzt. Die umgebende Liste wird aber kopiert,
@@ -34,6 +37,7 @@ public class Declarations {
             d.levels.add(l);
         }
         d.setCallerClass(callerClass);
+        d.setCallerMethod(callerMethod);
         return d;
     }
     
@@ -150,4 +154,20 @@ public class Declarations {
 	public void setCallerClass(ClassDeclaration callerClass) {
 		this.callerClass = callerClass;
 	}
+
+	/**
+	 * Liefert die Methode, deren Rumpf gerade analysiert wird.
+	 * @return Die Methode oder null außerhalb von Methodenrümpfen.
+	 */
+	public MethodDeclaration getCallerMethod() {
+		return callerMethod;
+	}
+
+	/**
+	 * Setzt die Methode, deren Rumpf gerade analysiert wird.
+	 * @param callerMethod Die Methode oder null.
+	 */
+	public void setCallerMethod(MethodDeclaration callerMethod) {
+		this.callerMethod = callerMethod;
+	}
 }
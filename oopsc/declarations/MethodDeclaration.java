@@ -1,12 +1,16 @@
 package oopsc.declarations;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 
 import oopsc.CompileException;
 import oopsc.parser.Identifier;
 import oopsc.parser.Position;
 import oopsc.parser.ResolvableIdentifier;
 import oopsc.parser.Symbol;
+import oopsc.statements.DataflowOptimizer;
 import oopsc.statements.Statement;
 import oopsc.streams.CodeStream;
 import oopsc.streams.TreeStream;
@@ -15,6 +19,9 @@ import oopsc.streams.TreeStream;
  * Die Klasse repräsentiert eine Methode im Syntaxbaum.
  */
 public class MethodDeclaration extends Declaration {
+    /** Die maximale Größe des Rumpfs einer Methode, die eingebettet wird. */
+    private static final int INLINE_BUDGET = 24;
+    
     /** Die lokale Variable SELF. */
     private VarDeclaration self;
     
@@ -39,6 +46,25 @@ public class MethodDeclaration extends Declaration {
     
     /** Die Nummer in der VMT */
     private int vmtIndex;
+    
+    /** Enthält der Rumpf keine Methodenaufrufe? */
+    private boolean leaf = true;
+    
+    /** Vergleicht der Rumpf Referenzen, die auf verpackte Werte zeigen können? */
+    private boolean comparesBoxedValues;
+    
+    /** 
+     * Die zusätzlichen lokalen Variablen, in denen eingebettete Methoden
+     * SELF, ihre Parameter und ihre lokalen Variablen ablegen. Sie sind
+     * auch in {@link #vars vars} enthalten.
+     */
+    private final LinkedList<VarDeclaration> inlineVars = new LinkedList<VarDeclaration>();
+    
+    /** Die Methoden, die in diese Methode eingebettet werden. */
+    private final HashSet<MethodDeclaration> inlinedMethods = new HashSet<MethodDeclaration>();
+    
+    /** Die Anzahl der Hilfsvariablen, die der Optimierer angelegt hat. */
+    private int temporaries;
 
 	/**
      * Konstruktor.
@@ -158,6 +184,7 @@ public class MethodDeclaration extends Declaration {
         // SELF eintragen
         assert self != null;
         declarations.add(self);
+        declarations.setCallerMethod(this);
  
         int offset = -(params.size()+2);
         
@@ -208,9 +235,234 @@ public class MethodDeclaration extends Declaration {
         }
         
         // Alten Deklarationsraum wiederherstellen
+        declarations.setCallerMethod(null);
         declarations.leave();
     }
     
+    /**
+     * Vermerkt, dass der Rumpf dieser Methode einen Methodenaufruf enthält.
+     */
+    public void addCall() {
+        leaf = false;
+    }
+    
+    /**
+     * Vermerkt, dass der Rumpf dieser Methode zwei Referenzen vergleicht, die
+     * beide auf ein verpacktes Integer oder Boolean zeigen können.
+     */
+    public void addBoxedValueComparison() {
+        comparesBoxedValues = true;
+    }
+    
+    /**
+     * Vergleicht der Rumpf dieser Methode Referenzen, die auf verpackte
+     * Werte zeigen können?
+     * @return Enthält der Rumpf einen solchen Vergleich?
+     */
+    public boolean comparesBoxedValues() {
+        return comparesBoxedValues;
+    }
+    
+    /**
+     * Kann ein statisch gebundener Aufruf dieser Methode durch ihren Rumpf
+     * ersetzt werden? Das ist bei kleinen Methoden möglich, die selbst
+     * keine Methoden aufrufen und damit auch nicht rekursiv sind.
+     * @return Kann die Methode eingebettet werden?
+     */
+    public boolean isInlinable() {
+        if (!leaf) {
+            return false;
+        }
+        int size = 0;
+        for (Statement s : statements) {
+            size += s.size();
+        }
+        return size <= INLINE_BUDGET;
+    }
+    
+    /**
+     * Vermerkt, dass ein Aufruf im Rumpf dieser Methode durch den Rumpf der
+     * aufgerufenen Methode ersetzt wird.
+     * @param callee Die eingebettete Methode.
+     */
+    public void addInlinedCall(MethodDeclaration callee) {
+        inlinedMethods.add(callee);
+    }
+    
+    /**
+     * Stellt in dieser Methode lokale Variablen bereit, in denen eingebettete
+     * Methoden SELF, ihre Parameter und ihre lokalen Variablen ablegen können.
+     * Da eingebettete Methoden selbst keine Aufrufe enthalten, können sich alle
+     * eingebetteten Aufrufe dieselben Variablen teilen. Muss nach der
+     * Optimierung aller Methoden aufgerufen werden, weil diese den
+     * eingebetteten Methoden noch Hilfsvariablen hinzufügen kann.
+     */
+    void reserveInlineVariables() {
+        for (MethodDeclaration callee : inlinedMethods) {
+            int count = 1 + callee.params.size() + callee.vars.size();
+            while (inlineVars.size() < count) {
+                VarDeclaration v = new VarDeclaration(new Identifier("_inline" + inlineVars.size(), null), 
+                        new ResolvableIdentifier("Object", null), false, Symbol.Id.PUBLIC);
+                v.getType().setDeclaration(ClassDeclaration.OBJECT_CLASS);
+                v.setOffset(vars.size() + 1);
+                vars.add(v);
+                inlineVars.add(v);
+            }
+        }
+    }
+    
+    /**
+     * Liefert die Variablen, in denen eine eingebettete Methode abgelegt wird.
+     * @param callee Die eingebettete Methode.
+     * @return Die Variablen in der Reihenfolge SELF, Parameter, lokale Variablen.
+     */
+    public List<VarDeclaration> getInlineVariables(MethodDeclaration callee) {
+        return new ArrayList<VarDeclaration>(inlineVars.subList(0, 1 + callee.params.size() + callee.vars.size()));
+    }
+    
+    /**
+     * Legt eine lokale Variable an, in der der Optimierer einen Zwischenwert
+     * ablegt. Da sie nur ausgepackte Werte aufnimmt, wird sie unverpackt im
+     * Stapelrahmen abgelegt.
+     * @param type Der Typ des Zwischenwerts (der Basisdatentyp Integer oder Boolean).
+     * @return Die neue Variable.
+     */
+    public VarDeclaration addTemporary(ClassDeclaration type) {
+        ClassDeclaration cls = type == ClassDeclaration.BOOL_TYPE ? ClassDeclaration.BOOL_CLASS : ClassDeclaration.INT_CLASS;
+        VarDeclaration v = new VarDeclaration(new Identifier("_temp" + temporaries++, null), 
+                new ResolvableIdentifier(cls.getIdentifier().getName(), null), false, Symbol.Id.PUBLIC);
+        v.getType().setDeclaration(cls);
+        v.setOffset(vars.size() + 1);
+        v.setUnboxed(true);
+        vars.add(v);
+        return v;
+    }
+    
+    /**
+     * Kann ein Aufruf einer Methode am Ende dieser Methode den Stapelrahmen
+     * dieser Methode wiederverwenden? Dazu müssen beide Methoden gleich viele
+     * Parameter und lokale Variablen haben und Parameter und Ergebnis in
+     * derselben Form (verpackt oder unverpackt) übergeben.
+     * Muss während der Code-Erzeugung aufgerufen werden.
+     * @param target Die aufgerufene Methode.
+     * @return Kann der Stapelrahmen wiederverwendet werden?
+     */
+    public boolean acceptsTailCall(MethodDeclaration target) {
+        if (target.params.size() != params.size() || target.vars.size() != vars.size()
+                || target.result.isUnboxed() != result.isUnboxed()) {
+            return false;
+        }
+        for (int i = 0; i < params.size(); ++i) {
+            if (target.params.get(i).isUnboxed() != params.get(i).isUnboxed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Generiert den Code für einen Aufruf am Ende dieser Methode, der ihren
+     * Stapelrahmen wiederverwendet. Das neue SELF und die Argumente liegen
+     * wie bei einem normalen Aufruf auf dem Stapel. Sie überschreiben SELF und
+     * die Parameter dieser Methode, danach wird hinter den Prolog der
+     * aufgerufenen Methode gesprungen. Deren Epilog kehrt dann direkt zum
+     * Aufrufer dieser Methode zurück.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param target Die aufgerufene Methode. Sie muss
+     *         {@link #acceptsTailCall(MethodDeclaration) acceptsTailCall} erfüllen.
+     */
+    public void generateTailCallCode(CodeStream code, MethodDeclaration target) {
+        code.println("; Endaufruf von " + target.getIdentifier().getName());
+        generatePopCode(code, -2, params.size() + 1);
+        code.println("MRI R0, " + target.getStartLabel());
+    }
+    
+    /**
+     * Generiert Code, der Werte vom Stapel in den aktuellen Stapelrahmen
+     * überträgt. Der oberste Wert wird an die angegebene Position geschrieben,
+     * die darunter liegenden an die Positionen davor.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param offset Die Position des obersten Werts relativ zu R3.
+     * @param count Die Anzahl der Werte.
+     */
+    private static void generatePopCode(CodeStream code, int offset, int count) {
+        code.println("MRI R6, " + offset);
+        code.println("ADD R6, R3");
+        for (int i = count - 1; i >= 0; --i) {
+            code.println("MRM R5, (R2)");
+            code.println("MMR (R6), R5");
+            code.println("SUB R2, R1");
+            if (i > 0) {
+                code.println("SUB R6, R1");
+            }
+        }
+    }
+    
+    /**
+     * Liefert die Marke hinter dem Prolog dieser Methode, an der ein Aufruf,
+     * der den Stapelrahmen wiederverwendet, fortgesetzt wird.
+     * @return Die Marke.
+     */
+    private String getStartLabel() {
+        return "start_" + self.getType().getName() + "_" + getIdentifier().getName();
+    }
+    
+    /**
+     * Generiert den Code für einen eingebetteten Aufruf dieser Methode. SELF
+     * und die Argumente liegen wie bei einem normalen Aufruf auf dem Stapel.
+     * Sie werden in die Variablen des Aufrufers übertragen und der Rumpf wird
+     * so erzeugt, als lägen SELF, Parameter und lokale Variablen dort.
+     * RETURN springt dabei an das Ende des eingebetteten Rumpfs. Danach liegt
+     * wie nach einem normalen Aufruf das Ergebnis auf dem Stapel.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param variables Die Variablen aus {@link #getInlineVariables(MethodDeclaration)
+     *         getInlineVariables}.
+     */
+    public void generateInlineCode(CodeStream code, List<VarDeclaration> variables) {
+        code.println("; INLINE " + getIdentifier().getName());
+        generatePopCode(code, variables.get(params.size()).getOffset(), params.size() + 1);
+        
+        // Variablen dieser Methode vorübergehend in den Rahmen des Aufrufers legen
+        ArrayList<VarDeclaration> frame = new ArrayList<VarDeclaration>();
+        frame.add(self);
+        frame.addAll(params);
+        frame.addAll(vars);
+        int[] offsets = new int[frame.size()];
+        for (int i = 0; i < offsets.length; ++i) {
+            offsets[i] = frame.get(i).getOffset();
+            frame.get(i).setOffset(variables.get(i).getOffset());
+        }
+        int resultOffset = result.getOffset();
+        result.setOffset(self.getOffset());
+        if (base != null) {
+            base.setOffset(self.getOffset());
+        }
+        
+        String endLabel = code.nextLabel();
+        code.setEndlabel(endLabel);
+        for (Statement s : statements) {
+            s.generateCode(code);
+        }
+        code.setEndlabel(null);
+        code.println(endLabel + ":");
+        code.println("; END INLINE " + getIdentifier().getName());
+        if (!ClassDeclaration.VOID_TYPE.isA((ClassDeclaration) result.getType().getDeclaration())) {
+            code.println("MRI R5, " + result.getOffset());
+            code.println("ADD R5, R3");
+            code.println("MRM R5, (R5) ; Ergebnis auf den Stapel");
+            code.println("ADD R2, R1");
+            code.println("MMR (R2), R5");
+        }
+        
+        for (int i = 0; i < offsets.length; ++i) {
+            frame.get(i).setOffset(offsets[i]);
+        }
+        result.setOffset(resultOffset);
+        if (base != null) {
+            base.setOffset(resultOffset);
+        }
+    }
+    
     /**
      * Die Methode gibt diese Deklaration in einer Baumstruktur aus.
      * @param tree Der Strom, in den die Ausgabe erfolgt.
@@ -255,6 +507,7 @@ public class MethodDeclaration extends Declaration {
     	for(Statement s : statements) {
     		s.optimize();
     	}
+    	DataflowOptimizer.optimize(statements, this);
     }
     
     /**
@@ -270,17 +523,25 @@ public class MethodDeclaration extends Declaration {
         code.println("ADD R2, R1");
         code.println("MMR (R2), R3 ; Alten Stapelrahmen sichern");
         code.println("MRR R3, R2 ; Aktuelle Stapelposition ist neuer Rahmen");
-        if (!vars.isEmpty()) {
+        if (!vars.isEmpty() && code.isExtendedMode()) {
+            code.println("ADI R2, " + vars.size() + " ; Platz für lokale Variablen schaffen");
+        } else if (!vars.isEmpty()) {
             code.println("MRI R5, " + vars.size());
             code.println("ADD R2, R5 ; Platz für lokale Variablen schaffen");
         }
+        code.println(getStartLabel() + ":");
         for (Statement s : statements) {
             s.generateCode(code);
         }
         code.println(endPosition);
         code.println("; END METHOD " + getIdentifier().getName());
         code.println(code.getEndlabel()+":");
-        code.println("MRI R5, " + (vars.size() + (ClassDeclaration.VOID_TYPE.isA(((ClassDeclaration)result.getType().getDeclaration())) ? 3 : 2) + params.size()));
+        int size = vars.size() + (ClassDeclaration.VOID_TYPE.isA(((ClassDeclaration)result.getType().getDeclaration())) ? 3 : 2) + params.size();
+        if (code.isExtendedMode()) {
+            code.println("RET R3, " + size + " ; Stack korrigieren und Rücksprung");
+            return;
+        }
+        code.println("MRI R5, " + size);
         code.println("SUB R2, R5 ; Stack korrigieren");
         code.println("SUB R3, R1");
         code.println("MRM R5, (R3) ; Rücksprungadresse holen");
@@ -342,6 +603,14 @@ public class MethodDeclaration extends Declaration {
 		return true;
 	}
 	
+	/**
+	 * Getter für die Variable, die das Ergebnis der Methode aufnimmt.
+	 * @return Die Variable _result.
+	 */
+	public VarDeclaration getResult() {
+		return result;
+	}
+	
 	public int getVMTIndex() {
 		return vmtIndex;
 	}
@@ -22,6 +22,22 @@ public class VarDeclaration extends Declaration {
      */ 
     private int offset;
     
+    /** Die Anzahl der Zugriffe auf die Variable. */
+    private int uses;
+    
+    /** 
+     * Die Anzahl der Zugriffe, bei denen nur der Wert eines Integer- oder
+     * Boolean-Objekts benötigt wird (d.h. das Objekt sofort ausgepackt wird)
+     * bzw. bei denen ein frisch verpackter Wert zugewiesen wird.
+     */
+    private int valueUses;
+    
+    /** 
+     * Wird der Wert unverpackt im Stapelrahmen abgelegt? Dies wird vor der
+     * Code-Erzeugung für Parameter und Rückgabewerte bestimmt.
+     */
+    private boolean unboxed;
+    
     /**
      * Konstruktor.
      * @param name Der Name der deklarierten Variablen bzw. des Attributs.
@@ -68,6 +84,53 @@ public class VarDeclaration extends Declaration {
         return offset;
     }
 
+    /**
+     * Vermerkt einen Zugriff auf die Variable.
+     * @param valueOnly Wird nur der Wert benötigt, d.h. könnte die Variable
+     *         auch unverpackt abgelegt sein?
+     */
+    public void addUse(boolean valueOnly) {
+        ++uses;
+        if (valueOnly) {
+            ++valueUses;
+        }
+    }
+    
+    /**
+     * Vermerkt, dass ein zuvor mit {@link #addUse(boolean) addUse} vermerkter
+     * Zugriff nur den Wert benötigt.
+     */
+    public void addValueUse() {
+        ++valueUses;
+    }
+    
+    /**
+     * Liefert zurück, ob bei allen Zugriffen nur der Wert benötigt wird und die
+     * Variable vom Typ Integer oder Boolean ist. Nur dann kann sie unverpackt 
+     * abgelegt werden.
+     * @return Kann die Variable unverpackt abgelegt werden?
+     */
+    boolean isValueOnly() {
+        return valueUses >= uses && (type.getDeclaration() == ClassDeclaration.INT_CLASS 
+                || type.getDeclaration() == ClassDeclaration.BOOL_CLASS);
+    }
+    
+    /**
+     * Legt fest, ob der Wert unverpackt im Stapelrahmen abgelegt wird.
+     * @param unboxed Wird der Wert unverpackt abgelegt?
+     */
+    void setUnboxed(boolean unboxed) {
+        this.unboxed = unboxed;
+    }
+    
+    /**
+     * Wird der Wert unverpackt im Stapelrahmen abgelegt?
+     * @return Ist der Wert unverpackt?
+     */
+    public boolean isUnboxed() {
+        return unboxed;
+    }
+
     /**
      * Führt die Kontextanalyse für diese Variablen-Deklaration durch.
      * @param declarations Die an dieser Stelle gültigen Deklarationen.
@@ -1,7 +1,13 @@
 package oopsc.expressions;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import oopsc.CompileException;
 import oopsc.declarations.Declarations;
+import oopsc.declarations.MethodDeclaration;
+import oopsc.declarations.VarDeclaration;
 import oopsc.streams.CodeStream;
 import oopsc.streams.TreeStream;
 
@@ -57,7 +63,7 @@ public class AccessExpression extends Expression {
         
         // Der rechte Operand hat einen Deklarationsraum, der sich aus dem 
         // Ergebnistyp des linken Operanden ergibt.
-        rightOperand.contextAnalysis(leftOperand.getType().getDeclarations(), declarations, false, isBase);
+        rightOperand.contextAnalysis(leftOperand.getType(), leftOperand.getType().getDeclarations(), declarations, false, isBase);
 
         // Der Typ dieses Ausdrucks ist immer der des rechten Operanden.
         setType(rightOperand.getType());
@@ -79,6 +85,14 @@ public class AccessExpression extends Expression {
         tree.unindent();
     }
     
+    /**
+     * Liefert die Größe dieses Ausdrucks als Anzahl der Knoten im Syntaxbaum.
+     * @return Die Größe.
+     */
+    public int size() {
+        return 1 + leftOperand.size() + rightOperand.size();
+    }
+
     /**
      * Durchläuft den Syntaxbaum und wertet konstante Ausdrücke aus 
      * und wendet ein paar Transformationen an.
@@ -90,13 +104,129 @@ public class AccessExpression extends Expression {
 		return this;
 	}
 
+    /**
+     * Gibt die bekannten Werte lokaler Variablen an beide Operanden weiter.
+     * @param constants Die lokalen Variablen mit bekanntem Wert.
+     * @return Dieser Ausdruck.
+     */
+    public Expression propagateConstants(Map<VarDeclaration, LiteralExpression> constants) {
+        leftOperand = leftOperand.propagateConstants(constants);
+        rightOperand = (VarOrCall) rightOperand.propagateConstants(constants);
+        return this;
+    }
+
+    /**
+     * Trägt die Variablen ein, die die Operanden lesen.
+     * @param variables Die Menge, in die die Variablen eingetragen werden.
+     */
+    public void addUsedVariables(Set<VarDeclaration> variables) {
+        leftOperand.addUsedVariables(variables);
+        rightOperand.addUsedVariables(variables);
+    }
+
+    /**
+     * Ein Attributzugriff hat keine Seiteneffekte, ein Methodenaufruf schon.
+     * @return Hat einer der Operanden Seiteneffekte?
+     */
+    public boolean hasSideEffects() {
+        return leftOperand.hasSideEffects() || rightOperand.hasSideEffects();
+    }
+
+    /**
+     * Trägt die Werte in beiden Operanden ein.
+     * @param values Die Liste, in die die Teilausdrücke eingetragen werden.
+     * @param all Sollen auch bedingt ausgewertete Teilausdrücke eingetragen werden?
+     */
+    public void addPureValues(List<Expression> values, boolean all) {
+        leftOperand.addPureValues(values, all);
+        rightOperand.addPureValues(values, all);
+    }
+
+    /**
+     * Ersetzt einen Wert in beiden Operanden durch das Auslesen einer Variablen.
+     * @param value Der Wert.
+     * @param variable Die Variable, die den Wert enthält.
+     * @return Dieser Ausdruck.
+     */
+    public Expression replacePureValue(Expression value, VarDeclaration variable) {
+        leftOperand = leftOperand.replacePureValue(value, variable);
+        rightOperand = (VarOrCall) rightOperand.replacePureValue(value, variable);
+        return this;
+    }
+
     /**
      * Die Methode generiert den Assembler-Code für diesen Ausdruck. Sie geht 
      * davon aus, dass die Kontextanalyse vorher erfolgreich abgeschlossen wurde.
      * @param code Der Strom, in den die Ausgabe erfolgt.
      */
     public void generateCode(CodeStream code) {
+        if (generateRegisterCode(code)) {
+            return;
+        }
     	leftOperand.generateCode(code);
         rightOperand.generateCode(code);
     }
+    
+    /**
+     * Die Methode generiert Code für einen Methodenaufruf am Ende einer Methode,
+     * der deren Stapelrahmen wiederverwendet. Das ist möglich, wenn der Aufruf
+     * statisch gebunden wird und die aufgerufene Methode einen gleich
+     * aufgebauten Stapelrahmen hat, insbesondere bei Selbstrekursion.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param method Die Methode, an deren Ende der Aufruf steht.
+     * @return Wurde Code erzeugt? Ansonsten muss normal aufgerufen werden.
+     */
+    public boolean generateTailCallCode(CodeStream code, MethodDeclaration method) {
+        if (!(rightOperand.getIdentifier().getDeclaration() instanceof MethodDeclaration)) {
+            return false;
+        }
+        MethodDeclaration target = rightOperand.getStaticTarget();
+        if (target == null || !method.acceptsTailCall(target)) {
+            return false;
+        }
+        code.println(getPosition());
+        leftOperand.generateCode(code);
+        rightOperand.generateArgumentCode(code);
+        method.generateTailCallCode(code, target);
+        return true;
+    }
+    
+    /**
+     * Die Methode generiert Code für einen Methodenaufruf, dessen Ergebnis
+     * unverpackt zurückgeliefert wird, ohne das Ergebnis zu verpacken.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @return Wurde Code erzeugt?
+     */
+    boolean generateValueCode(CodeStream code) {
+        if (rightOperand.isUnboxedCall()) {
+            leftOperand.generateCode(code);
+            rightOperand.generateValueCode(code);
+            return true;
+        } else {
+            return false;
+        }
+    }
+    
+    /**
+     * Ein Attributzugriff benötigt zusätzlich zum linken Operanden ein Register
+     * für den Abstand des Attributs. Methodenaufrufe werden nie in Registern
+     * ausgewertet.
+     * @return Die Anzahl der benötigten Register.
+     */
+    public int getRegisterNeed() {
+        return rightOperand.isLValue() ? Math.max(leftOperand.getRegisterNeed(), 2) : NOT_IN_REGISTERS;
+    }
+    
+    /**
+     * Die Methode generiert Code, der die Adresse eines Attributs in einem 
+     * Register ablegt.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param register Das Register, in dem das Ergebnis abgelegt wird.
+     */
+    public void generateCode(CodeStream code, int register) {
+        leftOperand.generateCode(code, register);
+        code.println("; Referenz auf Attribut " + rightOperand.getIdentifier().getName());
+        code.println("MRI R" + (register + 1) + ", " + rightOperand.getAttributeOffset());
+        code.println("ADD R" + register + ", R" + (register + 1));
+    }
 }
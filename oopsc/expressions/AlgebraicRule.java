@@ -0,0 +1,521 @@
+package oopsc.expressions;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import oopsc.declarations.ClassDeclaration;
+import oopsc.parser.Symbol;
+
+/**
+ * Dieser Aufzählungstyp definiert die Regeln, mit denen arithmetische und
+ * logische Ausdrücke bei der Optimierung vereinfacht werden. Jede Regel
+ * betrachtet nur den obersten Knoten eines Ausdrucks, dessen Operanden
+ * bereits vereinfacht wurden, und liefert einen gleichwertigen, aber
+ * günstigeren Ausdruck. Teilausdrücke werden nur weggelassen, wenn sie keine
+ * Seiteneffekte haben. Die Regeln können einzeln abgeschaltet werden
+ * (OOPSC -d &lt;Regel&gt;).
+ */
+public enum AlgebraicRule {
+    /**
+     * Wertet Operationen auf Literalen aus, z.B. 2 * 3 -&gt; 6. Eine Division
+     * durch 0 bleibt erhalten, damit der Fehler zur Laufzeit gemeldet wird.
+     */
+    CONSTANT_FOLDING {
+        public Expression apply(Expression expression) {
+            if (expression instanceof UnaryExpression) {
+                UnaryExpression e = (UnaryExpression) expression;
+                if (!(e.getOperand() instanceof LiteralExpression)) {
+                    return null;
+                }
+                int value = ((LiteralExpression) e.getOperand()).getValue();
+                return e.getOperator() == Symbol.Id.MINUS ? intLiteral(-value, e) : boolLiteral(value == 0, e);
+            } else if (expression instanceof BinaryExpression) {
+                BinaryExpression e = (BinaryExpression) expression;
+                if (!(e.getLeftOperand() instanceof LiteralExpression
+                        && e.getRightOperand() instanceof LiteralExpression)) {
+                    return null;
+                }
+                int left = ((LiteralExpression) e.getLeftOperand()).getValue();
+                int right = ((LiteralExpression) e.getRightOperand()).getValue();
+                switch (e.getOperator()) {
+                case AND_THEN:
+                case AND:
+                    return boolLiteral((left & right) != 0, e);
+                case OR_ELSE:
+                case OR:
+                    return boolLiteral((left | right) != 0, e);
+                case PLUS:
+                    return intLiteral(left + right, e);
+                case MINUS:
+                    return intLiteral(left - right, e);
+                case TIMES:
+                    return intLiteral(left * right, e);
+                case DIV:
+                    return right == 0 ? null : intLiteral(left / right, e);
+                case MOD:
+                    return right == 0 ? null : intLiteral(left % right, e);
+                case GT:
+                    return boolLiteral(left > right, e);
+                case GTEQ:
+                    return boolLiteral(left >= right, e);
+                case LT:
+                    return boolLiteral(left < right, e);
+                case LTEQ:
+                    return boolLiteral(left <= right, e);
+                case EQ:
+                    return boolLiteral(left == right, e);
+                case NEQ:
+                    return boolLiteral(left != right, e);
+                default:
+                    assert false;
+                }
+            }
+            return null;
+        }
+    },
+
+    /**
+     * Verschiebt ein Literal bei kommutativen Operatoren und Vergleichen nach
+     * rechts, z.B. 1 + x -&gt; x + 1 und 0 &lt; x -&gt; x &gt; 0. Dadurch müssen die
+     * übrigen Regeln nur diese Form kennen und gemeinsame Teilausdrücke werden
+     * eher erkannt. Die Reihenfolge der Auswertung ändert sich dadurch nicht
+     * sichtbar, da ein Literal keine Seiteneffekte hat.
+     */
+    LITERAL_RIGHT {
+        public Expression apply(Expression expression) {
+            if (!(expression instanceof BinaryExpression)) {
+                return null;
+            }
+            BinaryExpression e = (BinaryExpression) expression;
+            if (!(e.getLeftOperand() instanceof LiteralExpression)
+                    || e.getRightOperand() instanceof LiteralExpression) {
+                return null;
+            }
+            Symbol.Id swapped;
+            switch (e.getOperator()) {
+            case PLUS:
+            case TIMES:
+            case AND:
+            case OR:
+            case EQ:
+            case NEQ:
+                swapped = e.getOperator();
+                break;
+            case LT:
+                swapped = Symbol.Id.GT;
+                break;
+            case LTEQ:
+                swapped = Symbol.Id.GTEQ;
+                break;
+            case GT:
+                swapped = Symbol.Id.LT;
+                break;
+            case GTEQ:
+                swapped = Symbol.Id.LTEQ;
+                break;
+            default:
+                return null;
+            }
+            return binary(e.getRightOperand(), swapped, e.getLeftOperand(), e.getType());
+        }
+    },
+
+    /**
+     * Entfernt neutrale Elemente: x + 0, x - 0, 0 + x, x * 1, 1 * x, x / 1,
+     * x AND TRUE, TRUE AND x, x OR FALSE, FALSE OR x und die entsprechenden
+     * Fälle von AND THEN und OR ELSE werden zu x.
+     */
+    NEUTRAL_ELEMENTS {
+        public Expression apply(Expression expression) {
+            if (!(expression instanceof BinaryExpression)) {
+                return null;
+            }
+            BinaryExpression e = (BinaryExpression) expression;
+            Expression left = e.getLeftOperand();
+            Expression right = e.getRightOperand();
+            switch (e.getOperator()) {
+            case PLUS:
+                return isLiteral(right, 0) ? left : isLiteral(left, 0) ? right : null;
+            case MINUS:
+                return isLiteral(right, 0) ? left : null;
+            case TIMES:
+                return isLiteral(right, 1) ? left : isLiteral(left, 1) ? right : null;
+            case DIV:
+                return isLiteral(right, 1) ? left : null;
+            case AND:
+            case AND_THEN:
+                return isLiteral(right, 1) ? left : isLiteral(left, 1) ? right : null;
+            case OR:
+            case OR_ELSE:
+                return isLiteral(right, 0) ? left : isLiteral(left, 0) ? right : null;
+            default:
+                return null;
+            }
+        }
+    },
+
+    /**
+     * Ersetzt Operationen mit absorbierenden Elementen durch ein Literal:
+     * x * 0, x MOD 1 und x MOD -1 werden zu 0, x AND FALSE zu FALSE, x OR TRUE
+     * zu TRUE. Das gilt nur, wenn x keine Seiteneffekte hat, außer x wird
+     * ohnehin nicht ausgewertet wie in FALSE AND THEN x und TRUE OR ELSE x.
+     */
+    ABSORBING_ELEMENTS {
+        public Expression apply(Expression expression) {
+            if (!(expression instanceof BinaryExpression)) {
+                return null;
+            }
+            BinaryExpression e = (BinaryExpression) expression;
+            Expression left = e.getLeftOperand();
+            Expression right = e.getRightOperand();
+            switch (e.getOperator()) {
+            case AND_THEN:
+                if (isLiteral(left, 0)) {
+                    return left;
+                }
+                break;
+            case OR_ELSE:
+                if (isLiteral(left, 1)) {
+                    return left;
+                }
+                break;
+            default:
+                break;
+            }
+            Expression absorbing;
+            Expression other;
+            if (right instanceof LiteralExpression) {
+                absorbing = right;
+                other = left;
+            } else if (left instanceof LiteralExpression) {
+                absorbing = left;
+                other = right;
+            } else {
+                return null;
+            }
+            if (other.hasSideEffects()) {
+                return null;
+            }
+            switch (e.getOperator()) {
+            case TIMES:
+                return isLiteral(absorbing, 0) ? intLiteral(0, e) : null;
+            case MOD:
+                return absorbing == right && (isLiteral(right, 1) || isLiteral(right, -1)) ? intLiteral(0, e) : null;
+            case AND:
+            case AND_THEN:
+                return isLiteral(absorbing, 0) ? boolLiteral(false, e) : null;
+            case OR:
+            case OR_ELSE:
+                return isLiteral(absorbing, 1) ? boolLiteral(true, e) : null;
+            default:
+                return null;
+            }
+        }
+    },
+
+    /**
+     * Vereinfacht Vorzeichen: 0 - x, x * -1 und x / -1 werden zu -x,
+     * x - -y zu x + y, x + -y zu x - y und --x zu x. Die Negation benötigt
+     * keine Multiplikation bzw. Division und kein geladenes Literal.
+     */
+    NEGATION {
+        public Expression apply(Expression expression) {
+            if (expression instanceof UnaryExpression) {
+                UnaryExpression e = (UnaryExpression) expression;
+                if (e.getOperator() == Symbol.Id.MINUS && isNegation(e.getOperand())) {
+                    return ((UnaryExpression) e.getOperand()).getOperand();
+                }
+                return null;
+            } else if (!(expression instanceof BinaryExpression)) {
+                return null;
+            }
+            BinaryExpression e = (BinaryExpression) expression;
+            Expression left = e.getLeftOperand();
+            Expression right = e.getRightOperand();
+            switch (e.getOperator()) {
+            case MINUS:
+                if (isLiteral(left, 0)) {
+                    return negation(right);
+                } else if (isNegation(right)) {
+                    return binary(left, Symbol.Id.PLUS, ((UnaryExpression) right).getOperand(), e.getType());
+                }
+                return null;
+            case PLUS:
+                if (isNegation(right)) {
+                    return binary(left, Symbol.Id.MINUS, ((UnaryExpression) right).getOperand(), e.getType());
+                }
+                return null;
+            case TIMES:
+                return isLiteral(right, -1) ? negation(left) : isLiteral(left, -1) ? negation(right) : null;
+            case DIV:
+                return isLiteral(right, -1) ? negation(left) : null;
+            default:
+                return null;
+            }
+        }
+    },
+
+    /**
+     * Fasst Ketten von Literalen zusammen, z.B. (x + 1) + 2 -&gt; x + 3,
+     * (x - 1) + 2 -&gt; x + 1, (x + 1) - 2 -&gt; x - 1, (x - 1) - 2 -&gt; x - 3 und
+     * (x * 2) * 3 -&gt; x * 6. Ein Überlauf verhält sich dabei genauso wie bei
+     * der schrittweisen Berechnung.
+     */
+    REASSOCIATION {
+        public Expression apply(Expression expression) {
+            if (!(expression instanceof BinaryExpression)) {
+                return null;
+            }
+            BinaryExpression e = (BinaryExpression) expression;
+            if (!(e.getLeftOperand() instanceof BinaryExpression
+                    && e.getRightOperand() instanceof LiteralExpression)) {
+                return null;
+            }
+            BinaryExpression inner = (BinaryExpression) e.getLeftOperand();
+            if (!(inner.getRightOperand() instanceof LiteralExpression)) {
+                return null;
+            }
+            Expression x = inner.getLeftOperand();
+            int c1 = ((LiteralExpression) inner.getRightOperand()).getValue();
+            int c2 = ((LiteralExpression) e.getRightOperand()).getValue();
+            Symbol.Id op1 = inner.getOperator();
+            Symbol.Id op2 = e.getOperator();
+            if (op1 == Symbol.Id.TIMES && op2 == Symbol.Id.TIMES) {
+                return binary(x, Symbol.Id.TIMES, intLiteral(c1 * c2, e), e.getType());
+            } else if ((op1 == Symbol.Id.PLUS || op1 == Symbol.Id.MINUS)
+                    && (op2 == Symbol.Id.PLUS || op2 == Symbol.Id.MINUS)) {
+                int sum = (op1 == Symbol.Id.PLUS ? c1 : -c1) + (op2 == Symbol.Id.PLUS ? c2 : -c2);
+                return binary(x, Symbol.Id.PLUS, intLiteral(sum, e), e.getType());
+            }
+            return null;
+        }
+    },
+
+    /**
+     * Vereinfacht Vergleiche und Verneinungen: NOT (a &lt; b) -&gt; a &gt;= b
+     * (entsprechend für alle Vergleiche), NOT NOT x -&gt; x und bei Wahrheitswerten
+     * x = TRUE -&gt; x, x = FALSE -&gt; NOT x, x # TRUE -&gt; NOT x und x # FALSE -&gt; x.
+     */
+    COMPARISONS {
+        public Expression apply(Expression expression) {
+            if (expression instanceof UnaryExpression) {
+                UnaryExpression e = (UnaryExpression) expression;
+                if (e.getOperator() != Symbol.Id.NOT) {
+                    return null;
+                } else if (e.getOperand() instanceof UnaryExpression) {
+                    return ((UnaryExpression) e.getOperand()).getOperand();
+                } else if (e.getOperand() instanceof BinaryExpression) {
+                    BinaryExpression comparison = (BinaryExpression) e.getOperand();
+                    Symbol.Id inverse = inverse(comparison.getOperator());
+                    return inverse == null ? null : binary(comparison.getLeftOperand(), inverse,
+                            comparison.getRightOperand(), e.getType());
+                }
+                return null;
+            } else if (!(expression instanceof BinaryExpression)) {
+                return null;
+            }
+            BinaryExpression e = (BinaryExpression) expression;
+            Expression left = e.getLeftOperand();
+            Expression right = e.getRightOperand();
+            if ((e.getOperator() == Symbol.Id.EQ || e.getOperator() == Symbol.Id.NEQ)
+                    && left.getType() == ClassDeclaration.BOOL_TYPE && right instanceof LiteralExpression) {
+                boolean same = (e.getOperator() == Symbol.Id.EQ) == (((LiteralExpression) right).getValue() != 0);
+                if (same) {
+                    return left;
+                }
+                UnaryExpression not = new UnaryExpression(Symbol.Id.NOT, left, left.getPosition());
+                not.setType(ClassDeclaration.BOOL_TYPE);
+                return not;
+            }
+            return null;
+        }
+    },
+
+    /**
+     * Vereinfacht Operationen mit zwei gleichen Werten ohne Seiteneffekte:
+     * x - x -&gt; 0, x = x, x &lt;= x, x &gt;= x -&gt; TRUE, x # x, x &lt; x, x &gt; x -&gt; FALSE
+     * und x AND x, x OR x -&gt; x.
+     */
+    SAME_OPERANDS {
+        public Expression apply(Expression expression) {
+            if (!(expression instanceof BinaryExpression)) {
+                return null;
+            }
+            BinaryExpression e = (BinaryExpression) expression;
+            Expression left = e.getLeftOperand();
+            if (!left.isPureValue() || !left.isSameValue(e.getRightOperand())) {
+                return null;
+            }
+            switch (e.getOperator()) {
+            case MINUS:
+                return intLiteral(0, e);
+            case EQ:
+            case LTEQ:
+            case GTEQ:
+                return boolLiteral(true, e);
+            case NEQ:
+            case LT:
+            case GT:
+                return boolLiteral(false, e);
+            case AND:
+            case OR:
+            case AND_THEN:
+            case OR_ELSE:
+                return left;
+            default:
+                return null;
+            }
+        }
+    },
+
+    /**
+     * Ersetzt in WHILE-Schleifen Produkte i * c einer Induktionsvariablen i,
+     * die in jedem Durchlauf genau einmal um ein Literal erhöht oder verringert
+     * wird, durch eine Hilfsvariable. Diese wird vor der Schleife berechnet und
+     * danach bei jeder Änderung von i um das entsprechende Vielfache von c
+     * angepasst. Die Regel wird von den Anweisungen angewendet, nicht von
+     * {@link #simplify(Expression) simplify}.
+     */
+    INDUCTION_VARIABLES {
+        public Expression apply(Expression expression) {
+            return null;
+        }
+    };
+
+    /** Die eingeschalteten Regeln. */
+    private static EnumSet<AlgebraicRule> enabled = EnumSet.allOf(AlgebraicRule.class);
+
+    /**
+     * Wendet die Regel auf den obersten Knoten eines Ausdrucks an.
+     * @param expression Der Ausdruck, dessen Operanden bereits vereinfacht wurden.
+     * @return Der vereinfachte Ausdruck oder null, wenn die Regel nicht passt.
+     */
+    public abstract Expression apply(Expression expression);
+
+    /**
+     * Ist die Regel eingeschaltet?
+     * @return Ist sie es?
+     */
+    public boolean isEnabled() {
+        return enabled.contains(this);
+    }
+
+    /**
+     * Legt fest, welche Regeln angewendet werden. Standardmäßig sind es alle.
+     * @param rules Die eingeschalteten Regeln.
+     */
+    public static void setEnabled(Set<AlgebraicRule> rules) {
+        enabled = rules.isEmpty() ? EnumSet.noneOf(AlgebraicRule.class) : EnumSet.copyOf(rules);
+    }
+
+    /**
+     * Wendet die eingeschalteten Regeln so lange auf den obersten Knoten eines
+     * Ausdrucks an, bis keine mehr passt.
+     * @param expression Der Ausdruck, dessen Operanden bereits vereinfacht wurden.
+     * @return Der vereinfachte Ausdruck.
+     */
+    public static Expression simplify(Expression expression) {
+        boolean changed;
+        do {
+            changed = false;
+            for (AlgebraicRule rule : enabled) {
+                Expression result = rule.apply(expression);
+                if (result != null) {
+                    expression = result;
+                    changed = true;
+                    break;
+                }
+            }
+        } while (changed);
+        return expression;
+    }
+
+    /**
+     * Ist ein Ausdruck ein bestimmtes Literal?
+     * @param expression Der Ausdruck.
+     * @param value Der Wert des Literals.
+     * @return Ist er es?
+     */
+    private static boolean isLiteral(Expression expression, int value) {
+        return expression instanceof LiteralExpression && ((LiteralExpression) expression).getValue() == value
+                && expression.getType() != ClassDeclaration.NULL_TYPE;
+    }
+
+    /**
+     * Ist ein Ausdruck eine Negation -x?
+     * @param expression Der Ausdruck.
+     * @return Ist er es?
+     */
+    private static boolean isNegation(Expression expression) {
+        return expression instanceof UnaryExpression && ((UnaryExpression) expression).getOperator() == Symbol.Id.MINUS;
+    }
+
+    /**
+     * Liefert den Vergleich, der das Gegenteil eines Vergleichs ergibt.
+     * @param operator Der Operator des Vergleichs.
+     * @return Der umgekehrte Operator oder null, wenn der Operator kein Vergleich ist.
+     */
+    private static Symbol.Id inverse(Symbol.Id operator) {
+        switch (operator) {
+        case EQ:
+            return Symbol.Id.NEQ;
+        case NEQ:
+            return Symbol.Id.EQ;
+        case LT:
+            return Symbol.Id.GTEQ;
+        case GTEQ:
+            return Symbol.Id.LT;
+        case GT:
+            return Symbol.Id.LTEQ;
+        case LTEQ:
+            return Symbol.Id.GT;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Erzeugt eine Verknüpfung zweier bereits vereinfachter Operanden.
+     * @param left Der linke Operand.
+     * @param operator Der Operator.
+     * @param right Der rechte Operand.
+     * @param type Der Typ des Ergebnisses.
+     * @return Die Verknüpfung.
+     */
+    private static Expression binary(Expression left, Symbol.Id operator, Expression right, ClassDeclaration type) {
+        Expression e = new BinaryExpression(left, operator, right);
+        e.setType(type);
+        return e;
+    }
+
+    /**
+     * Erzeugt die Negation eines Ausdrucks.
+     * @param operand Der Ausdruck.
+     * @return Die Negation.
+     */
+    private static Expression negation(Expression operand) {
+        Expression e = new UnaryExpression(Symbol.Id.MINUS, operand, operand.getPosition());
+        e.setType(ClassDeclaration.INT_TYPE);
+        return e;
+    }
+
+    /**
+     * Erzeugt ein Literal vom Typ Integer.
+     * @param value Der Wert.
+     * @param origin Der ersetzte Ausdruck, dessen Position übernommen wird.
+     * @return Das Literal.
+     */
+    private static Expression intLiteral(int value, Expression origin) {
+        return new LiteralExpression(value, ClassDeclaration.INT_TYPE, origin.getPosition());
+    }
+
+    /**
+     * Erzeugt ein Literal vom Typ Boolean.
+     * @param value Der Wert.
+     * @param origin Der ersetzte Ausdruck, dessen Position übernommen wird.
+     * @return Das Literal.
+     */
+    private static Expression boolLiteral(boolean value, Expression origin) {
+        return new LiteralExpression(value ? 1 : 0, ClassDeclaration.BOOL_TYPE, origin.getPosition());
+    }
+}
@@ -1,8 +1,13 @@
 package oopsc.expressions;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import oopsc.CompileException;
 import oopsc.declarations.ClassDeclaration;
 import oopsc.declarations.Declarations;
+import oopsc.declarations.VarDeclaration;
 import oopsc.parser.Symbol;
 import oopsc.streams.CodeStream;
 import oopsc.streams.TreeStream;
@@ -33,6 +38,20 @@ public class BinaryExpression extends Expression {
         this.rightOperand = rightOperand;
     }
 
+    /**
+     * Erzeugt die bereits typisierte Summe eines Ausdrucks vom Typ Integer
+     * und eines Literals. Wird vom Optimierer benötigt.
+     * @param leftOperand Der Ausdruck.
+     * @param value Der Wert des Literals.
+     * @return Die Summe.
+     */
+    public static Expression plus(Expression leftOperand, int value) {
+        Expression sum = new BinaryExpression(leftOperand, Symbol.Id.PLUS,
+                new LiteralExpression(value, ClassDeclaration.INT_TYPE, leftOperand.getPosition()));
+        sum.setType(ClassDeclaration.INT_TYPE);
+        return sum;
+    }
+
     /**
      * Die Methode führt die Kontextanalyse für diesen Ausdruck durch.
      * @param declarations Die an dieser Stelle gültigen Deklarationen.
@@ -96,6 +115,12 @@ public class BinaryExpression extends Expression {
                     !rightOperand.getType().isA(leftOperand.getType())) {
                 ClassDeclaration.typeError(leftOperand.getType(), rightOperand.getPosition());
             }
+            
+            // Vergleiche von Referenzen auf verpackte Werte verhindern konstante Objekte
+            if (mayReferToSameBoxedValue(leftOperand.getType(), rightOperand.getType())
+                    && declarations.getCallerMethod() != null) {
+                declarations.getCallerMethod().addBoxedValueComparison();
+            }
             setType(ClassDeclaration.BOOL_TYPE);
             break;
         default:
@@ -104,6 +129,19 @@ public class BinaryExpression extends Expression {
         return this;
     }
 
+    /**
+     * Können zwei Referenzen dieser Typen auf dasselbe verpackte Integer oder
+     * Boolean zeigen? Das ist der Fall, wenn beide Typen Basisklassen derselben
+     * dieser Klassen sind, d.h. praktisch für Object.
+     * @param left Der Typ des linken Operanden.
+     * @param right Der Typ des rechten Operanden.
+     * @return Können beide auf dasselbe verpackte Objekt zeigen?
+     */
+    private static boolean mayReferToSameBoxedValue(ClassDeclaration left, ClassDeclaration right) {
+        return ClassDeclaration.INT_CLASS.isA(left) && ClassDeclaration.INT_CLASS.isA(right)
+                || ClassDeclaration.BOOL_CLASS.isA(left) && ClassDeclaration.BOOL_CLASS.isA(right);
+    }
+    
     /**
      * Die Methode gibt diesen Ausdruck in einer Baumstruktur aus.
      * Wenn der Typ des Ausdrucks bereits ermittelt wurde, wird er auch ausgegeben.
@@ -118,103 +156,154 @@ public class BinaryExpression extends Expression {
     }
 
     /**
-     * Durchläuft den Syntaxbaum und wertet konstante Ausdrücke aus 
-     * und wendet ein paar Transformationen an.
+     * Liefert die Größe dieses Ausdrucks als Anzahl der Knoten im Syntaxbaum.
+     * @return Die Größe.
+     */
+    public int size() {
+        return 1 + leftOperand.size() + rightOperand.size();
+    }
+
+    /**
+     * Liefert den linken Operanden.
+     * @return Der linke Operand.
+     */
+    public Expression getLeftOperand() {
+        return leftOperand;
+    }
+
+    /**
+     * Liefert den Operator.
+     * @return Der Operator.
+     */
+    public Symbol.Id getOperator() {
+        return operator;
+    }
+
+    /**
+     * Liefert den rechten Operanden.
+     * @return Der rechte Operand.
+     */
+    public Expression getRightOperand() {
+        return rightOperand;
+    }
+
+    /**
+     * Durchläuft den Syntaxbaum und vereinfacht diesen Ausdruck mit den 
+     * eingeschalteten {@link AlgebraicRule Regeln}, nachdem seine Operanden
+     * vereinfacht wurden.
+     * @return Der vereinfachte Ausdruck.
      */
     public Expression optimize() {
-    	leftOperand = leftOperand.optimize();
-    	rightOperand = rightOperand.optimize();
-    	if(leftOperand instanceof LiteralExpression && rightOperand instanceof LiteralExpression) {
-    		int leftVal = ((LiteralExpression)leftOperand).getValue();
-    		int rightVal = ((LiteralExpression)rightOperand).getValue();
-    		switch (operator) {
-    		case AND_THEN:
-            case AND: 
-            	return new LiteralExpression(leftVal & rightVal, ClassDeclaration.BOOL_TYPE ,leftOperand.getPosition());
-            case OR_ELSE:
-            case OR:
-            	return new LiteralExpression(leftVal | rightVal, ClassDeclaration.BOOL_TYPE ,leftOperand.getPosition());
-            case PLUS:
-            	return new LiteralExpression(leftVal + rightVal, ClassDeclaration.INT_TYPE ,leftOperand.getPosition());
-            case MINUS:
-            	return new LiteralExpression(leftVal - rightVal, ClassDeclaration.INT_TYPE ,leftOperand.getPosition());
-            case TIMES:
-            	return new LiteralExpression(leftVal * rightVal, ClassDeclaration.INT_TYPE ,leftOperand.getPosition());
-            case DIV:
-            	return new LiteralExpression(leftVal / rightVal, ClassDeclaration.INT_TYPE ,leftOperand.getPosition());
-            case MOD:
-            	return new LiteralExpression(leftVal % rightVal, ClassDeclaration.INT_TYPE ,leftOperand.getPosition());
-            case GT:
-            	return new LiteralExpression(leftVal > rightVal ? 1 : 0, ClassDeclaration.BOOL_TYPE ,leftOperand.getPosition());
-            case GTEQ:
-            	return new LiteralExpression(leftVal >= rightVal ? 1 : 0, ClassDeclaration.BOOL_TYPE ,leftOperand.getPosition());
-            case LT:
-            	return new LiteralExpression(leftVal < rightVal ? 1 : 0, ClassDeclaration.BOOL_TYPE ,leftOperand.getPosition());
-            case LTEQ:
-            	return new LiteralExpression(leftVal <= rightVal ? 1 : 0, ClassDeclaration.BOOL_TYPE ,leftOperand.getPosition());
-            case EQ:
-            	return new LiteralExpression(leftVal == rightVal ? 1 : 0, ClassDeclaration.BOOL_TYPE ,leftOperand.getPosition());
-            case NEQ:
-            	return new LiteralExpression(leftVal != rightVal ? 1 : 0, ClassDeclaration.BOOL_TYPE ,leftOperand.getPosition());
-            default:
-                assert false;
-            }
-    	} 
-    	
-    	if (leftOperand instanceof LiteralExpression) {
-    		int leftVal = ((LiteralExpression)leftOperand).getValue();
-    		if (leftVal == 0) {
-    			if (operator == Symbol.Id.PLUS) {  /* 0+x -> x */
-    				return rightOperand;
-    			} 
-    			if (operator == Symbol.Id.MINUS) { /* 0-x -> -x */
-    				return new UnaryExpression(operator,rightOperand, rightOperand.getPosition());
-    			}
-    			if (operator == Symbol.Id.OR) { /* FALSE OR x  -> x */ 
-    				return rightOperand;
-    			}
-    		} 
-    		
-    		if (leftVal == 1) { 
-    			if (operator == Symbol.Id.TIMES) { /* 1*x -> x */
-    				return rightOperand;
-    			}
-    			if (operator == Symbol.Id.AND) { /* TRUE AND x  -> x */ 
-    				return rightOperand;
-    			}
-    		}	
-    	}
-    	
-    	if (rightOperand instanceof LiteralExpression) {
-    		int rightVal = ((LiteralExpression)rightOperand).getValue();
-    		if (rightVal == 0) { 
-    			if (operator == Symbol.Id.PLUS) { /* x+0 -> x */
-    				return leftOperand;
-    			} 
-    			if (operator == Symbol.Id.OR) { /* x OR FALSE  -> x */ 
-    				return leftOperand;
-    			}
-    		}
-    		
-    		if (rightVal == 1) {
-    			if (operator == Symbol.Id.TIMES || operator == Symbol.Id.DIV) {  /*  x*1, x/1 -> x */
-    				return leftOperand;
-    			} 
-    			if (operator == Symbol.Id.AND) { /* x AND TRUE  -> x */ 
-    				return leftOperand;
-    			}
-    		}
-    	}
-    	
-    	return this; 
-	}
+        leftOperand = leftOperand.optimize();
+        rightOperand = rightOperand.optimize();
+        return AlgebraicRule.simplify(this);
+    }
     
+    /**
+     * Gibt die bekannten Werte lokaler Variablen an die Operanden weiter.
+     * @param constants Die lokalen Variablen mit bekanntem Wert.
+     * @return Dieser Ausdruck.
+     */
+    public Expression propagateConstants(Map<VarDeclaration, LiteralExpression> constants) {
+        leftOperand = leftOperand.propagateConstants(constants);
+        rightOperand = rightOperand.propagateConstants(constants);
+        return this;
+    }
+
+    /**
+     * Trägt die Variablen ein, die die Operanden lesen.
+     * @param variables Die Menge, in die die Variablen eingetragen werden.
+     */
+    public void addUsedVariables(Set<VarDeclaration> variables) {
+        leftOperand.addUsedVariables(variables);
+        rightOperand.addUsedVariables(variables);
+    }
+
+    /**
+     * Eine Division kann wegen eines Divisors 0 abbrechen, außer der Divisor
+     * ist ein Literal ungleich 0.
+     * @return Kann die Division abbrechen oder hat ein Operand Seiteneffekte?
+     */
+    public boolean hasSideEffects() {
+        return !isSafeDivision() || leftOperand.hasSideEffects() || rightOperand.hasSideEffects();
+    }
+
+    /**
+     * Kann dieser Ausdruck nicht wegen einer Division durch 0 abbrechen?
+     * @return Ist der Operator keine Division oder der Divisor ein Literal ungleich 0?
+     */
+    private boolean isSafeDivision() {
+        return operator != Symbol.Id.DIV && operator != Symbol.Id.MOD 
+                || rightOperand instanceof LiteralExpression && ((LiteralExpression) rightOperand).getValue() != 0;
+    }
+
+    /**
+     * Eine Verknüpfung von Werten ist ein Wert, sofern sie nicht abbrechen kann.
+     * @return Ist dieser Ausdruck ein Wert?
+     */
+    public boolean isPureValue() {
+        return isSafeDivision() && leftOperand.isPureValue() && rightOperand.isPureValue();
+    }
+
+    /**
+     * Zwei Verknüpfungen haben denselben Wert, wenn Operator und Operanden übereinstimmen.
+     * @param other Der andere Ausdruck.
+     * @return Stimmen beide überein?
+     */
+    public boolean isSameValue(Expression other) {
+        if (!(other instanceof BinaryExpression)) {
+            return false;
+        }
+        BinaryExpression b = (BinaryExpression) other;
+        return b.operator == operator && leftOperand.isSameValue(b.leftOperand) 
+                && rightOperand.isSameValue(b.rightOperand);
+    }
+
+    /**
+     * Trägt diesen Ausdruck ein, wenn er ein Wert ist, und danach die Werte
+     * in den Operanden. Bei AND THEN und OR ELSE wird der rechte Operand nur 
+     * bedingt ausgewertet.
+     * @param values Die Liste, in die die Teilausdrücke eingetragen werden.
+     * @param all Sollen auch bedingt ausgewertete Teilausdrücke eingetragen werden?
+     */
+    public void addPureValues(List<Expression> values, boolean all) {
+        if (isPureValue()) {
+            values.add(this);
+        }
+        leftOperand.addPureValues(values, all);
+        if (all || operator != Symbol.Id.AND_THEN && operator != Symbol.Id.OR_ELSE) {
+            rightOperand.addPureValues(values, all);
+        }
+    }
+
+    /**
+     * Ersetzt diesen Ausdruck oder Werte in den Operanden durch das Auslesen
+     * einer Variablen.
+     * @param value Der Wert.
+     * @param variable Die Variable, die den Wert enthält.
+     * @return Dieser Ausdruck oder das Auslesen der Variablen.
+     */
+    public Expression replacePureValue(Expression value, VarDeclaration variable) {
+        if (isSameValue(value)) {
+            return UnBoxExpression.readValue(variable, getPosition());
+        }
+        leftOperand = leftOperand.replacePureValue(value, variable);
+        rightOperand = rightOperand.replacePureValue(value, variable);
+        return this;
+    }
+
     /**
      * Die Methode generiert den Assembler-Code für diesen Ausdruck. Sie geht 
      * davon aus, dass die Kontextanalyse vorher erfolgreich abgeschlossen wurde.
+     * Im Registermodus wird der Ausdruck möglichst vollständig in Registern 
+     * ausgewertet. Passt er nicht hinein, wird zumindest der rechte Operand
+     * in Registern berechnet, wenn dieser hineinpasst.
      * @param code Der Strom, in den die Ausgabe erfolgt.
      */
     public void generateCode(CodeStream code) {
+        if (generateRegisterCode(code)) {
+            return;
+        }
         leftOperand.generateCode(code);
         String scLabel = code.nextLabel();
         switch (operator) {
@@ -231,66 +320,315 @@ public class BinaryExpression extends Expression {
         default:
         	break;
         }
-        rightOperand.generateCode(code);       
-        code.println("; " + operator);
-        code.println("MRM R5, (R2)");
-        code.println("SUB R2, R1");
+        String right;
+        if (rightOperand.fitsInRegisters(code)) {
+            rightOperand.generateCode(code, FIRST_REGISTER);
+            code.println("; " + operator);
+            right = "R" + FIRST_REGISTER;
+        } else {
+            rightOperand.generateCode(code);       
+            code.println("; " + operator);
+            code.println("MRM R5, (R2)");
+            code.println("SUB R2, R1");
+            right = "R5";
+        }
         code.println("MRM R6, (R2)");
+        generateOperation(code, "R6", right, "R6");
+        code.println(scLabel + ":");
+        code.println("MMR (R2), R6");
+    }
+    
+    /**
+     * Der Registerbedarf wird nach Sethi und Ullman bestimmt. Der Operand mit
+     * dem größeren Bedarf wird zuerst ausgewertet. Bei AND THEN und OR ELSE
+     * muss dagegen immer der linke Operand zuerst ausgewertet werden.
+     * @return Die Anzahl der benötigten Register.
+     */
+    public int getRegisterNeed() {
+        int left = leftOperand.getRegisterNeed();
+        int right = rightOperand.getRegisterNeed();
+        if (operator == Symbol.Id.AND_THEN || operator == Symbol.Id.OR_ELSE) {
+            return Math.max(left, right + 1);
+        } else if (left == right) {
+            return left + 1;
+        } else {
+            return Math.max(left, right);
+        }
+    }
+    
+    /**
+     * Die Methode generiert Code, der diesen Ausdruck in Registern auswertet.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param register Das Register, in dem das Ergebnis abgelegt wird.
+     */
+    public void generateCode(CodeStream code, int register) {
+        String first = "R" + register;
+        String second = "R" + (register + 1);
+        if (operator == Symbol.Id.AND_THEN || operator == Symbol.Id.OR_ELSE) {
+            String scLabel = code.nextLabel();
+            leftOperand.generateCode(code, register);
+            code.println((operator == Symbol.Id.AND_THEN ? "ISZ " : "ISP ") + second + ", " + first);
+            code.println("JPC " + second + ", " + scLabel);
+            rightOperand.generateCode(code, register + 1);
+            code.println("; " + operator);
+            generateOperation(code, first, second, first);
+            code.println(scLabel + ":");
+        } else if (rightOperand.getRegisterNeed() > leftOperand.getRegisterNeed()) {
+            rightOperand.generateCode(code, register);
+            leftOperand.generateCode(code, register + 1);
+            code.println("; " + operator);
+            generateOperation(code, second, first, first);
+        } else {
+            leftOperand.generateCode(code, register);
+            rightOperand.generateCode(code, register + 1);
+            code.println("; " + operator);
+            generateOperation(code, first, second, first);
+        }
+    }
+    
+    /**
+     * Die Methode generiert Code, der direkt anhand dieses Ausdrucks springt.
+     * AND THEN und OR ELSE werden zu einer Kette von Sprüngen, ebenso AND und
+     * OR, wenn die Auswertung des rechten Operanden entfallen darf. Vergleiche
+     * prüfen die Differenz der Operanden und springen, ohne den Wahrheitswert
+     * zu erzeugen.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param jumpIf Der Wert, bei dem gesprungen wird.
+     * @param label Die Marke, zu der gesprungen wird.
+     */
+    public void generateBranch(CodeStream code, boolean jumpIf, String label) {
+        switch (operator) {
+        case AND:
+        case OR:
+            if (rightOperand.isPureValue()) {
+                // Der rechte Operand kann ohne Folgen übersprungen werden
+                generateShortCircuitBranch(code, operator == Symbol.Id.AND, jumpIf, label);
+            } else {
+                super.generateBranch(code, jumpIf, label);
+            }
+            break;
+        case AND_THEN:
+        case OR_ELSE:
+            generateShortCircuitBranch(code, operator == Symbol.Id.AND_THEN, jumpIf, label);
+            break;
+        case GT:
+            generateComparisonBranch(code, "ISP", jumpIf, label);
+            break;
+        case GTEQ:
+            generateComparisonBranch(code, "ISN", !jumpIf, label);
+            break;
+        case LT:
+            generateComparisonBranch(code, "ISN", jumpIf, label);
+            break;
+        case LTEQ:
+            generateComparisonBranch(code, "ISP", !jumpIf, label);
+            break;
+        case EQ:
+            generateComparisonBranch(code, "ISZ", jumpIf, label);
+            break;
+        case NEQ:
+            generateComparisonBranch(code, "ISZ", !jumpIf, label);
+            break;
+        default:
+            super.generateBranch(code, jumpIf, label);
+        }
+    }
+
+    /**
+     * Die Methode generiert eine Kette von Sprüngen, in der der rechte Operand
+     * nur ausgewertet wird, wenn der linke das Ergebnis nicht bereits festlegt.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param and Handelt es sich um eine Und-Verknüpfung? Ansonsten um eine
+     *         Oder-Verknüpfung.
+     * @param jumpIf Der Wert, bei dem gesprungen wird.
+     * @param label Die Marke, zu der gesprungen wird.
+     */
+    private void generateShortCircuitBranch(CodeStream code, boolean and, boolean jumpIf, String label) {
+        if (jumpIf != and) {
+            // Jeder Operand kann allein den Sprung auslösen
+            leftOperand.generateBranch(code, jumpIf, label);
+            rightOperand.generateBranch(code, jumpIf, label);
+        } else {
+            // Der linke Operand kann den Sprung nur verhindern
+            String skipLabel = code.nextLabel();
+            leftOperand.generateBranch(code, !jumpIf, skipLabel);
+            rightOperand.generateBranch(code, jumpIf, label);
+            code.println(skipLabel + ":");
+        }
+    }
+
+    /**
+     * Die Methode generiert einen Sprung anhand der Differenz der Operanden.
+     * Die Operanden werden dabei möglichst in Registern ausgewertet.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param test Die Instruktion, die die Differenz prüft.
+     * @param jumpIf Soll gesprungen werden, wenn die Prüfung erfolgreich ist?
+     *         Ansonsten wird gesprungen, wenn sie fehlschlägt.
+     * @param label Die Marke, zu der gesprungen wird.
+     */
+    private void generateComparisonBranch(CodeStream code, String test, boolean jumpIf, String label) {
+        String left;
+        String right;
+        if (fitsInRegisters(code)) {
+            String first = "R" + FIRST_REGISTER;
+            String second = "R" + (FIRST_REGISTER + 1);
+            if (rightOperand.getRegisterNeed() > leftOperand.getRegisterNeed()) {
+                rightOperand.generateCode(code, FIRST_REGISTER);
+                leftOperand.generateCode(code, FIRST_REGISTER + 1);
+                left = second;
+                right = first;
+            } else {
+                leftOperand.generateCode(code, FIRST_REGISTER);
+                rightOperand.generateCode(code, FIRST_REGISTER + 1);
+                left = first;
+                right = second;
+            }
+        } else {
+            leftOperand.generateCode(code);
+            if (rightOperand.fitsInRegisters(code)) {
+                rightOperand.generateCode(code, FIRST_REGISTER);
+                right = "R" + FIRST_REGISTER;
+            } else {
+                rightOperand.generateCode(code);
+                code.println("MRM R5, (R2)");
+                code.println("SUB R2, R1");
+                right = "R5";
+            }
+            code.println("MRM R6, (R2)");
+            code.println("SUB R2, R1");
+            left = "R6";
+        }
+        code.println("; " + operator);
+        if (code.isExtendedMode()) {
+            // Vergleichssprünge prüfen die Differenz direkt
+            String jump;
+            if (test.equals("ISZ")) {
+                jump = jumpIf ? "JEQ" : "JNE";
+            } else if (test.equals("ISP")) {
+                jump = jumpIf ? "JGT" : "JLE";
+            } else {
+                jump = jumpIf ? "JLT" : "JGE";
+            }
+            code.println(jump + " " + left + ", " + right + ", " + label);
+            return;
+        }
+        code.println("SUB " + left + ", " + right);
+        if (!jumpIf && test.equals("ISZ")) {
+            // Eine Differenz ungleich 0 kann direkt geprüft werden
+            code.println("JPC " + left + ", " + label);
+        } else {
+            code.println(test + " " + right + ", " + left);
+            if (!jumpIf) {
+                code.println("XOR " + right + ", R1");
+            }
+            code.println("JPC " + right + ", " + label);
+        }
+    }
+
+    /**
+     * Die Methode generiert den Code für die eigentliche Operation.
+     * Das Register des linken Operanden wird dabei überschrieben.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param left Das Register mit dem linken Operanden.
+     * @param right Das Register mit dem rechten Operanden.
+     * @param result Das Register für das Ergebnis. Dies muss entweder das
+     *         Register des linken oder des rechten Operanden sein.
+     */
+    private void generateOperation(CodeStream code, String left, String right, String result) {
         switch (operator) {
         case PLUS:
-            code.println("ADD R6, R5");
+            generateCommutative(code, "ADD", left, right, result);
             break;
         case MINUS:
-            code.println("SUB R6, R5");
+            generateNonCommutative(code, "SUB", left, right, result);
             break;
         case TIMES:
-            code.println("MUL R6, R5");
+            generateCommutative(code, "MUL", left, right, result);
             break;
         case DIV:
-            code.println("DIV R6, R5");
+            generateNonCommutative(code, "DIV", left, right, result);
             break;
         case MOD:
-            code.println("MOD R6, R5");
+            generateNonCommutative(code, "MOD", left, right, result);
             break;
         case GT:
-            code.println("SUB R6, R5");
-            code.println("ISP R6, R6");
+            generateComparison(code, "ISP", false, left, right, result);
             break;
         case GTEQ:
-            code.println("SUB R6, R5");
-            code.println("ISN R6, R6");
-            code.println("XOR R6, R1");
+            generateComparison(code, "ISN", true, left, right, result);
             break;
         case LT:
-            code.println("SUB R6, R5");
-            code.println("ISN R6, R6");
+            generateComparison(code, "ISN", false, left, right, result);
             break;
         case LTEQ:
-            code.println("SUB R6, R5");
-            code.println("ISP R6, R6");
-            code.println("XOR R6, R1");
+            generateComparison(code, "ISP", true, left, right, result);
             break;
         case EQ:
-            code.println("SUB R6, R5");
-            code.println("ISZ R6, R6");
+            generateComparison(code, "ISZ", false, left, right, result);
             break;
         case NEQ:
-            code.println("SUB R6, R5");
-            code.println("ISZ R6, R6");
-            code.println("XOR R6, R1");
+            generateComparison(code, "ISZ", true, left, right, result);
             break;
         case OR_ELSE:
         case OR:
-        	code.println("OR R6, R5");
+            generateCommutative(code, "OR", left, right, result);
         	break;
         case AND_THEN:
         case AND:
-        	code.println("AND R6, R5");
+            generateCommutative(code, "AND", left, right, result);
         	break;
         default:
             assert false;
         }
-        code.println(scLabel + ":");
-        code.println("MMR (R2), R6");
+    }
+    
+    /**
+     * Die Methode generiert eine kommutative Operation. Die Operanden werden 
+     * dabei so vertauscht, dass das Ergebnis direkt im Zielregister entsteht.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param instruction Die Instruktion.
+     * @param left Das Register mit dem linken Operanden.
+     * @param right Das Register mit dem rechten Operanden.
+     * @param result Das Register für das Ergebnis.
+     */
+    private void generateCommutative(CodeStream code, String instruction, String left, String right, String result) {
+        if (left.equals(result)) {
+            code.println(instruction + " " + left + ", " + right);
+        } else {
+            code.println(instruction + " " + right + ", " + left);
+        }
+    }
+    
+    /**
+     * Die Methode generiert eine nicht kommutative Operation.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param instruction Die Instruktion.
+     * @param left Das Register mit dem linken Operanden.
+     * @param right Das Register mit dem rechten Operanden.
+     * @param result Das Register für das Ergebnis.
+     */
+    private void generateNonCommutative(CodeStream code, String instruction, String left, String right, String result) {
+        code.println(instruction + " " + left + ", " + right);
+        if (!left.equals(result)) {
+            code.println("MRR " + result + ", " + left);
+        }
+    }
+    
+    /**
+     * Die Methode generiert einen Vergleich über die Differenz der Operanden.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param test Die Instruktion, die die Differenz prüft.
+     * @param negate Soll das Ergebnis der Prüfung verneint werden?
+     * @param left Das Register mit dem linken Operanden.
+     * @param right Das Register mit dem rechten Operanden.
+     * @param result Das Register für das Ergebnis.
+     */
+    private void generateComparison(CodeStream code, String test, boolean negate, 
+            String left, String right, String result) {
+        code.println("SUB " + left + ", " + right);
+        code.println(test + " " + result + ", " + left);
+        if (negate) {
+            code.println("XOR " + result + ", R1");
+        }
     }
 }
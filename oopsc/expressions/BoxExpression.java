@@ -1,9 +1,11 @@
 package oopsc.expressions;
 
-import oopsc.CompileException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import oopsc.declarations.ClassDeclaration;
-import oopsc.declarations.Declarations;
-import oopsc.parser.ResolvableIdentifier;
+import oopsc.declarations.VarDeclaration;
 import oopsc.streams.CodeStream;
 import oopsc.streams.TreeStream;
 
@@ -17,31 +19,43 @@ public class BoxExpression extends Expression {
     /** Der Ausdruck, der den zu verpackenden Wert liefert. */
     private Expression operand;
 
-    /** Ein Ausdruck, der das entsprechende Rahmenobjekt erzeugt. */
-    private Expression newType;
-
     /**
      * Konstruktor.
      * Der Konstruktor stellt fest, von welchem Basisdatentyp der zu
-     * verpackende Ausdruck ist und erzeugt dann ein passendes Rahmenobjekt.
+     * verpackende Ausdruck ist und bestimmt die passende Klasse.
      * @param operand Der Ausdruck, der den zu verpackenden Wert liefert.
-     * @param declarations Die an dieser Stelle gültigen Deklarationen.
-     * @throws CompileException Während der Kontextanylyse des neuen Objekts 
-     *         wurde ein Fehler gefunden.
      */
-    public BoxExpression(Expression operand, Declarations declarations) throws CompileException {
+    public BoxExpression(Expression operand) {
         super(operand.getPosition());
         this.operand = operand;
         if (operand.getType().isA(ClassDeclaration.INT_TYPE)) {
             setType(ClassDeclaration.INT_CLASS);
-            newType = new NewExpression(new ResolvableIdentifier("Integer", null), operand.getPosition());
         } else if(operand.getType().isA(ClassDeclaration.BOOL_TYPE)) {
         	setType(ClassDeclaration.BOOL_CLASS);
-            newType = new NewExpression(new ResolvableIdentifier("Boolean", null), operand.getPosition());
         } else {
             assert false;
         }
-        newType = newType.contextAnalysis(declarations);
+    }
+    
+    /**
+     * Liefert den Ausdruck, der den zu verpackenden Wert liefert.
+     * @return Der Ausdruck.
+     */
+    public Expression getOperand() {
+        return operand;
+    }
+
+    /**
+     * Verweist dieser Ausdruck auf ein konstantes Objekt im Datenbereich,
+     * statt ein neues Objekt zu erzeugen? Das ist nur bei Literalen möglich
+     * und nur, wenn das Programm keine Referenzen vergleicht, die auf verpackte
+     * Werte zeigen können (siehe {@link ClassDeclaration#determineSharedConstants(List)
+     * determineSharedConstants}). Dann ist nicht zu unterscheiden, ob gleiche
+     * Literale dasselbe Objekt oder verschiedene Objekte sind.
+     * @return Wird ein konstantes Objekt verwendet?
+     */
+    public boolean isConstant() {
+        return operand instanceof LiteralExpression && getType().hasSharedConstants();
     }
 
     /**
@@ -56,6 +70,14 @@ public class BoxExpression extends Expression {
         tree.unindent();
     }
 
+    /**
+     * Liefert die Größe dieses Ausdrucks als Anzahl der Knoten im Syntaxbaum.
+     * @return Die Größe.
+     */
+    public int size() {
+        return 1 + operand.size();
+    }
+
     /**
      * Durchläuft den Syntaxbaum und wertet konstante Ausdrücke aus 
      * und wendet ein paar Transformationen an.
@@ -64,21 +86,141 @@ public class BoxExpression extends Expression {
     	operand = operand.optimize();
     	return this;
 	}
+
+    /**
+     * Gibt die bekannten Werte lokaler Variablen an den Operanden weiter.
+     * @param constants Die lokalen Variablen mit bekanntem Wert.
+     * @return Dieser Ausdruck.
+     */
+    public Expression propagateConstants(Map<VarDeclaration, LiteralExpression> constants) {
+        operand = operand.propagateConstants(constants);
+        return this;
+    }
+
+    /**
+     * Trägt die Variablen ein, die der Operand liest.
+     * @param variables Die Menge, in die die Variablen eingetragen werden.
+     */
+    public void addUsedVariables(Set<VarDeclaration> variables) {
+        operand.addUsedVariables(variables);
+    }
+
+    /**
+     * Das Verpacken selbst hat keine Seiteneffekte, der Operand vielleicht.
+     * @return Hat der Operand Seiteneffekte?
+     */
+    public boolean hasSideEffects() {
+        return operand.hasSideEffects();
+    }
+
+    /**
+     * Trägt die Werte im Operanden ein.
+     * @param values Die Liste, in die die Teilausdrücke eingetragen werden.
+     * @param all Sollen auch bedingt ausgewertete Teilausdrücke eingetragen werden?
+     */
+    public void addPureValues(List<Expression> values, boolean all) {
+        operand.addPureValues(values, all);
+    }
+
+    /**
+     * Ersetzt einen Wert im Operanden durch das Auslesen einer Variablen.
+     * @param value Der Wert.
+     * @param variable Die Variable, die den Wert enthält.
+     * @return Dieser Ausdruck.
+     */
+    public Expression replacePureValue(Expression value, VarDeclaration variable) {
+        operand = operand.replacePureValue(value, variable);
+        return this;
+    }
     
     /**
      * Die Methode generiert den Assembler-Code für diesen Ausdruck. Sie geht 
      * davon aus, dass die Kontextanalyse vorher erfolgreich abgeschlossen wurde.
+     * Konstanten werden nach Möglichkeit nicht auf dem Heap verpackt, sondern
+     * verweisen auf ein einmalig im Datenbereich angelegtes Objekt.
      * @param code Der Strom, in den die Ausgabe erfolgt.
      */
     public void generateCode(CodeStream code) {
-        newType.generateCode(code);
+        if (generateRegisterCode(code)) {
+            return;
+        } else if (isConstant()) {
+            code.println("; BOX " + ((LiteralExpression) operand).getValue() + " (Konstante)");
+            code.println("MRI R5, " + code.getConstantLabel(getType().getIdentifier().getName(), 
+                    ((LiteralExpression) operand).getValue()));
+            code.println("ADD R2, R1");
+            code.println("MMR (R2), R5");
+        } else {
+            operand.generateCode(code);
+            generateBoxCode(getType(), code);
+        }
+    }
+    
+    /**
+     * Die Methode generiert Code für den unverpackten Wert.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @return Immer true.
+     */
+    boolean generateValueCode(CodeStream code) {
         operand.generateCode(code);
+        return true;
+    }
+    
+    /**
+     * Die Methode generiert Code, der den Wert oben auf dem Stapel in ein neues 
+     * Objekt verpackt. Die Referenz auf das Objekt ersetzt den Wert auf dem Stapel.
+     * @param type Die Klasse des neuen Objekts (Integer oder Boolean).
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     */
+    static void generateBoxCode(ClassDeclaration type, CodeStream code) {
         code.println("; BOX");
-        code.println("MRM R5, (R2) ; Wert vom Stapel nehmen");
-        code.println("SUB R2, R1");
-        code.println("MRM R6, (R2) ; Referenz auf neues Objekt holen (bleibt auf Stapel)");
+        code.println("MRI R5, " + type.getIdentifier().getName());
+        code.println("SYS 2, 5 ; Objekt auf dem Heap erzeugen");
+        code.println("MRM R6, (R2) ; Wert vom Stapel holen");
+        code.println("MMR (R2), R5 ; und durch Referenz auf neues Objekt ersetzen");
         code.println("MRI R7, " + ClassDeclaration.HEADER_SIZE);
-        code.println("ADD R6, R7 ; Speicherstelle in neuem Objekt berechnen");
-        code.println("MMR (R6), R5 ; Wert in Objekt speichern");
+        code.println("ADD R5, R7 ; Speicherstelle in neuem Objekt berechnen");
+        code.println("MMR (R5), R6 ; Wert in Objekt speichern");
+    }
+    
+    /**
+     * Ein konstantes Objekt benötigt nur ein Register für seine Adresse.
+     * Ansonsten wird ein weiteres Register für das neue Objekt benötigt.
+     * @return Die Anzahl der benötigten Register.
+     */
+    public int getRegisterNeed() {
+        if (isConstant()) {
+            return 1;
+        } else {
+            return Math.max(operand.getRegisterNeed(), ClassDeclaration.HEADER_SIZE == 1 ? 2 : 3);
+        }
+    }
+    
+    /**
+     * Die Methode generiert Code, der den Wert in einem Register berechnet, ihn in
+     * ein neues Objekt verpackt und die Referenz auf das Objekt im Register ablegt.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param register Das Register, in dem das Ergebnis abgelegt wird.
+     */
+    public void generateCode(CodeStream code, int register) {
+        if (isConstant()) {
+            code.println("MRI R" + register + ", " + code.getConstantLabel(getType().getIdentifier().getName(), 
+                    ((LiteralExpression) operand).getValue()) + " ; BOX (Konstante)");
+        } else {
+            String value = "R" + register;
+            String object = "R" + (register + 1);
+            String header = "R1";
+            operand.generateCode(code, register);
+            code.println("; BOX");
+            code.println("MRI " + object + ", " + getType().getIdentifier().getName());
+            code.println("SYS 2, " + (register + 1) + " ; Objekt auf dem Heap erzeugen");
+            if (ClassDeclaration.HEADER_SIZE != 1) {
+                header = "R" + (register + 2);
+                code.println("MRI " + header + ", " + ClassDeclaration.HEADER_SIZE);
+            }
+            code.println("ADD " + object + ", " + header + " ; Speicherstelle in neuem Objekt berechnen");
+            code.println("MMR (" + object + "), " + value + " ; Wert in Objekt speichern");
+            code.println("SUB " + object + ", " + header);
+            code.println("MRR " + value + ", " + object);
+        }
     }
 }
@@ -1,5 +1,10 @@
 package oopsc.expressions;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import oopsc.declarations.VarDeclaration;
 import oopsc.streams.CodeStream;
 import oopsc.streams.TreeStream;
 
@@ -12,7 +17,7 @@ import oopsc.streams.TreeStream;
  */
 public class DeRefExpression extends Expression {
     /** Der Ausdruck, der die Adresse berechnet. */
-    private final Expression operand;
+    private Expression operand;
     
     /**
      * Konstruktor.
@@ -36,16 +41,133 @@ public class DeRefExpression extends Expression {
         tree.unindent();
     }
 
+    /**
+     * Liefert die Größe dieses Ausdrucks als Anzahl der Knoten im Syntaxbaum.
+     * @return Die Größe.
+     */
+    public int size() {
+        return 1 + operand.size();
+    }
+
+    /**
+     * Gibt die bekannten Werte lokaler Variablen weiter. Wird eine Variable
+     * mit bekanntem Wert ausgelesen, wird stattdessen das Literal verpackt,
+     * wenn dafür das konstante Objekt verwendet wird, auf das die Variable
+     * ohnehin verweist. Ein neues Objekt wäre dagegen von dem in der Variablen
+     * zu unterscheiden.
+     * @param constants Die lokalen Variablen mit bekanntem Wert.
+     * @return Dieser Ausdruck oder das verpackte Literal.
+     */
+    public Expression propagateConstants(Map<VarDeclaration, LiteralExpression> constants) {
+        LiteralExpression value = constants.get(getReadVariable());
+        if (value != null) {
+            BoxExpression box = new BoxExpression(value);
+            if (box.isConstant()) {
+                return box;
+            }
+        }
+        operand = operand.propagateConstants(constants);
+        return this;
+    }
+
+    /**
+     * Trägt die Variablen ein, die der Operand liest.
+     * @param variables Die Menge, in die die Variablen eingetragen werden.
+     */
+    public void addUsedVariables(Set<VarDeclaration> variables) {
+        operand.addUsedVariables(variables);
+    }
+
+    /**
+     * Das Dereferenzieren selbst hat keine Seiteneffekte, der Operand vielleicht.
+     * @return Hat der Operand Seiteneffekte?
+     */
+    public boolean hasSideEffects() {
+        return operand.hasSideEffects();
+    }
+
+    /**
+     * Trägt die Werte im Operanden ein.
+     * @param values Die Liste, in die die Teilausdrücke eingetragen werden.
+     * @param all Sollen auch bedingt ausgewertete Teilausdrücke eingetragen werden?
+     */
+    public void addPureValues(List<Expression> values, boolean all) {
+        operand.addPureValues(values, all);
+    }
+
+    /**
+     * Ersetzt einen Wert im Operanden durch das Auslesen einer Variablen.
+     * @param value Der Wert.
+     * @param variable Die Variable, die den Wert enthält.
+     * @return Dieser Ausdruck.
+     */
+    public Expression replacePureValue(Expression value, VarDeclaration variable) {
+        operand = operand.replacePureValue(value, variable);
+        return this;
+    }
+
+    /**
+     * Liefert die lokale Variable, die hier ausgelesen wird.
+     * @return Die Variable oder null, wenn der Operand keine lokale Variable ist.
+     */
+    VarDeclaration getReadVariable() {
+        return operand instanceof VarOrCall ? ((VarOrCall) operand).getLocalVariable() : null;
+    }
+
     /**
      * Die Methode generiert den Assembler-Code für diesen Ausdruck. Sie geht 
      * davon aus, dass die Kontextanalyse vorher erfolgreich abgeschlossen wurde.
      * @param code Der Strom, in den die Ausgabe erfolgt.
      */
     public void generateCode(CodeStream code) {
+        if (generateRegisterCode(code)) {
+            return;
+        }
         code.println("; DEREF");
         operand.generateCode(code);
         code.println("MRM R5, (R2) ; L-Wert vom Stapel holen");
         code.println("MRM R5, (R5) ; Dereferenzieren");
         code.println("MMR (R2), R5 ; Wieder ablegen");
     }
+    
+    /**
+     * Die Methode generiert Code für den Wert eines Parameters, der
+     * unverpackt übergeben wird.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @return Wurde Code erzeugt, d.h. ist der Operand ein solcher Parameter?
+     */
+    boolean generateValueCode(CodeStream code) {
+        if (isUnboxedVariable()) {
+            generateCode(code);
+            return true;
+        } else {
+            return false;
+        }
+    }
+    
+    /**
+     * Wird ein Parameter ausgelesen, der unverpackt übergeben wird?
+     * @return Liefert dieser Ausdruck einen unverpackten Wert?
+     */
+    boolean isUnboxedVariable() {
+        return operand instanceof VarOrCall && ((VarOrCall) operand).isUnboxedVariable();
+    }
+    
+    /**
+     * Das Dereferenzieren benötigt kein zusätzliches Register.
+     * @return Die Anzahl der Register für den Operanden.
+     */
+    public int getRegisterNeed() {
+        return operand.getRegisterNeed();
+    }
+    
+    /**
+     * Die Methode generiert Code, der den Wert in einem Register ablegt.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param register Das Register, in dem das Ergebnis abgelegt wird.
+     */
+    public void generateCode(CodeStream code, int register) {
+        operand.generateCode(code, register);
+        code.println("MRM R" + register + ", (R" + register + ") ; Dereferenzieren");
+    }
 }
@@ -1,8 +1,13 @@
 package oopsc.expressions;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import oopsc.CompileException;
 import oopsc.declarations.ClassDeclaration;
 import oopsc.declarations.Declarations;
+import oopsc.declarations.VarDeclaration;
 import oopsc.parser.Position;
 import oopsc.streams.CodeStream;
 import oopsc.streams.TreeStream;
@@ -14,6 +19,15 @@ import oopsc.streams.TreeStream;
  * Ausdrücken sowie das Dereferenzieren.
  */
 public abstract class Expression {
+    /** Das erste Register, das zur Auswertung von Ausdrücken verwendet wird. */
+    public static final int FIRST_REGISTER = 4;
+    
+    /** Das letzte Register, das zur Auswertung von Ausdrücken verwendet wird. */
+    public static final int LAST_REGISTER = 7;
+    
+    /** Der Registerbedarf eines Ausdrucks, der nicht in Registern ausgewertet werden kann. */
+    public static final int NOT_IN_REGISTERS = Integer.MAX_VALUE / 2;
+    
     /** Der Typ dieses Ausdrucks. Solange er nicht bekannt ist, ist dieser Eintrag null. */
     private ClassDeclaration type;
 
@@ -92,6 +106,111 @@ public abstract class Expression {
      */
     public abstract void generateCode(CodeStream code);
     
+    /**
+     * Die Methode generiert Code, der statt einer Referenz auf ein Integer- oder
+     * Boolean-Objekt direkt dessen Wert auf dem Stapel ablegt, sofern dieser Wert
+     * ohne Auspacken verfügbar ist (z.B. ein noch nicht verpackter Wert oder ein
+     * unverpackt übergebener Parameter). Ansonsten wird kein Code erzeugt.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @return Wurde Code erzeugt?
+     */
+    boolean generateValueCode(CodeStream code) {
+        return false;
+    }
+    
+    /**
+     * Liefert die Anzahl der Register, die benötigt werden, um diesen Ausdruck
+     * ohne Zugriff auf den Stapel auszuwerten (Sethi-Ullman-Zahl). Ausdrücke mit
+     * Seiteneffekten (Methodenaufrufe, Objekterzeugung) können nicht in Registern
+     * ausgewertet werden. Dadurch darf die Reihenfolge der Auswertung der Operanden
+     * eines in Registern ausgewerteten Ausdrucks frei gewählt werden.
+     * @return Die Anzahl der Register oder {@link #NOT_IN_REGISTERS NOT_IN_REGISTERS}.
+     */
+    public int getRegisterNeed() {
+        return NOT_IN_REGISTERS;
+    }
+    
+    /**
+     * Die Methode generiert Code, der diesen Ausdruck ausschließlich in Registern
+     * auswertet. Dabei werden nur die Register ab dem angegebenen verändert, und
+     * zwar höchstens so viele, wie {@link #getRegisterNeed() getRegisterNeed} liefert.
+     * Sie darf nur aufgerufen werden, wenn genügend Register zur Verfügung stehen.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param register Das Register, in dem das Ergebnis abgelegt wird.
+     */
+    public void generateCode(CodeStream code, int register) {
+        assert false;
+    }
+    
+    /**
+     * Kann dieser Ausdruck vollständig in den Registern R4 bis R7 ausgewertet werden?
+     * @param code Der Strom, in den die Ausgabe erfolgt. Er legt fest, ob Register
+     *         überhaupt verwendet werden sollen.
+     * @return Passt der Ausdruck in die Register?
+     */
+    public boolean fitsInRegisters(CodeStream code) {
+        return code.isRegisterMode() && getRegisterNeed() <= LAST_REGISTER - FIRST_REGISTER + 1;
+    }
+    
+    /**
+     * Die Methode generiert Code, der diesen Ausdruck in Registern auswertet und
+     * das Ergebnis auf den Stapel legt, sofern er in die Register passt. Ansonsten
+     * wird kein Code erzeugt und der Aufrufer muss den Ausdruck auf dem Stapel
+     * auswerten, d.h. nur Teilausdrücke werden dann in Registern berechnet.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @return Wurde Code erzeugt?
+     */
+    boolean generateRegisterCode(CodeStream code) {
+        if (fitsInRegisters(code)) {
+            generateCode(code, FIRST_REGISTER);
+            code.println("ADD R2, R1");
+            code.println("MMR (R2), R" + FIRST_REGISTER + " ; Ergebnis aus Register auf den Stapel");
+            return true;
+        } else {
+            return false;
+        }
+    }
+    
+    /**
+     * Die Methode generiert Code, der den Wert dieses Ausdrucks in einem Register
+     * hinterlässt. Passt der Ausdruck in die Register, wird er in R4 ausgewertet,
+     * ansonsten auf dem Stapel, von dem er dann in R5 geholt wird.
+     * Die Register R6 und R7 bleiben danach ungenutzt.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @return Die Nummer des Registers, das den Wert enthält.
+     */
+    public int generateCodeToRegister(CodeStream code) {
+        if (fitsInRegisters(code)) {
+            generateCode(code, FIRST_REGISTER);
+            return FIRST_REGISTER;
+        } else {
+            generateCode(code);
+            code.println("MRM R5, (R2) ; Wert vom Stapel nehmen");
+            code.println("SUB R2, R1");
+            return 5;
+        }
+    }
+    
+    /**
+     * Die Methode generiert Code, der diesen Wahrheitswert auswertet und zu einer
+     * Marke springt, wenn er einen bestimmten Wert hat. Ansonsten wird mit dem
+     * folgenden Code fortgefahren. Standardmäßig wird der Wert in einem Register
+     * berechnet und dann geprüft. Vergleiche und logische Verknüpfungen springen
+     * dagegen direkt, ohne den Wahrheitswert zu erzeugen.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param jumpIf Der Wert, bei dem gesprungen wird.
+     * @param label Die Marke, zu der gesprungen wird.
+     */
+    public void generateBranch(CodeStream code, boolean jumpIf, String label) {
+        int register = generateCodeToRegister(code);
+        if (jumpIf) {
+            code.println("JPC R" + register + ", " + label);
+        } else {
+            code.println("ISZ R5, R" + register + " ; Wenn 0, dann");
+            code.println("JPC R5, " + label);
+        }
+    }
+    
     /**
      * Die Methode prüft, ob dieser Ausdruck "geboxt" oder dereferenziert werden muss.
      * Ist dies der Fall, wird ein entsprechender Ausdruck erzeugt, von dem dieser
@@ -107,7 +226,7 @@ public abstract class Expression {
      */
     public Expression box(Declarations declarations) throws CompileException {
         if (type.isA(ClassDeclaration.INT_TYPE) || type.isA(ClassDeclaration.BOOL_TYPE)) {
-            return new BoxExpression(this, declarations);
+            return new BoxExpression(this);
         } else if (isLValue()) {
             return new DeRefExpression(this);
         } else {
@@ -144,4 +263,89 @@ public abstract class Expression {
 	public Expression optimize() {
 		return this;
 	}
+
+    /**
+     * Ersetzt das Auslesen lokaler Variablen, deren Wert an dieser Stelle
+     * bekannt ist, durch diesen Wert. Da dabei neue Ausdrücke entstehen,
+     * sollte diese Methode immer in der Form "a = a.propagateConstants(...)"
+     * aufgerufen werden. Konstante Teilausdrücke werden erst durch ein 
+     * anschließendes {@link #optimize() optimize} ausgewertet.
+     * @param constants Die lokalen Variablen mit bekanntem Wert.
+     * @return Dieser Ausdruck oder ein neuer Ausdruck.
+     */
+    public Expression propagateConstants(Map<VarDeclaration, LiteralExpression> constants) {
+        return this;
+    }
+
+    /**
+     * Trägt die lokalen Variablen und Parameter ein, die bei der Auswertung
+     * dieses Ausdrucks gelesen werden.
+     * @param variables Die Menge, in die die Variablen eingetragen werden.
+     */
+    public void addUsedVariables(Set<VarDeclaration> variables) {
+    }
+
+    /**
+     * Hat die Auswertung dieses Ausdrucks eine Wirkung über sein Ergebnis hinaus?
+     * Das sind Methodenaufrufe und Divisionen, die mit einem Laufzeitfehler
+     * abbrechen können. Ein Ausdruck ohne Seiteneffekte darf entfallen, wenn
+     * sein Ergebnis nicht benötigt wird.
+     * @return Standardmäßig nein.
+     */
+    public boolean hasSideEffects() {
+        return false;
+    }
+
+    /**
+     * Ist dieser Ausdruck ein Wert, der nur von Literalen und lokalen Variablen
+     * abhängt und immer fehlerfrei berechnet werden kann? Ein solcher Wert
+     * kann vorab berechnet werden, solange sich die Variablen nicht ändern.
+     * @return Standardmäßig nein.
+     */
+    public boolean isPureValue() {
+        return false;
+    }
+
+    /**
+     * Berechnet dieser Ausdruck denselben Wert wie ein anderer, d.h. stimmen
+     * beide als Werte im Sinne von {@link #isPureValue() isPureValue} im Aufbau
+     * überein?
+     * @param other Der andere Ausdruck.
+     * @return Standardmäßig nein.
+     */
+    public boolean isSameValue(Expression other) {
+        return false;
+    }
+
+    /**
+     * Trägt alle zusammengesetzten Teilausdrücke ein, die Werte im Sinne von 
+     * {@link #isPureValue() isPureValue} sind.
+     * @param values Die Liste, in die die Teilausdrücke eingetragen werden.
+     * @param all Sollen auch Teilausdrücke eingetragen werden, die nur bedingt
+     *         ausgewertet werden (rechte Operanden von AND THEN und OR ELSE)?
+     */
+    public void addPureValues(List<Expression> values, boolean all) {
+    }
+
+    /**
+     * Ersetzt alle Teilausdrücke, die denselben Wert wie der angegebene
+     * berechnen, durch das Auslesen einer unverpackten Variablen, die diesen
+     * Wert enthält. Sollte in der Form "a = a.replacePureValue(...)" 
+     * aufgerufen werden.
+     * @param value Der Wert.
+     * @param variable Die Variable, die den Wert enthält.
+     * @return Dieser Ausdruck oder das Auslesen der Variablen.
+     */
+    public Expression replacePureValue(Expression value, VarDeclaration variable) {
+        return this;
+    }
+
+    /**
+     * Liefert die Größe dieses Ausdrucks als Anzahl der Knoten im Syntaxbaum.
+     * Der Optimierer entscheidet danach, ob eine Methode eingebettet wird.
+     * @return Die Größe. Ausdrücke ohne Operanden haben die Größe 1.
+     */
+    public int size() {
+        return 1;
+    }
 }
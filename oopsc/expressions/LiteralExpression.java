@@ -40,6 +40,24 @@ public class LiteralExpression extends Expression {
     	return value;
     }
     
+    /**
+     * Ein Literal ist immer ein Wert.
+     * @return true.
+     */
+    public boolean isPureValue() {
+        return true;
+    }
+
+    /**
+     * Ein Literal hat denselben Wert wie ein Literal gleichen Typs und Werts.
+     * @param other Der andere Ausdruck.
+     * @return Stimmen beide überein?
+     */
+    public boolean isSameValue(Expression other) {
+        return other instanceof LiteralExpression && ((LiteralExpression) other).value == value
+                && other.getType() == getType();
+    }
+
     /**
      * Die Methode generiert den Assembler-Code für diesen Ausdruck.
      * @param code Der Strom, in den die Ausgabe erfolgt.
@@ -51,4 +69,33 @@ public class LiteralExpression extends Expression {
         code.println("ADD R2, R1");
         code.println("MMR (R2), R5");
     }
+    
+    /**
+     * Bei einem Literal steht zur Übersetzungszeit fest, ob gesprungen wird.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param jumpIf Der Wert, bei dem gesprungen wird.
+     * @param label Die Marke, zu der gesprungen wird.
+     */
+    public void generateBranch(CodeStream code, boolean jumpIf, String label) {
+        if ((value != 0) == jumpIf) {
+            code.println("MRI R0, " + label + " ; " + value + " : " + getType().getIdentifier().getName());
+        }
+    }
+    
+    /**
+     * Ein Literal benötigt genau ein Register.
+     * @return 1.
+     */
+    public int getRegisterNeed() {
+        return 1;
+    }
+    
+    /**
+     * Die Methode generiert Code, der das Literal in ein Register lädt.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param register Das Register, in dem das Ergebnis abgelegt wird.
+     */
+    public void generateCode(CodeStream code, int register) {
+        code.println("MRI R" + register + ", " + value + " ; " + getType().getIdentifier().getName());
+    }
 }
@@ -55,17 +55,9 @@ public class NewExpression extends Expression {
     public void generateCode(CodeStream code) {
         code.println(getPosition());
         code.println("; NEW " + newType.getName());
+        code.println("MRI R5, " + ((ClassDeclaration) newType.getDeclaration()).getIdentifier().getName());
+        code.println("SYS 2, 5 ; Objekt auf dem Heap erzeugen");
         code.println("ADD R2, R1");
-        code.println("MRI R7, " + ((ClassDeclaration)newType.getDeclaration()).getIdentifier().getName());
-        //code.println("MMR (R4), R7");
-        code.println("MRI R6, _heap");
-        code.println("MRM R5, (R6)");
-        code.println("MMR (R5), R7");
-        //code.println("MMR (R2), R4 ; Referenz auf neues Objekt auf den Stapel legen");
         code.println("MMR (R2), R5 ; Referenz auf neues Objekt auf den Stapel legen");
-        code.println("MRI R7, " + ((ClassDeclaration) newType.getDeclaration()).getObjectSize());
-        //code.println("ADD R4, R5 ; Heap weiter zählen");
-        code.println("ADD R5, R7");
-        code.println("MMR (R6), R5");
     }
 }
@@ -1,6 +1,12 @@
 package oopsc.expressions;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import oopsc.declarations.ClassDeclaration;
+import oopsc.declarations.VarDeclaration;
+import oopsc.parser.Position;
 import oopsc.streams.CodeStream;
 import oopsc.streams.TreeStream;
 
@@ -44,6 +50,14 @@ public class UnBoxExpression extends Expression {
         tree.unindent();
     }
 
+    /**
+     * Liefert die Größe dieses Ausdrucks als Anzahl der Knoten im Syntaxbaum.
+     * @return Die Größe.
+     */
+    public int size() {
+        return 1 + operand.size();
+    }
+
     /**
      * Durchläuft den Syntaxbaum und wertet konstante Ausdrücke aus 
      * und wendet ein paar Transformationen an.
@@ -51,8 +65,105 @@ public class UnBoxExpression extends Expression {
      */
 	public Expression optimize() {
 		operand = operand.optimize();
+		if (operand instanceof BoxExpression) { /* UNBOX(BOX(x)) -> x */
+			return ((BoxExpression) operand).getOperand();
+		}
 		return this;
 	}
+
+    /**
+     * Gibt die bekannten Werte lokaler Variablen an den Operanden weiter.
+     * Wird eine Variable mit bekanntem Wert ausgelesen, tritt das Literal
+     * an die Stelle dieses Ausdrucks.
+     * @param constants Die lokalen Variablen mit bekanntem Wert.
+     * @return Dieser Ausdruck oder das Literal.
+     */
+    public Expression propagateConstants(Map<VarDeclaration, LiteralExpression> constants) {
+        LiteralExpression value = constants.get(getReadVariable());
+        if (value != null) {
+            return value;
+        }
+        operand = operand.propagateConstants(constants);
+        return this;
+    }
+
+    /**
+     * Trägt die Variablen ein, die der Operand liest.
+     * @param variables Die Menge, in die die Variablen eingetragen werden.
+     */
+    public void addUsedVariables(Set<VarDeclaration> variables) {
+        operand.addUsedVariables(variables);
+    }
+
+    /**
+     * Das Auspacken selbst hat keine Seiteneffekte, der Operand vielleicht.
+     * @return Hat der Operand Seiteneffekte?
+     */
+    public boolean hasSideEffects() {
+        return operand.hasSideEffects();
+    }
+
+    /**
+     * Liefert die lokale Variable, deren Wert hier ausgelesen wird.
+     * @return Die Variable oder null, wenn der Operand keine lokale Variable ist.
+     */
+    public VarDeclaration getReadVariable() {
+        if (operand instanceof DeRefExpression) {
+            return ((DeRefExpression) operand).getReadVariable();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Das Auslesen einer lokalen Variablen ist ein Wert.
+     * @return Wird eine lokale Variable ausgelesen?
+     */
+    public boolean isPureValue() {
+        return getReadVariable() != null;
+    }
+
+    /**
+     * Zwei Auslesevorgänge haben denselben Wert, wenn sie dieselbe lokale 
+     * Variable betreffen.
+     * @param other Der andere Ausdruck.
+     * @return Stimmen beide überein?
+     */
+    public boolean isSameValue(Expression other) {
+        VarDeclaration variable = getReadVariable();
+        return variable != null && other instanceof UnBoxExpression
+                && ((UnBoxExpression) other).getReadVariable() == variable;
+    }
+
+    /**
+     * Trägt die Werte im Operanden ein.
+     * @param values Die Liste, in die die Teilausdrücke eingetragen werden.
+     * @param all Sollen auch bedingt ausgewertete Teilausdrücke eingetragen werden?
+     */
+    public void addPureValues(List<Expression> values, boolean all) {
+        operand.addPureValues(values, all);
+    }
+
+    /**
+     * Ersetzt einen Wert im Operanden durch das Auslesen einer Variablen.
+     * @param value Der Wert.
+     * @param variable Die Variable, die den Wert enthält.
+     * @return Dieser Ausdruck.
+     */
+    public Expression replacePureValue(Expression value, VarDeclaration variable) {
+        operand = operand.replacePureValue(value, variable);
+        return this;
+    }
+
+    /**
+     * Erzeugt einen Ausdruck, der den Wert einer unverpackten Variablen ausliest.
+     * @param variable Die Variable.
+     * @param position Die Quelltextposition des Ausdrucks.
+     * @return Der Ausdruck.
+     */
+    public static Expression readValue(VarDeclaration variable, Position position) {
+        return new UnBoxExpression(new DeRefExpression(new VarOrCall(variable, position)));
+    }
     
     /**
      * Die Methode generiert den Assembler-Code für diesen Ausdruck. Sie geht 
@@ -60,12 +171,67 @@ public class UnBoxExpression extends Expression {
      * @param code Der Strom, in den die Ausgabe erfolgt.
      */
     public void generateCode(CodeStream code) {
-        operand.generateCode(code);
-        code.println("; UNBOX");
-        code.println("MRM R5, (R2) ; Objektreferenz vom Stapel lesen");
-        code.println("MRI R6, " + ClassDeclaration.HEADER_SIZE);
-        code.println("ADD R5, R6 ; Adresse des Werts bestimmen");
-        code.println("MRM R5, (R5) ; Wert auslesen");
-        code.println("MMR (R2), R5 ; und auf den Stapel schreiben");
+        if (generateRegisterCode(code)) {
+            return;
+        }
+        generateValue(operand, code);
+    }
+    
+    /**
+     * Die Methode generiert Code, der den Wert eines Integer- oder Boolean-Objekts
+     * auf dem Stapel ablegt. Ist der Wert ohne Auspacken verfügbar, wird
+     * das Objekt gar nicht erst erzeugt bzw. gelesen.
+     * @param operand Der Ausdruck, der das Objekt liefert.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     */
+    static void generateValue(Expression operand, CodeStream code) {
+        if (!operand.generateValueCode(code)) {
+            operand.generateCode(code);
+            code.println("; UNBOX");
+            code.println("MRM R5, (R2) ; Objektreferenz vom Stapel lesen");
+            code.println("MRI R6, " + ClassDeclaration.HEADER_SIZE);
+            code.println("ADD R5, R6 ; Adresse des Werts bestimmen");
+            code.println("MRM R5, (R5) ; Wert auslesen");
+            code.println("MMR (R2), R5 ; und auf den Stapel schreiben");
+        }
+    }
+    
+    /**
+     * Ist der Wert ohne Auspacken verfügbar, wird nur der Wert berechnet. 
+     * Ansonsten wird kein zusätzliches Register benötigt.
+     * @return Die Anzahl der benötigten Register.
+     */
+    public int getRegisterNeed() {
+        if (operand instanceof BoxExpression) {
+            return ((BoxExpression) operand).getOperand().getRegisterNeed();
+        } else if (ClassDeclaration.HEADER_SIZE == 1 || operand instanceof DeRefExpression 
+                && ((DeRefExpression) operand).isUnboxedVariable()) {
+            return operand.getRegisterNeed();
+        } else {
+            return Math.max(operand.getRegisterNeed(), 2);
+        }
+    }
+    
+    /**
+     * Die Methode generiert Code, der den Wert in einem Register ablegt.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param register Das Register, in dem das Ergebnis abgelegt wird.
+     */
+    public void generateCode(CodeStream code, int register) {
+        if (operand instanceof BoxExpression) {
+            ((BoxExpression) operand).getOperand().generateCode(code, register);
+        } else if (operand instanceof DeRefExpression && ((DeRefExpression) operand).isUnboxedVariable()) {
+            operand.generateCode(code, register);
+        } else {
+            operand.generateCode(code, register);
+            code.println("; UNBOX");
+            if (ClassDeclaration.HEADER_SIZE == 1) {
+                code.println("ADD R" + register + ", R1 ; Adresse des Werts bestimmen");
+            } else {
+                code.println("MRI R" + (register + 1) + ", " + ClassDeclaration.HEADER_SIZE);
+                code.println("ADD R" + register + ", R" + (register + 1) + " ; Adresse des Werts bestimmen");
+            }
+            code.println("MRM R" + register + ", (R" + register + ") ; Wert auslesen");
+        }
     }
 }
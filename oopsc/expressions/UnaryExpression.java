@@ -1,8 +1,13 @@
 package oopsc.expressions;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import oopsc.CompileException;
 import oopsc.declarations.ClassDeclaration;
 import oopsc.declarations.Declarations;
+import oopsc.declarations.VarDeclaration;
 import oopsc.parser.Position;
 import oopsc.parser.Symbol;
 import oopsc.streams.CodeStream;
@@ -67,31 +72,135 @@ public class UnaryExpression extends Expression {
     }
 
     /**
-     * Durchläuft den Syntaxbaum und wertet konstante Ausdrücke aus 
-     * und wendet ein paar Transformationen an.
+     * Liefert die Größe dieses Ausdrucks als Anzahl der Knoten im Syntaxbaum.
+     * @return Die Größe.
+     */
+    public int size() {
+        return 1 + operand.size();
+    }
+
+    /**
+     * Liefert den Operator.
+     * @return Der Operator.
+     */
+    public Symbol.Id getOperator() {
+        return operator;
+    }
+
+    /**
+     * Liefert den Operanden.
+     * @return Der Operand.
+     */
+    public Expression getOperand() {
+        return operand;
+    }
+
+    /**
+     * Durchläuft den Syntaxbaum und vereinfacht diesen Ausdruck mit den 
+     * eingeschalteten {@link AlgebraicRule Regeln}, nachdem sein Operand
+     * vereinfacht wurde.
+     * @return Der vereinfachte Ausdruck.
      */
     public Expression optimize() {
-    	operand = operand.optimize();
-    	if(operand instanceof LiteralExpression) {
-    		switch (operator) {
-    		case MINUS:	
-    			return new LiteralExpression(-((LiteralExpression)operand).getValue() , ClassDeclaration.INT_TYPE, operand.getPosition());
-    		case NOT:
-    			return new LiteralExpression(((LiteralExpression)operand).getValue() == 1 ? 0 : 1, ClassDeclaration.BOOL_TYPE, operand.getPosition());
-    		
-    		default:
-    			assert false;
-    		}
-    	}
-    	return this;
-	}
+        operand = operand.optimize();
+        return AlgebraicRule.simplify(this);
+    }
     
+    /**
+     * Gibt die bekannten Werte lokaler Variablen an den Operanden weiter.
+     * @param constants Die lokalen Variablen mit bekanntem Wert.
+     * @return Dieser Ausdruck.
+     */
+    public Expression propagateConstants(Map<VarDeclaration, LiteralExpression> constants) {
+        operand = operand.propagateConstants(constants);
+        return this;
+    }
+
+    /**
+     * Trägt die Variablen ein, die der Operand liest.
+     * @param variables Die Menge, in die die Variablen eingetragen werden.
+     */
+    public void addUsedVariables(Set<VarDeclaration> variables) {
+        operand.addUsedVariables(variables);
+    }
+
+    /**
+     * Die Operation selbst hat keine Seiteneffekte, der Operand vielleicht.
+     * @return Hat der Operand Seiteneffekte?
+     */
+    public boolean hasSideEffects() {
+        return operand.hasSideEffects();
+    }
+
+    /**
+     * Die Operation auf einem Wert ist ein Wert.
+     * @return Ist der Operand ein Wert?
+     */
+    public boolean isPureValue() {
+        return operand.isPureValue();
+    }
+
+    /**
+     * Zwei Operationen haben denselben Wert, wenn Operator und Operand übereinstimmen.
+     * @param other Der andere Ausdruck.
+     * @return Stimmen beide überein?
+     */
+    public boolean isSameValue(Expression other) {
+        return other instanceof UnaryExpression && ((UnaryExpression) other).operator == operator
+                && operand.isSameValue(((UnaryExpression) other).operand);
+    }
+
+    /**
+     * Trägt diesen Ausdruck ein, wenn er ein Wert ist, und danach die Werte
+     * im Operanden.
+     * @param values Die Liste, in die die Teilausdrücke eingetragen werden.
+     * @param all Sollen auch bedingt ausgewertete Teilausdrücke eingetragen werden?
+     */
+    public void addPureValues(List<Expression> values, boolean all) {
+        if (isPureValue()) {
+            values.add(this);
+        }
+        operand.addPureValues(values, all);
+    }
+
+    /**
+     * Ersetzt diesen Ausdruck oder Werte im Operanden durch das Auslesen
+     * einer Variablen.
+     * @param value Der Wert.
+     * @param variable Die Variable, die den Wert enthält.
+     * @return Dieser Ausdruck oder das Auslesen der Variablen.
+     */
+    public Expression replacePureValue(Expression value, VarDeclaration variable) {
+        if (isSameValue(value)) {
+            return UnBoxExpression.readValue(variable, getPosition());
+        }
+        operand = operand.replacePureValue(value, variable);
+        return this;
+    }
+
+    /**
+     * Bei NOT wird der Operand mit umgekehrter Bedingung geprüft.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param jumpIf Der Wert, bei dem gesprungen wird.
+     * @param label Die Marke, zu der gesprungen wird.
+     */
+    public void generateBranch(CodeStream code, boolean jumpIf, String label) {
+        if (operator == Symbol.Id.NOT) {
+            operand.generateBranch(code, !jumpIf, label);
+        } else {
+            super.generateBranch(code, jumpIf, label);
+        }
+    }
+
     /**
      * Die Methode generiert den Assembler-Code für diesen Ausdruck. Sie geht 
      * davon aus, dass die Kontextanalyse vorher erfolgreich abgeschlossen wurde.
      * @param code Der Strom, in den die Ausgabe erfolgt.
      */
     public void generateCode(CodeStream code) {
+        if (generateRegisterCode(code)) {
+            return;
+        }
         operand.generateCode(code);
         code.println("; " + operator);
         code.println("MRM R5, (R2)");
@@ -109,4 +218,36 @@ public class UnaryExpression extends Expression {
             assert false;
         }
     }
+    
+    /**
+     * Die Negation benötigt ein Hilfsregister, die logische Verneinung nicht.
+     * @return Die Anzahl der benötigten Register.
+     */
+    public int getRegisterNeed() {
+        return operator == Symbol.Id.MINUS ? Math.max(operand.getRegisterNeed(), 2) : operand.getRegisterNeed();
+    }
+    
+    /**
+     * Die Methode generiert Code, der diesen Ausdruck in Registern auswertet.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param register Das Register, in dem das Ergebnis abgelegt wird.
+     */
+    public void generateCode(CodeStream code, int register) {
+        String r = "R" + register;
+        operand.generateCode(code, register);
+        code.println("; " + operator);
+        switch (operator) {
+        case MINUS:
+            String t = "R" + (register + 1);
+            code.println("MRI " + t + ", 0");
+            code.println("SUB " + t + ", " + r);
+            code.println("MRR " + r + ", " + t);
+            break;
+        case NOT:
+            code.println("XOR " + r + ", R1");
+            break;
+        default:
+            assert false;
+        }
+    }
 }
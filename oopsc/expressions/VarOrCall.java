@@ -1,12 +1,16 @@
 package oopsc.expressions;
 
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import oopsc.CompileException;
 import oopsc.declarations.ClassDeclaration;
 import oopsc.declarations.Declarations;
 import oopsc.declarations.MethodDeclaration;
 import oopsc.declarations.VarDeclaration;
+import oopsc.parser.Position;
 import oopsc.parser.ResolvableIdentifier;
 import oopsc.streams.CodeStream;
 import oopsc.streams.TreeStream;
@@ -24,6 +28,15 @@ public class VarOrCall extends Expression {
     
     private boolean bindStatic = false;
     
+    /** Der statische Typ des Objekts, über das auf die Methode zugegriffen wird. */
+    private ClassDeclaration receiverType;
+    
+    /** Die Methode, in deren Rumpf dieser Aufruf steht, oder null. */
+    private MethodDeclaration caller;
+    
+    /** Wird die aufgerufene Methode in den Rumpf des Aufrufers eingebettet? */
+    private boolean inlined;
+    
     /**
      * Konstruktor.
      * @param identifier Der Name des Attributs, der Variablen oder der Methode.
@@ -33,6 +46,21 @@ public class VarOrCall extends Expression {
         this.identifier = identifier;
         this.args = args;
     }
+    
+    /**
+     * Konstruktor für den Zugriff auf eine Variable, die erst der Optimierer
+     * anlegt. Der Bezeichner ist bereits aufgelöst, so dass die Kontextanalyse
+     * entfällt.
+     * @param variable Die lokale Variable.
+     * @param position Die Quelltextposition, der der Zugriff zugeordnet wird.
+     */
+    public VarOrCall(VarDeclaration variable, Position position) {
+        super(position);
+        this.identifier = new ResolvableIdentifier(variable.getIdentifier().getName(), position);
+        this.args = new LinkedList<Expression>();
+        identifier.setDeclaration(variable);
+        setType((ClassDeclaration) variable.getType().getDeclaration());
+    }
 
     /**
      * Ist dieser Ausdruck ein L-Wert, d.h. eine Referenz auf eine Variable?
@@ -46,6 +74,20 @@ public class VarOrCall extends Expression {
 		return identifier;
 	}
     
+    /**
+     * Liefert die lokale Variable bzw. den Parameter, den dieser Ausdruck bezeichnet.
+     * @return Die Variable oder null, wenn der Ausdruck ein Attribut oder eine
+     *         Methode bezeichnet.
+     */
+    public VarDeclaration getLocalVariable() {
+        if (identifier.getDeclaration() instanceof VarDeclaration
+                && !((VarDeclaration) identifier.getDeclaration()).isAttribute()) {
+            return (VarDeclaration) identifier.getDeclaration();
+        } else {
+            return null;
+        }
+    }
+    
    /**
      * Die Methode führt die Kontextanalyse für diesen Ausdruck durch.
      * Dabei wird ein Zugriff über SELF in den Syntaxbaum eingefügt,
@@ -59,7 +101,7 @@ public class VarOrCall extends Expression {
      *         gefunden.
      */
     public Expression contextAnalysis(Declarations declarations) throws CompileException {
-        return contextAnalysis(declarations, declarations, true, false);
+        return contextAnalysis(null, declarations, declarations, true, false);
     }
 
     /**
@@ -69,6 +111,9 @@ public class VarOrCall extends Expression {
      * Diese Methode wird direkt für Ausdrücke aufgerufen, die rechts
      * vom Objekt-Zugriffsoperator stehen, wobei dann das Einfügen von SELF
      * untersagt wird.
+     * @param receiverType Der statische Typ des Objekts links vom 
+     *         Objekt-Zugriffsoperator oder null, wenn es keines gibt.
+     * @param methodClassScope Die Deklarationen, in denen der Bezeichner gesucht wird.
      * @param declarations Die an dieser Stelle gültigen Deklarationen.
      * @param addSelf Füge SELF ein, wenn dieser Ausdruck eine Methode oder ein
      *         Attribut bezeichnet.
@@ -77,15 +122,23 @@ public class VarOrCall extends Expression {
      * @throws CompileException Während der Kontextanylyse wurde ein Fehler
      *         gefunden.
      */
-    Expression contextAnalysis(Declarations methodClassScope, Declarations declarations,  boolean addSelf, boolean bindStatic) throws CompileException {
+    Expression contextAnalysis(ClassDeclaration receiverType, Declarations methodClassScope, Declarations declarations,  boolean addSelf, boolean bindStatic) throws CompileException {
     	this.bindStatic = bindStatic;
+    	this.receiverType = receiverType;
     	
 		methodClassScope.resolveVarOrMethod(identifier, declarations.getCallerClass());
+		if (addSelf && identifier.getDeclaration() instanceof VarDeclaration) {
+		    ((VarDeclaration) identifier.getDeclaration()).addUse(false);
+		}
         for(Expression arg : args) {
         	arg.contextAnalysis(declarations);
         }
 
         if (identifier.getDeclaration() instanceof MethodDeclaration) {
+        	caller = declarations.getCallerMethod();
+        	if (caller != null) {
+        		caller.addCall();
+        	}
         	
         	if (args.size() != ((MethodDeclaration)identifier.getDeclaration()).getParams().size()) {
         		throw new CompileException("Falsche Anzahl von Parametern", getPosition());
@@ -119,6 +172,39 @@ public class VarOrCall extends Expression {
         return this;
     }
     
+    /**
+     * Die Methode vermerkt bei einer Variablen, dass bei diesem Zugriff nur ihr
+     * Wert benötigt wird, wenn ein Auspacken eingefügt wird.
+     * @return Dieser Ausdruck oder ein neuer Ausdruck, falls ein Unboxing und/oder eine 
+     *         Dereferenzierung eingefügt wurde(n).
+     */
+    public Expression unBox() {
+        Expression e = super.unBox();
+        if (e instanceof UnBoxExpression && identifier.getDeclaration() instanceof VarDeclaration) {
+            ((VarDeclaration) identifier.getDeclaration()).addValueUse();
+        }
+        return e;
+    }
+    
+    /**
+     * Bezeichnet dieser Ausdruck eine Variable, deren Wert unverpackt abgelegt ist?
+     * @return Ist der Wert der Variablen unverpackt?
+     */
+    boolean isUnboxedVariable() {
+        return identifier.getDeclaration() instanceof VarDeclaration 
+                && ((VarDeclaration) identifier.getDeclaration()).isUnboxed();
+    }
+    
+    /**
+     * Bezeichnet dieser Ausdruck einen Methodenaufruf, dessen Ergebnis unverpackt 
+     * zurückgeliefert wird?
+     * @return Ist das Ergebnis unverpackt?
+     */
+    boolean isUnboxedCall() {
+        return identifier.getDeclaration() instanceof MethodDeclaration
+                && ((MethodDeclaration) identifier.getDeclaration()).getResult().isUnboxed();
+    }
+    
     /**
      * Die Methode gibt diesen Ausdruck in einer Baumstruktur aus.
      * Wenn der Typ des Ausdrucks bereits ermittelt wurde, wird er auch ausgegeben.
@@ -137,6 +223,18 @@ public class VarOrCall extends Expression {
         }
     }
     
+    /**
+     * Liefert die Größe dieses Ausdrucks als Anzahl der Knoten im Syntaxbaum.
+     * @return Die Größe.
+     */
+    public int size() {
+        int size = 1;
+        for (Expression a : args) {
+            size += a.size();
+        }
+        return size;
+    }
+
     /**
      * Durchläuft den Syntaxbaum und wertet konstante Ausdrücke aus 
      * und wendet ein paar Transformationen an.
@@ -148,15 +246,173 @@ public class VarOrCall extends Expression {
 				args.set(i, args.get(i).optimize());
 			}
 		}
+		
+		// Kleine, statisch gebundene Methoden ohne eigene Aufrufe einbetten
+		if (caller != null && identifier.getDeclaration() instanceof MethodDeclaration) {
+			MethodDeclaration target = getStaticTarget();
+			if (target != null && target.isInlinable()) {
+				inlined = true;
+				caller.addInlinedCall(target);
+			}
+		}
 		return this;
 	}
 
+    /**
+     * Gibt die bekannten Werte lokaler Variablen an die Argumente weiter.
+     * @param constants Die lokalen Variablen mit bekanntem Wert.
+     * @return Dieser Ausdruck.
+     */
+    public Expression propagateConstants(Map<VarDeclaration, LiteralExpression> constants) {
+        for (int i = 0; i < args.size(); ++i) {
+            args.set(i, args.get(i).propagateConstants(constants));
+        }
+        return this;
+    }
+
+    /**
+     * Trägt die Variable ein, wenn dieser Ausdruck eine lokale Variable oder
+     * einen Parameter bezeichnet, ansonsten die Variablen in den Argumenten.
+     * @param variables Die Menge, in die die Variablen eingetragen werden.
+     */
+    public void addUsedVariables(Set<VarDeclaration> variables) {
+        if (getLocalVariable() != null) {
+            variables.add(getLocalVariable());
+        }
+        for (Expression a : args) {
+            a.addUsedVariables(variables);
+        }
+    }
+
+    /**
+     * Ein Methodenaufruf kann beliebige Seiteneffekte haben.
+     * @return Ist dieser Ausdruck ein Methodenaufruf?
+     */
+    public boolean hasSideEffects() {
+        return identifier.getDeclaration() instanceof MethodDeclaration;
+    }
+
+    /**
+     * Trägt die Werte in den Argumenten ein.
+     * @param values Die Liste, in die die Teilausdrücke eingetragen werden.
+     * @param all Sollen auch bedingt ausgewertete Teilausdrücke eingetragen werden?
+     */
+    public void addPureValues(List<Expression> values, boolean all) {
+        for (Expression a : args) {
+            a.addPureValues(values, all);
+        }
+    }
+
+    /**
+     * Ersetzt einen Wert in den Argumenten durch das Auslesen einer Variablen.
+     * @param value Der Wert.
+     * @param variable Die Variable, die den Wert enthält.
+     * @return Dieser Ausdruck.
+     */
+    public Expression replacePureValue(Expression value, VarDeclaration variable) {
+        for (int i = 0; i < args.size(); ++i) {
+            args.set(i, args.get(i).replacePureValue(value, variable));
+        }
+        return this;
+    }
+    
+    /**
+     * Die Methode bestimmt die Methode, die bei einem statisch gebundenen
+     * Aufruf angesprungen wird. Das ist bei Aufrufen über BASE immer der Fall,
+     * ansonsten, wenn die Methode in keiner vom Empfänger abgeleiteten Klasse
+     * überschrieben wird.
+     * @return Die aufgerufene Methode oder null, wenn dynamisch gebunden wird.
+     */
+    MethodDeclaration getStaticTarget() {
+        MethodDeclaration m = (MethodDeclaration) identifier.getDeclaration();
+        if (bindStatic) {
+            return m;
+        } else if (receiverType != null) {
+            return receiverType.getUniqueImplementation(m.getVMTIndex());
+        } else {
+            return null;
+        }
+    }
+
     /**
      * Die Methode generiert den Assembler-Code für diesen Ausdruck. Sie geht 
      * davon aus, dass die Kontextanalyse vorher erfolgreich abgeschlossen wurde.
      * @param code Der Strom, in den die Ausgabe erfolgt.
      */
     public void generateCode(CodeStream code) {
+        generateCode(code, true);
+    }
+    
+    /**
+     * Die Adresse einer lokalen Variablen oder eines Parameters kann in einem 
+     * Register berechnet werden. Attribute werden über {@link AccessExpression}
+     * behandelt, Methodenaufrufe nie in Registern ausgewertet.
+     * @return 1 für lokale Variablen, ansonsten {@link Expression#NOT_IN_REGISTERS NOT_IN_REGISTERS}.
+     */
+    public int getRegisterNeed() {
+        return identifier.getDeclaration() instanceof VarDeclaration 
+                && !((VarDeclaration) identifier.getDeclaration()).isAttribute() ? 1 : NOT_IN_REGISTERS;
+    }
+    
+    /**
+     * Die Methode generiert Code, der die Adresse einer lokalen Variablen in 
+     * einem Register ablegt.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param register Das Register, in dem das Ergebnis abgelegt wird.
+     */
+    public void generateCode(CodeStream code, int register) {
+        VarDeclaration v = (VarDeclaration) identifier.getDeclaration();
+        code.println("; Referenz auf Variable " + identifier.getName());
+        code.println("MRI R" + register + ", " + v.getOffset());
+        code.println("ADD R" + register + ", R3");
+    }
+    
+    /**
+     * Die Methode liefert den Abstand eines Attributs zum Anfang des Objekts.
+     * @return Der Abstand.
+     */
+    int getAttributeOffset() {
+        return ((VarDeclaration) identifier.getDeclaration()).getOffset();
+    }
+    
+    /**
+     * Die Methode generiert für einen Methodenaufruf, dessen Ergebnis unverpackt
+     * zurückgeliefert wird, Code, der den Wert auf dem Stapel hinterlässt.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @return Wurde Code erzeugt?
+     */
+    boolean generateValueCode(CodeStream code) {
+        if (isUnboxedCall()) {
+            generateCode(code, false);
+            return true;
+        } else {
+            return false;
+        }
+    }
+    
+    /**
+     * Die Methode generiert Code, der die Argumente eines Methodenaufrufs auf
+     * dem Stapel ablegt. Parameter, die unverpackt übergeben werden, erhalten
+     * den Wert statt eines Objekts.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     */
+    void generateArgumentCode(CodeStream code) {
+        MethodDeclaration m = (MethodDeclaration) identifier.getDeclaration();
+        for (int i = 0; i < args.size(); ++i) {
+            if (m.getParams().get(i).isUnboxed()) {
+                UnBoxExpression.generateValue(args.get(i), code);
+            } else {
+                args.get(i).generateCode(code);
+            }
+        }
+    }
+    
+    /**
+     * Die Methode generiert den Assembler-Code für diesen Ausdruck.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @param boxResult Soll ein unverpackt zurückgeliefertes Ergebnis verpackt werden?
+     */
+    private void generateCode(CodeStream code, boolean boxResult) {
         code.println(getPosition());
         if (identifier.getDeclaration() instanceof VarDeclaration) {
             VarDeclaration v = (VarDeclaration) identifier.getDeclaration();
@@ -175,30 +431,44 @@ public class VarOrCall extends Expression {
             }
         } else if (identifier.getDeclaration() instanceof MethodDeclaration) {
             MethodDeclaration m = (MethodDeclaration) identifier.getDeclaration();
-            for (Expression a : args) {
-            	a.generateCode(code);
-            }
-            String returnLabel = code.nextLabel();
-            code.println("MRI R5, " + returnLabel);
-            code.println("ADD R2, R1");
-            code.println("MMR (R2), R5 ; Rücksprungadresse auf den Stapel");
-            
-            if (!bindStatic) {
-	            code.println("; Dynamischer Aufruf von " + identifier.getName());
-	            code.println("MRR R6, R2");
-	            code.println("MRI R7, " + (m.getParams().size() + 1) );
-	            code.println("SUB R6, R7");
-	            code.println("MRM R7, (R6)");
-	            code.println("MRM R6, (R7)");
-	            code.println("MRI R7, " + m.getVMTIndex());
-	            code.println("ADD R6, R7");
-	            code.println("MRM R0, (R6)");
+            generateArgumentCode(code);
+            MethodDeclaration target = getStaticTarget();
+            if (inlined) {
+                target.generateInlineCode(code, caller.getInlineVariables(target));
+            } else if (target != null && code.isExtendedMode()) {
+                code.println("; Statischer Aufruf von " + identifier.getName() + (bindStatic ? "" : " (nicht überschrieben)"));
+                code.println("CAL R2, " + target.getSelfType().getIdentifier().getName() + "_" + target.getIdentifier().getName());
             } else {
-            	code.println("; Statischer Aufruf von " + identifier.getName());
-            	code.println("MRI R0, " + m.getSelfType().getIdentifier().getName() + "_" + m.getIdentifier().getName());
+                String returnLabel = code.nextLabel();
+                code.println("MRI R5, " + returnLabel);
+                code.println("ADD R2, R1");
+                code.println("MMR (R2), R5 ; Rücksprungadresse auf den Stapel");
+                
+                if (target != null) {
+                    // Wird die Methode in keiner vom Empfänger abgeleiteten Klasse
+                    // überschrieben, kann auch ohne BASE statisch gebunden werden.
+                    code.println("; Statischer Aufruf von " + identifier.getName() + (bindStatic ? "" : " (nicht überschrieben)"));
+                    code.println("MRI R0, " + target.getSelfType().getIdentifier().getName() + "_" + target.getIdentifier().getName());
+                } else if (m.getParams().size() + 1 < 16) {
+                    code.println("; Dynamischer Aufruf von " + identifier.getName());
+                    code.println("JMT " + (m.getParams().size() + 1) + ", " + m.getVMTIndex());
+                } else {
+                    code.println("; Dynamischer Aufruf von " + identifier.getName());
+                    code.println("MRR R6, R2");
+                    code.println("MRI R7, " + (m.getParams().size() + 1) );
+                    code.println("SUB R6, R7");
+                    code.println("MRM R7, (R6)");
+                    code.println("MRM R6, (R7)");
+                    code.println("MRI R7, " + m.getVMTIndex());
+                    code.println("ADD R6, R7");
+                    code.println("MRM R0, (R6)");
+                }
+                
+                code.println(returnLabel + ":");
+            }
+            if (boxResult && isUnboxedCall()) {
+                BoxExpression.generateBoxCode(getType(), code);
             }
-            
-            code.println(returnLabel + ":");
         } else {
             assert false;
         }
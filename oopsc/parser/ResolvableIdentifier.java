@@ -43,6 +43,14 @@ public class ResolvableIdentifier extends Identifier {
         return declaration;
     }
 
+    /**
+     * Die Klassenmethode vergisst alle bisher vermerkten Bezeichner. Sie wird
+     * benötigt, wenn in einem Prozess mehrere Programme übersetzt werden.
+     */
+    public static void clear() {
+        identifiers.clear();
+    }
+
     /**
      * Die Klassenmethode gibt alle zuordenbaren Bezeichner mit ihrer
      * Quelltextstelle und die Stelle ihrer Vereinbarung aus. Sollte
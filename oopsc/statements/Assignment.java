@@ -1,8 +1,16 @@
 package oopsc.statements;
 
+import java.util.List;
+import java.util.Set;
+
 import oopsc.CompileException;
 import oopsc.declarations.Declarations;
+import oopsc.declarations.VarDeclaration;
+import oopsc.expressions.BinaryExpression;
+import oopsc.expressions.BoxExpression;
 import oopsc.expressions.Expression;
+import oopsc.expressions.LiteralExpression;
+import oopsc.expressions.UnBoxExpression;
 import oopsc.expressions.VarOrCall;
 import oopsc.streams.CodeStream;
 import oopsc.streams.TreeStream;
@@ -58,6 +66,14 @@ public class Assignment extends Statement {
         tree.unindent();
     }
     
+    /**
+     * Liefert die Größe dieser Anweisung als Anzahl der Knoten im Syntaxbaum.
+     * @return Die Größe.
+     */
+    public int size() {
+        return 1 + leftOperand.size() + rightOperand.size();
+    }
+
     /**
      * Durchläuft den Syntaxbaum und wertet konstante Ausdrücke aus 
      * und wendet ein paar Transformationen an.
@@ -67,6 +83,112 @@ public class Assignment extends Statement {
 		rightOperand = rightOperand.optimize();
 	}
 
+    /**
+     * Gibt die bekannten Werte lokaler Variablen an beide Seiten weiter.
+     * Danach ist der Wert der zugewiesenen Variablen bekannt, wenn ihr ein
+     * Literal zugewiesen wird.
+     * @param constants Der Zustand vor der Anweisung.
+     * @return null, die Anweisung bleibt bestehen.
+     */
+    List<Statement> propagateConstants(Constants constants) {
+        rightOperand = rightOperand.propagateConstants(constants.getValues()).optimize();
+        leftOperand = leftOperand.propagateConstants(constants.getValues()).optimize();
+        VarDeclaration variable = DataflowOptimizer.getLocalVariable(leftOperand);
+        if (variable != null) {
+            constants.assign(variable, rightOperand);
+        }
+        return null;
+    }
+
+    /**
+     * Liefert die lokale Variable, der zugewiesen wird.
+     * @return Die Variable oder null, wenn einem Attribut zugewiesen wird.
+     */
+    VarDeclaration getVariable() {
+        return DataflowOptimizer.getLocalVariable(leftOperand);
+    }
+
+    /**
+     * Liefert die Änderung einer lokalen Variablen um ein Literal, wenn die
+     * Zuweisung die Form i := i + c oder i := i - c hat.
+     * @return Die Änderung oder null, wenn die Zuweisung keine solche Form hat.
+     */
+    Integer getStep() {
+        VarDeclaration variable = getVariable();
+        Expression value = rightOperand instanceof BoxExpression 
+                ? ((BoxExpression) rightOperand).getOperand() : rightOperand;
+        if (variable == null || !(value instanceof BinaryExpression)) {
+            return null;
+        }
+        BinaryExpression sum = (BinaryExpression) value;
+        if (!(sum.getLeftOperand() instanceof UnBoxExpression)
+                || ((UnBoxExpression) sum.getLeftOperand()).getReadVariable() != variable
+                || !(sum.getRightOperand() instanceof LiteralExpression)) {
+            return null;
+        }
+        int step = ((LiteralExpression) sum.getRightOperand()).getValue();
+        switch (sum.getOperator()) {
+        case PLUS:
+            return step;
+        case MINUS:
+            return -step;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Trägt die zugewiesene Variable ein, wenn sie lokal ist.
+     * @param definitions Die Menge, in die die Variablen eingetragen werden.
+     */
+    void addDefinitions(Set<VarDeclaration> definitions) {
+        VarDeclaration variable = DataflowOptimizer.getLocalVariable(leftOperand);
+        if (variable != null) {
+            definitions.add(variable);
+        }
+    }
+
+    /**
+     * Trägt die Werte auf beiden Seiten ein.
+     * @param values Die Liste, in die die Teilausdrücke eingetragen werden.
+     * @param deep Sollen alle Werte eingetragen werden?
+     */
+    void addPureValues(List<Expression> values, boolean deep) {
+        leftOperand.addPureValues(values, deep);
+        rightOperand.addPureValues(values, deep);
+    }
+
+    /**
+     * Ersetzt einen Wert auf beiden Seiten.
+     * @param value Der Wert.
+     * @param variable Die Variable, die ihn enthält.
+     */
+    void replacePureValue(Expression value, VarDeclaration variable) {
+        leftOperand = leftOperand.replacePureValue(value, variable);
+        rightOperand = rightOperand.replacePureValue(value, variable);
+    }
+
+    /**
+     * Eine Zuweisung an eine lokale Variable, die danach nicht mehr gelesen
+     * wird, kann entfallen, wenn die rechte Seite keine Seiteneffekte hat.
+     * @param live Die Variablen, die hinter der Anweisung benötigt werden.
+     * @param remove Sollen enthaltene Anweisungen entfernt werden?
+     * @return Kann die Zuweisung entfallen?
+     */
+    boolean removeDeadStores(Set<VarDeclaration> live, boolean remove) {
+        VarDeclaration variable = DataflowOptimizer.getLocalVariable(leftOperand);
+        if (variable != null) {
+            if (!live.contains(variable) && !rightOperand.hasSideEffects()) {
+                return true;
+            }
+            live.remove(variable);
+        } else {
+            leftOperand.addUsedVariables(live);
+        }
+        rightOperand.addUsedVariables(live);
+        return false;
+    }
+
     /**
      * Die Methode generiert den Assembler-Code für diese Anweisung. Sie geht 
      * davon aus, dass die Kontextanalyse vorher erfolgreich abgeschlossen wurde.
@@ -74,6 +196,9 @@ public class Assignment extends Statement {
      */
     public void generateCode(CodeStream code) {
         code.println("; ASSIGNMENT");
+        if (code.isRegisterMode() && generateRegisterCode(code)) {
+            return;
+        }
         rightOperand.generateCode(code);
         leftOperand.generateCode(code);
         code.println("MRM R5, (R2) ; Referenz auf linken Wert vom Stapel nehmen");
@@ -83,4 +208,46 @@ public class Assignment extends Statement {
         code.println("MMR (R5), R6 ; Zuweisen");
     }
 
+    
+    /**
+     * Die Methode generiert den Code für die Zuweisung, wobei beide Seiten 
+     * möglichst in Registern ausgewertet werden. Kann nur eine Seite in Registern
+     * ausgewertet werden, hat sie keine Seiteneffekte. Daher wird dann zuerst die 
+     * andere Seite auf dem Stapel ausgewertet.
+     * @param code Der Strom, in den die Ausgabe erfolgt.
+     * @return Wurde Code erzeugt? Falls nicht, passt keine der beiden Seiten in die Register.
+     */
+    private boolean generateRegisterCode(CodeStream code) {
+        int right = rightOperand.getRegisterNeed();
+        int left = leftOperand.getRegisterNeed();
+        int available = Expression.LAST_REGISTER - Expression.FIRST_REGISTER + 1;
+        String first = "R" + Expression.FIRST_REGISTER;
+        String second = "R" + (Expression.FIRST_REGISTER + 1);
+        if ((left == right ? left + 1 : Math.max(left, right)) <= available) {
+            if (right >= left) {
+                rightOperand.generateCode(code, Expression.FIRST_REGISTER);
+                leftOperand.generateCode(code, Expression.FIRST_REGISTER + 1);
+                code.println("MMR (" + second + "), " + first + " ; Zuweisen");
+            } else {
+                leftOperand.generateCode(code, Expression.FIRST_REGISTER);
+                rightOperand.generateCode(code, Expression.FIRST_REGISTER + 1);
+                code.println("MMR (" + first + "), " + second + " ; Zuweisen");
+            }
+        } else if (rightOperand.fitsInRegisters(code)) {
+            leftOperand.generateCode(code);
+            rightOperand.generateCode(code, Expression.FIRST_REGISTER);
+            code.println("MRM R5, (R2) ; Referenz auf linken Wert vom Stapel nehmen");
+            code.println("SUB R2, R1");
+            code.println("MMR (R5), " + first + " ; Zuweisen");
+        } else if (leftOperand.fitsInRegisters(code)) {
+            rightOperand.generateCode(code);
+            leftOperand.generateCode(code, Expression.FIRST_REGISTER);
+            code.println("MRM R5, (R2) ; Rechten Wert vom Stapel nehmen");
+            code.println("SUB R2, R1");
+            code.println("MMR (" + first + "), R5 ; Zuweisen");
+        } else {
+            return false;
+        }
+        return true;
+    }
 }
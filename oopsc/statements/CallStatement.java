@@ -1,8 +1,12 @@
 package oopsc.statements;
 
+import java.util.List;
+import java.util.Set;
+
 import oopsc.CompileException;
 import oopsc.declarations.ClassDeclaration;
 import oopsc.declarations.Declarations;
+import oopsc.declarations.VarDeclaration;
 import oopsc.expressions.Expression;
 import oopsc.streams.CodeStream;
 import oopsc.streams.TreeStream;
@@ -33,6 +37,14 @@ public class CallStatement extends Statement {
         call.getType().check(ClassDeclaration.VOID_TYPE, call.getPosition());
     }
     
+    /**
+     * Liefert die Größe dieser Anweisung als Anzahl der Knoten im Syntaxbaum.
+     * @return Die Größe.
+     */
+    public int size() {
+        return 1 + call.size();
+    }
+
     /**
      * Durchläuft den Syntaxbaum und wertet konstante Ausdrücke aus 
      * und wendet ein paar Transformationen an.
@@ -41,6 +53,45 @@ public class CallStatement extends Statement {
 		call = call.optimize();		
 	}
 
+    /**
+     * Gibt die bekannten Werte lokaler Variablen an den Aufruf weiter.
+     * @param constants Der Zustand vor der Anweisung.
+     * @return null, die Anweisung bleibt bestehen.
+     */
+    List<Statement> propagateConstants(Constants constants) {
+        call = call.propagateConstants(constants.getValues()).optimize();
+        return null;
+    }
+
+    /**
+     * Trägt die Werte im Aufruf ein.
+     * @param values Die Liste, in die die Teilausdrücke eingetragen werden.
+     * @param deep Sollen alle Werte eingetragen werden?
+     */
+    void addPureValues(List<Expression> values, boolean deep) {
+        call.addPureValues(values, deep);
+    }
+
+    /**
+     * Ersetzt einen Wert im Aufruf.
+     * @param value Der Wert.
+     * @param variable Die Variable, die ihn enthält.
+     */
+    void replacePureValue(Expression value, VarDeclaration variable) {
+        call = call.replacePureValue(value, variable);
+    }
+
+    /**
+     * Die Anweisung benötigt die Variablen, die der Aufruf liest.
+     * @param live Die Variablen, die hinter der Anweisung benötigt werden.
+     * @param remove Sollen enthaltene Anweisungen entfernt werden?
+     * @return false.
+     */
+    boolean removeDeadStores(Set<VarDeclaration> live, boolean remove) {
+        call.addUsedVariables(live);
+        return false;
+    }
+
     /**
      * Die Methode gibt diese Anweisung in einer Baumstruktur aus.
      * @param tree Der Strom, in den die Ausgabe erfolgt.
@@ -0,0 +1,119 @@
+package oopsc.statements;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import oopsc.declarations.VarDeclaration;
+import oopsc.expressions.BoxExpression;
+import oopsc.expressions.Expression;
+import oopsc.expressions.LiteralExpression;
+
+/**
+ * Die Klasse beschreibt für die Konstantenweitergabe den Zustand an einer
+ * Stelle einer Methode: Welche lokalen Variablen haben dort auf allen Wegen
+ * einen bekannten Wert und ist die Stelle überhaupt erreichbar?
+ */
+class Constants {
+    /** Die lokalen Variablen mit bekanntem Wert. */
+    private final HashMap<VarDeclaration, LiteralExpression> values;
+
+    /** Ist die Stelle erreichbar? */
+    private boolean reachable;
+
+    /**
+     * Konstruktor für den Zustand am Anfang einer Methode. Dort ist noch
+     * keine Variable bekannt.
+     */
+    Constants() {
+        this(new HashMap<VarDeclaration, LiteralExpression>(), true);
+    }
+
+    /**
+     * Konstruktor.
+     * @param values Die lokalen Variablen mit bekanntem Wert.
+     * @param reachable Ist die Stelle erreichbar?
+     */
+    private Constants(HashMap<VarDeclaration, LiteralExpression> values, boolean reachable) {
+        this.values = values;
+        this.reachable = reachable;
+    }
+
+    /**
+     * Erzeugt eine Kopie dieses Zustands, z.B. für einen Zweig einer IF-Anweisung.
+     * @return Die Kopie.
+     */
+    Constants copy() {
+        return new Constants(new HashMap<VarDeclaration, LiteralExpression>(values), reachable);
+    }
+
+    /**
+     * Liefert die lokalen Variablen mit bekanntem Wert.
+     * @return Die Zuordnung der Variablen zu ihren Werten.
+     */
+    Map<VarDeclaration, LiteralExpression> getValues() {
+        return values;
+    }
+
+    /**
+     * Vermerkt eine Zuweisung an eine lokale Variable. Bekannt ist der Wert
+     * danach nur, wenn ein verpacktes Literal zugewiesen wurde.
+     * @param variable Die Variable.
+     * @param value Der zugewiesene Ausdruck.
+     */
+    void assign(VarDeclaration variable, Expression value) {
+        if (value instanceof BoxExpression && ((BoxExpression) value).getOperand() instanceof LiteralExpression) {
+            values.put(variable, (LiteralExpression) ((BoxExpression) value).getOperand());
+        } else {
+            values.remove(variable);
+        }
+    }
+
+    /**
+     * Vergisst die Werte der angegebenen Variablen.
+     * @param variables Die Variablen, deren Werte nicht mehr bekannt sind.
+     */
+    void kill(Collection<VarDeclaration> variables) {
+        values.keySet().removeAll(variables);
+    }
+
+    /**
+     * Ist die Stelle erreichbar?
+     * @return Ist sie es?
+     */
+    boolean isReachable() {
+        return reachable;
+    }
+
+    /**
+     * Vermerkt, dass die folgenden Anweisungen nicht erreicht werden.
+     */
+    void setUnreachable() {
+        reachable = false;
+        values.clear();
+    }
+
+    /**
+     * Führt diesen Zustand mit dem Zustand auf einem anderen Weg zusammen, der
+     * an derselben Stelle endet. Danach bleiben nur die Werte bekannt, die auf
+     * beiden Wegen gleich sind. Ein nicht erreichbarer Weg trägt nichts bei.
+     * @param other Der Zustand am Ende des anderen Wegs.
+     */
+    void meet(Constants other) {
+        if (!other.reachable) {
+            return;
+        } else if (!reachable) {
+            values.putAll(other.values);
+            reachable = true;
+            return;
+        }
+        for (Iterator<Map.Entry<VarDeclaration, LiteralExpression>> i = values.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<VarDeclaration, LiteralExpression> entry = i.next();
+            LiteralExpression value = other.values.get(entry.getKey());
+            if (value == null || !value.isSameValue(entry.getValue())) {
+                i.remove();
+            }
+        }
+    }
+}
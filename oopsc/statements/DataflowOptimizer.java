@@ -0,0 +1,223 @@
+package oopsc.statements;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+
+import oopsc.declarations.MethodDeclaration;
+import oopsc.declarations.VarDeclaration;
+import oopsc.expressions.AlgebraicRule;
+import oopsc.expressions.Expression;
+import oopsc.expressions.VarOrCall;
+
+/**
+ * Die Klasse optimiert den Rumpf einer Methode anhand des Datenflusses
+ * zwischen den Anweisungen. Da OOPS nur strukturierte Anweisungen kennt,
+ * werden diese direkt analysiert, statt vorher einen Kontrollflussgraphen
+ * aufzubauen: Am Ende einer IF-Anweisung werden die Ergebnisse beider
+ * Zweige zusammengeführt, bei einer WHILE-Schleife wird die Analyse über
+ * den Rücksprung hinweg fortgesetzt. Die Optimierung besteht aus vier Schritten:
+ * <ul>
+ * <li>Konstantenweitergabe: Lokale Variablen, denen ein Literal zugewiesen
+ *     wurde, werden durch das Literal ersetzt und konstante Ausdrücke
+ *     ausgewertet. Dabei entfallen IF-Zweige und WHILE-Schleifen, deren
+ *     Bedingung konstant ist, und Anweisungen hinter RETURN.</li>
+ * <li>Induktionsvariablen: Produkte von Schleifenzählern mit Literalen
+ *     werden durch Hilfsvariablen ersetzt, die in jedem Durchlauf nur
+ *     noch erhöht werden (abschaltbar als Regel
+ *     {@link AlgebraicRule#INDUCTION_VARIABLES INDUCTION_VARIABLES}).</li>
+ * <li>Gemeinsame Teilausdrücke: Werte, die mehrmals berechnet werden, ohne
+ *     dass sich die beteiligten Variablen dazwischen ändern, werden einmal
+ *     in einer Hilfsvariablen abgelegt. Werte in einer Schleife, deren
+ *     Variablen sich in der Schleife nicht ändern, werden vor der Schleife
+ *     berechnet.</li>
+ * <li>Überflüssige Zuweisungen: Zuweisungen an lokale Variablen, deren Wert
+ *     danach nicht mehr gelesen wird, entfallen, sofern der zugewiesene
+ *     Ausdruck keine Seiteneffekte hat.</li>
+ * </ul>
+ */
+public class DataflowOptimizer {
+    /** Sortiert Ausdrücke absteigend nach ihrer Größe. */
+    private static final Comparator<Expression> LARGEST_FIRST = new Comparator<Expression>() {
+        public int compare(Expression a, Expression b) {
+            return b.size() - a.size();
+        }
+    };
+
+    /**
+     * Optimiert den Rumpf einer Methode. Muss nach der Kontextanalyse
+     * aufgerufen werden.
+     * @param statements Die Anweisungen der Methode.
+     * @param method Die Methode, in der Hilfsvariablen angelegt werden.
+     */
+    public static void optimize(LinkedList<Statement> statements, MethodDeclaration method) {
+        propagateConstants(statements, new Constants());
+        if (AlgebraicRule.INDUCTION_VARIABLES.isEnabled()) {
+            reduceInductionVariables(statements, method);
+        }
+        eliminateCommonSubexpressions(statements, method);
+        removeDeadStores(statements, new HashSet<VarDeclaration>(), true);
+    }
+
+    /**
+     * Liefert die lokale Variable, die ein L-Wert bezeichnet.
+     * @param expression Der L-Wert.
+     * @return Die lokale Variable oder null, wenn der L-Wert ein Attribut ist.
+     */
+    static VarDeclaration getLocalVariable(Expression expression) {
+        return expression instanceof VarOrCall ? ((VarOrCall) expression).getLocalVariable() : null;
+    }
+
+    /**
+     * Gibt die bekannten Werte lokaler Variablen durch eine Anweisungsfolge
+     * weiter. Anweisungen werden dabei ersetzt oder entfernt, wenn sie nicht
+     * erreicht werden.
+     * @param statements Die Anweisungsfolge.
+     * @param constants Der Zustand vor der Anweisungsfolge. Er wird zum Zustand
+     *         dahinter verändert.
+     */
+    static void propagateConstants(LinkedList<Statement> statements, Constants constants) {
+        for (ListIterator<Statement> i = statements.listIterator(); i.hasNext();) {
+            Statement s = i.next();
+            if (!constants.isReachable()) {
+                i.remove();
+                continue;
+            }
+            List<Statement> replacement = s.propagateConstants(constants);
+            if (replacement != null) {
+                i.remove();
+                for (Statement r : replacement) {
+                    i.add(r);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ersetzt in allen Schleifen einer Anweisungsfolge Produkte von
+     * Induktionsvariablen durch Hilfsvariablen und initialisiert diese
+     * jeweils vor der Schleife.
+     * @param statements Die Anweisungsfolge.
+     * @param method Die Methode, in der die Hilfsvariablen angelegt werden.
+     */
+    static void reduceInductionVariables(LinkedList<Statement> statements, MethodDeclaration method) {
+        for (ListIterator<Statement> i = statements.listIterator(); i.hasNext();) {
+            List<Statement> initializations = i.next().reduceInductionVariables(method);
+            if (initializations != null) {
+                i.previous();
+                for (Statement s : initializations) {
+                    i.add(s);
+                }
+                i.next();
+            }
+        }
+    }
+
+    /**
+     * Fasst in einer Anweisungsfolge und allen darin enthaltenen gemeinsame
+     * Teilausdrücke zusammen und zieht schleifeninvariante Werte vor die Schleife.
+     * @param statements Die Anweisungsfolge.
+     * @param method Die Methode, in der die Hilfsvariablen angelegt werden.
+     */
+    static void eliminateCommonSubexpressions(LinkedList<Statement> statements, MethodDeclaration method) {
+        int index = 0;
+        while (index < statements.size()) {
+            if (!factorPureValue(statements, index, method)) {
+                ++index;
+            }
+        }
+        for (Statement s : statements) {
+            s.eliminateCommonSubexpressions(method);
+        }
+    }
+
+    /**
+     * Sucht einen Wert, der bei jeder Ausführung einer Anweisung berechnet wird
+     * und sich lohnt, vorab in einer Hilfsvariablen abgelegt zu werden. Das ist
+     * der Fall, wenn er in dieser und den folgenden Anweisungen, die seine
+     * Variablen nicht verändern, mehrmals vorkommt, oder wenn die Anweisung
+     * eine Schleife ist, die seine Variablen nicht verändert. Eine Zuweisung
+     * an eine seiner Variablen gehört noch dazu, da ihre Ausdrücke vorher
+     * ausgewertet werden.
+     * @param statements Die Anweisungsfolge.
+     * @param index Die Position der Anweisung in der Folge. Wird ein Wert
+     *         gefunden, steht die Zuweisung an die Hilfsvariable danach hier.
+     * @param method Die Methode, in der die Hilfsvariable angelegt wird.
+     * @return Wurde eine Hilfsvariable eingeführt?
+     */
+    private static boolean factorPureValue(LinkedList<Statement> statements, int index, MethodDeclaration method) {
+        Statement first = statements.get(index);
+        ArrayList<Expression> candidates = new ArrayList<Expression>();
+        first.addPureValues(candidates, false);
+        Collections.sort(candidates, LARGEST_FIRST);
+        for (Expression value : candidates) {
+            HashSet<VarDeclaration> used = new HashSet<VarDeclaration>();
+            value.addUsedVariables(used);
+            int end = index;
+            int count = 0;
+            for (Iterator<Statement> i = statements.listIterator(index); i.hasNext();) {
+                Statement s = i.next();
+                HashSet<VarDeclaration> definitions = new HashSet<VarDeclaration>();
+                s.addDefinitions(definitions);
+                boolean changes = !Collections.disjoint(definitions, used);
+                if (changes && !(s instanceof Assignment)) {
+                    break;
+                }
+                count += countPureValue(s, value);
+                ++end;
+                if (changes) {
+                    break;
+                }
+            }
+            if (count > 1 || count > 0 && first instanceof WhileStatement) {
+                VarDeclaration variable = method.addTemporary(value.getType());
+                for (Statement s : statements.subList(index, end)) {
+                    s.replacePureValue(value, variable);
+                }
+                statements.add(index, new Assignment(new VarOrCall(variable, value.getPosition()), value));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Zählt, wie oft ein Wert in einer Anweisung vorkommt.
+     * @param statement Die Anweisung.
+     * @param value Der Wert.
+     * @return Die Anzahl.
+     */
+    private static int countPureValue(Statement statement, Expression value) {
+        ArrayList<Expression> values = new ArrayList<Expression>();
+        statement.addPureValues(values, true);
+        int count = 0;
+        for (Expression v : values) {
+            if (v.isSameValue(value)) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Bestimmt rückwärts durch eine Anweisungsfolge die benötigten Variablen
+     * und entfernt dabei überflüssige Zuweisungen.
+     * @param statements Die Anweisungsfolge.
+     * @param live Die Variablen, die hinter der Anweisungsfolge benötigt werden.
+     *         Die Menge wird zu den Variablen verändert, die davor benötigt werden.
+     * @param remove Sollen Anweisungen entfernt werden? Ansonsten wird nur analysiert.
+     */
+    static void removeDeadStores(LinkedList<Statement> statements, Set<VarDeclaration> live, boolean remove) {
+        for (Iterator<Statement> i = statements.descendingIterator(); i.hasNext();) {
+            if (i.next().removeDeadStores(live, remove) && remove) {
+                i.remove();
+            }
+        }
+    }
+}
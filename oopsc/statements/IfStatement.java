@@ -1,11 +1,17 @@
 package oopsc.statements;
 
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
 
 import oopsc.CompileException;
 import oopsc.declarations.ClassDeclaration;
 import oopsc.declarations.Declarations;
+import oopsc.declarations.MethodDeclaration;
+import oopsc.declarations.VarDeclaration;
 import oopsc.expressions.Expression;
+import oopsc.expressions.LiteralExpression;
 import oopsc.streams.CodeStream;
 import oopsc.streams.TreeStream;
 
@@ -79,6 +85,21 @@ public class IfStatement extends Statement {
         tree.unindent();
     }
 
+    /**
+     * Liefert die Größe dieser Anweisung als Anzahl der Knoten im Syntaxbaum.
+     * @return Die Größe.
+     */
+    public int size() {
+        int size = 1 + condition.size();
+        for (Statement s : thenStatements) {
+            size += s.size();
+        }
+        for (Statement s : elseStatements) {
+            size += s.size();
+        }
+        return size;
+    }
+
     /**
      * Durchläuft den Syntaxbaum und wertet konstante Ausdrücke aus 
      * und wendet ein paar Transformationen an.
@@ -92,21 +113,123 @@ public class IfStatement extends Statement {
     		s.optimize();
     	}
 	}
+
+    /**
+     * Gibt die bekannten Werte lokaler Variablen an die Bedingung und beide
+     * Zweige weiter. Danach sind nur die Werte bekannt, die am Ende beider
+     * Zweige übereinstimmen. Ist die Bedingung konstant, wird die Anweisung
+     * durch den ausgeführten Zweig ersetzt.
+     * @param constants Der Zustand vor der Anweisung.
+     * @return Der ausgeführte Zweig oder null, wenn die Bedingung nicht konstant ist.
+     */
+    List<Statement> propagateConstants(Constants constants) {
+        condition = condition.propagateConstants(constants.getValues()).optimize();
+        if (condition instanceof LiteralExpression) {
+            LinkedList<Statement> branch = ((LiteralExpression) condition).getValue() != 0 
+                    ? thenStatements : elseStatements;
+            DataflowOptimizer.propagateConstants(branch, constants);
+            return branch;
+        }
+        Constants elseConstants = constants.copy();
+        DataflowOptimizer.propagateConstants(thenStatements, constants);
+        DataflowOptimizer.propagateConstants(elseStatements, elseConstants);
+        constants.meet(elseConstants);
+        return null;
+    }
+
+    /**
+     * Trägt die Variablen ein, denen in einem der Zweige zugewiesen wird.
+     * @param definitions Die Menge, in die die Variablen eingetragen werden.
+     */
+    void addDefinitions(Set<VarDeclaration> definitions) {
+        for (Statement s : thenStatements) {
+            s.addDefinitions(definitions);
+        }
+        for (Statement s : elseStatements) {
+            s.addDefinitions(definitions);
+        }
+    }
+
+    /**
+     * Trägt die Werte in der Bedingung ein, bei Bedarf auch die in den Zweigen.
+     * @param values Die Liste, in die die Teilausdrücke eingetragen werden.
+     * @param deep Sollen alle Werte eingetragen werden?
+     */
+    void addPureValues(List<Expression> values, boolean deep) {
+        condition.addPureValues(values, deep);
+        if (deep) {
+            for (Statement s : thenStatements) {
+                s.addPureValues(values, deep);
+            }
+            for (Statement s : elseStatements) {
+                s.addPureValues(values, deep);
+            }
+        }
+    }
+
+    /**
+     * Ersetzt einen Wert in der Bedingung und beiden Zweigen.
+     * @param value Der Wert.
+     * @param variable Die Variable, die ihn enthält.
+     */
+    void replacePureValue(Expression value, VarDeclaration variable) {
+        condition = condition.replacePureValue(value, variable);
+        for (Statement s : thenStatements) {
+            s.replacePureValue(value, variable);
+        }
+        for (Statement s : elseStatements) {
+            s.replacePureValue(value, variable);
+        }
+    }
+
+    /**
+     * Fasst in beiden Zweigen gemeinsame Teilausdrücke zusammen.
+     * @param method Die Methode, in der die Hilfsvariablen angelegt werden.
+     */
+    void eliminateCommonSubexpressions(MethodDeclaration method) {
+        DataflowOptimizer.eliminateCommonSubexpressions(thenStatements, method);
+        DataflowOptimizer.eliminateCommonSubexpressions(elseStatements, method);
+    }
+
+    /**
+     * Ersetzt Produkte von Induktionsvariablen in den Schleifen beider Zweige.
+     * @param method Die Methode, in der die Hilfsvariablen angelegt werden.
+     * @return null.
+     */
+    List<Statement> reduceInductionVariables(MethodDeclaration method) {
+        DataflowOptimizer.reduceInductionVariables(thenStatements, method);
+        DataflowOptimizer.reduceInductionVariables(elseStatements, method);
+        return null;
+    }
+
+    /**
+     * Vor der Anweisung werden die Variablen benötigt, die einer der Zweige
+     * oder die Bedingung benötigt. Sind beide Zweige leer, kann die Anweisung
+     * entfallen, wenn die Bedingung keine Seiteneffekte hat.
+     * @param live Die Variablen, die hinter der Anweisung benötigt werden.
+     * @param remove Sollen enthaltene Anweisungen entfernt werden?
+     * @return Kann die Anweisung entfallen?
+     */
+    boolean removeDeadStores(Set<VarDeclaration> live, boolean remove) {
+        Set<VarDeclaration> elseLive = new HashSet<VarDeclaration>(live);
+        DataflowOptimizer.removeDeadStores(thenStatements, live, remove);
+        DataflowOptimizer.removeDeadStores(elseStatements, elseLive, remove);
+        live.addAll(elseLive);
+        condition.addUsedVariables(live);
+        return thenStatements.isEmpty() && elseStatements.isEmpty() && !condition.hasSideEffects();
+    }
     
     /**
      * Die Methode generiert den Assembler-Code für diese Anweisung. Sie geht 
      * davon aus, dass die Kontextanalyse vorher erfolgreich abgeschlossen wurde.
+     * Ist die Bedingung nicht erfüllt, wird direkt zum ELSE-Zweig gesprungen.
      * @param code Der Strom, in den die Ausgabe erfolgt.
      */
     public void generateCode(CodeStream code) {
         String endLabel = code.nextLabel();
         String elseLabel = code.nextLabel();
         code.println("; IF");
-        condition.generateCode(code);
-        code.println("MRM R5, (R2) ; Bedingung vom Stapel nehmen");
-        code.println("SUB R2, R1");
-        code.println("ISZ R5, R5 ; Wenn 0, dann");
-        code.println("JPC R5, " + elseLabel + " ; Sprung zu ELSE");
+        condition.generateBranch(code, false, elseLabel);
         code.println("; THEN");
         for (Statement s : thenStatements) {
             s.generateCode(code);
@@ -1,8 +1,13 @@
 package oopsc.statements;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
 import oopsc.CompileException;
 import oopsc.declarations.ClassDeclaration;
 import oopsc.declarations.Declarations;
+import oopsc.declarations.VarDeclaration;
 import oopsc.expressions.Expression;
 import oopsc.expressions.NewExpression;
 import oopsc.parser.ResolvableIdentifier;
@@ -54,6 +59,14 @@ public class ReadStatement extends Statement {
         tree.unindent();
     }
 
+    /**
+     * Liefert die Größe dieser Anweisung als Anzahl der Knoten im Syntaxbaum.
+     * @return Die Größe.
+     */
+    public int size() {
+        return 1 + operand.size();
+    }
+
     /**
      * Durchläuft den Syntaxbaum und wertet konstante Ausdrücke aus 
      * und wendet ein paar Transformationen an.
@@ -61,6 +74,67 @@ public class ReadStatement extends Statement {
     public void optimize() {
     	operand = operand.optimize();
 	}
+
+    /**
+     * Gibt die bekannten Werte lokaler Variablen an den Operanden weiter.
+     * Der Wert der eingelesenen Variablen ist danach unbekannt.
+     * @param constants Der Zustand vor der Anweisung.
+     * @return null, die Anweisung bleibt bestehen.
+     */
+    List<Statement> propagateConstants(Constants constants) {
+        operand = operand.propagateConstants(constants.getValues()).optimize();
+        VarDeclaration variable = DataflowOptimizer.getLocalVariable(operand);
+        if (variable != null) {
+            constants.kill(Collections.singleton(variable));
+        }
+        return null;
+    }
+
+    /**
+     * Trägt die eingelesene Variable ein, wenn sie lokal ist.
+     * @param definitions Die Menge, in die die Variablen eingetragen werden.
+     */
+    void addDefinitions(Set<VarDeclaration> definitions) {
+        VarDeclaration variable = DataflowOptimizer.getLocalVariable(operand);
+        if (variable != null) {
+            definitions.add(variable);
+        }
+    }
+
+    /**
+     * Trägt die Werte im Operanden ein.
+     * @param values Die Liste, in die die Teilausdrücke eingetragen werden.
+     * @param deep Sollen alle Werte eingetragen werden?
+     */
+    void addPureValues(List<Expression> values, boolean deep) {
+        operand.addPureValues(values, deep);
+    }
+
+    /**
+     * Ersetzt einen Wert im Operanden.
+     * @param value Der Wert.
+     * @param variable Die Variable, die ihn enthält.
+     */
+    void replacePureValue(Expression value, VarDeclaration variable) {
+        operand = operand.replacePureValue(value, variable);
+    }
+
+    /**
+     * Die eingelesene Variable wird vorher nicht benötigt. Die Anweisung
+     * selbst entfällt nie, da sie die Eingabe verändert.
+     * @param live Die Variablen, die hinter der Anweisung benötigt werden.
+     * @param remove Sollen enthaltene Anweisungen entfernt werden?
+     * @return false.
+     */
+    boolean removeDeadStores(Set<VarDeclaration> live, boolean remove) {
+        VarDeclaration variable = DataflowOptimizer.getLocalVariable(operand);
+        if (variable != null) {
+            live.remove(variable);
+        } else {
+            operand.addUsedVariables(live);
+        }
+        return false;
+    }
     
     /**
      * Die Methode generiert den Assembler-Code für diese Anweisung. Sie geht 
@@ -1,11 +1,16 @@
 package oopsc.statements;
 
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
 
 import oopsc.CompileException;
 import oopsc.declarations.ClassDeclaration;
 import oopsc.declarations.Declarations;
+import oopsc.declarations.MethodDeclaration;
 import oopsc.declarations.VarDeclaration;
+import oopsc.expressions.AccessExpression;
+import oopsc.expressions.BoxExpression;
 import oopsc.expressions.Expression;
 import oopsc.expressions.VarOrCall;
 import oopsc.parser.Position;
@@ -18,11 +23,16 @@ public class ReturnStatement extends Statement {
 	/** Der Ausdruck, der mit diesem Statement zurückgegeben werden soll. */
 	private Expression returnExpression;
 	
-	private Assignment returnAssignment;	
+	
+	/** Die Variable, die das Ergebnis aufnimmt. */
+	private ResolvableIdentifier result;
 	
 	
 	private Position position;
 	
+	/** Die Methode, in der dieses Statement steht. */
+	private MethodDeclaration method;
+	
 	/**
 	 * Konstruktor.
 	 * @param expr Ausdruck, der zurückgegeben werden soll. 
@@ -34,9 +44,10 @@ public class ReturnStatement extends Statement {
 	
 	@Override
 	public void contextAnalysis(Declarations declarations) throws CompileException {
+		method = declarations.getCallerMethod();
 		if (returnExpression != null) {
 			
-			ResolvableIdentifier result = new ResolvableIdentifier("_result", returnExpression.getPosition());
+			result = new ResolvableIdentifier("_result", returnExpression.getPosition());
 			declarations.resolveVarOrMethod(result, declarations.getCallerClass());
 			
 			if(ClassDeclaration.VOID_TYPE.isA(((ClassDeclaration)((VarDeclaration)result.getDeclaration()).getType().getDeclaration()))) {
@@ -45,8 +56,10 @@ public class ReturnStatement extends Statement {
 			
 			returnExpression = returnExpression.contextAnalysis(declarations).box(declarations);
 			
+			// Nur ein frisch verpackter Wert kann auch unverpackt zurückgeliefert werden
+			((VarDeclaration) result.getDeclaration()).addUse(returnExpression instanceof BoxExpression);
+			
 			
-			returnAssignment = new Assignment(new VarOrCall(result,new LinkedList<Expression>()), returnExpression);
 			
 			if(!(((ClassDeclaration)((VarDeclaration)result.getDeclaration()).getType().getDeclaration())).isA(returnExpression.getType())) {
 				throw new CompileException("Ausdruck vom Typ " + ((VarDeclaration)result.getDeclaration()).getType().getName() + " erwartet", returnExpression.getPosition());
@@ -74,6 +87,14 @@ public class ReturnStatement extends Statement {
 	        tree.unindent();
 	}
 
+    /**
+     * Liefert die Größe dieser Anweisung als Anzahl der Knoten im Syntaxbaum.
+     * @return Die Größe.
+     */
+    public int size() {
+        return 1 + (returnExpression != null ? returnExpression.size() : 0);
+    }
+
 	/**
      * Durchläuft den Syntaxbaum und wertet konstante Ausdrücke aus 
      * und wendet ein paar Transformationen an.
@@ -83,11 +104,72 @@ public class ReturnStatement extends Statement {
     		returnExpression = returnExpression.optimize();
 	    }
     }
+
+	/**
+	 * Gibt die bekannten Werte lokaler Variablen an den Rückgabewert weiter.
+	 * Danach folgende Anweisungen werden nicht erreicht.
+	 * @param constants Der Zustand vor der Anweisung.
+	 * @return null, die Anweisung bleibt bestehen.
+	 */
+	List<Statement> propagateConstants(Constants constants) {
+		if (returnExpression != null) {
+			returnExpression = returnExpression.propagateConstants(constants.getValues()).optimize();
+		}
+		constants.setUnreachable();
+		return null;
+	}
+
+	/**
+	 * Trägt die Werte im Rückgabewert ein.
+	 * @param values Die Liste, in die die Teilausdrücke eingetragen werden.
+	 * @param deep Sollen alle Werte eingetragen werden?
+	 */
+	void addPureValues(List<Expression> values, boolean deep) {
+		if (returnExpression != null) {
+			returnExpression.addPureValues(values, deep);
+		}
+	}
+
+	/**
+	 * Ersetzt einen Wert im Rückgabewert.
+	 * @param value Der Wert.
+	 * @param variable Die Variable, die ihn enthält.
+	 */
+	void replacePureValue(Expression value, VarDeclaration variable) {
+		if (returnExpression != null) {
+			returnExpression = returnExpression.replacePureValue(value, variable);
+		}
+	}
+
+	/**
+	 * Nach dem Verlassen der Methode wird keine lokale Variable mehr benötigt,
+	 * davor nur die, die der Rückgabewert liest.
+	 * @param live Die Variablen, die hinter der Anweisung benötigt werden.
+	 * @param remove Sollen enthaltene Anweisungen entfernt werden?
+	 * @return false.
+	 */
+	boolean removeDeadStores(Set<VarDeclaration> live, boolean remove) {
+		live.clear();
+		if (returnExpression != null) {
+			returnExpression.addUsedVariables(live);
+		}
+		return false;
+	}
 	
 	@Override
 	public void generateCode(CodeStream code) {
 		if (returnExpression != null) {
-			returnAssignment.generateCode(code);
+			// Ein statisch gebundener Aufruf kann den Stapelrahmen wiederverwenden
+			if (returnExpression instanceof AccessExpression && method != null
+					&& ((AccessExpression) returnExpression).generateTailCallCode(code, method)) {
+				return;
+			}
+			if (((VarDeclaration) result.getDeclaration()).isUnboxed()) {
+				new Assignment(new VarOrCall(result, new LinkedList<Expression>()), 
+						((BoxExpression) returnExpression).getOperand()).generateCode(code);
+			} else {
+				new Assignment(new VarOrCall(result, new LinkedList<Expression>()), returnExpression).generateCode(code);
+			}
 		}
 		code.println("MRI R0, "+code.getEndlabel());
 	}
@@ -1,7 +1,13 @@
 package oopsc.statements;
 
+import java.util.List;
+import java.util.Set;
+
 import oopsc.CompileException;
 import oopsc.declarations.Declarations;
+import oopsc.declarations.MethodDeclaration;
+import oopsc.declarations.VarDeclaration;
+import oopsc.expressions.Expression;
 import oopsc.streams.CodeStream;
 import oopsc.streams.TreeStream;
 
@@ -32,6 +38,13 @@ public abstract class Statement {
      */
     public abstract void print(TreeStream tree);
 
+    /**
+     * Liefert die Größe dieser Anweisung als Anzahl der Knoten im Syntaxbaum.
+     * Der Optimierer entscheidet danach, ob eine Methode eingebettet wird.
+     * @return Die Größe.
+     */
+    public abstract int size();
+
     /**
      * Durchläuft den Syntaxbaum und wertet konstante Ausdrücke aus 
      * und wendet ein paar Transformationen an.
@@ -40,6 +53,75 @@ public abstract class Statement {
 				
 	}
     
+    /**
+     * Gibt die bekannten Werte lokaler Variablen an die Ausdrücke dieser
+     * Anweisung weiter, wertet diese soweit möglich aus und bestimmt den
+     * Zustand hinter der Anweisung.
+     * @param constants Der Zustand vor der Anweisung. Er wird zum Zustand 
+     *         hinter der Anweisung verändert.
+     * @return Die Anweisungen, durch die diese Anweisung ersetzt wird, oder
+     *         null, wenn sie bestehen bleibt.
+     */
+    abstract List<Statement> propagateConstants(Constants constants);
+    
+    /**
+     * Trägt die lokalen Variablen und Parameter ein, denen diese Anweisung
+     * (auch in enthaltenen Anweisungen) einen Wert zuweist.
+     * @param definitions Die Menge, in die die Variablen eingetragen werden.
+     */
+    void addDefinitions(Set<VarDeclaration> definitions) {
+    }
+    
+    /**
+     * Trägt die zusammengesetzten Werte (siehe {@link Expression#isPureValue()
+     * isPureValue}) in den Ausdrücken dieser Anweisung ein.
+     * @param values Die Liste, in die die Teilausdrücke eingetragen werden.
+     * @param deep Sollen alle Werte eingetragen werden? Ansonsten nur die, die
+     *         bei jeder Ausführung der Anweisung berechnet werden, bei WHILE
+     *         in jedem Schleifendurchlauf.
+     */
+    abstract void addPureValues(List<Expression> values, boolean deep);
+    
+    /**
+     * Ersetzt in dieser und allen enthaltenen Anweisungen einen Wert durch 
+     * das Auslesen einer Variablen, die ihn enthält.
+     * @param value Der Wert.
+     * @param variable Die Variable.
+     */
+    abstract void replacePureValue(Expression value, VarDeclaration variable);
+    
+    /**
+     * Fasst in den in dieser Anweisung enthaltenen Anweisungsfolgen gemeinsame
+     * Teilausdrücke zusammen.
+     * @param method Die Methode, in der die Hilfsvariablen angelegt werden.
+     */
+    void eliminateCommonSubexpressions(MethodDeclaration method) {
+    }
+    
+    /**
+     * Ersetzt in den in dieser Anweisung enthaltenen Schleifen Produkte von
+     * Induktionsvariablen durch Hilfsvariablen (siehe 
+     * {@link oopsc.expressions.AlgebraicRule#INDUCTION_VARIABLES INDUCTION_VARIABLES}).
+     * @param method Die Methode, in der die Hilfsvariablen angelegt werden.
+     * @return Die Anweisungen, die vor dieser Anweisung die Hilfsvariablen
+     *         initialisieren, oder null, wenn keine nötig sind.
+     */
+    List<Statement> reduceInductionVariables(MethodDeclaration method) {
+        return null;
+    }
+    
+    /**
+     * Bestimmt rückwärts die lokalen Variablen, deren Wert vor dieser Anweisung
+     * noch benötigt wird, und entfernt dabei in enthaltenen Anweisungen
+     * Zuweisungen, deren Wert nicht mehr benötigt wird.
+     * @param live Die Variablen, die hinter der Anweisung benötigt werden. Die
+     *         Menge wird zu den Variablen verändert, die davor benötigt werden.
+     * @param remove Sollen enthaltene Anweisungen entfernt werden? Ansonsten
+     *         wird nur analysiert.
+     * @return Kann diese Anweisung selbst entfallen?
+     */
+    abstract boolean removeDeadStores(Set<VarDeclaration> live, boolean remove);
+    
     /**
      * Die Methode generiert den Assembler-Code für diese Anweisung. Sie geht 
      * davon aus, dass die Kontextanalyse vorher erfolgreich abgeschlossen wurde.
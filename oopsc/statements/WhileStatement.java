@@ -1,11 +1,23 @@
 package oopsc.statements;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
 
 import oopsc.CompileException;
 import oopsc.declarations.ClassDeclaration;
 import oopsc.declarations.Declarations;
+import oopsc.declarations.MethodDeclaration;
+import oopsc.declarations.VarDeclaration;
+import oopsc.expressions.BinaryExpression;
 import oopsc.expressions.Expression;
+import oopsc.expressions.LiteralExpression;
+import oopsc.expressions.UnBoxExpression;
+import oopsc.expressions.VarOrCall;
+import oopsc.parser.Position;
+import oopsc.parser.Symbol;
 import oopsc.streams.CodeStream;
 import oopsc.streams.TreeStream;
 
@@ -63,6 +75,18 @@ public class WhileStatement extends Statement {
         tree.unindent();
     }
 
+    /**
+     * Liefert die Größe dieser Anweisung als Anzahl der Knoten im Syntaxbaum.
+     * @return Die Größe.
+     */
+    public int size() {
+        int size = 1 + condition.size();
+        for (Statement s : statements) {
+            size += s.size();
+        }
+        return size;
+    }
+
     /**
      * Durchläuft den Syntaxbaum und wertet konstante Ausdrücke aus 
      * und wendet ein paar Transformationen an.
@@ -73,29 +97,196 @@ public class WhileStatement extends Statement {
     		s.optimize();
     	}
 	}
+
+    /**
+     * Gibt die bekannten Werte lokaler Variablen an Bedingung und Rumpf weiter.
+     * Da die Bedingung auch nach jedem Durchlauf ausgewertet wird, sind dabei
+     * die Werte aller Variablen unbekannt, denen im Rumpf zugewiesen wird.
+     * Dieser Zustand gilt auch nach der Schleife. Eine Schleife, deren 
+     * Bedingung immer falsch ist, entfällt. Ist sie immer wahr, wird die 
+     * Schleife nur über RETURN verlassen.
+     * @param constants Der Zustand vor der Anweisung.
+     * @return Eine leere Liste, wenn die Schleife entfällt, ansonsten null.
+     */
+    List<Statement> propagateConstants(Constants constants) {
+        HashSet<VarDeclaration> definitions = new HashSet<VarDeclaration>();
+        addDefinitions(definitions);
+        constants.kill(definitions);
+        condition = condition.propagateConstants(constants.getValues()).optimize();
+        if (condition instanceof LiteralExpression && ((LiteralExpression) condition).getValue() == 0) {
+            return new LinkedList<Statement>();
+        }
+        DataflowOptimizer.propagateConstants(statements, constants.copy());
+        if (condition instanceof LiteralExpression) {
+            constants.setUnreachable();
+        }
+        return null;
+    }
+
+    /**
+     * Trägt die Variablen ein, denen im Rumpf zugewiesen wird.
+     * @param definitions Die Menge, in die die Variablen eingetragen werden.
+     */
+    void addDefinitions(Set<VarDeclaration> definitions) {
+        for (Statement s : statements) {
+            s.addDefinitions(definitions);
+        }
+    }
+
+    /**
+     * Trägt die Werte in der Bedingung und im Rumpf ein.
+     * @param values Die Liste, in die die Teilausdrücke eingetragen werden.
+     * @param deep Sollen alle Werte eingetragen werden? Ansonsten nur die, 
+     *         die in jedem Durchlauf berechnet werden.
+     */
+    void addPureValues(List<Expression> values, boolean deep) {
+        condition.addPureValues(values, deep);
+        for (Statement s : statements) {
+            s.addPureValues(values, deep);
+        }
+    }
+
+    /**
+     * Ersetzt einen Wert in der Bedingung und im Rumpf.
+     * @param value Der Wert.
+     * @param variable Die Variable, die ihn enthält.
+     */
+    void replacePureValue(Expression value, VarDeclaration variable) {
+        condition = condition.replacePureValue(value, variable);
+        for (Statement s : statements) {
+            s.replacePureValue(value, variable);
+        }
+    }
+
+    /**
+     * Fasst im Rumpf gemeinsame Teilausdrücke zusammen.
+     * @param method Die Methode, in der die Hilfsvariablen angelegt werden.
+     */
+    void eliminateCommonSubexpressions(MethodDeclaration method) {
+        DataflowOptimizer.eliminateCommonSubexpressions(statements, method);
+    }
+
+    /**
+     * Sucht im Rumpf Zuweisungen i := i + c, die in jedem Durchlauf genau 
+     * einmal ausgeführt werden und die einzigen Zuweisungen an i in der 
+     * Schleife sind. Jedes Produkt i * k in der Schleife wird durch eine 
+     * Hilfsvariable t ersetzt, die vor der Schleife mit i * k initialisiert
+     * und direkt nach der Zuweisung an i um c * k erhöht wird. Innere 
+     * Schleifen werden vorher bearbeitet.
+     * @param method Die Methode, in der die Hilfsvariablen angelegt werden.
+     * @return Die Initialisierungen der Hilfsvariablen oder null, wenn keine
+     *         angelegt wurden.
+     */
+    List<Statement> reduceInductionVariables(MethodDeclaration method) {
+        DataflowOptimizer.reduceInductionVariables(statements, method);
+        LinkedList<Statement> initializations = new LinkedList<Statement>();
+        for (int index = 0; index < statements.size(); ++index) {
+            if (!(statements.get(index) instanceof Assignment)) {
+                continue;
+            }
+            Assignment assignment = (Assignment) statements.get(index);
+            Integer step = assignment.getStep();
+            if (step == null) {
+                continue;
+            }
+            HashSet<VarDeclaration> definitions = new HashSet<VarDeclaration>();
+            for (Statement s : statements) {
+                if (s != assignment) {
+                    s.addDefinitions(definitions);
+                }
+            }
+            if (!definitions.contains(assignment.getVariable())) {
+                while (reduceProduct(index, assignment.getVariable(), step, initializations, method)) {
+                    // Die neue Anpassung steht direkt hinter der Zuweisung.
+                    ++index;
+                }
+            }
+        }
+        return initializations.isEmpty() ? null : initializations;
+    }
+
+    /**
+     * Ersetzt alle Vorkommen eines Produkts einer Induktionsvariablen mit einem
+     * Literal in der Schleife durch eine Hilfsvariable.
+     * @param index Die Position der Zuweisung an die Induktionsvariable im Rumpf.
+     * @param variable Die Induktionsvariable.
+     * @param step Die Änderung der Induktionsvariablen in jedem Durchlauf.
+     * @param initializations Die Liste, in die die Initialisierung der 
+     *         Hilfsvariablen eingetragen wird.
+     * @param method Die Methode, in der die Hilfsvariable angelegt wird.
+     * @return Wurde ein Produkt ersetzt?
+     */
+    private boolean reduceProduct(int index, VarDeclaration variable, int step, 
+            List<Statement> initializations, MethodDeclaration method) {
+        ArrayList<Expression> values = new ArrayList<Expression>();
+        addPureValues(values, true);
+        for (Expression value : values) {
+            if (!(value instanceof BinaryExpression)) {
+                continue;
+            }
+            BinaryExpression product = (BinaryExpression) value;
+            if (product.getOperator() != Symbol.Id.TIMES 
+                    || !(product.getLeftOperand() instanceof UnBoxExpression)
+                    || ((UnBoxExpression) product.getLeftOperand()).getReadVariable() != variable
+                    || !(product.getRightOperand() instanceof LiteralExpression)) {
+                continue;
+            }
+            int factor = ((LiteralExpression) product.getRightOperand()).getValue();
+            Position position = product.getPosition();
+            VarDeclaration temporary = method.addTemporary(ClassDeclaration.INT_TYPE);
+            replacePureValue(product, temporary);
+            initializations.add(new Assignment(new VarOrCall(temporary, position), product));
+            statements.add(index + 1, new Assignment(new VarOrCall(temporary, position), 
+                    BinaryExpression.plus(UnBoxExpression.readValue(temporary, position), step * factor)));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Vor der Schleife werden die Variablen benötigt, die danach, in der 
+     * Bedingung oder im Rumpf benötigt werden. Da der Rumpf sich selbst 
+     * wieder benötigt, wird die Analyse wiederholt, bis sich nichts mehr
+     * ändert. Erst danach werden Zuweisungen im Rumpf entfernt.
+     * @param live Die Variablen, die hinter der Anweisung benötigt werden.
+     * @param remove Sollen enthaltene Anweisungen entfernt werden?
+     * @return false.
+     */
+    boolean removeDeadStores(Set<VarDeclaration> live, boolean remove) {
+        condition.addUsedVariables(live);
+        boolean changed;
+        do {
+            Set<VarDeclaration> bodyLive = new HashSet<VarDeclaration>(live);
+            DataflowOptimizer.removeDeadStores(statements, bodyLive, false);
+            changed = live.addAll(bodyLive);
+        } while (changed);
+        if (remove) {
+            DataflowOptimizer.removeDeadStores(statements, new HashSet<VarDeclaration>(live), true);
+        }
+        return false;
+    }
     
     /**
      * Die Methode generiert den Assembler-Code für diese Anweisung. Sie geht 
      * davon aus, dass die Kontextanalyse vorher erfolgreich abgeschlossen wurde.
+     * Die Bedingung steht hinter dem Rumpf und springt zu dessen Anfang zurück, 
+     * solange sie erfüllt ist. Dadurch wird pro Durchlauf nur ein Sprung 
+     * ausgeführt. Vor dem ersten Durchlauf wird einmal zur Bedingung gesprungen.
      * @param code Der Strom, in den die Ausgabe erfolgt.
      */
     public void generateCode(CodeStream code) {
         String whileLabel = code.nextLabel();
-        String endLabel = code.nextLabel();
+        String doLabel = code.nextLabel();
         code.println("; WHILE");
-        code.println(whileLabel + ":");
-        condition.generateCode(code);
-        code.println("MRM R5, (R2) ; Bedingung vom Stapel nehmen");
-        code.println("SUB R2, R1");
-        code.println("ISZ R5, R5 ; Wenn 0, dann");
-        code.println("JPC R5, " + endLabel + " ; Schleife verlassen");
+        code.println("MRI R0, " + whileLabel);
         code.println("; DO");
+        code.println(doLabel + ":");
         for (Statement s : statements) {
             s.generateCode(code);
         }
         code.println("; END WHILE");
-        code.println("MRI R0, " + whileLabel);
-        code.println(endLabel + ":");
+        code.println(whileLabel + ":");
+        condition.generateBranch(code, true, doLabel);
     }
     
 }
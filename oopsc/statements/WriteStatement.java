@@ -1,8 +1,12 @@
 package oopsc.statements;
 
+import java.util.List;
+import java.util.Set;
+
 import oopsc.CompileException;
 import oopsc.declarations.ClassDeclaration;
 import oopsc.declarations.Declarations;
+import oopsc.declarations.VarDeclaration;
 import oopsc.expressions.Expression;
 import oopsc.streams.CodeStream;
 import oopsc.streams.TreeStream;
@@ -45,6 +49,14 @@ public class WriteStatement extends Statement {
         tree.unindent();
     }
     
+    /**
+     * Liefert die Größe dieser Anweisung als Anzahl der Knoten im Syntaxbaum.
+     * @return Die Größe.
+     */
+    public int size() {
+        return 1 + operand.size();
+    }
+
     /**
      * Durchläuft den Syntaxbaum und wertet konstante Ausdrücke aus 
      * und wendet ein paar Transformationen an.
@@ -53,6 +65,45 @@ public class WriteStatement extends Statement {
     	operand = operand.optimize();
 	}
 
+    /**
+     * Gibt die bekannten Werte lokaler Variablen an den auszugebenden Ausdruck weiter.
+     * @param constants Der Zustand vor der Anweisung.
+     * @return null, die Anweisung bleibt bestehen.
+     */
+    List<Statement> propagateConstants(Constants constants) {
+        operand = operand.propagateConstants(constants.getValues()).optimize();
+        return null;
+    }
+
+    /**
+     * Trägt die Werte im auszugebenden Ausdruck ein.
+     * @param values Die Liste, in die die Teilausdrücke eingetragen werden.
+     * @param deep Sollen alle Werte eingetragen werden?
+     */
+    void addPureValues(List<Expression> values, boolean deep) {
+        operand.addPureValues(values, deep);
+    }
+
+    /**
+     * Ersetzt einen Wert im auszugebenden Ausdruck.
+     * @param value Der Wert.
+     * @param variable Die Variable, die ihn enthält.
+     */
+    void replacePureValue(Expression value, VarDeclaration variable) {
+        operand = operand.replacePureValue(value, variable);
+    }
+
+    /**
+     * Die Anweisung benötigt die Variablen, die der auszugebende Ausdruck liest.
+     * @param live Die Variablen, die hinter der Anweisung benötigt werden.
+     * @param remove Sollen enthaltene Anweisungen entfernt werden?
+     * @return false.
+     */
+    boolean removeDeadStores(Set<VarDeclaration> live, boolean remove) {
+        operand.addUsedVariables(live);
+        return false;
+    }
+
     /**
      * Die Methode generiert den Assembler-Code für diese Anweisung. Sie geht 
      * davon aus, dass die Kontextanalyse vorher erfolgreich abgeschlossen wurde.
@@ -60,9 +111,7 @@ public class WriteStatement extends Statement {
      */
     public void generateCode(CodeStream code) {
         code.println("; WRITE");
-        operand.generateCode(code);
-        code.println("MRM R5, (R2) ; Auszugebenden Wert vom Stapel nehmen");
-        code.println("SUB R2, R1");
-        code.println("SYS 1, 5 ; Wert ausgeben");
+        int register = operand.generateCodeToRegister(code);
+        code.println("SYS 1, " + register + " ; Wert ausgeben");
     }
 }
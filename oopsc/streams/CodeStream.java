@@ -2,8 +2,14 @@ package oopsc.streams;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.LinkedHashMap;
+
 import oopsc.parser.Position;
+import oopsvm.Assembler;
+import oopsvm.Image;
+import oopsvm.Instruction;
 
 /**
  * Die Klasse repräsentiert einen Datenstrom, in der Assemblercode des
@@ -12,6 +18,11 @@ import oopsc.parser.Position;
  * verwendet werden, mit denen man auch auf die Konsole schreiben kann.
  * Zusätzlich kann die Klasse eindeutige Marken für den Assemblerquelltext
  * generieren.
+ * <p>
+ * Wird ein {@link Assembler Assembler} angegeben, werden die Zeilen nicht
+ * als Text ausgegeben, sondern direkt in dessen Programmspeicher übertragen.
+ * Ein Umweg über eine Datei und die lexikalische Analyse des Assemblers entfällt.
+ * Die Textausgabe ist dann optional.
  */
 public class CodeStream extends PrintStream {
     /** Das Attribut enthält den gerade gültigen Namensraum (Klasse + Methode). */
@@ -19,6 +30,36 @@ public class CodeStream extends PrintStream {
     
     /** Das Attribut ist ein Zähler zur Generierung eindeutiger Bezeichner. */
     private int counter;
+    
+    /** 
+     * Die Marke, zu der RETURN springt, wenn sie vom Ende der Methode des
+     * Namensraums abweicht, ansonsten null.
+     */
+    private String endLabel;
+    
+    /** 
+     * Die Konstanten, die als Objekte im Datenbereich abgelegt werden sollen.
+     * Zu jeder Marke wird der Klassenname und der Wert gespeichert.
+     */
+    private final LinkedHashMap<String, Object[]> constants = new LinkedHashMap<String, Object[]>();
+    
+    /** Sollen Ausdrücke möglichst in Registern statt auf dem Stapel ausgewertet werden? */
+    private boolean registerMode;
+    
+    /** Darf der erweiterte Befehlssatz der virtuellen Maschine verwendet werden? */
+    private boolean extendedMode;
+    
+    /** Der Optimierer, in dem der Code gesammelt wird, oder null, wenn direkt ausgegeben wird. */
+    private PeepholeOptimizer optimizer;
+    
+    /** Der Assembler, in den der Code direkt übertragen wird, oder null bei Textausgabe. */
+    private Assembler assembler;
+    
+    /** Soll der Code trotz Assembler zusätzlich als Text ausgegeben werden? */
+    private boolean dump;
+    
+    /** Der erste Fehler beim Übertragen in den Assembler oder null. */
+    private Exception linkError;
 
     /**
      * Konstruktor zur Ausgabe auf die Konsole.
@@ -36,6 +77,31 @@ public class CodeStream extends PrintStream {
         super(new File(fileName));
     }
     
+    /**
+     * Konstruktor zur Ausgabe in einen beliebigen Datenstrom.
+     * @param out Der Datenstrom.
+     */
+    public CodeStream(OutputStream out) {
+        super(out);
+    }
+    
+    /**
+     * Konstruktor zur direkten Übertragung des Codes in einen Assembler.
+     * Das fertige Programm liefert {@link #link() link}.
+     * @param assembler Der Assembler.
+     * @param dump Der Datenstrom, in den der Code zusätzlich als Text 
+     *         geschrieben wird, oder null, wenn keine Textausgabe erfolgen soll.
+     */
+    public CodeStream(Assembler assembler, OutputStream dump) {
+        super(dump != null ? dump : new OutputStream() {
+            public void write(int b) {
+            }
+        });
+        this.assembler = assembler;
+        this.dump = dump != null;
+        assembler.begin();
+    }
+    
     /**
      * Die Methode setzt den aktuell gültigen Namensraum.
      * Dieser wird verwendet, um eindeutige Marken zu generieren.
@@ -67,7 +133,255 @@ public class CodeStream extends PrintStream {
         }
     }
     
+    /**
+     * Legt fest, ob Ausdrücke möglichst in den Registern R4 bis R7 statt auf dem
+     * Stapel ausgewertet werden sollen.
+     * @param registerMode Sollen Register verwendet werden?
+     */
+    public void setRegisterMode(boolean registerMode) {
+        this.registerMode = registerMode;
+    }
+    
+    /**
+     * Sollen Ausdrücke möglichst in Registern ausgewertet werden?
+     * @return Ist die Auswertung in Registern eingeschaltet?
+     */
+    public boolean isRegisterMode() {
+        return registerMode;
+    }
+    
+    /**
+     * Legt fest, ob Aufrufe, Rücksprünge und Vergleiche mit den Instruktionen des
+     * erweiterten Befehlssatzes (CAL, RET, JEQ usw.) erzeugt werden sollen.
+     * @param extendedMode Soll der erweiterte Befehlssatz verwendet werden?
+     */
+    public void setExtendedMode(boolean extendedMode) {
+        this.extendedMode = extendedMode;
+    }
+    
+    /**
+     * Darf der erweiterte Befehlssatz der virtuellen Maschine verwendet werden?
+     * @return Ist der erweiterte Befehlssatz eingeschaltet?
+     */
+    public boolean isExtendedMode() {
+        return extendedMode;
+    }
+    
+    /**
+     * Legt fest, dass der Code nicht direkt ausgegeben, sondern zunächst in
+     * einem Peephole-Optimierer gesammelt wird. Die Ausgabe erfolgt dann erst
+     * durch {@link #flushOptimized() flushOptimized}.
+     * @param optimizer Der Optimierer oder null, wenn direkt ausgegeben werden soll.
+     */
+    public void setOptimizer(PeepholeOptimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+    
+    /**
+     * Die Methode gibt eine Zeile aus bzw. sammelt sie im Optimierer.
+     * @param line Die Zeile.
+     */
+    public void println(String line) {
+        if (optimizer != null) {
+            optimizer.add(namespace, line);
+        } else {
+            if (assembler != null) {
+                emit(line);
+            }
+            if (assembler == null || dump) {
+                super.println(line);
+            }
+        }
+    }
+    
+    /**
+     * Die Methode überträgt eine Zeile in den Assembler. Da der Code-Generator
+     * nur die feste Form "Marke:", "#Zeile" bzw. "Befehl Parameter, Parameter"
+     * erzeugt, genügt es, die Zeile an Doppelpunkt und Komma aufzuteilen.
+     * Ein Fehler wird vermerkt und von {@link #link() link} gemeldet.
+     * @param line Die Zeile.
+     */
+    private void emit(String line) {
+        if (linkError != null) {
+            return;
+        }
+        int comment = line.indexOf(';');
+        String text = (comment >= 0 ? line.substring(0, comment) : line).trim();
+        try {
+            int colon = text.indexOf(':');
+            if (text.length() == 0) {
+                return;
+            } else if (text.charAt(0) == '#') {
+                assembler.emitLine(Integer.parseInt(text.substring(1).trim()));
+            } else if (colon >= 0) {
+                assembler.defineLabel(text.substring(0, colon).trim());
+                emit(text.substring(colon + 1));
+            } else {
+                int space = text.indexOf(' ');
+                int comma = text.indexOf(',');
+                String name = text.substring(0, space);
+                String word1 = operand(text.substring(space + 1, comma));
+                String word2 = operand(text.substring(comma + 1));
+                if (name.equals("DAT")) {
+                    if (isNumber(word2)) {
+                        assembler.emitData(Integer.parseInt(word1), Integer.parseInt(word2));
+                    } else {
+                        assembler.emitData(Integer.parseInt(word1), word2);
+                    }
+                } else {
+                    Instruction inst = Instruction.valueOf(name);
+                    if (inst.hasTwoRegisters()) {
+                        emit(inst, word1, word2);
+                    } else if ((inst == Instruction.MRI || inst == Instruction.JPC || inst == Instruction.CAL)
+                            && !isNumber(word2)) {
+                        assembler.emitInstruction(inst, parseOperand(word1), word2);
+                    } else {
+                        assembler.emitInstruction(inst, parseOperand(word1), parseOperand(word2));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            linkError = new Exception("Fehlerhafte Zeile im erzeugten Code: " + line
+                    + (e.getMessage() != null ? " (" + e.getMessage() + ")" : ""));
+        }
+    }
+    
+    /**
+     * Die Methode überträgt eine Instruktion mit zwei Registern und einem
+     * direkten Operanden in den Assembler. Bei MRO und MMO steht der Operand
+     * vor dem geklammerten Basisregister ("-2(R3)"), bei den Vergleichssprüngen
+     * als dritter Parameter.
+     * @param inst Die Instruktion.
+     * @param word1 Der Text vor dem ersten Komma.
+     * @param word2 Der Text hinter dem ersten Komma.
+     */
+    private void emit(Instruction inst, String word1, String word2) {
+        String register1 = word1;
+        String register2 = word2;
+        String immediate;
+        if (inst == Instruction.MRO) {
+            int paren = word2.indexOf('(');
+            immediate = word2.substring(0, paren).trim();
+            register2 = operand(word2.substring(paren));
+        } else if (inst == Instruction.MMO) {
+            int paren = word1.indexOf('(');
+            immediate = word1.substring(0, paren).trim();
+            register1 = operand(word1.substring(paren));
+        } else {
+            int comma = word2.indexOf(',');
+            register2 = word2.substring(0, comma).trim();
+            immediate = word2.substring(comma + 1).trim();
+        }
+        if (isNumber(immediate)) {
+            assembler.emitInstruction(inst, parseOperand(register1), parseOperand(register2), Integer.parseInt(immediate));
+        } else {
+            assembler.emitInstruction(inst, parseOperand(register1), parseOperand(register2), immediate);
+        }
+    }
+
+    /**
+     * Die Methode entfernt Leerzeichen und Klammern um einen Parameter.
+     * @param word Der Parameter, z.B. " (R5)".
+     * @return Der bereinigte Parameter, z.B. "R5".
+     */
+    private static String operand(String word) {
+        word = word.trim();
+        if (word.startsWith("(") && word.endsWith(")")) {
+            word = word.substring(1, word.length() - 1).trim();
+        }
+        return word;
+    }
+    
+    /**
+     * Prüft, ob ein Parameter eine Zahl ist.
+     * @param word Der Parameter.
+     * @return Ist der Parameter eine (evtl. negative) Zahl?
+     */
+    private static boolean isNumber(String word) {
+        return word.length() > 0 && (Character.isDigit(word.charAt(0)) || word.charAt(0) == '-');
+    }
+    
+    /**
+     * Die Methode wandelt einen Parameter, der ein Register oder eine Zahl ist, um.
+     * @param word Der Parameter.
+     * @return Die Nummer des Registers oder die Zahl.
+     */
+    private static int parseOperand(String word) {
+        if (word.length() > 1 && word.charAt(0) == 'R') {
+            return Integer.parseInt(word.substring(1));
+        } else {
+            return Integer.parseInt(word);
+        }
+    }
+    
+    /**
+     * Die Methode schließt die Übertragung in den Assembler ab und liefert
+     * das fertige Programm. Der optimierte Code muss vorher durch 
+     * {@link #flushOptimized() flushOptimized} ausgegeben worden sein.
+     * @return Das Programm.
+     * @throws Exception Der Code konnte nicht übertragen werden oder
+     *         verwendet eine Marke, die nicht definiert wurde.
+     */
+    public Image link() throws Exception {
+        if (assembler == null) {
+            throw new IllegalStateException("Kein Assembler angegeben");
+        } else if (linkError != null) {
+            throw linkError;
+        }
+        flush();
+        return assembler.link();
+    }
+    
+    /**
+     * Die Methode optimiert den gesammelten Code und gibt ihn aus.
+     */
+    public void flushOptimized() {
+        if (optimizer != null) {
+            PeepholeOptimizer o = optimizer;
+            optimizer = null;
+            o.optimize(this);
+            optimizer = o;
+        }
+    }
+    
+    /**
+     * Die Methode liefert die Marke, zu der RETURN springt. Dies ist
+     * normalerweise das Ende der Methode des aktuellen Namensraums.
+     * @return Die Marke.
+     */
     public String getEndlabel() {
-    	return "end_"+namespace;
+    	return endLabel != null ? endLabel : "end_"+namespace;
+    }
+    
+    /**
+     * Die Methode legt fest, dass RETURN zu einer anderen Marke springt.
+     * Dies wird beim Einbetten von Methoden verwendet.
+     * @param endLabel Die Marke oder null für das Ende der aktuellen Methode.
+     */
+    public void setEndlabel(String endLabel) {
+    	this.endLabel = endLabel;
+    }
+    
+    /**
+     * Die Methode liefert die Marke eines konstanten Objekts mit einem bestimmten
+     * Wert. Für jede Kombination aus Klasse und Wert wird nur ein Objekt angelegt.
+     * @param className Der Name der Klasse (Integer oder Boolean).
+     * @param value Der Wert.
+     * @return Die Marke des Objekts.
+     */
+    public String getConstantLabel(String className, int value) {
+        String label = "_" + className + (value < 0 ? "M" + -(long) value : "" + value);
+        if (!constants.containsKey(label)) {
+            constants.put(label, new Object[] {className, value});
+        }
+        return label;
+    }
+    
+    /**
+     * Liefert alle bisher angeforderten konstanten Objekte.
+     * @return Die Zuordnung der Marken zu Klassenname und Wert.
+     */
+    public LinkedHashMap<String, Object[]> getConstants() {
+        return constants;
     }
 }
@@ -0,0 +1,659 @@
+package oopsc.streams;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Die Klasse implementiert einen Peephole-Optimierer für den generierten
+ * Assembler-Code. Statt den Code direkt auszugeben, sammelt ein
+ * {@link CodeStream CodeStream} die Zeilen in diesem Optimierer. Der Optimierer
+ * durchläuft die Zeilen so lange, bis sich nichts mehr ändert, und wendet
+ * dabei folgende Ersetzungen an:
+ * <ul>
+ * <li>Ein Wert, der auf den Stapel gelegt und direkt wieder heruntergenommen
+ *     wird, wird stattdessen von Register zu Register kopiert.</li>
+ * <li>Ein Wert, der in den Speicher geschrieben und direkt wieder von dort
+ *     gelesen wird, wird aus dem Register übernommen.</li>
+ * <li>Konstanten, die mit MRI geladen und danach addiert oder subtrahiert
+ *     werden, werden zusammengefasst oder durch R1 ersetzt.</li>
+ * <li>Sprünge zur direkt folgenden Marke werden entfernt.</li>
+ * <li>Sprünge zu einem unbedingten Sprung werden direkt zu dessen Ziel
+ *     umgeleitet.</li>
+ * <li>Instruktionen hinter einem unbedingten Sprung, die nicht über eine
+ *     Marke erreichbar sind, werden entfernt.</li>
+ * </ul>
+ * Marken und Datenbereiche (DAT) werden nie überschritten, da der Optimierer
+ * nicht weiß, von wo aus sie erreicht werden. Zeilennummern und Kommentare
+ * bleiben erhalten.
+ * <p>
+ * Darf der erweiterte Befehlssatz der virtuellen Maschine verwendet werden,
+ * werden danach die übrig gebliebenen Folgen zum Ablegen und Herunternehmen
+ * von Werten auf dem Stapel durch PSH und POP, das Addieren von Konstanten
+ * durch ADI und Speicherzugriffe mit konstantem Abstand zu einem Register
+ * durch MRO und MMO ersetzt.
+ */
+public class PeepholeOptimizer {
+    /**
+     * Eine Zeile des Assembler-Quelltexts.
+     */
+    private static class Line {
+        /** Der Namensraum (Klasse + Methode), in dem die Zeile erzeugt wurde. */
+        final String namespace;
+
+        /** Der Text der Zeile. Wird bei Änderungen neu erzeugt. */
+        String text;
+
+        /** Die Marke, wenn die Zeile eine Marke definiert, ansonsten null. */
+        String label;
+
+        /** Der Befehl (z.B. MRI oder DAT), wenn die Zeile einen enthält, ansonsten null. */
+        String instruction;
+
+        /** Der erste Parameter. */
+        String param1;
+
+        /** Der zweite Parameter. */
+        String param2;
+
+        /** Der Kommentar der Zeile ohne Semikolon oder null. */
+        String comment;
+
+        /** Wurde die Zeile entfernt? */
+        boolean removed;
+
+        /**
+         * Konstruktor. Zerlegt die Zeile in ihre Bestandteile.
+         * @param namespace Der Namensraum, in dem die Zeile erzeugt wurde.
+         * @param text Der Text der Zeile.
+         */
+        Line(String namespace, String text) {
+            this.namespace = namespace;
+            this.text = text;
+            String content = text;
+            int semicolon = content.indexOf(';');
+            if (semicolon >= 0) {
+                comment = content.substring(semicolon + 1).trim();
+                content = content.substring(0, semicolon);
+            }
+            content = content.trim();
+            if (content.startsWith("#") || content.isEmpty()) {
+                return;
+            } else if (content.endsWith(":")) {
+                label = content.substring(0, content.length() - 1).trim();
+            } else {
+                int space = content.indexOf(' ');
+                int comma = content.indexOf(',');
+                if (space > 0 && comma > space) {
+                    instruction = content.substring(0, space);
+                    param1 = content.substring(space + 1, comma).trim();
+                    param2 = content.substring(comma + 1).trim();
+                }
+            }
+        }
+
+        /**
+         * Ist die Zeile eine Instruktion der Maschine (also keine Marke, kein DAT)?
+         * @return Ist die Zeile eine Instruktion?
+         */
+        boolean isInstruction() {
+            return instruction != null && !instruction.equals("DAT");
+        }
+
+        /**
+         * Prüft, ob die Zeile eine bestimmte Instruktion mit bestimmten Parametern ist.
+         * @param instruction Die Instruktion.
+         * @param param1 Der erste Parameter oder null, wenn er beliebig ist.
+         * @param param2 Der zweite Parameter oder null, wenn er beliebig ist.
+         * @return Passt die Zeile?
+         */
+        boolean is(String instruction, String param1, String param2) {
+            return instruction.equals(this.instruction)
+                    && (param1 == null || param1.equals(this.param1))
+                    && (param2 == null || param2.equals(this.param2));
+        }
+
+        /**
+         * Ist die Zeile ein unbedingter Sprung, d.h. wird R0 beschrieben?
+         * @return Ist die Zeile ein unbedingter Sprung?
+         */
+        boolean isJump() {
+            return isInstruction() && !instruction.equals("JPC") && !instruction.equals("SYS")
+                    && !instruction.equals("MMR") && param1.equals("R0");
+        }
+
+        /**
+         * Ersetzt die Instruktion der Zeile. Der Kommentar bleibt erhalten.
+         * @param instruction Die neue Instruktion.
+         * @param param1 Der neue erste Parameter.
+         * @param param2 Der neue zweite Parameter.
+         */
+        void replace(String instruction, String param1, String param2) {
+            this.instruction = instruction;
+            this.param1 = param1;
+            this.param2 = param2;
+            text = instruction + " " + param1 + ", " + param2 + (comment == null ? "" : " ; " + comment);
+        }
+    }
+
+    /** Die gesammelten Zeilen. */
+    private ArrayList<Line> lines = new ArrayList<Line>();
+
+    /** Sollen die Ersetzungen der Peephole-Optimierung angewendet werden? */
+    private final boolean peephole;
+
+    /** Sollen Instruktionsfolgen durch Instruktionen des erweiterten Befehlssatzes ersetzt werden? */
+    private final boolean extended;
+
+    /** Die Anzahl der ursprünglich erzeugten Instruktionen je Namensraum. */
+    private final LinkedHashMap<String, Integer> generated = new LinkedHashMap<String, Integer>();
+
+    /** Die Anzahl der entfernten Instruktionen je Namensraum. */
+    private final HashMap<String, Integer> removed = new HashMap<String, Integer>();
+
+    /** Die Positionen der Marken in {@link #lines lines}. */
+    private final HashMap<String, Integer> labels = new HashMap<String, Integer>();
+
+    /**
+     * Konstruktor für einen Optimierer, der nur die ursprünglichen Instruktionen verwendet.
+     */
+    public PeepholeOptimizer() {
+        this(true, false);
+    }
+
+    /**
+     * Konstruktor.
+     * @param peephole Sollen die Ersetzungen der Peephole-Optimierung angewendet werden?
+     * @param extended Sollen Instruktionsfolgen durch Instruktionen des erweiterten
+     *         Befehlssatzes ersetzt werden?
+     */
+    public PeepholeOptimizer(boolean peephole, boolean extended) {
+        this.peephole = peephole;
+        this.extended = extended;
+    }
+
+    /**
+     * Die Methode fügt eine Zeile am Ende an.
+     * @param namespace Der Namensraum, in dem die Zeile erzeugt wurde.
+     * @param text Der Text der Zeile.
+     */
+    void add(String namespace, String text) {
+        Line line = new Line(namespace, text);
+        lines.add(line);
+        if (line.isInstruction()) {
+            Integer count = generated.get(namespace);
+            generated.put(namespace, count == null ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * Die Methode optimiert die gesammelten Zeilen und gibt sie dann aus.
+     * Danach ist der Optimierer wieder leer.
+     * @param out Der Strom, in den die Ausgabe erfolgt.
+     */
+    void optimize(PrintStream out) {
+        if (peephole) {
+            rewrite(false);
+        }
+        if (extended) {
+            rewrite(true);
+        }
+        for (Line line : lines) {
+            out.println(line.text);
+        }
+        lines.clear();
+    }
+
+    /**
+     * Die Methode wendet Ersetzungen so lange auf die gesammelten Zeilen an,
+     * bis sich nichts mehr ändert.
+     * @param select Sollen Instruktionen des erweiterten Befehlssatzes ausgewählt
+     *         werden? Ansonsten wird die Peephole-Optimierung durchgeführt.
+     */
+    private void rewrite(boolean select) {
+        boolean changed;
+        do {
+            labels.clear();
+            for (int i = 0; i < lines.size(); ++i) {
+                if (lines.get(i).label != null) {
+                    labels.put(lines.get(i).label, i);
+                }
+            }
+            changed = false;
+            for (int i = 0; i < lines.size(); ++i) {
+                if (lines.get(i).isInstruction() && !lines.get(i).removed) {
+                    changed |= select ? selectAt(i) : optimizeAt(i);
+                }
+            }
+            if (changed) {
+                ArrayList<Line> remaining = new ArrayList<Line>(lines.size());
+                for (Line line : lines) {
+                    if (!line.removed) {
+                        remaining.add(line);
+                    }
+                }
+                lines = remaining;
+            }
+        } while (changed);
+    }
+
+    /**
+     * Die Methode gibt aus, wie viele Instruktionen je Methode entfernt wurden.
+     * @param out Der Strom, in den die Ausgabe erfolgt.
+     */
+    public void printReport(PrintStream out) {
+        int total = 0;
+        int totalRemoved = 0;
+        out.println("Peephole-Optimierung (entfernte Instruktionen):");
+        for (Map.Entry<String, Integer> entry : generated.entrySet()) {
+            Integer count = removed.get(entry.getKey());
+            int r = count == null ? 0 : count;
+            out.println("    " + entry.getKey() + ": " + r + " von " + entry.getValue());
+            total += entry.getValue();
+            totalRemoved += r;
+        }
+        out.println("    Gesamt: " + totalRemoved + " von " + total);
+    }
+
+    /**
+     * Die Methode entfernt eine Instruktion und zählt sie.
+     * @param line Die Zeile mit der Instruktion.
+     */
+    private void remove(Line line) {
+        line.removed = true;
+        Integer count = removed.get(line.namespace);
+        removed.put(line.namespace, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Sucht die nächste Instruktion hinter einer Zeile. Zeilennummern und
+     * Kommentare werden übersprungen, Marken und Daten beenden die Suche.
+     * @param i Die Position der Zeile.
+     * @return Die Position der nächsten Instruktion oder -1, wenn es im selben
+     *         Grundblock keine gibt.
+     */
+    private int next(int i) {
+        for (++i; i < lines.size(); ++i) {
+            Line line = lines.get(i);
+            if (line.label != null || line.instruction != null && !line.isInstruction()) {
+                return -1;
+            } else if (line.isInstruction() && !line.removed) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Versucht, die Ersetzungen auf die Instruktion an einer Position anzuwenden.
+     * @param i Die Position der Instruktion.
+     * @return Wurde etwas geändert?
+     */
+    private boolean optimizeAt(int i) {
+        Line line = lines.get(i);
+        int j = next(i);
+        Line second = j < 0 ? null : lines.get(j);
+
+        if (line.isJump()) {
+            return threadJump(line) | removeJumpToNext(i) | removeUnreachable(i);
+        } else if (line.is("JPC", null, null)) {
+            return threadJump(line) | removeJumpToNext(i);
+        } else if (second == null) {
+            return false;
+        }
+
+        // ADD R2, R1; MMR (R2), Rx; ...; MRM Ry, (R2); SUB R2, R1  ->  ...; MRR Ry, Rx
+        // Dazwischen dürfen nur Instruktionen stehen, die weder den Stapel noch Rx verändern.
+        if (line.is("ADD", "R2", "R1") && second.is("MMR", "(R2)", null) && isDataRegister(second.param2)) {
+            int k = next(j);
+            while (k >= 0 && isIndependent(lines.get(k), second.param2)) {
+                k = next(k);
+            }
+            int l = k < 0 ? -1 : next(k);
+            if (l >= 0 && lines.get(k).is("MRM", null, "(R2)") && lines.get(l).is("SUB", "R2", "R1")
+                    && isDataRegister(lines.get(k).param1)) {
+                remove(line);
+                remove(second);
+                remove(lines.get(l));
+                copy(lines.get(k), second.param2);
+                return true;
+            }
+        }
+
+        // MMR (Ra), Rx; MRM Ry, (Ra)  ->  MMR (Ra), Rx; MRR Ry, Rx
+        if (line.is("MMR", null, null) && second.is("MRM", null, line.param1) && isDataRegister(second.param1)
+                && isDataRegister(line.param2)) {
+            copy(second, line.param2);
+            return true;
+        }
+
+        if (line.is("MRI", null, null) && isNumber(line.param2) && isDataRegister(line.param1)) {
+            int value = Integer.parseInt(line.param2);
+            String register = line.param1;
+
+            // MRI Ra, 0; ADD/SUB Rb, Ra  ->  (nichts)
+            // MRI Ra, 1; ADD/SUB Rb, Ra  ->  ADD/SUB Rb, R1
+            if ((second.is("ADD", null, register) || second.is("SUB", null, register))
+                    && !second.param1.equals(register) && !second.param1.equals("R0") && (value == 0 || value == 1) && isDead(j, register)) {
+                remove(line);
+                if (value == 0) {
+                    remove(second);
+                } else {
+                    second.replace(second.instruction, second.param1, "R1");
+                }
+                return true;
+            }
+
+            // MRI Rb, n; MRI Ra, m; ADD/SUB Rb, Ra  ->  MRI Rb, n+m bzw. n-m
+            int k = next(j);
+            if (k >= 0 && second.is("MRI", null, null) && isNumber(second.param2)
+                    && isDataRegister(second.param1) && !second.param1.equals(register)) {
+                Line third = lines.get(k);
+                if ((third.is("ADD", register, second.param1) || third.is("SUB", register, second.param1))
+                        && isDead(k, second.param1)) {
+                    int other = Integer.parseInt(second.param2);
+                    line.replace("MRI", register, "" + (third.instruction.equals("ADD") ? value + other : value - other));
+                    remove(second);
+                    remove(third);
+                    return true;
+                }
+            }
+
+            // MRI Ra, m; ADD Rb, Ra; MRI Ra, n; ADD Rb, Ra  ->  MRI Ra, m+n; ADD Rb, Ra
+            int l = k < 0 ? -1 : next(k);
+            if (l >= 0 && second.is("ADD", null, register) && !second.param1.equals(register)
+                    && !second.param1.equals("R0")
+                    && lines.get(k).is("MRI", register, null) && isNumber(lines.get(k).param2)
+                    && lines.get(l).is("ADD", second.param1, register) && isDead(l, register)) {
+                line.replace("MRI", register, "" + (value + Integer.parseInt(lines.get(k).param2)));
+                remove(lines.get(k));
+                remove(lines.get(l));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Versucht, an einer Position eine Instruktionsfolge durch eine Instruktion
+     * des erweiterten Befehlssatzes zu ersetzen.
+     * @param i Die Position der ersten Instruktion der Folge.
+     * @return Wurde etwas geändert?
+     */
+    private boolean selectAt(int i) {
+        Line line = lines.get(i);
+        int j = next(i);
+        if (j < 0) {
+            return false;
+        }
+        Line second = lines.get(j);
+
+        // ADD Ra, R1; MMR (Ra), Rx  ->  PSH Ra, Rx
+        if (line.is("ADD", null, "R1") && isPointer(line.param1) && second.is("MMR", "(" + line.param1 + ")", null)
+                && isRegister(second.param2) && !second.param2.equals("R0")) {
+            fuse(line, second, "PSH", line.param1, second.param2);
+            return true;
+        }
+
+        // MRM Rx, (Ra); SUB Ra, R1  ->  POP Rx, Ra
+        if (line.is("MRM", null, null) && isDataRegister(line.param1) && second.is("SUB", null, "R1")
+                && isPointer(second.param1) && line.param2.equals("(" + second.param1 + ")")
+                && !second.param1.equals(line.param1)) {
+            fuse(line, second, "POP", line.param1, second.param1);
+            return true;
+        }
+
+        if (!line.is("MRI", null, null) || !isNumber(line.param2) || !isDataRegister(line.param1)) {
+            return false;
+        }
+        String register = line.param1;
+        int value = Integer.parseInt(line.param2);
+
+        // MRI Rt, n; ADD Rt, Rb bzw. ADD Rb, Rt; MRM Rx, (Rt bzw. Rb)  ->  MRO Rx, n(Rb)
+        // MRI Rt, n; ADD Rt, Rb bzw. ADD Rb, Rt; MMR (Rt bzw. Rb), Rx  ->  MMO n(Rb), Rx
+        // Die Adresse und die Konstante dürfen danach nicht mehr benötigt werden.
+        int k = next(j);
+        if (k >= 0 && second.is("ADD", null, null) && (second.param1.equals(register) || second.param2.equals(register))) {
+            String address = second.param1;
+            String base = address.equals(register) ? second.param2 : second.param1;
+            Line third = lines.get(k);
+            if (isPointer(base) && !base.equals(register)) {
+                if (third.is("MRM", null, "(" + address + ")") && isDataRegister(third.param1)
+                        && (third.param1.equals(address) || isDead(k, address))
+                        && (address.equals(register) || third.param1.equals(register) || isDead(k, register))) {
+                    remove(second);
+                    fuse(line, third, "MRO", third.param1, value + "(" + base + ")");
+                    return true;
+                } else if (third.is("MMR", "(" + address + ")", null) && isRegister(third.param2)
+                        && !third.param2.equals("R0") && !third.param2.equals(address) && !third.param2.equals(register) && isDead(k, address)
+                        && (address.equals(register) || isDead(k, register))) {
+                    remove(second);
+                    fuse(line, third, "MMO", value + "(" + base + ")", third.param2);
+                    return true;
+                }
+            }
+        }
+
+        // MRI Rt, n; ADD/SUB Ra, Rt  ->  ADI Ra, n bzw. -n
+        if ((second.is("ADD", null, register) || second.is("SUB", null, register)) && isPointer(second.param1)
+                && !second.param1.equals(register) && isDead(j, register)) {
+            fuse(line, second, "ADI", second.param1, "" + (second.instruction.equals("ADD") ? value : -value));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Fasst zwei Instruktionen zu einer zusammen. Die erste wird ersetzt, die
+     * zweite entfernt. Hat die erste keinen Kommentar, übernimmt sie den der zweiten.
+     * @param line Die Zeile mit der ersten Instruktion.
+     * @param second Die Zeile mit der zweiten Instruktion.
+     * @param instruction Die neue Instruktion.
+     * @param param1 Der neue erste Parameter.
+     * @param param2 Der neue zweite Parameter.
+     */
+    private void fuse(Line line, Line second, String instruction, String param1, String param2) {
+        if (line.comment == null) {
+            line.comment = second.comment;
+        }
+        remove(second);
+        line.replace(instruction, param1, param2);
+    }
+
+    /**
+     * Ersetzt ein Laden durch ein Kopieren aus einem Register. Ist das
+     * Quellregister das Zielregister, wird die Instruktion entfernt.
+     * @param line Die Zeile mit dem Laden.
+     * @param source Das Register, das den Wert enthält.
+     */
+    private void copy(Line line, String source) {
+        if (line.param1.equals(source)) {
+            remove(line);
+        } else {
+            line.replace("MRR", line.param1, source);
+        }
+    }
+
+    /**
+     * Leitet einen Sprung, dessen Ziel ein unbedingter Sprung an eine Marke ist,
+     * direkt zu dessen Ziel um.
+     * @param line Die Zeile mit dem Sprung.
+     * @return Wurde der Sprung umgeleitet?
+     */
+    private boolean threadJump(Line line) {
+        if (!line.is("MRI", null, null) && !line.is("JPC", null, null)) {
+            return false;
+        }
+        String target = line.param2;
+        HashSet<String> visited = new HashSet<String>();
+        for (;;) {
+            Integer position = labels.get(target);
+            if (position == null || !visited.add(target)) {
+                break;
+            }
+            int i = position;
+            while (i < lines.size() && (lines.get(i).instruction == null || lines.get(i).removed)) {
+                ++i;
+            }
+            if (i < lines.size() && lines.get(i).is("MRI", "R0", null) && !isNumber(lines.get(i).param2)) {
+                target = lines.get(i).param2;
+            } else {
+                break;
+            }
+        }
+        if (!target.equals(line.param2)) {
+            line.replace(line.instruction, line.param1, target);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Entfernt einen Sprung, dessen Ziel eine direkt folgende Marke ist.
+     * @param i Die Position des Sprungs.
+     * @return Wurde der Sprung entfernt?
+     */
+    private boolean removeJumpToNext(int i) {
+        Line line = lines.get(i);
+        if (!line.is("MRI", null, null) && !line.is("JPC", null, null)) {
+            return false;
+        }
+        for (++i; i < lines.size(); ++i) {
+            Line next = lines.get(i);
+            if (line.param2.equals(next.label)) {
+                remove(line);
+                return true;
+            } else if (next.instruction != null && !next.removed) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Entfernt die Instruktionen hinter einem unbedingten Sprung bis zur nächsten
+     * Marke, da sie nie ausgeführt werden können.
+     * @param i Die Position des Sprungs.
+     * @return Wurde etwas entfernt?
+     */
+    private boolean removeUnreachable(int i) {
+        boolean changed = false;
+        for (int j = next(i); j >= 0; j = next(j)) {
+            remove(lines.get(j));
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Prüft, ob der Wert eines Registers hinter einer Instruktion nicht mehr
+     * benötigt wird. Dies ist nur der Fall, wenn das Register im selben
+     * Grundblock überschrieben wird, bevor es gelesen wird.
+     * @param i Die Position der Instruktion.
+     * @param register Das Register.
+     * @return Wird der Wert sicher nicht mehr benötigt?
+     */
+    private boolean isDead(int i, String register) {
+        for (int j = next(i); j >= 0; j = next(j)) {
+            Line line = lines.get(j);
+            String p1 = line.param1;
+            String p2 = line.param2;
+            if (line.is("MRI", null, null)) {
+                if (p1.equals("R0")) {
+                    return false;
+                } else if (p1.equals(register)) {
+                    return true;
+                }
+            } else if (line.is("MRR", null, null) || line.is("MRM", null, null) || line.is("ISZ", null, null)
+                    || line.is("ISP", null, null) || line.is("ISN", null, null)) {
+                if (p2.equals(register) || p2.equals("(" + register + ")") || p1.equals("R0")) {
+                    return false;
+                } else if (p1.equals(register)) {
+                    return true;
+                }
+            } else if (line.is("MMR", null, null) || line.is("ADD", null, null) || line.is("SUB", null, null)
+                    || line.is("MUL", null, null) || line.is("DIV", null, null) || line.is("MOD", null, null)
+                    || line.is("AND", null, null) || line.is("OR", null, null) || line.is("XOR", null, null)) {
+                if (p1.equals(register) || p1.equals("(" + register + ")") || p2.equals(register)
+                        || p1.equals("R0")) {
+                    return false;
+                }
+            } else if (line.is("POP", null, null) || line.is("MRO", null, null)) {
+                if (p2.equals(register) || p2.endsWith("(" + register + ")") || p1.equals("R0")) {
+                    return false;
+                } else if (p1.equals(register)) {
+                    return true;
+                }
+            } else if (line.is("PSH", null, null) || line.is("MMO", null, null) || line.is("ADI", null, null)) {
+                if (p1.equals(register) || p1.endsWith("(" + register + ")") || p2.equals(register)
+                        || p1.equals("R0")) {
+                    return false;
+                }
+            } else {
+                // Sprünge, Systemaufrufe und unbekannte Instruktionen
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Prüft, ob eine Instruktion zwischen dem Ablegen eines Werts auf dem Stapel
+     * und dem Herunternehmen stehen darf, ohne dass sich das Ergebnis ändert, wenn
+     * der Wert stattdessen im Register bleibt. Sie darf dafür weder den Speicher
+     * beschreiben noch R2 benutzen, das Register mit dem Wert nicht verändern und
+     * den Programmfluss nicht beeinflussen.
+     * @param line Die Instruktion.
+     * @param register Das Register, dessen Wert auf dem Stapel abgelegt wurde.
+     * @return Darf die Instruktion dazwischen stehen?
+     */
+    private static boolean isIndependent(Line line, String register) {
+        return (line.is("MRI", null, null) || line.is("MRR", null, null) || line.is("MRM", null, null)
+                || line.is("ADD", null, null) || line.is("SUB", null, null) || line.is("MUL", null, null)
+                || line.is("AND", null, null) || line.is("OR", null, null) || line.is("XOR", null, null)
+                || line.is("ISZ", null, null) || line.is("ISP", null, null) || line.is("ISN", null, null))
+                && isDataRegister(line.param1) && !line.param1.equals(register)
+                && !line.param2.equals("R2") && !line.param2.equals("(R2)");
+    }
+
+    /**
+     * Ist ein Parameter ein Register, das frei beschrieben werden darf, d.h.
+     * nicht R0 (Programmzähler), R1 (immer 1) oder R2 (Stapelzeiger)?
+     * @param param Der Parameter.
+     * @return Ist der Parameter ein solches Register?
+     */
+    private static boolean isDataRegister(String param) {
+        return param.matches("R[0-9]+") && Integer.parseInt(param.substring(1)) > 2;
+    }
+
+    /**
+     * Ist ein Parameter ein Register?
+     * @param param Der Parameter.
+     * @return Ist der Parameter ein Register?
+     */
+    private static boolean isRegister(String param) {
+        return param.matches("R[0-9]+");
+    }
+
+    /**
+     * Ist ein Parameter ein Register, das als Zeiger verändert werden darf,
+     * d.h. weder R0 (Programmzähler) noch R1 (immer 1)?
+     * @param param Der Parameter.
+     * @return Ist der Parameter ein solches Register?
+     */
+    private static boolean isPointer(String param) {
+        return isRegister(param) && Integer.parseInt(param.substring(1)) > 1;
+    }
+
+    /**
+     * Ist ein Parameter eine Zahl (und keine Marke)?
+     * @param param Der Parameter.
+     * @return Ist der Parameter eine Zahl?
+     */
+    private static boolean isNumber(String param) {
+        return param.matches("-?[0-9]+");
+    }
+}
@@ -87,10 +87,8 @@ class AssemblerModel extends Model implements MemoryListener, RegistersListener
             Instruction instruction = VirtualMachine.INSTRUCTIONS[word >> 8 & 0xff];
             int param1 = word >> 4 & 0x0f;
             int param2 = word & 0x0f;
-            if (instruction == Instruction.MRI || instruction == Instruction.JPC) {
-                param2 = memory[instructionAddresses[row] + 1];
-            }
-            return instruction.toString(param1, param2);
+            int immediate = instruction.hasImmediate() ? memory[instructionAddresses[row] + 1] : 0;
+            return instruction.toString(param1, param2, immediate);
         } catch (ArrayIndexOutOfBoundsException e) {
             return String.format("??? (%04x)", word);
         }
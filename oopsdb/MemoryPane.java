@@ -48,14 +48,19 @@ public class MemoryPane extends JScrollPane {
         /** Die Untergrenze des Heaps. */
         private int heap;
 
+        /** Der Speicher. Die Speicherstelle an der Untergrenze des Heaps enthält dessen Ende. */
+        private int[] memory;
+
         /**
          * Kosntruktor
          * @param registers Der Registersatz.
+         * @param memory Der Speicher.
          * @param stack Die Untergrenze des Stacks.
          * @param heap Die Untergrenze des Heaps.
          */
-        Renderer(int[] registers, int stack, int heap) {
+        Renderer(int[] registers, int[] memory, int stack, int heap) {
             this.registers = registers;
+            this.memory = memory;
             this.stack = stack;
             this.heap = heap;
         }
@@ -74,7 +79,7 @@ public class MemoryPane extends JScrollPane {
                  cell.setBackground(STACK_COLOR);
              } else if (address >= stack && address <= registers[2]) {
                  cell.setBackground(FRAME_COLOR);
-             } else if (address >= heap && address <= registers[4]) {
+             } else if (address > heap && heap >= 0 && heap < memory.length && address < memory[heap]) {
                  cell.setBackground(HEAP_COLOR);
              } else {
                  cell.setBackground(Color.WHITE);
@@ -115,7 +120,7 @@ public class MemoryPane extends JScrollPane {
         table.setColumnSelectionAllowed(false);
         table.setCellSelectionEnabled(true);
         table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        Renderer renderer = new Renderer(registers, stack, heap);
+        Renderer renderer = new Renderer(registers, memory, stack, heap);
         renderer.setHorizontalAlignment(JLabel.CENTER);
         table.setDefaultRenderer(Object.class, renderer);
         
@@ -3,7 +3,7 @@ package oopsdb;
 import java.awt.*;
 import java.awt.event.*;
 import javax.swing.*;
-import oopsvm.Assembler;
+import oopsvm.Image;
 import oopsvm.RefreshListener;
 import oopsvm.VirtualMachine;
 
@@ -36,14 +36,14 @@ class OOPSDB implements ActionListener, RefreshListener {
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         
         try {
-            Assembler assembler = new Assembler(false, false);
-            memory = assembler.assemble(assemblerFileName);
+            Image image = Image.load(assemblerFileName, false, false);
+            memory = image.getMemory();
             registers = new int[8];
             vm = new VirtualMachine(memory, registers, false, false, false);
             MemoryModel memoryModel = new MemoryModel(memory, registers);
             MemoryPane memoryPane = new MemoryPane(memoryModel, memory, registers, 
-                    assembler.getLabelAddress("_stack"),
-                    assembler.getLabelAddress("_heap"));
+                    image.getLabelAddress("_stack"),
+                    image.getLabelAddress("_heap"));
             frame.add(memoryPane, sourceFileName == null ? BorderLayout.CENTER : BorderLayout.EAST);
             vm.addMemoryListener(memoryModel);
             vm.addRegistersListener(memoryModel);
@@ -55,8 +55,8 @@ class OOPSDB implements ActionListener, RefreshListener {
             vm.addRefreshListener(registersModel);
             
             AssemblerModel assemblerModel = new AssemblerModel(memory, 
-                    assembler.getInstructionAddresses(), registers);
-            AssemblerPane assemblerPane = new AssemblerPane(assemblerModel, assembler.getInstructionAddresses(), vm);
+                    image.getInstructionAddresses(), registers);
+            AssemblerPane assemblerPane = new AssemblerPane(assemblerModel, image.getInstructionAddresses(), vm);
             frame.add(assemblerPane, BorderLayout.WEST);
             vm.addMemoryListener(assemblerModel);
             vm.addRegistersListener(assemblerModel);
@@ -64,8 +64,8 @@ class OOPSDB implements ActionListener, RefreshListener {
             
             if (sourceFileName != null) {
                 sourceModel = new SourceModel(sourceFileName, 
-                        assembler.getLineAddresses(), registers, memory.length, assemblerPane);
-                SourcePane sourcePane = new SourcePane(sourceModel, assembler.getLineAddresses(), vm);
+                        image.getLineAddresses(), registers, memory.length, assemblerPane);
+                SourcePane sourcePane = new SourcePane(sourceModel, image.getLineAddresses(), vm);
                 frame.add(sourcePane, BorderLayout.CENTER);
                 assemblerModel.setSourcePane(sourcePane);
                 vm.addMemoryListener(sourceModel);
@@ -1,12 +1,19 @@
 package oopsvm;
 
-import java.io.*;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
  * Die Klasse implementiert einen einfachen Assembler, der einen Quelltext
  * aus einer Datei liest und daraus ein Abbild des Hauptspeichers mit dem
- * übersetzen Programm generiert. Syntax einer Quelltextzeile:
+ * übersetzen Programm generiert. Der Quelltext wird vollständig in einen
+ * Zeichenpuffer gelesen und in einem einzigen Durchgang übersetzt. Verweise
+ * auf Marken, die erst später definiert werden, werden vermerkt und am Ende
+ * nachgetragen. Syntax einer Quelltextzeile:
  * <pre>
  * line   ::= instr [ ';' comment ]
  * instr  ::= '#' number
@@ -28,6 +35,20 @@ import java.util.HashMap;
  *          | 'ISN' reg ',' reg
  *          | 'JPC' reg ',' addr
  *          | 'SYS' addr ',' addr
+ *          | 'JMT' addr ',' addr
+ *          | 'PSH' reg ',' reg
+ *          | 'POP' reg ',' reg
+ *          | 'ADI' reg ',' number
+ *          | 'MRO' reg ',' number '(' reg ')'
+ *          | 'MMO' number '(' reg ')' ',' reg
+ *          | 'JEQ' reg ',' reg ',' addr
+ *          | 'JNE' reg ',' reg ',' addr
+ *          | 'JLT' reg ',' reg ',' addr
+ *          | 'JLE' reg ',' reg ',' addr
+ *          | 'JGT' reg ',' reg ',' addr
+ *          | 'JGE' reg ',' reg ',' addr
+ *          | 'CAL' reg ',' addr
+ *          | 'RET' reg ',' number
  *          | 'DAT' number, addr
  * label  ::= ident
  * reg    ::= 'R'number
@@ -43,21 +64,30 @@ public class Assembler {
     /** Die Zuordnung von textuellen Marken zu Speicheradressen. */
     private HashMap<String, Integer> labels;
   
-    /** Der Datenstrom, aus dem der Quelltext gelesen wird. */
-    private InputStreamReader reader;
+    /** Der vollständige Quelltext. */
+    private char[] source;
     
-    /** Das zuletzt gelesenen Zeichen. Wird durch Aufruf von {@link #nextChar() nextChar} aktualisiert. */
-    private int c;
-
-    /** Die aktuell gelesene Zeile wird in diesem Puffer für eine mögliche Ausgabe zwischengespeichert. */
-    private String line;
+    /** Die Anzahl der gültigen Zeichen in {@link #source source}. */
+    private int sourceLength;
+    
+    /** Die Position des nächsten zu lesenden Zeichens im Quelltext. */
+    private int pos;
   
-    /** In dieses Feld wird im zweiten Durchgang das Programm generiert. Im ersten Durchgang ist es null. */
+    /** In dieses Feld wird das Programm generiert. Es wächst bei Bedarf. */
     private int[] output;
 
     /** Die Adresse der nächsten zu beschreibenden Speicherzelle. */
     private int writePos;
     
+    /** Die Speicherstellen, in die noch die Adresse einer Marke eingetragen werden muss. */
+    private int[] patchAddresses;
+    
+    /** Die Marken, deren Adressen in {@link #patchAddresses patchAddresses} eingetragen werden müssen. */
+    private String[] patchLabels;
+    
+    /** Die Anzahl der noch einzutragenden Markenadressen. */
+    private int patchCounter;
+    
     /** Die Anfangsadressen aller Instruktionen. */
     private int[] instructionAddresses;
     
@@ -70,43 +100,39 @@ public class Assembler {
     /** Die Anzahl an Zeilen des OOPS-Programms. */
     private int lineCounter;
 
-    /** Soll eine Bildschirmausgabe während des ersten Durchgangs erfolgen? */
+    /** Soll eine Ausgabe erfolgen, bei der später definierte Marken noch nicht eingetragen sind? */
     private boolean showFirst;
 
-    /** Soll eine Bildschirmausgabe während des zweiten Durchgangs erfolgen? */
+    /** Soll eine Ausgabe erfolgen, bei der Marken aufgelöst sind? */
     private boolean showSecond;
-
-    /** Soll eine Bildschirmausgabe während des aktuellen Durchgangs erfolgen? */
-    private boolean showCode;
-  
-    /**
-     * Die Methode erlaubt, zwischen dem ersten und dem zweiten Assemblierungslauf
-     * zu unterscheiden.
-     * @return Ist der aktuelle Assemblierungsdurchgang der erste?
+    
+    /** 
+     * Für die Ausgabe: Je Instruktion oder DAT die Position im Quelltext,
+     * die Adresse, die Art (1: ein Wort, 2: zwei Wörter, 3: DAT) und bei DAT
+     * die Anzahl der Wörter. 
      */
-    private boolean isFirstPass() {
-        return output == null;
-    }
+    private int[] listing;
+    
+    /** Die Anzahl der Einträge in {@link #listing listing}. */
+    private int listingCounter;
+    
+    /** Die Position der aktuell übersetzten Quelltextzeile für die Ausgabe. */
+    private int listingStart;
     
     /**
-     * Die Methode liest das nächste Zeichen aus der Eingabedatei.
-     * Es wird im Attribut {@link #c c} bereitgestellt.
-     * Wenn während der Assemblierung eine Ausgabe erfolgen soll, werden
-     * zusätzlich die eingelesenen Zeichen im Attribut {@link #line line}
-     * gesammelt und jeweils beim Lesen eines Zeilenendes ausgegeben.
-     * Das ermöglicht es, an anderer Stelle der Ausgabe noch den erzeugten 
-     * Code voranzustellen.
-     * @throws IOException Die Ausnahme wird bei Leseproblemen der Datei erzeugt.
+     * Die Methode überspringt Leerraum und Kommentare.
      */
-    private void nextChar() throws IOException {
-        if (c == '\n') {
-            System.out.print(line);
-            line = "";
-        }
-        c = reader.read();
-        if (showCode) {
-            if (c != -1) {
-                line += (char) c;
+    private void skipWhitespace() {
+        while (pos < sourceLength) {
+            char c = source[pos];
+            if (c == ';') { // Kommentar: ignorieren bis Zeilenende
+                while (pos < sourceLength && source[pos] != '\n') {
+                    ++pos;
+                }
+            } else if (Character.isWhitespace(c)) {
+                ++pos;
+            } else {
+                return;
             }
         }
     }
@@ -116,60 +142,46 @@ public class Assembler {
      * sowie Zeichenketten, die den nicht-Terminalen <i>ident</i> und <i>number</i>
      * aus der oben angegebenen Grammatik entsprechen. Alle Zeichen ab einem Semikolon
      * werden bis zum Zeilenende ignoriert, d.h. als Kommentar behandelt.
+     * Das Token wird direkt aus dem Zeichenpuffer herausgeschnitten.
      * @return Das Token als Zeichenkette.
-     * @throws IOException Die Ausnahme wird bei Leseproblemen der Datei erzeugt.
      * @throws Exception Ein ungültiges Zeichen wurde gelesen.
      */
-    private String readToken() throws IOException, Exception {
-        while (c != -1) {
-            while (c != -1 && Character.isWhitespace((char) c)) {
-                nextChar();
-            }
-        
-            switch (c) {
-            case -1: // Dateiende
-                break;
-            case ',':
-            case ':':
-            case '(':
-            case ')':
-            case '#':
-                String token = "" + (char) c;
-                nextChar();
-                return token;
-                
-            case ';': // Kommentar: ignorieren bis Zeilenende
-                while (c != -1 && c != '\n') {
-                     nextChar();
+    private String readToken() throws Exception {
+        skipWhitespace();
+        if (pos == sourceLength) {
+            return ""; // Dateiende
+        }
+        int start = pos;
+        char c = source[pos];
+        switch (c) {
+        case ',':
+        case ':':
+        case '(':
+        case ')':
+        case '#':
+            ++pos;
+            return String.valueOf(c);
+            
+        default: // number oder ident
+            if (c == '-' || Character.isDigit(c)) {
+                ++pos;
+                while (pos < sourceLength && Character.isDigit(source[pos])) {
+                    ++pos;
                 }
-                break;
-                
-            default: // number oder ident
-                if (c == '-' || Character.isDigit((char) c)) {
-                    String number = "" + (char) c;
-                    nextChar();
-                    while (c != -1 && Character.isDigit((char) c)) {
-                        number += (char) c;
-                        nextChar();
-                    }
-                    if (number.equals("-")) {
-                        throw new Exception("Zahl muss mindestens eine Ziffer haben: -");
-                    }
-                    return number;
-                } else if (c == '_' || Character.isLetter((char) c)) {
-                    String identifier = "" + (char) c;
-                    nextChar();
-                    while (c != -1 && (c == '_' || Character.isLetterOrDigit((char) c))) {
-                        identifier = identifier + (char) c;
-                        nextChar();
-                    }
-                    return identifier;
-                } else {
-                    throw new Exception("Unerwartetes Zeichen: " + (char) c + " (" + c + ")");
+                if (pos - start == 1 && c == '-') {
+                    throw new Exception("Zahl muss mindestens eine Ziffer haben: -");
                 }
+                return new String(source, start, pos - start);
+            } else if (c == '_' || Character.isLetter(c)) {
+                ++pos;
+                while (pos < sourceLength && (source[pos] == '_' || Character.isLetterOrDigit(source[pos]))) {
+                    ++pos;
+                }
+                return new String(source, start, pos - start);
+            } else {
+                throw new Exception("Unerwartetes Zeichen: " + c + " (" + (int) c + ")");
             }
         }
-        return ""; // Dateiende
     }
    
     /**
@@ -179,8 +191,9 @@ public class Assembler {
      * der Parameter kein Register sein und die Zeichenkette enthält eine
      * Zahl, so wird diese direkt zurückgegeben. Enthält die Zeichenkette
      * hingegen einen Bezeichner, so wird die zugeordnete Adresse aus der
-     * Tabelle der definierten Marken entnommen. Das passiert nur im 2.
-     * Assemblierungslauf, im ersten wird stattdessen 0 zurückgeliefert.
+     * Tabelle der definierten Marken entnommen. Ist die Marke noch nicht
+     * definiert, wird 0 geliefert. Marken werden deshalb beim Schreiben
+     * über {@link #writeAddress(String) writeAddress} gesondert behandelt.
      * @param word Der Parameter als Zeichenkette.
      * @param register Soll der Parameter ein Register sein?
      * @return Die dem Parameter entsprechende Zahl.
@@ -199,70 +212,109 @@ public class Assembler {
             } else {
                 throw new Exception("Register erwartet: " + word);
             }
-        } else if (Character.isLetter(word.charAt(0)) || word.charAt(0) == '_') {
-            if (isFirstPass()) {
-                return 0;
-            } else {
-                Integer address = labels.get(word);
-                if (address == null) {
-                    throw new Exception("Marke " + word + " nicht gefunden");
-                } else {
-                    return address;
-                }
-            }
+        } else if (isLabel(word)) {
+            Integer address = labels.get(word);
+            return address == null ? 0 : address;
         } else {
             return Integer.parseInt(word);
         }
     }
+    
+    /**
+     * Ist ein Parameter eine Marke?
+     * @param word Der Parameter als Zeichenkette.
+     * @return Beginnt der Parameter mit einem Buchstaben oder Unterstrich?
+     */
+    private static boolean isLabel(String word) {
+        return Character.isLetter(word.charAt(0)) || word.charAt(0) == '_';
+    }
 
     /**
      * Die Methode schreibt den generierten Code in den Speicher.
-     * Im ersten Assemblierungslauf wird kein Code geschrieben,
-     * sondern nur mitgezählt, wie viel Platz verbraucht würde.
-     * Dadurch lassen sich die Adressen der verwendeten Marken
-     * bestimmen.
+     * Der Speicher wird bei Bedarf vergrößert.
      * @param code Der Code, der in den Speicher geschrieben wird.
      */
     private void writeCode(int code) {
-        if (!isFirstPass())
-            output[writePos] = code;
-        ++writePos;
+        if (writePos >= output.length) {
+            output = Arrays.copyOf(output, Math.max(output.length * 2, writePos + 1));
+        }
+        output[writePos++] = code;
     }
     
     /**
-     * Die Methode erzeugt eine Tabelle, die die Adresse aller
-     * Instruktionen enthält.
-     * Im ersten Assemblierungslauf wird noch nichts geschrieben,
-     * sondern nur mitgezählt, wie viel Platz verbraucht würde.
+     * Die Methode schreibt die Adresse einer Marke in den Speicher. Ist die
+     * Marke noch nicht definiert, wird die Speicherstelle vermerkt, damit die 
+     * Adresse beim Binden nachgetragen werden kann.
+     * @param label Die Marke.
+     */
+    private void writeAddress(String label) {
+        Integer address = labels.get(label);
+        if (address == null) {
+            if (patchCounter == patchAddresses.length) {
+                patchAddresses = Arrays.copyOf(patchAddresses, patchCounter * 2);
+                patchLabels = Arrays.copyOf(patchLabels, patchCounter * 2);
+            }
+            patchAddresses[patchCounter] = writePos;
+            patchLabels[patchCounter++] = label;
+            writeCode(0);
+        } else {
+            writeCode(address);
+        }
+    }
+    
+    /**
+     * Die Methode trägt die Adresse einer Instruktion in die Tabelle aller
+     * Instruktionen ein.
      */
     private void countInstructions() {
-        if(!isFirstPass()) {
-            instructionAddresses[instructionCounter] = writePos;
+        if (instructionCounter == instructionAddresses.length) {
+            instructionAddresses = Arrays.copyOf(instructionAddresses, instructionCounter * 2);
         }
-        ++instructionCounter;
+        instructionAddresses[instructionCounter++] = writePos;
     }
   
     /**
-     * Die Methode erzeugt eine Tabelle, die die Adresse aller
-     * OOPS-Quelltextzeilen enthält.
-     * Im ersten Assemblierungslauf wird noch nichts geschrieben,
-     * sondern nur mitgezählt, wie viele Zeilen es gibt.
+     * Die Methode trägt die aktuelle Adresse in die Tabelle der 
+     * OOPS-Quelltextzeilen ein, falls für die Zeile noch keine kleinere
+     * Adresse eingetragen wurde.
+     * @param line Die Nummer der Zeile.
      */
     private void countLines(int line) {
-        if (isFirstPass()) {
-            lineCounter = Math.max(lineCounter, line);
-        } else if (line > 0 && (lineAddresses[line - 1] == 0 || lineAddresses[line - 1] > writePos)) {
+        if (line > lineAddresses.length) {
+            lineAddresses = Arrays.copyOf(lineAddresses, Math.max(lineAddresses.length * 2, line));
+        }
+        lineCounter = Math.max(lineCounter, line);
+        if (line > 0 && (lineAddresses[line - 1] == 0 || lineAddresses[line - 1] > writePos)) {
             lineAddresses[line - 1] = writePos;
         }
     }
+    
+    /**
+     * Die Methode vermerkt eine Instruktion oder einen Datenbereich für die 
+     * Bildschirmausgabe, falls eine solche erfolgen soll.
+     * @param kind Die Art (1: ein Wort, 2: zwei Wörter, 3: DAT).
+     * @param count Die Anzahl der Wörter bei DAT.
+     */
+    private void list(int kind, int count) {
+        if ((showFirst || showSecond) && listingStart >= 0) {
+            if (listingCounter + 4 > listing.length) {
+                listing = Arrays.copyOf(listing, listing.length * 2);
+            }
+            listing[listingCounter++] = listingStart;
+            listing[listingCounter++] = writePos;
+            listing[listingCounter++] = kind;
+            listing[listingCounter++] = count;
+        }
+    }
   
     /**
      * Die Methode parsiert ein Zeile aus dem Quelltext und generiert den
      * entsprechenden Code. Die Syntax ist oben angegeben.
-     * @throws IOException Die Ausnahme wird bei Leseproblemen der Datei erzeugt.
      * @throws Exception Beim Parsieren ist ein Fehler aufgetreten.
      */
-    private void parseLine() throws IOException, Exception {
+    private void parseLine() throws Exception {
+        skipWhitespace();
+        listingStart = pos;
         String instruction = readToken();
         String word1 = readToken();
         String word2;
@@ -270,21 +322,16 @@ public class Assembler {
         if (instruction.equals("")) { // Dateiende
             return;
         } else if(instruction.equals("#")) { // Zeilennummer
-            countLines(Integer.parseInt(word1));
+            emitLine(Integer.parseInt(word1));
         } else if(word1.equals(":")) { // Marke
-            if (isFirstPass()) {
-                String label = instruction;
-                if (label.charAt(0) != '_' && !Character.isLetter(label.charAt(0)))
-                    throw new Exception("Marke beginnt nicht mit einem Buchstaben: " + label + ":");
-                else if (labels.get(label) == null) {
-                    labels.put(label, writePos);
-                } else {
-                    throw new Exception("Marke " + label + " wurde mehrfach definiert");
-                }
-            } 
+            defineLabel(instruction);
         } else { // Instruktion oder DAT
             try {
                 Instruction inst = Instruction.valueOf(instruction);
+                if (inst.isExtended()) {
+                    parseExtended(inst, word1);
+                    return;
+                }
                 if (inst == Instruction.MMR) {
                     if (!word1.equals("(")) {
                         throw new Exception("Erster Parameter von MMR muss geklammert werden");
@@ -310,21 +357,18 @@ public class Assembler {
                         throw new Exception("Zweiter Parameter von MRM muss geklammert werden");
                     }
                 }
-                int param1 = parseParam(word1, inst != Instruction.SYS);
+                int param1 = parseParam(word1, inst != Instruction.SYS && inst != Instruction.JMT);
                 int param2 = parseParam(word2, inst != Instruction.MRI &&
-                        inst != Instruction.JPC && inst != Instruction.SYS);
-                countInstructions();
-                if(inst == Instruction.MRI || inst == Instruction.JPC) {
-                    if (showCode) {
-                        System.out.format("%04x  %04x %04x  ", writePos, param1 << 4, param2 & 0xffff);
-                    }
-                    writeCode(inst.ordinal() << 8 | param1 << 4);
-                    writeCode(param2);
+                        inst != Instruction.JPC && inst != Instruction.SYS && inst != Instruction.JMT);
+                if ((inst == Instruction.SYS || inst == Instruction.JMT) 
+                        && (isLabel(word1) && !labels.containsKey(word1) 
+                        || isLabel(word2) && !labels.containsKey(word2))) {
+                    throw new Exception("Marken in " + inst + " müssen vorher definiert werden");
+                }
+                if ((inst == Instruction.MRI || inst == Instruction.JPC) && isLabel(word2)) {
+                    emitInstruction(inst, param1, word2);
                 } else {
-                    if (showCode) {
-                        System.out.format("%04x  %04x       ", writePos, inst.ordinal() << 8 | param1 << 4 | param2);
-                    }
-                    writeCode(inst.ordinal() << 8 | param1 << 4 | param2);
+                    emitInstruction(inst, param1, param2);
                 }
             } catch (IllegalArgumentException e) {
                 if (instruction.equals("DAT")) { // DAT?
@@ -335,20 +379,12 @@ public class Assembler {
                     word2 = readToken();
                     int param1 = parseParam(word1, false);
                     int param2 = parseParam(word2, false);
-                    if (showCode) {
-                        System.out.format("%04x  %04x %3s   ", 
-                                writePos, param2 & 0xffff, param1 == 1 ? "" : "...");
-                    }
                     if (Character.isLetter(word1.charAt(0))) {
                         throw new Exception("Erster Parameter von DAT kann keine Marke sein");
-                    } else if (param1 <= 0) {
-                        throw new Exception("Erster Parameter von DAT muss groesser als 0 sein");
-                    } else if (param2 == 0) {
-                        writePos += param1;
+                    } else if (isLabel(word2)) {
+                        emitData(param1, word2);
                     } else {
-                        for (int j = 0; j < param1; ++j) {
-                            writeCode(param2);
-                        }
+                        emitData(param1, param2);
                     }
                 } else { // ansonsten Fehler
                     throw new Exception("Unbekannte Anweisung " + instruction);
@@ -356,42 +392,315 @@ public class Assembler {
             }
         }
     }
+    
+    /**
+     * Die Methode parsiert den Rest einer Zeile mit einer Instruktion des
+     * erweiterten Befehlssatzes und generiert den entsprechenden Code.
+     * @param inst Die Instruktion.
+     * @param word1 Das erste Token hinter der Instruktion.
+     * @throws Exception Beim Parsieren ist ein Fehler aufgetreten.
+     */
+    private void parseExtended(Instruction inst, String word1) throws Exception {
+        String immediate = null;
+        if (inst == Instruction.MMO) {
+            immediate = word1;
+            word1 = readBase(inst);
+        }
+        expect(",", "Komma erwartet");
+        String word2 = readToken();
+        if (inst == Instruction.MRO) {
+            immediate = word2;
+            word2 = readBase(inst);
+        } else if (inst.isCompareAndJump()) {
+            expect(",", "Komma erwartet");
+            immediate = readToken();
+        } else if (inst != Instruction.PSH && inst != Instruction.POP && inst != Instruction.MMO) {
+            immediate = word2;
+            word2 = null;
+        }
+        int param1 = parseParam(word1, true);
+        boolean label = immediate != null && !immediate.isEmpty() && isLabel(immediate);
+        if (label && !inst.isCompareAndJump() && inst != Instruction.CAL) {
+            throw new Exception("Zahl erwartet in " + inst + ": " + immediate);
+        } else if (word2 == null) {
+            if (label) {
+                emitInstruction(inst, param1, immediate);
+            } else {
+                emitInstruction(inst, param1, parseParam(immediate, false));
+            }
+        } else if (immediate == null) {
+            emitInstruction(inst, param1, parseParam(word2, true));
+        } else if (label) {
+            emitInstruction(inst, param1, parseParam(word2, true), immediate);
+        } else {
+            emitInstruction(inst, param1, parseParam(word2, true), parseParam(immediate, false));
+        }
+    }
 
     /**
-     * Die Methode führt einen Assemblierungsdurchgang aus.
-     * Im ersten Durchgang wird dabei im Attribut {@link #writePos writePos}
-     * lediglich die Größe des benötigten Speichers ermittelt. Im zweiten
-     * Durchgang wird der Speicher im Attribut {@link #output output}
-     * tatsächlich gefüllt.
-     * @param fileName Der Name des Quelltexts.
-     * @throws FileNotFoundException Der Quelltext existiert nicht.
-     * @throws IOException Die Ausnahme wird bei Leseproblemen der Datei erzeugt.
-     * @throws Exception Beim Assemblieren ist ein Fehler aufgetreten.
+     * Die Methode liest das geklammerte Basisregister von MRO und MMO.
+     * @param inst Die Instruktion für die Fehlermeldung.
+     * @return Das Register als Zeichenkette.
+     * @throws Exception Das Register ist nicht geklammert.
      */
-    private void pass(String fileName) 
-            throws FileNotFoundException, IOException, Exception {
-        FileInputStream stream = new FileInputStream(fileName);
-        try {
-            reader = new InputStreamReader(stream, "UTF-8");
-            line = "";
-            nextChar();
-            writePos = 0;
-            instructionCounter = 0;
-            while (c != -1) {
-                parseLine();
+    private String readBase(Instruction inst) throws Exception {
+        expect("(", "Basisregister von " + inst + " muss geklammert werden");
+        String register = readToken();
+        expect(")", "Basisregister von " + inst + " muss geklammert werden");
+        return register;
+    }
+
+    /**
+     * Die Methode liest ein bestimmtes Token.
+     * @param token Das erwartete Token.
+     * @param message Die Fehlermeldung, falls ein anderes Token folgt.
+     * @throws Exception Ein anderes Token wurde gelesen.
+     */
+    private void expect(String token, String message) throws Exception {
+        if (!readToken().equals(token)) {
+            throw new Exception(message);
+        }
+    }
+
+    /**
+     * Die Methode bereitet das Erzeugen eines neuen Programms vor. Danach kann 
+     * es über die Methoden emit... und {@link #defineLabel(String) defineLabel}
+     * direkt erzeugt werden, ohne dass ein Quelltext gelesen werden muss.
+     * Abgeschlossen wird es durch {@link #link() link}.
+     */
+    public void begin() {
+        labels = new HashMap<String, Integer>();
+        output = new int[Math.max(16, sourceLength / 8)];
+        writePos = 0;
+        patchAddresses = new int[16];
+        patchLabels = new String[16];
+        patchCounter = 0;
+        instructionAddresses = new int[Math.max(16, sourceLength / 16)];
+        instructionCounter = 0;
+        lineAddresses = new int[16];
+        lineCounter = 0;
+        listing = new int[64];
+        listingCounter = 0;
+        listingStart = -1;
+    }
+    
+    /**
+     * Die Methode definiert eine Marke an der aktuellen Adresse.
+     * @param label Der Name der Marke.
+     * @throws Exception Der Name ist ungültig oder die Marke wurde bereits definiert.
+     */
+    public void defineLabel(String label) throws Exception {
+        if (label.isEmpty() || label.charAt(0) != '_' && !Character.isLetter(label.charAt(0))) {
+            throw new Exception("Marke beginnt nicht mit einem Buchstaben: " + label + ":");
+        } else if (labels.get(label) == null) {
+            labels.put(label, writePos);
+        } else {
+            throw new Exception("Marke " + label + " wurde mehrfach definiert");
+        }
+    }
+    
+    /**
+     * Die Methode vermerkt, dass der Code ab der aktuellen Adresse zu einer 
+     * Zeile im OOPS-Quelltext gehört.
+     * @param line Die Nummer der Zeile.
+     */
+    public void emitLine(int line) {
+        countLines(line);
+    }
+    
+    /**
+     * Die Methode erzeugt eine Instruktion. Bei MRI, JPC, ADI, CAL und RET ist der
+     * zweite Parameter eine Zahl, ansonsten ein Register, bei SYS und JMT beides Zahlen.
+     * @param inst Die Instruktion.
+     * @param param1 Der erste Parameter.
+     * @param param2 Der zweite Parameter.
+     * @throws IllegalArgumentException Die Instruktion hat drei Parameter.
+     */
+    public void emitInstruction(Instruction inst, int param1, int param2) {
+        if (inst.hasTwoRegisters()) {
+            throw new IllegalArgumentException("Instruktion hat drei Parameter: " + inst);
+        }
+        countInstructions();
+        if (inst.hasImmediate()) {
+            list(2, 0);
+            writeCode(inst.ordinal() << 8 | param1 << 4);
+            writeCode(param2);
+        } else {
+            list(1, 0);
+            writeCode(inst.ordinal() << 8 | param1 << 4 | param2);
+        }
+    }
+    
+    /**
+     * Die Methode erzeugt eine Instruktion MRI, JPC oder CAL, deren zweiter Parameter
+     * die Adresse einer Marke ist. Die Marke darf auch erst später definiert werden.
+     * @param inst Die Instruktion (MRI, JPC oder CAL).
+     * @param param1 Das Register.
+     * @param label Die Marke.
+     * @throws IllegalArgumentException Die Instruktion ist weder MRI, JPC noch CAL.
+     */
+    public void emitInstruction(Instruction inst, int param1, String label) {
+        if (inst != Instruction.MRI && inst != Instruction.JPC && inst != Instruction.CAL) {
+            throw new IllegalArgumentException("Nur MRI, JPC und CAL erlauben Marken: " + inst);
+        }
+        countInstructions();
+        list(2, 0);
+        writeCode(inst.ordinal() << 8 | param1 << 4);
+        writeAddress(label);
+    }
+
+    /**
+     * Die Methode erzeugt eine Instruktion mit zwei Registern und einem direkten
+     * Operanden im zweiten Wort (MRO, MMO und die Vergleichssprünge).
+     * @param inst Die Instruktion.
+     * @param param1 Das erste Register.
+     * @param param2 Das zweite Register.
+     * @param immediate Der direkte Operand.
+     * @throws IllegalArgumentException Die Instruktion hat keine drei Parameter.
+     */
+    public void emitInstruction(Instruction inst, int param1, int param2, int immediate) {
+        if (!inst.hasTwoRegisters()) {
+            throw new IllegalArgumentException("Instruktion hat keine drei Parameter: " + inst);
+        }
+        countInstructions();
+        list(2, 0);
+        writeCode(inst.ordinal() << 8 | param1 << 4 | param2);
+        writeCode(immediate);
+    }
+
+    /**
+     * Die Methode erzeugt einen Vergleichssprung, dessen Ziel die Adresse einer
+     * Marke ist. Die Marke darf auch erst später definiert werden.
+     * @param inst Der Vergleichssprung (JEQ, JNE, JLT, JLE, JGT oder JGE).
+     * @param param1 Das erste Register.
+     * @param param2 Das zweite Register.
+     * @param label Die Marke.
+     * @throws IllegalArgumentException Die Instruktion ist kein Vergleichssprung.
+     */
+    public void emitInstruction(Instruction inst, int param1, int param2, String label) {
+        if (!inst.isCompareAndJump()) {
+            throw new IllegalArgumentException("Nur Vergleichssprünge erlauben drei Parameter mit Marke: " + inst);
+        }
+        countInstructions();
+        list(2, 0);
+        writeCode(inst.ordinal() << 8 | param1 << 4 | param2);
+        writeAddress(label);
+    }
+    
+    /**
+     * Die Methode erzeugt einen Datenbereich, in dem alle Wörter denselben Wert haben.
+     * @param count Die Anzahl der Wörter.
+     * @param value Der Wert.
+     * @throws Exception Die Anzahl ist nicht positiv.
+     */
+    public void emitData(int count, int value) throws Exception {
+        if (count <= 0) {
+            throw new Exception("Erster Parameter von DAT muss groesser als 0 sein");
+        }
+        list(3, count);
+        if (value == 0) {
+            writePos += count;
+            if (writePos > output.length) {
+                output = Arrays.copyOf(output, Math.max(output.length * 2, writePos));
             }
-            if (showCode && !line.equals("")) {
-                 System.out.println(line);
+        } else {
+            for (int j = 0; j < count; ++j) {
+                writeCode(value);
             }
-        } finally {
-            stream.close();
+        }
+    }
+    
+    /**
+     * Die Methode erzeugt einen Datenbereich, in dem alle Wörter die Adresse
+     * einer Marke enthalten. Die Marke darf auch erst später definiert werden.
+     * @param count Die Anzahl der Wörter.
+     * @param label Die Marke.
+     * @throws Exception Die Anzahl ist nicht positiv.
+     */
+    public void emitData(int count, String label) throws Exception {
+        if (count <= 0) {
+            throw new Exception("Erster Parameter von DAT muss groesser als 0 sein");
+        }
+        list(3, count);
+        for (int j = 0; j < count; ++j) {
+            writeAddress(label);
+        }
+    }
+    
+    /**
+     * Die Methode schließt das Erzeugen eines Programms ab. Dabei werden die
+     * Adressen von Marken eingetragen, die erst nach ihrer Verwendung definiert wurden.
+     * @return Das fertige Programm.
+     * @throws Exception Eine verwendete Marke wurde nicht definiert.
+     */
+    public Image link() throws Exception {
+        output = Arrays.copyOf(output, writePos);
+        instructionAddresses = Arrays.copyOf(instructionAddresses, instructionCounter);
+        lineAddresses = Arrays.copyOf(lineAddresses, lineCounter);
+        
+        for (int i = 0; i < patchCounter; ++i) {
+            Integer address = labels.get(patchLabels[i]);
+            if (address == null) {
+                throw new Exception("Marke " + patchLabels[i] + " nicht gefunden");
+            }
+            output[patchAddresses[i]] = address;
+        }
+        patchCounter = 0;
+        
+        // Lücken bei den Startadressen von Zeilen so füllen, dass
+        // immer auf die vorherige, eingetragene Zeile verwiesen wird.
+        int last = 0;
+        for (int i = 0; i < lineAddresses.length; ++i) {
+            if (lineAddresses[i] == 0) {
+                lineAddresses[i] = last;
+            } else {
+                last = lineAddresses[i];
+            }
+        }
+        return getImage();
+    }
+    
+    /**
+     * Die Methode gibt den Quelltext zusammen mit den Adressen und dem 
+     * generierten Code aus.
+     * @param memory Der Speicher, aus dem der Code entnommen wird.
+     */
+    private void printListing(int[] memory) {
+        int entry = 0;
+        int lineStart = 0;
+        while (lineStart < sourceLength) {
+            int lineEnd = lineStart;
+            while (lineEnd < sourceLength && source[lineEnd] != '\n') {
+                ++lineEnd;
+            }
+            StringBuilder line = new StringBuilder();
+            while (entry < listingCounter && listing[entry] <= lineEnd) {
+                int address = listing[entry + 1];
+                switch (listing[entry + 2]) {
+                case 1:
+                    line.append(String.format("%04x  %04x       ", address, memory[address]));
+                    break;
+                case 2:
+                    line.append(String.format("%04x  %04x %04x  ", 
+                            address, memory[address] & 0xff, memory[address + 1] & 0xffff));
+                    break;
+                default:
+                    line.append(String.format("%04x  %04x %3s   ", 
+                            address, memory[address] & 0xffff, listing[entry + 3] == 1 ? "" : "..."));
+                }
+                entry += 4;
+            }
+            line.append(source, lineStart, lineEnd - lineStart);
+            System.out.println(line);
+            lineStart = lineEnd + 1;
         }
     }
 
     /**
      * Konstruktor.
-     * @param showFirst Soll eine Bildschirmausgabe während des ersten Durchgangs erfolgen?
-     * @param showSecond Soll eine Bildschirmausgabe während des zweiten Durchgangs erfolgen?
+     * @param showFirst Soll eine Bildschirmausgabe erfolgen, bei der später
+     *         definierte Marken noch nicht eingetragen sind?
+     * @param showSecond Soll eine Bildschirmausgabe des fertigen Programms erfolgen?
      */
     public Assembler(boolean showFirst, boolean showSecond) {
         this.showFirst = showFirst;
@@ -408,25 +717,32 @@ public class Assembler {
      */
     public int[] assemble(String fileName) 
             throws FileNotFoundException, IOException, Exception {
-        labels = new HashMap<String, Integer>();
-        output = null;
-        showCode = showFirst;
-        pass(fileName);
-        output = new int[writePos];
-        instructionAddresses = new int[instructionCounter];
-        lineAddresses = new int[lineCounter];
-        showCode = showSecond;
-        pass(fileName);
-        
-        // Lücken bei den Startadressen von Zeilen so füllen, dass
-        // immer auf die vorherige, eingetragene Zeile verwiesen wird.
-        int last = 0;
-        for (int i = 0; i < lineAddresses.length; ++i) {
-            if (lineAddresses[i] == 0) {
-                lineAddresses[i] = last;
-            } else {
-                last = lineAddresses[i];
+        InputStreamReader reader = new InputStreamReader(new FileInputStream(fileName), "UTF-8");
+        try {
+            source = new char[8192];
+            sourceLength = 0;
+            for (int n; (n = reader.read(source, sourceLength, source.length - sourceLength)) != -1;) {
+                sourceLength += n;
+                if (sourceLength == source.length) {
+                    source = Arrays.copyOf(source, source.length * 2);
+                }
             }
+        } finally {
+            reader.close();
+        }
+        
+        begin();
+        pos = 0;
+        while (pos < sourceLength) {
+            parseLine();
+        }
+        listingStart = -1;
+        if (showFirst) {
+            printListing(Arrays.copyOf(output, writePos));
+        }
+        link();
+        if (showSecond) {
+            printListing(output);
         }
         return output;
     }
@@ -460,4 +776,14 @@ public class Assembler {
     public int[] getLineAddresses() {
         return lineAddresses;
     }
+    
+    /**
+     * Liefert das Ergebnis des Assemblierens als Abbild, das z.B. in eine
+     * Binärdatei geschrieben werden kann.
+     * Diese Information steht erst nach dem Assemblieren zur Verfügung.
+     * @return Das Abbild mit Speicher, Marken, Instruktions- und Zeilenadressen.
+     */
+    public Image getImage() {
+        return new Image(output, labels, instructionAddresses, lineAddresses);
+    }
 }
@@ -0,0 +1,176 @@
+package oopsvm;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Die Klasse führt viele Programme nebenläufig in einem Prozess aus. Jedes
+ * Programm wird in einer eigenen virtuellen Maschine mit eigenem Hauptspeicher,
+ * Registersatz und eigenen Ein- und Ausgabekanälen im Produktionsmodus ausgeführt.
+ * Die Eingabe eines Programms wird aus der gleichnamigen Datei mit der Endung
+ * .in gelesen, falls diese existiert. Die Ausgabe wird in die gleichnamige Datei
+ * mit der Endung .out im Ergebnisverzeichnis geschrieben. Tritt ein Fehler auf,
+ * wird seine Meldung wie bei OOPSVM an die Ausgabe angehängt.
+ * <p>
+ * Beispiel:
+ * <pre>
+ * BatchRunner runner = new BatchRunner(4);
+ * int[] exitCodes = runner.run(fileNames, new File("ergebnisse"));
+ * </pre>
+ */
+public class BatchRunner {
+    /** Die Anzahl der Threads, auf denen die Programme ausgeführt werden. */
+    private final int threads;
+
+    /** Sollen die Programme vorab in JVM-Bytecode übersetzt werden? */
+    private boolean jvm;
+
+    /** Ab wie vielen Sprüngen an eine Adresse wird zur Laufzeit übersetzt (0: nie)? */
+    private int jitThreshold;
+
+    /**
+     * Konstruktor.
+     * @param threads Die Anzahl der Threads, auf denen die Programme ausgeführt werden.
+     */
+    public BatchRunner(int threads) {
+        this.threads = Math.max(threads, 1);
+    }
+
+    /**
+     * Legt fest, ob die Programme vor der Ausführung in JVM-Bytecode übersetzt werden (wie OOPSVM -j).
+     * @param jvm Soll übersetzt werden?
+     */
+    public void setJvm(boolean jvm) {
+        this.jvm = jvm;
+    }
+
+    /**
+     * Legt fest, ab wie vielen Sprüngen an den Anfang eines Blocks dieser zur
+     * Laufzeit übersetzt wird (wie OOPSVM -t).
+     * @param jitThreshold Die Anzahl der Sprünge oder 0, wenn nie übersetzt werden soll.
+     */
+    public void setJitThreshold(int jitThreshold) {
+        this.jitThreshold = jitThreshold;
+    }
+
+    /**
+     * Die Methode führt alle Programme aus und wartet, bis sie beendet sind.
+     * @param fileNames Die Namen der Dateien mit den Programmen (Assembler-Quelltext
+     *        oder binäres Abbild).
+     * @param resultDirectory Das Verzeichnis für die Ergebnisdateien. Es wird bei Bedarf angelegt.
+     * @return Der Rückgabewert je Programm in der Reihenfolge der Dateinamen: 0, wenn es
+     *         fehlerfrei lief, sonst 1.
+     * @throws Exception Die Ergebnisdateien können nicht angelegt werden oder die
+     *         Ausführung wurde unterbrochen.
+     */
+    public int[] run(List<String> fileNames, File resultDirectory) throws Exception {
+        if (!resultDirectory.isDirectory() && !resultDirectory.mkdirs()) {
+            throw new Exception("Ergebnisverzeichnis " + resultDirectory + " kann nicht angelegt werden");
+        }
+        HashSet<String> names = new HashSet<String>();
+        for (String fileName : fileNames) {
+            if (!names.add(baseName(fileName))) {
+                throw new Exception("Mehrere Programme mit demselben Namen: " + baseName(fileName));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(fileNames.size(), 1)));
+        try {
+            ArrayList<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (final String fileName : fileNames) {
+                final File result = new File(resultDirectory, baseName(fileName) + ".out");
+                results.add(executor.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        return runJob(fileName, result);
+                    }
+                }));
+            }
+            int[] exitCodes = new int[results.size()];
+            for (int i = 0; i < exitCodes.length; ++i) {
+                try {
+                    exitCodes[i] = results.get(i).get();
+                } catch (ExecutionException e) {
+                    throw new Exception(fileNames.get(i) + ": " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+            return exitCodes;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Die Methode lädt ein Programm und führt es in einer eigenen virtuellen Maschine aus.
+     * @param fileName Der Name der Datei mit dem Programm.
+     * @param result Die Datei, in die die Ausgabe geschrieben wird.
+     * @return 0, wenn das Programm fehlerfrei lief, sonst 1.
+     * @throws Exception Die Ergebnisdatei kann nicht geschrieben werden.
+     */
+    private int runJob(String fileName, File result) throws Exception {
+        File inputFile = new File(fileName.substring(0, fileName.length() - extension(fileName).length()) + ".in");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(result));
+        try {
+            InputStream in = inputFile.isFile() ? new FileInputStream(inputFile) : new ByteArrayInputStream(new byte[0]);
+            try {
+                Console console = new Console(in, out, Console.DEFAULT_BUFFER_SIZE, false);
+                try {
+                    Image image = Image.load(fileName, false, false);
+                    int[] registers = new int[8];
+                    VirtualMachine vm = new VirtualMachine(image.getMemory(), registers, false, false, false);
+                    if (jvm) {
+                        vm.setJvmProgram(new JvmProgram(image, registers.length));
+                    }
+                    vm.setJitThreshold(jitThreshold);
+                    vm.setConsole(console);
+                    vm.runProduction();
+                    return 0;
+                } catch (Exception e) {
+                    console.flush();
+                    PrintStream messages = new PrintStream(out);
+                    messages.println(e.getMessage());
+                    messages.flush();
+                    return 1;
+                }
+            } finally {
+                in.close();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Liefert den Dateinamen eines Programms ohne Verzeichnis und Endung.
+     * @param fileName Der Name der Datei mit dem Programm.
+     * @return Der Name ohne Verzeichnis und Endung.
+     */
+    private static String baseName(String fileName) {
+        String name = new File(fileName).getName();
+        return name.substring(0, name.length() - extension(name).length());
+    }
+
+    /**
+     * Liefert die Endung eines Dateinamens.
+     * @param fileName Der Dateiname.
+     * @return Die Endung einschließlich des Punkts oder eine leere Zeichenkette.
+     */
+    private static String extension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > fileName.lastIndexOf(File.separatorChar) && dot > fileName.lastIndexOf('/')
+                ? fileName.substring(dot) : "";
+    }
+}
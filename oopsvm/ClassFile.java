@@ -0,0 +1,509 @@
+package oopsvm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Die Klasse erzeugt eine einfache JVM-Klassendatei im Speicher. Unterstützt
+ * werden nur die Elemente, die der {@link JvmTranslator JvmTranslator} benötigt:
+ * ein Konstantenpool mit Klassen, Feld- und Methodenreferenzen sowie Zahlen,
+ * Methoden mit Code und Sprungmarken. Die Klassen werden im Format von Java 5
+ * (Version 49) erzeugt, so dass die JVM sie ohne StackMapTable prüft.
+ */
+class ClassFile {
+    /** Die Version des Klassenformats (Java 5). */
+    private static final int VERSION = 49;
+
+    /** Die Zugriffsrechte. */
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    /** Die benutzten Befehle der JVM. */
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int IALOAD = 0x2e;
+    static final int ISTORE = 0x36;
+    static final int ASTORE = 0x3a;
+    static final int IASTORE = 0x4f;
+    static final int IADD = 0x60;
+    static final int ISUB = 0x64;
+    static final int IMUL = 0x68;
+    static final int IDIV = 0x6c;
+    static final int IREM = 0x70;
+    static final int IAND = 0x7e;
+    static final int IOR = 0x80;
+    static final int IXOR = 0x82;
+    static final int IINC = 0x84;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int IF_ICMPLT = 0xa1;
+    static final int IF_ICMPGE = 0xa2;
+    static final int GOTO = 0xa7;
+    static final int TABLESWITCH = 0xaa;
+    static final int LOOKUPSWITCH = 0xab;
+    static final int IRETURN = 0xac;
+    static final int RETURN = 0xb1;
+    static final int GETFIELD = 0xb4;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int ARRAYLENGTH = 0xbe;
+
+    /** Eine Sprungmarke im Code einer Methode. */
+    static class Label {
+        /** Die Position im Code oder -1, solange die Marke nicht gesetzt wurde. */
+        private int position = -1;
+
+        /** Die Verweise, die beim Setzen der Marke nachgetragen werden. */
+        private final ArrayList<int[]> fixups = new ArrayList<int[]>();
+    }
+
+    /** Der Code einer Methode. */
+    class Code {
+        /** Der erzeugte Code. */
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        /** Die Einträge der Methode ohne Code und Attribute. */
+        private final int access;
+        private final int name;
+        private final int descriptor;
+
+        /** Die maximale Stapeltiefe. */
+        private final int maxStack;
+
+        /** Die Anzahl der lokalen Variablen inklusive this und Parametern. */
+        private final int maxLocals;
+
+        /** Der fertige Code, sobald die Methode abgeschlossen ist. */
+        private byte[] code;
+
+        /** Die Verweise auf gesetzte Marken: Befehlsposition, Position des Offsets, Breite, Ziel. */
+        private final ArrayList<int[]> fixups = new ArrayList<int[]>();
+
+        /**
+         * Konstruktor.
+         * @param access Die Zugriffsrechte.
+         * @param name Der Name der Methode.
+         * @param descriptor Die Signatur der Methode.
+         * @param maxStack Die maximale Stapeltiefe.
+         * @param maxLocals Die Anzahl der lokalen Variablen.
+         */
+        private Code(int access, String name, String descriptor, int maxStack, int maxLocals) {
+            this.access = access;
+            this.name = utf8(name);
+            this.descriptor = utf8(descriptor);
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        /**
+         * Liefert die aktuelle Länge des Codes.
+         * @return Die Länge in Bytes.
+         */
+        int size() {
+            return bytes.size();
+        }
+
+        /**
+         * Fügt einen Befehl ohne Operanden an.
+         * @param opcode Der Befehl.
+         */
+        void op(int opcode) {
+            bytes.write(opcode);
+        }
+
+        /**
+         * Fügt einen Befehl mit einer lokalen Variablen als Operand an.
+         * @param opcode ILOAD, ISTORE, ALOAD oder ASTORE.
+         * @param local Der Index der lokalen Variablen (höchstens 255).
+         */
+        void var(int opcode, int local) {
+            bytes.write(opcode);
+            bytes.write(local);
+        }
+
+        /**
+         * Addiert eine Konstante auf eine lokale Variable.
+         * @param local Der Index der lokalen Variablen (höchstens 255).
+         * @param value Die Konstante (-128 bis 127).
+         */
+        void iinc(int local, int value) {
+            bytes.write(IINC);
+            bytes.write(local);
+            bytes.write(value);
+        }
+
+        /**
+         * Legt eine Zahl mit dem kürzesten passenden Befehl auf den Stapel.
+         * @param value Die Zahl.
+         */
+        void push(int value) {
+            if (value >= -1 && value <= 5) {
+                bytes.write(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                bytes.write(BIPUSH);
+                bytes.write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                bytes.write(SIPUSH);
+                writeShort(value);
+            } else {
+                int index = integer(value);
+                if (index < 256) {
+                    bytes.write(LDC);
+                    bytes.write(index);
+                } else {
+                    bytes.write(LDC_W);
+                    writeShort(index);
+                }
+            }
+        }
+
+        /**
+         * Fügt einen Befehl mit einer Referenz in den Konstantenpool an.
+         * @param opcode GETFIELD, INVOKEVIRTUAL oder INVOKESPECIAL.
+         * @param index Der Index im Konstantenpool.
+         */
+        void ref(int opcode, int index) {
+            bytes.write(opcode);
+            writeShort(index);
+        }
+
+        /**
+         * Fügt einen Sprung zu einer Marke an.
+         * @param opcode Der Sprungbefehl.
+         * @param label Das Ziel.
+         */
+        void jump(int opcode, Label label) {
+            int position = bytes.size();
+            bytes.write(opcode);
+            reference(label, position, 2);
+        }
+
+        /**
+         * Setzt eine Marke an die aktuelle Position und trägt alle bisherigen
+         * Verweise auf sie nach.
+         * @param label Die Marke.
+         */
+        void mark(Label label) {
+            label.position = bytes.size();
+            for (int[] fixup : label.fixups) {
+                fixups.add(new int[] {fixup[0], fixup[1], fixup[2], label.position});
+            }
+            label.fixups.clear();
+        }
+
+        /**
+         * Fügt eine Fallunterscheidung über eine Tabelle an. Die Zahl liegt oben
+         * auf dem Stapel.
+         * @param low Der kleinste Wert mit eigenem Ziel.
+         * @param targets Die Ziele für die Werte ab <i>low</i>.
+         * @param otherwise Das Ziel für alle anderen Werte.
+         */
+        void tableSwitch(int low, Label[] targets, Label otherwise) {
+            int position = bytes.size();
+            bytes.write(TABLESWITCH);
+            pad();
+            reference(otherwise, position, 4);
+            writeInt(low);
+            writeInt(low + targets.length - 1);
+            for (Label target : targets) {
+                reference(target, position, 4);
+            }
+        }
+
+        /**
+         * Fügt eine Fallunterscheidung über eine Liste von Werten an. Die Zahl
+         * liegt oben auf dem Stapel.
+         * @param keys Die aufsteigend sortierten Werte mit eigenem Ziel.
+         * @param targets Die Ziele zu den Werten.
+         * @param otherwise Das Ziel für alle anderen Werte.
+         */
+        void lookupSwitch(int[] keys, Label[] targets, Label otherwise) {
+            int position = bytes.size();
+            bytes.write(LOOKUPSWITCH);
+            pad();
+            reference(otherwise, position, 4);
+            writeInt(keys.length);
+            for (int i = 0; i < keys.length; ++i) {
+                writeInt(keys[i]);
+                reference(targets[i], position, 4);
+            }
+        }
+
+        /**
+         * Füllt den Code bis zur nächsten durch vier teilbaren Position auf.
+         */
+        private void pad() {
+            while ((bytes.size() & 3) != 0) {
+                bytes.write(0);
+            }
+        }
+
+        /**
+         * Schreibt einen Platzhalter für den Offset zu einer Marke.
+         * @param label Die Marke.
+         * @param position Die Position des Befehls, auf die sich der Offset bezieht.
+         * @param width Die Breite des Offsets in Bytes (2 oder 4).
+         */
+        private void reference(Label label, int position, int width) {
+            int[] fixup = {position, bytes.size(), width, label.position};
+            if (label.position < 0) {
+                label.fixups.add(fixup);
+            } else {
+                fixups.add(fixup);
+            }
+            for (int i = 0; i < width; ++i) {
+                bytes.write(0);
+            }
+        }
+
+        /**
+         * Schließt die Methode ab und trägt alle Sprungziele ein.
+         * @throws Exception Eine Marke wurde nicht gesetzt, der Code ist zu groß
+         *         oder ein Sprung zu weit.
+         */
+        void finish() throws Exception {
+            code = bytes.toByteArray();
+            if (code.length > 65535) {
+                throw new Exception("Methode " + strings.get(name) + " ist zu groß");
+            }
+            for (int[] fixup : fixups) {
+                int offset = fixup[3] - fixup[0];
+                if (fixup[2] == 2) {
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                        throw new Exception("Sprung zu weit in Methode " + strings.get(name));
+                    }
+                    code[fixup[1]] = (byte) (offset >> 8);
+                    code[fixup[1] + 1] = (byte) offset;
+                } else {
+                    for (int i = 0; i < 4; ++i) {
+                        code[fixup[1] + i] = (byte) (offset >> 24 - 8 * i);
+                    }
+                }
+            }
+            fixups.clear();
+        }
+
+        /**
+         * Schreibt eine 16-Bit-Zahl in den Code.
+         * @param value Die Zahl.
+         */
+        private void writeShort(int value) {
+            bytes.write(value >> 8);
+            bytes.write(value);
+        }
+
+        /**
+         * Schreibt eine 32-Bit-Zahl in den Code.
+         * @param value Die Zahl.
+         */
+        private void writeInt(int value) {
+            writeShort(value >> 16);
+            writeShort(value);
+        }
+    }
+
+    /** Der Konstantenpool ohne den unbenutzten Eintrag 0. */
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+
+    /** Der Datenstrom in den Konstantenpool. */
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+
+    /** Die Anzahl der Einträge im Konstantenpool inklusive Eintrag 0. */
+    private int poolCount = 1;
+
+    /** Die bereits eingetragenen Konstanten, um doppelte Einträge zu vermeiden. */
+    private final HashMap<String, Integer> constants = new HashMap<String, Integer>();
+
+    /** Die Texte der UTF8-Einträge für Fehlermeldungen. */
+    private final HashMap<Integer, String> strings = new HashMap<Integer, String>();
+
+    /** Der Index der Klasse selbst im Konstantenpool. */
+    private final int thisClass;
+
+    /** Der Index der Oberklasse im Konstantenpool. */
+    private final int superClass;
+
+    /** Die Methoden der Klasse. */
+    private final ArrayList<Code> methods = new ArrayList<Code>();
+
+    /**
+     * Konstruktor.
+     * @param name Der Name der Klasse in interner Form (mit '/').
+     * @param superName Der Name der Oberklasse in interner Form.
+     */
+    ClassFile(String name, String superName) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+    }
+
+    /**
+     * Trägt einen Eintrag in den Konstantenpool ein, falls er noch nicht existiert.
+     * @param key Der eindeutige Schlüssel des Eintrags.
+     * @param tag Die Art des Eintrags.
+     * @param first Der erste Verweis oder der Wert.
+     * @param second Der zweite Verweis oder -1, falls es keinen gibt (bei Zahlen immer).
+     * @return Der Index des Eintrags.
+     */
+    private int constant(String key, int tag, int first, int second) {
+        Integer index = constants.get(key);
+        if (index == null) {
+            try {
+                poolOut.writeByte(tag);
+                if (tag == 3) {
+                    poolOut.writeInt(first);
+                } else if (second < 0) {
+                    poolOut.writeShort(first);
+                } else {
+                    poolOut.writeShort(first);
+                    poolOut.writeShort(second);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            index = poolCount++;
+            constants.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Trägt einen Text in den Konstantenpool ein.
+     * @param text Der Text.
+     * @return Der Index des Eintrags.
+     */
+    int utf8(String text) {
+        Integer index = constants.get("U" + text);
+        if (index == null) {
+            try {
+                poolOut.writeByte(1);
+                poolOut.writeUTF(text);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            index = poolCount++;
+            constants.put("U" + text, index);
+            strings.put(index, text);
+        }
+        return index;
+    }
+
+    /**
+     * Trägt eine Zahl in den Konstantenpool ein.
+     * @param value Die Zahl.
+     * @return Der Index des Eintrags.
+     */
+    int integer(int value) {
+        return constant("I" + value, 3, value, -1);
+    }
+
+    /**
+     * Trägt eine Klasse in den Konstantenpool ein.
+     * @param name Der Name der Klasse in interner Form.
+     * @return Der Index des Eintrags.
+     */
+    int classRef(String name) {
+        return constant("C" + name, 7, utf8(name), -1);
+    }
+
+    /**
+     * Trägt einen Namen mit Signatur in den Konstantenpool ein.
+     * @param name Der Name.
+     * @param descriptor Die Signatur.
+     * @return Der Index des Eintrags.
+     */
+    private int nameAndType(String name, String descriptor) {
+        return constant("N" + name + " " + descriptor, 12, utf8(name), utf8(descriptor));
+    }
+
+    /**
+     * Trägt eine Referenz auf ein Feld in den Konstantenpool ein.
+     * @param owner Die Klasse, die das Feld deklariert.
+     * @param name Der Name des Felds.
+     * @param descriptor Der Typ des Felds.
+     * @return Der Index des Eintrags.
+     */
+    int fieldRef(String owner, String name, String descriptor) {
+        return constant("F" + owner + "." + name + " " + descriptor, 9, classRef(owner), nameAndType(name, descriptor));
+    }
+
+    /**
+     * Trägt eine Referenz auf eine Methode in den Konstantenpool ein.
+     * @param owner Die Klasse, die die Methode deklariert.
+     * @param name Der Name der Methode.
+     * @param descriptor Die Signatur der Methode.
+     * @return Der Index des Eintrags.
+     */
+    int methodRef(String owner, String name, String descriptor) {
+        return constant("M" + owner + "." + name + descriptor, 10, classRef(owner), nameAndType(name, descriptor));
+    }
+
+    /**
+     * Fügt eine Methode hinzu. Ihr Code wird über das Ergebnis erzeugt und
+     * muss vor {@link #toByteArray toByteArray} abgeschlossen werden.
+     * @param access Die Zugriffsrechte.
+     * @param name Der Name der Methode.
+     * @param descriptor Die Signatur der Methode.
+     * @param maxStack Die maximale Stapeltiefe.
+     * @param maxLocals Die Anzahl der lokalen Variablen inklusive this und Parametern.
+     * @return Der Code der Methode.
+     */
+    Code method(int access, String name, String descriptor, int maxStack, int maxLocals) {
+        Code code = new Code(access, name, descriptor, maxStack, maxLocals);
+        methods.add(code);
+        return code;
+    }
+
+    /**
+     * Liefert die fertige Klassendatei.
+     * @return Der Inhalt der Klassendatei.
+     */
+    byte[] toByteArray() {
+        int codeAttribute = utf8("Code");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // Schnittstellen
+            out.writeShort(0); // Felder
+            out.writeShort(methods.size());
+            for (Code method : methods) {
+                out.writeShort(method.access);
+                out.writeShort(method.name);
+                out.writeShort(method.descriptor);
+                out.writeShort(1);
+                out.writeShort(codeAttribute);
+                out.writeInt(12 + method.code.length);
+                out.writeShort(method.maxStack);
+                out.writeShort(method.maxLocals);
+                out.writeInt(method.code.length);
+                out.write(method.code);
+                out.writeShort(0); // Ausnahmetabelle
+                out.writeShort(0); // Attribute
+            }
+            out.writeShort(0); // Attribute der Klasse
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
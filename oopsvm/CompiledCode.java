@@ -0,0 +1,143 @@
+package oopsvm;
+
+import java.io.IOException;
+
+/**
+ * Die Oberklasse der Klassen, die der {@link JvmTranslator JvmTranslator} aus
+ * einem Programm erzeugt. Eine Instanz führt das Programm auf dem Hauptspeicher
+ * und dem Registersatz einer virtuellen Maschine aus. Der Code ist in Abschnitte
+ * zerlegt, die jeweils eine JVM-Methode bilden. Zwischen den Abschnitten wird
+ * über {@link #run run} gewechselt. Instruktionen, die nicht übersetzt wurden,
+ * und alle Fehlerfälle führt der Interpreter der virtuellen Maschine aus, so dass
+ * Ergebnisse und Fehlermeldungen gleich bleiben.
+ * <p>
+ * Der {@link ThreadedCode ThreadedCode} übersetzt zur Laufzeit auch einzelne häufig
+ * ausgeführte Blöcke. Diese bestehen aus nur einem Abschnitt und werden direkt über
+ * {@link #execute execute} betreten.
+ * <p>
+ * Die Klasse ist öffentlich, da die erzeugten Klassen von einem eigenen
+ * ClassLoader geladen werden und daher nicht im selben Paket liegen.
+ */
+public abstract class CompiledCode {
+    /** Der Hauptspeicher. */
+    protected final int[] memory;
+
+    /** Der Registersatz. */
+    protected final int[] registers;
+
+    /** Die virtuelle Maschine, an deren Interpreter seltene Fälle delegiert werden. */
+    private final VirtualMachine vm;
+
+    /** Der Index des Abschnitts je Einsprungadresse, -1 für alle anderen Adressen. */
+    private final int[] chunks;
+
+    /**
+     * Unterhalb der Adresse im einzigen Element liegt der übersetzte Code. Schreibzugriffe
+     * dorthin führt der Interpreter aus. Bei einzeln übersetzten Blöcken teilen sich alle
+     * Blöcke das Element mit dem {@link ThreadedCode ThreadedCode}, so dass es mitwächst.
+     */
+    protected final int[] limit;
+
+    /** Wurde der übersetzte Code durch einen Schreibzugriff ungültig? */
+    private boolean invalidated;
+
+    /** Die Ein- und Ausgabekanäle für die Systemaufrufe. */
+    private Console console;
+
+    /**
+     * Konstruktor.
+     * @param vm Die virtuelle Maschine, an deren Interpreter seltene Fälle delegiert werden.
+     * @param memory Der Hauptspeicher.
+     * @param registers Der Registersatz.
+     * @param chunks Der Index des Abschnitts je Einsprungadresse, sonst -1. Bei einem
+     *        einzeln übersetzten Block null.
+     * @param limit Unterhalb der Adresse im einzigen Element liegt der übersetzte Code.
+     */
+    protected CompiledCode(VirtualMachine vm, int[] memory, int[] registers, int[] chunks, int[] limit) {
+        this.vm = vm;
+        this.memory = memory;
+        this.registers = registers;
+        this.chunks = chunks;
+        this.limit = limit;
+    }
+
+    /**
+     * Führt einen Abschnitt ab einer seiner Einsprungadressen aus. Die Methode
+     * wird erzeugt. Der Abschnitt liest die Register beim Betreten aus dem
+     * Registersatz und schreibt sie beim Verlassen zurück.
+     * @param chunk Der Index des Abschnitts.
+     * @param pc Die Adresse, an der die Ausführung beginnt.
+     * @return Die Adresse der nächsten auszuführenden Instruktion außerhalb des Abschnitts.
+     * @throws Exception Ein Fehler ist aufgetreten.
+     */
+    protected abstract int execute(int chunk, int pc) throws Exception;
+
+    /**
+     * Führt eine einzelne Instruktion mit dem Interpreter der virtuellen Maschine aus.
+     * Der Registersatz muss dafür aktuell sein.
+     * @param pc Die Adresse der Instruktion.
+     * @return Die Adresse der nächsten auszuführenden Instruktion.
+     * @throws Exception Ein Fehler ist aufgetreten.
+     */
+    protected final int interpret(int pc) throws Exception {
+        registers[0] = pc;
+        vm.executeInstruction();
+        return registers[0];
+    }
+
+    /**
+     * Liefert, ob der übersetzte Code nicht mehr dem Hauptspeicher entspricht.
+     * @return Wurde in den Bereich des Codes geschrieben?
+     */
+    protected final boolean isInvalidated() {
+        return invalidated;
+    }
+
+    /**
+     * Liest ein Zeichen für SYS 0.
+     * @return Das Zeichen oder -1 am Ende der Eingabe.
+     * @throws IOException Ein Lesefehler ist aufgetreten.
+     */
+    protected final int read() throws IOException {
+        return console.read();
+    }
+
+    /**
+     * Gibt ein Zeichen für SYS 1 aus.
+     * @param c Das Zeichen.
+     * @throws IOException Ein Schreibfehler ist aufgetreten.
+     */
+    protected final void write(int c) throws IOException {
+        console.write(c);
+    }
+
+    /**
+     * Vermerkt einen Schreibzugriff. Betrifft er den übersetzten Code, wird dieser
+     * nicht mehr ausgeführt.
+     * @param address Die Adresse der veränderten Speicherstelle.
+     */
+    void invalidate(int address) {
+        if (address < limit[0]) {
+            invalidated = true;
+        }
+    }
+
+    /**
+     * Führt das Programm im Hauptspeicher ab der Adresse in R0 aus, bis R0 den
+     * gültigen Bereich des Hauptspeichers verlässt oder der übersetzte Code
+     * ungültig wird. Im zweiten Fall muss die Ausführung ab R0 im Interpreter
+     * fortgesetzt werden.
+     * @param console Die Ein- und Ausgabekanäle für die Systemaufrufe.
+     * @throws Exception Ein Fehler ist aufgetreten (Instruktion, Speicherstelle,
+     *         Register oder Systemaufruf ungültig).
+     */
+    void run(Console console) throws Exception {
+        this.console = console;
+        int pc = registers[0];
+        while (pc >= 0 && pc < memory.length && !invalidated) {
+            int chunk = chunks[pc];
+            pc = chunk >= 0 ? execute(chunk, pc) : interpret(pc);
+        }
+        registers[0] = pc;
+    }
+}
@@ -0,0 +1,138 @@
+package oopsvm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Die Klasse stellt die gepufferten Ein- und Ausgabekanäle der virtuellen
+ * Maschine bereit, die von den Systemaufrufen SYS 0 (Zeichen lesen) und
+ * SYS 1 (Zeichen schreiben) benutzt werden.
+ * Ausgegebene Zeichen werden in einem Bytepuffer gesammelt. ASCII-Zeichen
+ * werden direkt übernommen, alle anderen Zeichen werden mit dem voreingestellten
+ * Zeichensatz kodiert. Der Puffer wird geleert, wenn er voll ist, wenn ein
+ * Zeilenende ausgegeben wird (abschaltbar), bevor auf eine Eingabe gewartet
+ * wird und am Ende jeder Programmausführung.
+ * Eingaben werden blockweise gelesen und byteweise an das Programm übergeben.
+ */
+public class Console {
+    /** Die Standardgröße der Puffer in Bytes. */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** Der Datenstrom, aus dem gelesen wird. */
+    private final InputStream in;
+
+    /** Der Datenstrom, in den geschrieben wird. */
+    private final OutputStream out;
+
+    /** Der Zeichensatz für Zeichen außerhalb von ASCII. */
+    private final Charset charset;
+
+    /** Soll die Ausgabe bei jedem Zeilenende geleert werden? */
+    private final boolean flushOnNewline;
+
+    /** Der Ausgabepuffer. */
+    private final byte[] outBuffer;
+
+    /** Die Anzahl der Bytes im Ausgabepuffer. */
+    private int outCount;
+
+    /** Der Eingabepuffer. */
+    private final byte[] inBuffer;
+
+    /** Die Position des nächsten zu lesenden Bytes im Eingabepuffer. */
+    private int inPosition;
+
+    /** Die Anzahl der gültigen Bytes im Eingabepuffer. */
+    private int inCount;
+
+    /**
+     * Konstruktor für einen Kanal auf der Standardein- und -ausgabe, bei dem die
+     * Ausgabe bei jedem Zeilenende geleert wird.
+     */
+    public Console() {
+        this(System.in, System.out, DEFAULT_BUFFER_SIZE, true);
+    }
+
+    /**
+     * Konstruktor.
+     * @param in Der Datenstrom, aus dem gelesen wird.
+     * @param out Der Datenstrom, in den geschrieben wird.
+     * @param bufferSize Die Größe der Puffer in Bytes.
+     * @param flushOnNewline Soll die Ausgabe bei jedem Zeilenende geleert werden?
+     */
+    public Console(InputStream in, OutputStream out, int bufferSize, boolean flushOnNewline) {
+        this.in = in;
+        this.out = out;
+        this.flushOnNewline = flushOnNewline;
+        charset = Charset.defaultCharset();
+        outBuffer = new byte[Math.max(bufferSize, 16)];
+        inBuffer = new byte[Math.max(bufferSize, 1)];
+    }
+
+    /**
+     * Die Methode gibt ein Zeichen aus.
+     * @param c Das Zeichen. Es werden nur die unteren 16 Bit berücksichtigt.
+     * @throws IOException Ein Schreibfehler ist aufgetreten.
+     */
+    public void write(int c) throws IOException {
+        char ch = (char) c;
+        if (ch < 0x80) {
+            if (outCount == outBuffer.length) {
+                flush();
+            }
+            outBuffer[outCount++] = (byte) ch;
+            if (ch == '\n' && flushOnNewline) {
+                flush();
+            }
+        } else {
+            byte[] bytes = String.valueOf(ch).getBytes(charset);
+            if (outCount + bytes.length > outBuffer.length) {
+                flush();
+            }
+            System.arraycopy(bytes, 0, outBuffer, outCount, bytes.length);
+            outCount += bytes.length;
+        }
+    }
+
+    /**
+     * Die Methode schreibt den Inhalt des Ausgabepuffers in den Ausgabestrom.
+     * @throws IOException Ein Schreibfehler ist aufgetreten.
+     */
+    public void flush() throws IOException {
+        if (outCount > 0) {
+            out.write(outBuffer, 0, outCount);
+            outCount = 0;
+        }
+        out.flush();
+    }
+
+    /**
+     * Liefert zurück, ob ein Byte gelesen werden kann, ohne zu warten.
+     * @return Kann ohne Warten gelesen werden?
+     * @throws IOException Ein Lesefehler ist aufgetreten.
+     */
+    public boolean isInputAvailable() throws IOException {
+        return inPosition < inCount || in.available() > 0;
+    }
+
+    /**
+     * Die Methode liest ein Byte. Muss dafür auf eine Eingabe gewartet werden,
+     * wird vorher die Ausgabe geleert.
+     * @return Das gelesene Byte oder -1, wenn das Ende der Eingabe erreicht ist.
+     * @throws IOException Ein Lesefehler ist aufgetreten.
+     */
+    public int read() throws IOException {
+        if (inPosition == inCount) {
+            flush();
+            inPosition = 0;
+            inCount = in.read(inBuffer, 0, inBuffer.length);
+            if (inCount <= 0) {
+                inCount = 0;
+                return -1;
+            }
+        }
+        return inBuffer[inPosition++] & 0xff;
+    }
+}
@@ -0,0 +1,301 @@
+package oopsvm;
+
+import java.util.Arrays;
+
+/**
+ * Die Klasse verwaltet den Heap der virtuellen Maschine. Sie wird über die
+ * Systemaufrufe SYS 3 (Heap einrichten) und SYS 2 (Objekt erzeugen) benutzt.
+ * <p>
+ * Der Heap wird durch eine Speicherstelle beschrieben, die die Endadresse
+ * des Heaps enthält. Der Heap selbst beginnt direkt hinter dieser Speicherstelle.
+ * Er besteht lückenlos aus Blöcken. Ein belegter Block ist ein Objekt, dessen
+ * erstes Wort die Adresse seiner virtuellen Methodentabelle (VMT) enthält.
+ * Ein freier Block beginnt mit seiner negierten Größe.
+ * <p>
+ * Vor jeder VMT legt der Übersetzer die Größe der Objekte der Klasse ab
+ * (Adresse VMT-1) und davor ein Bitfeld, das angibt, welche Wörter eines Objekts
+ * Referenzen enthalten. Bit i des Worts an Adresse VMT-2-k steht dabei für
+ * das Wort 32*k+i des Objekts.
+ * <p>
+ * Kann eine Anforderung nicht erfüllt werden, wird eine Speicherbereinigung
+ * durchgeführt (Mark and Sweep). Da Stapel und Register auch Zahlen enthalten,
+ * werden sie konservativ durchsucht, d.h. jeder Wert, der in ein belegtes
+ * Objekt zeigt, hält dieses am Leben. Innerhalb von Objekten werden nur die
+ * Wörter verfolgt, die laut Bitfeld Referenzen sind. Die Liste der freien
+ * Blöcke wird nach jeder Bereinigung neu aufgebaut, wobei benachbarte freie
+ * Blöcke zusammengefasst werden.
+ */
+class Heap {
+    /** Der Hauptspeicher. */
+    private final int[] memory;
+
+    /** Der Registersatz. */
+    private final int[] registers;
+
+    /** Die erste Adresse des Heaps. */
+    private final int start;
+
+    /** Die erste Adresse hinter dem Heap. */
+    private final int end;
+
+    /** Die unterste Adresse des Stapels. */
+    private final int stackBase;
+
+    /** Bitfeld über den Heap. Ein gesetztes Bit markiert den Anfang eines belegten Blocks. */
+    private final long[] objects;
+
+    /** Bitfeld über den Heap. Ein gesetztes Bit markiert ein erreichbares Objekt. */
+    private final long[] marks;
+
+    /** Die Adressen der freien Blöcke. */
+    private int[] freeAddresses = new int[16];
+
+    /** Die Größen der freien Blöcke. */
+    private int[] freeSizes = new int[16];
+
+    /** Die Anzahl der Einträge in der Liste der freien Blöcke. */
+    private int freeCount;
+
+    /** Der Eintrag in der Liste der freien Blöcke, bei dem die Suche beginnt. */
+    private int freeIndex;
+
+    /** Die noch zu durchsuchenden Objekte während der Markierungsphase. */
+    private int[] work = new int[64];
+
+    /** Die Anzahl der Einträge in {@link #work work}. */
+    private int workCount;
+
+    /** Die Anzahl der bisher durchgeführten Speicherbereinigungen. */
+    private int collections;
+
+    /**
+     * Konstruktor. Der gesamte Heap wird als ein freier Block eingerichtet.
+     * @param memory Der Hauptspeicher.
+     * @param registers Der Registersatz. R2 muss auf den Anfang des Stapels zeigen.
+     * @param descriptor Die Adresse der Speicherstelle, die die Endadresse des Heaps enthält.
+     * @throws Exception Die Beschreibung des Heaps ist ungültig.
+     */
+    Heap(int[] memory, int[] registers, int descriptor) throws Exception {
+        if (descriptor < 0 || descriptor >= memory.length
+                || memory[descriptor] <= descriptor || memory[descriptor] > memory.length) {
+            throw new Exception(String.format("Ungültige Heap-Beschreibung an Adresse %04x", descriptor));
+        }
+        this.memory = memory;
+        this.registers = registers;
+        start = descriptor + 1;
+        end = memory[descriptor];
+        stackBase = registers[2];
+        objects = new long[(end - start + 63) >> 6];
+        marks = new long[objects.length];
+        if (end > start) {
+            memory[start] = start - end;
+            addFree(start, end - start);
+        }
+    }
+
+    /**
+     * Liefert die Anzahl der bisher durchgeführten Speicherbereinigungen.
+     * @return Die Anzahl der Speicherbereinigungen.
+     */
+    int getCollections() {
+        return collections;
+    }
+
+    /**
+     * Die Methode erzeugt ein neues Objekt. Es wird mit Nullen gefüllt und
+     * sein erstes Wort zeigt auf die VMT.
+     * @param vmt Die Adresse der VMT der Klasse des Objekts.
+     * @return Die Adresse des neuen Objekts.
+     * @throws Exception Die Klasse ist ungültig oder der Heap ist erschöpft.
+     */
+    int allocate(int vmt) throws Exception {
+        if (vmt < 1 || vmt >= memory.length || memory[vmt - 1] < 1) {
+            throw new Exception(String.format("Ungültige Klasse %04x an Adresse %04x", vmt, registers[0] - 1));
+        }
+        int size = memory[vmt - 1];
+        int address = findFree(size);
+        if (address < 0) {
+            collect();
+            address = findFree(size);
+            if (address < 0) {
+                throw new Exception(String.format("Heap erschöpft an Adresse %04x", registers[0] - 1));
+            }
+        }
+        memory[address] = vmt;
+        Arrays.fill(memory, address + 1, address + size, 0);
+        set(objects, address);
+        return address;
+    }
+
+    /**
+     * Die Methode sucht einen freien Block mit mindestens der angegebenen Größe
+     * und belegt dessen Anfang. Der Rest bleibt frei.
+     * @param size Die benötigte Größe.
+     * @return Die Adresse des belegten Bereichs oder -1, wenn kein Block groß genug ist.
+     */
+    private int findFree(int size) {
+        for (int i = 0; i < freeCount; ++i) {
+            int index = freeIndex + i < freeCount ? freeIndex + i : freeIndex + i - freeCount;
+            if (freeSizes[index] >= size) {
+                int address = freeAddresses[index];
+                freeAddresses[index] += size;
+                freeSizes[index] -= size;
+                if (freeSizes[index] > 0) {
+                    memory[freeAddresses[index]] = -freeSizes[index];
+                }
+                freeIndex = index;
+                return address;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Die Methode trägt einen Block in die Liste der freien Blöcke ein.
+     * @param address Die Adresse des Blocks.
+     * @param size Die Größe des Blocks.
+     */
+    private void addFree(int address, int size) {
+        if (freeCount == freeAddresses.length) {
+            freeAddresses = Arrays.copyOf(freeAddresses, freeCount * 2);
+            freeSizes = Arrays.copyOf(freeSizes, freeCount * 2);
+        }
+        freeAddresses[freeCount] = address;
+        freeSizes[freeCount++] = size;
+    }
+
+    /**
+     * Die Methode führt eine Speicherbereinigung durch.
+     */
+    void collect() {
+        ++collections;
+
+        // Markieren, ausgehend von Registern und Stapel
+        for (int value : registers) {
+            markConservative(value);
+        }
+        for (int address = stackBase; address <= registers[2] && address < memory.length; ++address) {
+            if (address >= 0) {
+                markConservative(memory[address]);
+            }
+        }
+        while (workCount > 0) {
+            scan(work[--workCount]);
+        }
+
+        // Nicht markierte Objekte freigeben und freie Blöcke zusammenfassen
+        freeCount = 0;
+        freeIndex = 0;
+        int freeStart = -1;
+        int address = start;
+        while (address < end) {
+            int size;
+            boolean live = false;
+            if (isSet(objects, address)) {
+                size = memory[memory[address] - 1];
+                if (isSet(marks, address)) {
+                    live = true;
+                } else {
+                    clear(objects, address);
+                }
+            } else {
+                size = -memory[address];
+            }
+            if (live) {
+                if (freeStart >= 0) {
+                    memory[freeStart] = freeStart - address;
+                    addFree(freeStart, address - freeStart);
+                    freeStart = -1;
+                }
+            } else if (freeStart < 0) {
+                freeStart = address;
+            }
+            address += size;
+        }
+        if (freeStart >= 0) {
+            memory[freeStart] = freeStart - end;
+            addFree(freeStart, end - freeStart);
+        }
+        Arrays.fill(marks, 0);
+    }
+
+    /**
+     * Markiert das Objekt, in das ein Wert zeigt, falls es eines gibt.
+     * Der Wert darf auch auf ein Wort innerhalb des Objekts zeigen.
+     * @param value Der Wert aus einem Register oder vom Stapel.
+     */
+    private void markConservative(int value) {
+        if (value >= start && value < end) {
+            int address = value;
+            while (address >= start && !isSet(objects, address)) {
+                --address;
+            }
+            if (address >= start && value < address + memory[memory[address] - 1]) {
+                mark(address);
+            }
+        }
+    }
+
+    /**
+     * Markiert ein Objekt und merkt es zum Durchsuchen vor, wenn es noch
+     * nicht markiert war.
+     * @param address Die Adresse des Objekts.
+     */
+    private void mark(int address) {
+        if (!isSet(marks, address)) {
+            set(marks, address);
+            if (workCount == work.length) {
+                work = Arrays.copyOf(work, workCount * 2);
+            }
+            work[workCount++] = address;
+        }
+    }
+
+    /**
+     * Markiert alle Objekte, die von den Referenzen eines Objekts erreicht werden.
+     * @param address Die Adresse des Objekts.
+     */
+    private void scan(int address) {
+        int vmt = memory[address];
+        int size = memory[vmt - 1];
+        for (int slot = 0; slot < size; ++slot) {
+            if ((memory[vmt - 2 - (slot >> 5)] & 1 << slot) != 0) {
+                int value = memory[address + slot];
+                if (value >= start && value < end && isSet(objects, value)) {
+                    mark(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Prüft ein Bit in einem Bitfeld über den Heap.
+     * @param bits Das Bitfeld.
+     * @param address Die Adresse im Heap.
+     * @return Ist das Bit gesetzt?
+     */
+    private boolean isSet(long[] bits, int address) {
+        address -= start;
+        return (bits[address >> 6] & 1L << address) != 0;
+    }
+
+    /**
+     * Setzt ein Bit in einem Bitfeld über den Heap.
+     * @param bits Das Bitfeld.
+     * @param address Die Adresse im Heap.
+     */
+    private void set(long[] bits, int address) {
+        address -= start;
+        bits[address >> 6] |= 1L << address;
+    }
+
+    /**
+     * Löscht ein Bit in einem Bitfeld über den Heap.
+     * @param bits Das Bitfeld.
+     * @param address Die Adresse im Heap.
+     */
+    private void clear(long[] bits, int address) {
+        address -= start;
+        bits[address >> 6] &= ~(1L << address);
+    }
+}
@@ -0,0 +1,251 @@
+package oopsvm;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Die Klasse repräsentiert ein assembliertes Programm. Es besteht aus dem
+ * Abbild des Hauptspeichers, den Adressen der Marken, den Anfangsadressen
+ * aller Instruktionen und den Anfangsadressen der OOPS-Quelltextzeilen.
+ * Ein Abbild kann in eine Binärdatei geschrieben und daraus wieder gelesen
+ * werden, so dass das Assemblieren beim Start entfällt. Aufbau der Datei
+ * (alle Zahlen als 32-Bit-Werte, höchstwertiges Byte zuerst):
+ * <pre>
+ * image  ::= magic version memory instrs lines labels
+ * magic  ::= 0x4f4f5053 ("OOPS")
+ * memory ::= count { word }
+ * instrs ::= count { address }
+ * lines  ::= count { address }
+ * labels ::= count { length { byte } address }
+ * </pre>
+ * Die Namen der Marken sind in UTF-8 kodiert und auf ganze Wörter aufgefüllt.
+ * Gelesen wird die Datei über eine in den Speicher eingeblendete Datei.
+ */
+public class Image {
+    /** Die Kennung am Anfang einer Abbilddatei. */
+    private static final int MAGIC = 0x4f4f5053;
+
+    /** Die Version des Dateiformats. */
+    private static final int VERSION = 1;
+
+    /** Der Zeichensatz der Markennamen. */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Der Hauptspeicher, der das übersetzte Programm enthält. */
+    private final int[] memory;
+
+    /** Die Zuordnung von Marken zu Speicheradressen. */
+    private final Map<String, Integer> labels;
+
+    /** Die Anfangsadressen aller Instruktionen. */
+    private final int[] instructionAddresses;
+
+    /** Die Anfangsadressen der OOPS-Quelltextzeilen. */
+    private final int[] lineAddresses;
+
+    /**
+     * Konstruktor.
+     * @param memory Der Hauptspeicher, der das übersetzte Programm enthält.
+     * @param labels Die Zuordnung von Marken zu Speicheradressen.
+     * @param instructionAddresses Die Anfangsadressen aller Instruktionen.
+     * @param lineAddresses Die Anfangsadressen der OOPS-Quelltextzeilen.
+     */
+    public Image(int[] memory, Map<String, Integer> labels, int[] instructionAddresses, int[] lineAddresses) {
+        this.memory = memory;
+        this.labels = labels;
+        this.instructionAddresses = instructionAddresses;
+        this.lineAddresses = lineAddresses;
+    }
+
+    /**
+     * Liefert den Hauptspeicher, der das übersetzte Programm enthält.
+     * @return Der Hauptspeicher.
+     */
+    public int[] getMemory() {
+        return memory;
+    }
+
+    /**
+     * Gibt die Adresse eine Marke zurück.
+     * @param label Der Name der Marke.
+     * @return Die Adresse der Marke oder null, falls die Marke unbekannt ist.
+     */
+    public Integer getLabelAddress(String label) {
+        return labels.get(label);
+    }
+
+    /**
+     * Liefert alle Marken.
+     * @return Die unveränderliche Zuordnung von Marken zu Speicheradressen.
+     */
+    public Map<String, Integer> getLabels() {
+        return Collections.unmodifiableMap(labels);
+    }
+
+    /**
+     * Liefert die Anfangsadressen aller Instruktionen.
+     * @return Ein Array mit so vielen Adressen, wie das Programm Instruktionen hat.
+     */
+    public int[] getInstructionAddresses() {
+        return instructionAddresses;
+    }
+
+    /**
+     * Liefert die Anfangsadressen aller OOPS-Quelltextzeilen.
+     * @return Ein Array mit so vielen Adressen, wie der OOPS-Quelltext Zeilen hat.
+     */
+    public int[] getLineAddresses() {
+        return lineAddresses;
+    }
+
+    /**
+     * Die Methode schreibt das Abbild in eine Binärdatei.
+     * @param fileName Der Name der Datei.
+     * @throws IOException Die Datei konnte nicht geschrieben werden.
+     */
+    public void write(String fileName) throws IOException {
+        int size = 4 * (6 + memory.length + instructionAddresses.length + lineAddresses.length);
+        HashMap<String, byte[]> names = new HashMap<String, byte[]>();
+        for (String label : labels.keySet()) {
+            byte[] name = label.getBytes(UTF8);
+            names.put(label, name);
+            size += 8 + (name.length + 3 & ~3);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        putArray(buffer, memory);
+        putArray(buffer, instructionAddresses);
+        putArray(buffer, lineAddresses);
+        buffer.putInt(labels.size());
+        for (Map.Entry<String, Integer> label : labels.entrySet()) {
+            byte[] name = names.get(label.getKey());
+            buffer.putInt(name.length);
+            buffer.put(name);
+            buffer.position(buffer.position() + (-name.length & 3));
+            buffer.putInt(label.getValue());
+        }
+        buffer.flip();
+
+        FileOutputStream stream = new FileOutputStream(fileName);
+        try {
+            FileChannel channel = stream.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Die Methode schreibt ein Array mit vorangestellter Länge in einen Puffer.
+     * @param buffer Der Puffer.
+     * @param values Das Array.
+     */
+    private static void putArray(ByteBuffer buffer, int[] values) {
+        buffer.putInt(values.length);
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + 4 * values.length);
+    }
+
+    /**
+     * Die Methode liest ein Array mit vorangestellter Länge aus einem Puffer.
+     * @param buffer Der Puffer.
+     * @return Das Array.
+     * @throws Exception Die Länge ist ungültig.
+     */
+    private static int[] getArray(ByteBuffer buffer) throws Exception {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining() / 4) {
+            throw new Exception("Abbilddatei ist beschädigt");
+        }
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * length);
+        return values;
+    }
+
+    /**
+     * Prüft, ob eine Datei ein binäres Abbild enthält.
+     * @param fileName Der Name der Datei.
+     * @return Beginnt die Datei mit der Kennung eines Abbilds?
+     * @throws IOException Die Datei konnte nicht gelesen werden.
+     */
+    public static boolean isImage(String fileName) throws IOException {
+        FileInputStream stream = new FileInputStream(fileName);
+        try {
+            byte[] header = new byte[4];
+            return stream.read(header) == 4 && ByteBuffer.wrap(header).getInt() == MAGIC;
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Die Methode liest ein Abbild aus einer Binärdatei.
+     * @param fileName Der Name der Datei.
+     * @return Das gelesene Abbild.
+     * @throws IOException Die Datei konnte nicht gelesen werden.
+     * @throws Exception Die Datei enthält kein gültiges Abbild.
+     */
+    public static Image read(String fileName) throws IOException, Exception {
+        FileInputStream stream = new FileInputStream(fileName);
+        try {
+            FileChannel channel = stream.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (buffer.getInt() != MAGIC) {
+                    throw new Exception("Keine Abbilddatei: " + fileName);
+                } else if (buffer.getInt() != VERSION) {
+                    throw new Exception("Falsche Version der Abbilddatei: " + fileName);
+                }
+                int[] memory = getArray(buffer);
+                int[] instructionAddresses = getArray(buffer);
+                int[] lineAddresses = getArray(buffer);
+                int count = buffer.getInt();
+                HashMap<String, Integer> labels = new HashMap<String, Integer>();
+                for (int i = 0; i < count; ++i) {
+                    byte[] name = new byte[buffer.getInt()];
+                    buffer.get(name);
+                    buffer.position(buffer.position() + (-name.length & 3));
+                    labels.put(new String(name, UTF8), buffer.getInt());
+                }
+                return new Image(memory, labels, instructionAddresses, lineAddresses);
+            } catch (RuntimeException e) {
+                throw new Exception("Abbilddatei ist beschädigt: " + fileName);
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Die Methode lädt ein Programm. Enthält die Datei ein binäres Abbild, wird
+     * es direkt gelesen, ansonsten wird sie als Assembler-Quelltext übersetzt.
+     * @param fileName Der Name der Datei.
+     * @param showFirst Soll eine Bildschirmausgabe während des ersten Assemblierungsdurchgangs erfolgen?
+     * @param showSecond Soll eine Bildschirmausgabe während des zweiten Assemblierungsdurchgangs erfolgen?
+     * @return Das Abbild des Programms.
+     * @throws IOException Die Datei konnte nicht gelesen werden.
+     * @throws Exception Beim Assemblieren ist ein Fehler aufgetreten oder das Abbild ist ungültig.
+     */
+    public static Image load(String fileName, boolean showFirst, boolean showSecond) throws IOException, Exception {
+        if (isImage(fileName)) {
+            return read(fileName);
+        } else {
+            Assembler assembler = new Assembler(showFirst, showSecond);
+            assembler.assemble(fileName);
+            return assembler.getImage();
+        }
+    }
+}
@@ -110,16 +110,173 @@ public enum Instruction {
     /**
      * SYS num1, num2.
      * Diese Instruktion ruft eine Systemfunktion auf. <i>num1</i> ist dabei die Nummer der Funktion,
-     * <i>num2</i> ein funktionsabhängiger Parameter. Momentan sind nur zwei Funktionen definiert:
+     * <i>num2</i> ein funktionsabhängiger Parameter. Momentan sind vier Funktionen definiert:
      * <ul>
      *   <li> 0: Es wird ein Zeichen von der Konsole eingelesen. Das Zeichen wird in dem Register 
      *        mit der Nummer <i>num2</i> abgelegt. Das Ende des Eingabestroms wird durch das
      *        Zeichen -1 symbolisiert.</li>
      *   <li> 1: Es wird ein Zeichen auf der Konsole ausgegeben. Das Zeichen wird aus dem Register 
      *        mit der Nummer <i>num2</i> gelesen.</li>
+     *   <li> 2: Es wird ein Objekt auf dem Heap erzeugt. Das Register mit der Nummer <i>num2</i>
+     *        enthält die Adresse der VMT der Klasse. Danach enthält es die Adresse des Objekts.
+     *        Ist der Heap erschöpft, wird vorher eine Speicherbereinigung durchgeführt.</li>
+     *   <li> 3: Der Heap wird eingerichtet. Das Register mit der Nummer <i>num2</i> enthält
+     *        die Adresse einer Speicherstelle, in der die Endadresse des Heaps steht. Der Heap
+     *        beginnt direkt dahinter. Der aktuelle Wert von R2 wird als Anfang des Stapels
+     *        betrachtet.</li>
      * </ul>
      */
-    SYS;
+    SYS,
+
+    /**
+     * JMT num1, num2.
+     * Diese Instruktion ruft eine Methode dynamisch gebunden auf. Das Objekt, für das
+     * die Methode aufgerufen wird, steht <i>num1</i> Wörter unterhalb der Spitze des
+     * Stapels (Register R2), d.h. unterhalb der Rücksprungadresse und der Parameter.
+     * Die Instruktion liest die Adresse der VMT aus dem ersten Wort des Objekts und
+     * springt an die Adresse, die in Eintrag <i>num2</i> der VMT steht. Die Instruktion
+     * belegt wie MRI zwei Wörter; <i>num2</i> steht im zweiten.
+     */
+    JMT,
+
+    /**
+     * PSH reg1, reg2.
+     * Diese Instruktion erhöht das Register <i>reg1</i> um eins und speichert dann den Inhalt
+     * von Register <i>reg2</i> in der Speicherstelle, auf die <i>reg1</i> zeigt. Sie ersetzt
+     * ADD reg1, R1 und MMR (reg1), reg2. Diese und die folgenden Instruktionen gehören
+     * zum erweiterten Befehlssatz.
+     */
+    PSH,
+
+    /**
+     * POP reg1, reg2.
+     * Diese Instruktion speichert den Inhalt der Speicherstelle, auf die Register <i>reg2</i>
+     * zeigt, im Register <i>reg1</i> und verringert dann das Register <i>reg2</i> um eins.
+     * Sie ersetzt MRM reg1, (reg2) und SUB reg2, R1.
+     */
+    POP,
+
+    /**
+     * ADI reg, num.
+     * Diese Instruktion addiert die Zahl <i>num</i> zum Register <i>reg</i>. Sie belegt
+     * wie MRI zwei Wörter.
+     */
+    ADI,
+
+    /**
+     * MRO reg1, num(reg2).
+     * Diese Instruktion speichert den Inhalt der Speicherstelle, auf die Register <i>reg2</i>
+     * plus <i>num</i> zeigt, im Register <i>reg1</i>. <i>num</i> steht im zweiten Wort.
+     */
+    MRO,
+
+    /**
+     * MMO num(reg1), reg2.
+     * Diese Instruktion speichert den Inhalt von Register <i>reg2</i> in der Speicherstelle,
+     * auf die Register <i>reg1</i> plus <i>num</i> zeigt. <i>num</i> steht im zweiten Wort.
+     */
+    MMO,
+
+    /**
+     * JEQ reg1, reg2, addr.
+     * Diese Instruktion schreibt <i>addr</i> in den Instruktionszeiger, wenn die Differenz
+     * der Register <i>reg1</i> und <i>reg2</i> null ist. Die Differenz wird wie bei SUB
+     * berechnet, die Register bleiben aber unverändert. <i>addr</i> steht im zweiten Wort.
+     */
+    JEQ,
+
+    /**
+     * JNE reg1, reg2, addr.
+     * Wie JEQ, springt aber, wenn die Differenz ungleich null ist.
+     */
+    JNE,
+
+    /**
+     * JLT reg1, reg2, addr.
+     * Wie JEQ, springt aber, wenn die Differenz kleiner als null ist.
+     */
+    JLT,
+
+    /**
+     * JLE reg1, reg2, addr.
+     * Wie JEQ, springt aber, wenn die Differenz kleiner oder gleich null ist.
+     */
+    JLE,
+
+    /**
+     * JGT reg1, reg2, addr.
+     * Wie JEQ, springt aber, wenn die Differenz größer als null ist.
+     */
+    JGT,
+
+    /**
+     * JGE reg1, reg2, addr.
+     * Wie JEQ, springt aber, wenn die Differenz größer oder gleich null ist.
+     */
+    JGE,
+
+    /**
+     * CAL reg, addr.
+     * Diese Instruktion ruft eine Methode statisch gebunden auf. Sie erhöht das Register
+     * <i>reg</i> (den Stapelzeiger) um eins, speichert die Adresse hinter der Instruktion
+     * in der Speicherstelle, auf die <i>reg</i> dann zeigt, und schreibt <i>addr</i> in den
+     * Instruktionszeiger. <i>addr</i> steht im zweiten Wort.
+     */
+    CAL,
+
+    /**
+     * RET reg, num.
+     * Diese Instruktion kehrt aus einer Methode zurück, deren Stapelrahmen im Register
+     * <i>reg</i> steht. Sie verringert den Stapelzeiger R2 um <i>num</i>, schreibt die
+     * Rücksprungadresse aus der Speicherstelle vor dem Rahmen in den Instruktionszeiger
+     * und stellt den alten Rahmen aus der Speicherstelle, auf die <i>reg</i> zeigt, wieder
+     * her. <i>num</i> steht im zweiten Wort.
+     */
+    RET;
+
+    /**
+     * Gehört die Instruktion zum erweiterten Befehlssatz? Programme, die nur die
+     * ursprünglichen Instruktionen verwenden, laufen unverändert weiter.
+     * @return Ist es eine der erweiterten Instruktionen?
+     */
+    public boolean isExtended() {
+        return compareTo(PSH) >= 0;
+    }
+
+    /**
+     * Belegt die Instruktion ein zweites Wort mit einem direkten Operanden?
+     * @return Besteht die Instruktion aus zwei Wörtern?
+     */
+    public boolean hasImmediate() {
+        switch (this) {
+        case MRI:
+        case JPC:
+        case JMT:
+        case ADI:
+        case CAL:
+        case RET:
+            return true;
+        default:
+            return hasTwoRegisters();
+        }
+    }
+
+    /**
+     * Verwendet die Instruktion neben dem direkten Operanden im zweiten Wort
+     * noch zwei Register im ersten?
+     * @return Hat die Instruktion drei Operanden?
+     */
+    public boolean hasTwoRegisters() {
+        return this == MRO || this == MMO || isCompareAndJump();
+    }
+
+    /**
+     * Ist die Instruktion ein bedingter Sprung, der zwei Register vergleicht?
+     * @return Ist es JEQ, JNE, JLT, JLE, JGT oder JGE?
+     */
+    public boolean isCompareAndJump() {
+        return compareTo(JEQ) >= 0 && compareTo(JGE) <= 0;
+    }
     
     /**
      * Liefert eine textuelle Beschreibung der Instruktion mit ihren Parametern.
@@ -129,16 +286,45 @@ public enum Instruction {
      * @return Die Instruktion als Text. 
      */
     public String toString(int param1, int param2) {
+        return toString(param1, param2, param2);
+    }
+
+    /**
+     * Liefert eine textuelle Beschreibung der Instruktion mit ihren Parametern.
+     * @param param1 Der erste Parameter aus dem ersten Wort.
+     * @param param2 Der zweite Parameter aus dem ersten Wort.
+     * @param immediate Der direkte Operand aus dem zweiten Wort. Wird nur bei
+     *         Instruktionen verwendet, die zwei Wörter belegen.
+     * @return Die Instruktion als Text. 
+     */
+    public String toString(int param1, int param2, int immediate) {
         switch (this) {
         case MRI:
         case JPC:
-            return toString() + " R" + param1 + ", " + String.format("%04x", param2 & 0xffff);
+        case CAL:
+            return toString() + " R" + param1 + ", " + String.format("%04x", immediate & 0xffff);
         case MRM:
             return toString() + " R" + param1 + ", (R" + param2 + ")";
         case MMR:
             return toString() + " (R" + param1 + "), R" + param2;
         case SYS:
             return toString() + " " + param1 + ", " + param2;
+        case JMT:
+            return toString() + " " + param1 + ", " + immediate;
+        case ADI:
+        case RET:
+            return toString() + " R" + param1 + ", " + immediate;
+        case MRO:
+            return toString() + " R" + param1 + ", " + immediate + "(R" + param2 + ")";
+        case MMO:
+            return toString() + " " + immediate + "(R" + param1 + "), R" + param2;
+        case JEQ:
+        case JNE:
+        case JLT:
+        case JLE:
+        case JGT:
+        case JGE:
+            return toString() + " R" + param1 + ", R" + param2 + ", " + String.format("%04x", immediate & 0xffff);
         default:
             return toString() + " R" + param1 + ", R" + param2;
         }
@@ -0,0 +1,153 @@
+package oopsvm;
+
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Die Klasse repräsentiert ein Programm, das im Voraus in JVM-Bytecode übersetzt
+ * wurde (siehe {@link JvmTranslator JvmTranslator}). Die erzeugte Klasse wird über
+ * einen eigenen ClassLoader geladen, so dass HotSpot sie wie jeden anderen Java-Code
+ * übersetzt. Eine Übersetzung kann von beliebig vielen virtuellen Maschinen
+ * benutzt werden, deren Hauptspeicher mit demselben Abbild beginnt (siehe
+ * {@link VirtualMachine#setJvmProgram VirtualMachine.setJvmProgram}). Der
+ * {@link ThreadedCode ThreadedCode} erzeugt auf dieselbe Weise einzelne Blöcke.
+ * Diese werden über alle virtuellen Maschinen hinweg wiederverwendet, damit
+ * HotSpot sie nicht für jeden Programmlauf neu laden und übersetzen muss.
+ */
+public class JvmProgram {
+    /** Der ClassLoader für genau eine erzeugte Klasse. */
+    private static class Loader extends ClassLoader {
+        /**
+         * Konstruktor.
+         */
+        Loader() {
+            super(CompiledCode.class.getClassLoader());
+        }
+
+        /**
+         * Lädt die erzeugte Klasse.
+         * @param name Der Name der Klasse.
+         * @param bytes Der Inhalt der Klassendatei.
+         * @return Die Klasse.
+         */
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /** Die maximale Anzahl der zwischengespeicherten Blöcke. */
+    private static final int MAX_CACHED_BLOCKS = 4096;
+
+    /** Die zuletzt benutzten übersetzten Blöcke je Inhalt ihrer Klassendatei. */
+    private static final Map<ByteBuffer, JvmProgram> blocks = new LinkedHashMap<ByteBuffer, JvmProgram>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, JvmProgram> eldest) {
+            return size() > MAX_CACHED_BLOCKS;
+        }
+    };
+
+    /** Der Konstruktor der erzeugten Klasse. */
+    private final Constructor<? extends CompiledCode> constructor;
+
+    /** Der Index des Abschnitts je Einsprungadresse, sonst -1. */
+    private final int[] chunks;
+
+    /** Unterhalb dieser Adresse liegt der übersetzte Code. */
+    private final int codeLimit;
+
+    /** Die Anzahl der Register, für die übersetzt wurde. */
+    private final int registerCount;
+
+    /**
+     * Konstruktor. Übersetzt das Programm und lädt die erzeugte Klasse.
+     * @param image Das Programm.
+     * @param registerCount Die Anzahl der Register der virtuellen Maschinen.
+     * @throws Exception Das Programm konnte nicht übersetzt werden.
+     */
+    public JvmProgram(Image image, int registerCount) throws Exception {
+        this(new JvmTranslator(image, registerCount), registerCount);
+    }
+
+    /**
+     * Konstruktor. Übersetzt den Code eines Übersetzers und lädt die erzeugte Klasse.
+     * @param translator Der Übersetzer für ein Programm oder einen einzelnen Block.
+     * @param registerCount Die Anzahl der Register der virtuellen Maschinen.
+     * @throws Exception Der Code konnte nicht übersetzt werden.
+     */
+    private JvmProgram(JvmTranslator translator, int registerCount) throws Exception {
+        this(translator, translator.translate(), registerCount);
+    }
+
+    /**
+     * Konstruktor. Lädt eine erzeugte Klasse.
+     * @param translator Der Übersetzer, der die Klasse erzeugt hat.
+     * @param bytes Der Inhalt der Klassendatei.
+     * @param registerCount Die Anzahl der Register der virtuellen Maschinen.
+     * @throws Exception Die Klasse konnte nicht geladen werden.
+     */
+    private JvmProgram(JvmTranslator translator, byte[] bytes, int registerCount) throws Exception {
+        Class<? extends CompiledCode> type = new Loader().define(JvmTranslator.NAME.replace('/', '.'), bytes)
+                .asSubclass(CompiledCode.class);
+        constructor = type.getConstructor(VirtualMachine.class, int[].class, int[].class, int[].class, int[].class);
+        chunks = translator.getChunks();
+        codeLimit = translator.getCodeLimit();
+        this.registerCount = registerCount;
+    }
+
+    /**
+     * Liefert die Übersetzung eines einzelnen Blocks. Wurde derselbe Code schon
+     * einmal übersetzt, wird die bereits geladene Klasse wiederverwendet.
+     * @param translator Der Übersetzer für den Block.
+     * @param registerCount Die Anzahl der Register der virtuellen Maschinen.
+     * @return Die Übersetzung.
+     * @throws Exception Der Block konnte nicht übersetzt werden.
+     */
+    static JvmProgram block(JvmTranslator translator, int registerCount) throws Exception {
+        byte[] bytes = translator.translate();
+        ByteBuffer key = ByteBuffer.wrap(bytes);
+        synchronized (blocks) {
+            JvmProgram program = blocks.get(key);
+            if (program == null || program.registerCount != registerCount) {
+                program = new JvmProgram(translator, bytes, registerCount);
+                blocks.put(key, program);
+            }
+            return program;
+        }
+    }
+
+    /**
+     * Erzeugt die Ausführungseinheit für eine virtuelle Maschine.
+     * @param vm Die virtuelle Maschine, an deren Interpreter seltene Fälle delegiert werden.
+     * @param memory Der Hauptspeicher der Maschine.
+     * @param registers Der Registersatz der Maschine.
+     * @return Die Ausführungseinheit.
+     * @throws Exception Hauptspeicher oder Registersatz passen nicht zur Übersetzung.
+     */
+    CompiledCode instantiate(VirtualMachine vm, int[] memory, int[] registers) throws Exception {
+        if (memory.length != chunks.length || registers.length != registerCount) {
+            throw new Exception("Das übersetzte Programm passt nicht zur virtuellen Maschine");
+        }
+        return constructor.newInstance(vm, memory, registers, chunks, new int[] {codeLimit});
+    }
+
+    /**
+     * Erzeugt die Ausführungseinheit für einen einzeln übersetzten Block.
+     * @param vm Die virtuelle Maschine, an deren Interpreter seltene Fälle delegiert werden.
+     * @param memory Der Hauptspeicher der Maschine.
+     * @param registers Der Registersatz der Maschine.
+     * @param limit Unterhalb der Adresse im einzigen Element liegt Code, in den der Block
+     *        nicht selbst schreiben darf.
+     * @return Die Ausführungseinheit.
+     * @throws Exception Der Registersatz passt nicht zur Übersetzung.
+     */
+    CompiledCode instantiate(VirtualMachine vm, int[] memory, int[] registers, int[] limit) throws Exception {
+        if (registers.length != registerCount) {
+            throw new Exception("Das übersetzte Programm passt nicht zur virtuellen Maschine");
+        }
+        return constructor.newInstance(vm, memory, registers, null, limit);
+    }
+}
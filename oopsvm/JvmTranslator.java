@@ -0,0 +1,1037 @@
+package oopsvm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Die Klasse übersetzt ein assembliertes Programm im Voraus in eine JVM-Klasse,
+ * die von {@link CompiledCode CompiledCode} erbt. Der Code wird dazu in Abschnitte
+ * zerlegt, die an den Einsprungpunkten der OOPS-Methoden beginnen (Ziele von
+ * Aufrufen und Einträge der VMTs). Jeder Abschnitt wird eine JVM-Methode, in der
+ * die Register R1 bis Rn lokale Variablen sind und Sprünge innerhalb des Abschnitts
+ * direkte Sprünge werden. Der Hauptspeicher bleibt das Array der virtuellen Maschine.
+ * <p>
+ * Sprünge an berechnete Adressen (Rücksprünge, JMT) werden über eine Fallunterscheidung
+ * der Einsprungadressen des Abschnitts aufgelöst, alle anderen Ziele über
+ * {@link CompiledCode#run CompiledCode.run}. Instruktionen, die die schnelle
+ * Ausführungseinheit nicht dekodieren würde, sowie alle Fehlerfälle (ungültige
+ * Speicherstellen, Division durch null) und Schreibzugriffe in den Code führt der
+ * Interpreter der virtuellen Maschine aus. Danach wird die Ausführung an der
+ * nächsten Einsprungadresse fortgesetzt.
+ * <p>
+ * Für die Laufzeitübersetzung der {@link ThreadedCode ThreadedCode} kann auch ein
+ * einzelner heißer Block übersetzt werden. Er ist ein Abschnitt, der an seinem
+ * Anfang betreten wird und unbedingten Sprüngen und Aufrufen an feste Adressen
+ * folgt. Er endet bei anderen unbedingten Sprüngen, an bereits enthaltenen
+ * Instruktionen und schon vor Instruktionen, die interpretiert werden müssten,
+ * vor Systemaufrufen und vor Haltepunkten. Sprünge an Instruktionen des Blocks
+ * bleiben im Block, alle anderen verlassen ihn. Fehlerfälle und Schreibzugriffe
+ * in den Code verlassen ihn vor der betroffenen Instruktion, die dann die
+ * {@link ThreadedCode ThreadedCode} selbst ausführt.
+ */
+class JvmTranslator {
+    /** Der Name der erzeugten Klasse. */
+    static final String NAME = "oops/Program";
+
+    /** Der Name der Oberklasse. */
+    private static final String BASE = "oopsvm/CompiledCode";
+
+    /**
+     * Die Anzahl der Instruktionen, ab der ein Abschnitt an der nächsten
+     * Einsprungadresse endet, damit die JVM-Methoden klein genug bleiben,
+     * um von HotSpot übersetzt zu werden.
+     */
+    private static final int CHUNK_SIZE = 120;
+
+    /** Die Anzahl der Instruktionen, ab der ein Abschnitt in jedem Fall endet. */
+    private static final int MAX_CHUNK_SIZE = 240;
+
+    /** Die maximale Anzahl der Instruktionen eines einzeln übersetzten Blocks. */
+    private static final int MAX_BLOCK_SIZE = 100;
+
+    /** Die lokalen Variablen der Abschnittsmethoden vor den Registern. */
+    private static final int PC = 1;
+    private static final int MEMORY = 2;
+    private static final int REGISTERS = 3;
+
+    /** Der Hauptspeicher mit dem Programm. */
+    private final int[] memory;
+
+    /** Die Anzahl der Register. */
+    private final int registerCount;
+
+    /**
+     * Die Anfangsadressen aller übersetzten Instruktionen, bei ganzen Programmen
+     * aufsteigend sortiert, bei einzelnen Blöcken in der Reihenfolge der Ausführung.
+     */
+    private int[] addresses;
+
+    /** Die dekodierten Instruktionen je Index in {@link #addresses addresses} oder null, wenn sie interpretiert werden. */
+    private Instruction[] instructions;
+
+    /** Die Parameter je Index in {@link #addresses addresses}. */
+    private int[] params1;
+    private int[] params2;
+    private int[] immediates;
+
+    /** Ist eine Speicherstelle der Anfang einer Instruktion? Nur bei ganzen Programmen. */
+    private boolean[] isInstruction;
+
+    /** Ist eine Adresse ein Ziel, an dem ein Abschnitt betreten werden kann? Nur bei ganzen Programmen. */
+    private boolean[] isLeader;
+
+    /** Der Index des Abschnitts je Einsprungadresse, sonst -1. Nur bei ganzen Programmen. */
+    private int[] chunks;
+
+    /** Der Anfang des einzeln übersetzten Blocks oder -1 bei ganzen Programmen. */
+    private int blockStart = -1;
+
+    /** Der Index der ersten Instruktion jedes Abschnitts und am Ende die Anzahl aller Instruktionen. */
+    private final ArrayList<Integer> chunkStarts = new ArrayList<Integer>();
+
+    /** Ab dieser Adresse liegt der Code. */
+    private int codeStart = Integer.MAX_VALUE;
+
+    /** Unterhalb dieser Adresse liegt der Code. */
+    private int codeLimit;
+
+    /** Die erzeugte Klasse. */
+    private final ClassFile file = new ClassFile(NAME, BASE);
+
+    /** Der Index der lokalen Variablen für Zwischenergebnisse. */
+    private final int temp;
+
+    /** Der Index der lokalen Variablen mit der Grenze, unterhalb der nicht geschrieben wird. */
+    private final int limit;
+
+    /** Die Einträge im Konstantenpool. */
+    private final int memoryField;
+    private final int registersField;
+    private final int limitField;
+    private final int interpretMethod;
+    private final int isInvalidatedMethod;
+    private final int readMethod;
+    private final int writeMethod;
+
+    /**
+     * Konstruktor. Legt die Einträge im Konstantenpool an, die jeder Abschnitt benötigt.
+     * @param memory Der Hauptspeicher mit dem Programm.
+     * @param registerCount Die Anzahl der Register der virtuellen Maschine.
+     */
+    private JvmTranslator(int[] memory, int registerCount) {
+        this.memory = memory;
+        this.registerCount = Math.min(registerCount, 16);
+        temp = REGISTERS + this.registerCount;
+        limit = temp + 1;
+
+        memoryField = file.fieldRef(BASE, "memory", "[I");
+        registersField = file.fieldRef(BASE, "registers", "[I");
+        limitField = file.fieldRef(BASE, "limit", "[I");
+        interpretMethod = file.methodRef(BASE, "interpret", "(I)I");
+        isInvalidatedMethod = file.methodRef(BASE, "isInvalidated", "()Z");
+        readMethod = file.methodRef(BASE, "read", "()I");
+        writeMethod = file.methodRef(BASE, "write", "(I)V");
+    }
+
+    /**
+     * Konstruktor für ein ganzes Programm. Dekodiert das Programm und zerlegt es in Abschnitte.
+     * @param image Das Programm.
+     * @param registerCount Die Anzahl der Register der virtuellen Maschine.
+     */
+    JvmTranslator(Image image, int registerCount) {
+        this(image.getMemory(), registerCount);
+
+        isInstruction = new boolean[memory.length];
+        int[] all = image.getInstructionAddresses().clone();
+        Arrays.sort(all);
+        int count = 0;
+        for (int address : all) {
+            if (address >= 0 && address < memory.length && !isInstruction[address]) {
+                isInstruction[address] = true;
+                all[count++] = address;
+            }
+        }
+        setAddresses(Arrays.copyOf(all, count));
+
+        isLeader = new boolean[memory.length];
+        chunks = new int[memory.length];
+        Arrays.fill(chunks, -1);
+        partition(image);
+    }
+
+    /**
+     * Konstruktor für einen einzelnen heißen Block der Laufzeitübersetzung.
+     * @param vm Die virtuelle Maschine, deren Haltepunkte den Block begrenzen.
+     * @param memory Der Hauptspeicher.
+     * @param registerCount Die Anzahl der Register der virtuellen Maschine.
+     * @param start Die Anfangsadresse des Blocks.
+     */
+    JvmTranslator(VirtualMachine vm, int[] memory, int registerCount, int start) {
+        this(memory, registerCount);
+        blockStart = start;
+
+        ArrayList<Integer> block = new ArrayList<Integer>();
+        HashSet<Integer> contained = new HashSet<Integer>();
+        int address = start;
+        while (address >= 0 && address < memory.length && block.size() < MAX_BLOCK_SIZE
+                && !contained.contains(address) && (address == start || !vm.hasBreakPoint(address))) {
+            Instruction instruction = decode(address);
+            if (instruction == null || instruction == Instruction.SYS) {
+                break;
+            }
+            block.add(address);
+            contained.add(address);
+            int param1 = memory[address] >> 4 & 0x0f;
+            if (instruction == Instruction.MRI && param1 == 0 || instruction == Instruction.CAL) {
+                address = memory[address + 1];
+            } else if (isUnconditionalJump(instruction, param1)) {
+                break;
+            } else {
+                address += length(address);
+            }
+        }
+        int[] addresses = new int[block.size()];
+        for (int i = 0; i < addresses.length; ++i) {
+            addresses[i] = block.get(i);
+        }
+        setAddresses(addresses);
+        chunkStarts.add(0);
+        chunkStarts.add(addresses.length);
+    }
+
+    /**
+     * Liefert, ob ein Block übersetzt werden kann.
+     * @return Enthält der Block mindestens eine Instruktion?
+     */
+    boolean isEmpty() {
+        return addresses.length == 0;
+    }
+
+    /**
+     * Legt die zu übersetzenden Instruktionen fest und dekodiert sie.
+     * @param addresses Die Anfangsadressen der Instruktionen.
+     */
+    private void setAddresses(int[] addresses) {
+        this.addresses = addresses;
+        int count = addresses.length;
+        instructions = new Instruction[count];
+        params1 = new int[count];
+        params2 = new int[count];
+        immediates = new int[count];
+        for (int i = 0; i < count; ++i) {
+            int address = addresses[i];
+            instructions[i] = decode(address);
+            params1[i] = memory[address] >> 4 & 0x0f;
+            params2[i] = memory[address] & 0x0f;
+            int end = Math.min(address + length(address), memory.length);
+            if (end > address + 1) {
+                immediates[i] = memory[address + 1];
+            }
+            codeStart = Math.min(codeStart, address);
+            codeLimit = Math.max(codeLimit, end);
+        }
+    }
+
+    /**
+     * Prüft, ob eine Instruktion in jedem Fall springt.
+     * @param instruction Die Instruktion.
+     * @param param1 Der erste Parameter der Instruktion.
+     * @return Ist die Instruktion ein unbedingter Sprung?
+     */
+    private static boolean isUnconditionalJump(Instruction instruction, int param1) {
+        switch (instruction) {
+        case MRI:
+        case MRR:
+        case MRM:
+            return param1 == 0;
+        case JMT:
+        case CAL:
+        case RET:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Prüft, ob eine Registernummer ein gültiges Register ungleich R0 bezeichnet.
+     * @param register Die Registernummer.
+     * @return Ist das Register gültig und nicht der Instruktionszeiger?
+     */
+    private boolean isDataRegister(int register) {
+        return register > 0 && register < registerCount;
+    }
+
+    /**
+     * Dekodiert eine Instruktion. Sie wird nur übersetzt, wenn sie auch die schnelle
+     * Ausführungseinheit selbst ausführen würde, ansonsten bleibt sie dem Interpreter.
+     * @param address Die Adresse der Instruktion.
+     * @return Die Instruktion oder null, wenn sie interpretiert wird.
+     */
+    private Instruction decode(int address) {
+        int word = memory[address];
+        int code = word >> 8 & 0xff;
+        int param1 = word >> 4 & 0x0f;
+        int param2 = word & 0x0f;
+        if (code >= VirtualMachine.INSTRUCTIONS.length) {
+            return null;
+        }
+
+        Instruction instruction = VirtualMachine.INSTRUCTIONS[code];
+        if (instruction.hasImmediate() && address + 1 >= memory.length) {
+            return null;
+        }
+
+        boolean valid;
+        switch (instruction) {
+        case MRI:
+            valid = param1 == 0 || isDataRegister(param1);
+            break;
+        case MRR:
+        case MRM:
+            valid = isDataRegister(param2) && (param1 == 0 || isDataRegister(param1));
+            break;
+        case JPC:
+        case ADI:
+        case CAL:
+            valid = isDataRegister(param1);
+            break;
+        case RET:
+            valid = isDataRegister(param1) && param1 != 2 && isDataRegister(2);
+            break;
+        case JMT:
+            valid = isDataRegister(2);
+            break;
+        case SYS:
+            valid = isDataRegister(param2) && (param1 == 0 || param1 == 1);
+            break;
+        default:
+            valid = isDataRegister(param1) && isDataRegister(param2);
+        }
+        return valid ? instruction : null;
+    }
+
+    /**
+     * Liefert die Länge einer Instruktion.
+     * @param address Die Adresse der Instruktion.
+     * @return Die Anzahl der Wörter, die die Instruktion belegt.
+     */
+    private int length(int address) {
+        int code = memory[address] >> 8 & 0xff;
+        return code < VirtualMachine.INSTRUCTIONS.length && VirtualMachine.INSTRUCTIONS[code].hasImmediate() ? 2 : 1;
+    }
+
+    /**
+     * Liefert das statische Sprungziel einer Instruktion.
+     * @param index Der Index der Instruktion in {@link #addresses addresses}.
+     * @return Das Sprungziel oder -1, wenn die Instruktion nicht an eine feste Adresse springt.
+     */
+    private int staticTarget(int index) {
+        Instruction instruction = instructions[index];
+        if (instruction == null) {
+            return -1;
+        }
+        switch (instruction) {
+        case MRI:
+            return params1[index] == 0 ? immediates[index] : -1;
+        case JPC:
+        case CAL:
+            return immediates[index];
+        default:
+            return instruction.isCompareAndJump() ? immediates[index] : -1;
+        }
+    }
+
+    /**
+     * Markiert eine Adresse als Einsprungadresse, wenn dort eine Instruktion beginnt.
+     * @param address Die Adresse.
+     * @return Ist dort eine Instruktion?
+     */
+    private boolean lead(int address) {
+        if (address >= 0 && address < memory.length && isInstruction[address]) {
+            isLeader[address] = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Bestimmt die Einsprungadressen und zerlegt den Code in Abschnitte. Ein neuer
+     * Abschnitt beginnt am Anfang jeder Methode, d.h. an Zielen von CAL, an Einträgen
+     * der VMTs und an Zielen von Sprüngen, deren Folgeadresse zuvor als Rücksprungadresse
+     * geladen wird. Zu große Abschnitte werden an Einsprungadressen geteilt.
+     * @param image Das Programm mit seinen Marken.
+     */
+    private void partition(Image image) {
+        if (addresses.length == 0) {
+            chunkStarts.add(0);
+            return;
+        }
+
+        HashSet<Integer> loaded = new HashSet<Integer>();
+        for (int i = 0; i < addresses.length; ++i) {
+            if (instructions[i] == Instruction.MRI && params1[i] != 0) {
+                loaded.add(immediates[i]);
+            }
+        }
+
+        boolean[] isEntry = new boolean[memory.length];
+        lead(0);
+        for (int address : image.getLabels().values()) {
+            lead(address);
+        }
+        for (int address : loaded) {
+            lead(address);
+        }
+        int next = 0;
+        for (int i = 0; i < addresses.length; ++i) {
+            int address = addresses[i];
+            // Datenworte im Code, z.B. VMTs
+            for (; next < address; ++next) {
+                if (lead(memory[next])) {
+                    isEntry[memory[next]] = true;
+                }
+            }
+            next = address + length(address);
+
+            int target = staticTarget(i);
+            if (lead(target) && (instructions[i] == Instruction.CAL || loaded.contains(address + 2)
+                    && instructions[i] == Instruction.MRI)) {
+                isEntry[target] = true;
+            }
+            if (instructions[i] == null && i + 1 < addresses.length) {
+                lead(addresses[i + 1]);
+            }
+        }
+
+        int size = 0;
+        for (int i = 0; i < addresses.length; ++i) {
+            int address = addresses[i];
+            if (i == 0 || isEntry[address] || size >= CHUNK_SIZE && isLeader[address] || size >= MAX_CHUNK_SIZE) {
+                isLeader[address] = true;
+                chunkStarts.add(i);
+                size = 0;
+            }
+            if (isLeader[address]) {
+                chunks[address] = chunkStarts.size() - 1;
+            }
+            ++size;
+        }
+        chunkStarts.add(addresses.length);
+    }
+
+    /**
+     * Liefert den Index des Abschnitts je Einsprungadresse.
+     * @return Das Array mit einem Eintrag je Speicherstelle, -1 für andere Adressen.
+     */
+    int[] getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Liefert den Anfang des übersetzten Codes.
+     * @return Ab dieser Adresse liegt der Code.
+     */
+    int getCodeStart() {
+        return codeStart;
+    }
+
+    /**
+     * Liefert die Grenze des übersetzten Codes.
+     * @return Unterhalb dieser Adresse liegt der Code.
+     */
+    int getCodeLimit() {
+        return codeLimit;
+    }
+
+    /**
+     * Erzeugt die Klasse.
+     * @return Der Inhalt der Klassendatei.
+     * @throws Exception Ein Abschnitt ist zu groß für eine JVM-Methode.
+     */
+    byte[] translate() throws Exception {
+        generateConstructor();
+        int chunkCount = chunkStarts.size() - 1;
+        for (int chunk = 0; chunk < chunkCount; ++chunk) {
+            generateChunk(chunk);
+        }
+        generateExecute(chunkCount);
+        return file.toByteArray();
+    }
+
+    /**
+     * Erzeugt den Konstruktor, der nur den der Oberklasse aufruft.
+     * @throws Exception Der Code konnte nicht abgeschlossen werden.
+     */
+    private void generateConstructor() throws Exception {
+        String descriptor = "(Loopsvm/VirtualMachine;[I[I[I[I)V";
+        ClassFile.Code code = file.method(ClassFile.ACC_PUBLIC, "<init>", descriptor, 6, 6);
+        for (int i = 0; i < 6; ++i) {
+            code.var(ClassFile.ALOAD, i);
+        }
+        code.ref(ClassFile.INVOKESPECIAL, file.methodRef(BASE, "<init>", descriptor));
+        code.op(ClassFile.RETURN);
+        code.finish();
+    }
+
+    /**
+     * Erzeugt die Methode {@link CompiledCode#execute execute}, die über den Index
+     * die Methode eines Abschnitts aufruft.
+     * @param chunkCount Die Anzahl der Abschnitte.
+     * @throws Exception Der Code konnte nicht abgeschlossen werden.
+     */
+    private void generateExecute(int chunkCount) throws Exception {
+        ClassFile.Code code = file.method(ClassFile.ACC_PUBLIC, "execute", "(II)I", 3, 3);
+        ClassFile.Label otherwise = new ClassFile.Label();
+        if (chunkCount > 0) {
+            ClassFile.Label[] targets = new ClassFile.Label[chunkCount];
+            for (int i = 0; i < chunkCount; ++i) {
+                targets[i] = new ClassFile.Label();
+            }
+            code.var(ClassFile.ILOAD, 1);
+            code.tableSwitch(0, targets, otherwise);
+            for (int i = 0; i < chunkCount; ++i) {
+                code.mark(targets[i]);
+                code.var(ClassFile.ALOAD, 0);
+                code.var(ClassFile.ILOAD, 2);
+                code.ref(ClassFile.INVOKEVIRTUAL, file.methodRef(NAME, "c" + i, "(I)I"));
+                code.op(ClassFile.IRETURN);
+            }
+        }
+        code.mark(otherwise);
+        code.var(ClassFile.ILOAD, 2);
+        code.op(ClassFile.IRETURN);
+        code.finish();
+    }
+
+    /** Der Code des Abschnitts, der gerade erzeugt wird. */
+    private ClassFile.Code code;
+
+    /** Die Marken der Einsprungadressen des Abschnitts. */
+    private HashMap<Integer, ClassFile.Label> labels;
+
+    /** Die Marken, die R0 auf eine Adresse setzen und dann zu {@link #exit exit} oder {@link #slow slow} springen. */
+    private HashMap<Integer, ClassFile.Label> exits;
+    private HashMap<Integer, ClassFile.Label> slows;
+
+    /** Die Fallunterscheidung über die Einsprungadressen in lokaler Variable 1. */
+    private ClassFile.Label dispatch;
+
+    /** Schreibt die Register zurück und verlässt den Abschnitt mit der Adresse in lokaler Variable 1. */
+    private ClassFile.Label exit;
+
+    /** Interpretiert die Instruktion an der Adresse in lokaler Variable 1 und springt zur Folgeadresse. */
+    private ClassFile.Label slow;
+
+    /**
+     * Liefert die lokale Variable eines Registers.
+     * @param register Die Registernummer (nicht R0).
+     * @return Der Index der lokalen Variablen.
+     */
+    private static int local(int register) {
+        return REGISTERS + register;
+    }
+
+    /**
+     * Erzeugt die Methode eines Abschnitts.
+     * @param chunk Der Index des Abschnitts.
+     * @throws Exception Der Abschnitt ist zu groß für eine JVM-Methode.
+     */
+    private void generateChunk(int chunk) throws Exception {
+        code = file.method(ClassFile.ACC_FINAL, "c" + chunk, "(I)I", 4, limit + 1);
+        labels = new HashMap<Integer, ClassFile.Label>();
+        exits = new HashMap<Integer, ClassFile.Label>();
+        slows = new HashMap<Integer, ClassFile.Label>();
+        dispatch = new ClassFile.Label();
+        exit = new ClassFile.Label();
+        slow = new ClassFile.Label();
+        ClassFile.Label reload = new ClassFile.Label();
+        int first = chunkStarts.get(chunk);
+        int last = chunkStarts.get(chunk + 1);
+
+        code.var(ClassFile.ALOAD, 0);
+        code.ref(ClassFile.GETFIELD, memoryField);
+        code.var(ClassFile.ASTORE, MEMORY);
+        code.var(ClassFile.ALOAD, 0);
+        code.ref(ClassFile.GETFIELD, registersField);
+        code.var(ClassFile.ASTORE, REGISTERS);
+
+        // Register und Schreibgrenze laden und zur Einsprungadresse verzweigen
+        code.mark(reload);
+        code.var(ClassFile.ALOAD, 0);
+        code.ref(ClassFile.GETFIELD, limitField);
+        code.push(0);
+        code.op(ClassFile.IALOAD);
+        code.var(ClassFile.ISTORE, limit);
+        for (int register = 1; register < registerCount; ++register) {
+            code.var(ClassFile.ALOAD, REGISTERS);
+            code.push(register);
+            code.op(ClassFile.IALOAD);
+            code.var(ClassFile.ISTORE, local(register));
+        }
+        code.mark(dispatch);
+        ArrayList<Integer> keys = new ArrayList<Integer>();
+        for (int i = first; i < last; ++i) {
+            if (isLeader(addresses[i])) {
+                keys.add(addresses[i]);
+                labels.put(addresses[i], new ClassFile.Label());
+            }
+        }
+        Collections.sort(keys);
+        int[] keyArray = new int[keys.size()];
+        ClassFile.Label[] targets = new ClassFile.Label[keys.size()];
+        for (int i = 0; i < keyArray.length; ++i) {
+            keyArray[i] = keys.get(i);
+            targets[i] = labels.get(keys.get(i));
+        }
+        code.var(ClassFile.ILOAD, PC);
+        code.lookupSwitch(keyArray, targets, exit);
+
+        // Abschnitt verlassen
+        code.mark(exit);
+        storeRegisters();
+        code.var(ClassFile.ILOAD, PC);
+        code.op(ClassFile.IRETURN);
+
+        // Instruktion interpretieren, danach an der Folgeadresse weiter (nur bei ganzen Programmen)
+        if (blockStart < 0) {
+            generateSlow(reload);
+        }
+
+        for (int i = first; i < last; ++i) {
+            int address = addresses[i];
+            if (isLeader(address)) {
+                code.mark(labels.get(address));
+            }
+            int next = address + length(address);
+            if (generateInstruction(i, next) && (i + 1 == last || addresses[i + 1] != next)) {
+                jumpTo(next);
+            }
+        }
+
+        for (HashMap.Entry<Integer, ClassFile.Label> tail : exits.entrySet()) {
+            generateTail(tail.getValue(), tail.getKey(), exit);
+        }
+        for (HashMap.Entry<Integer, ClassFile.Label> tail : slows.entrySet()) {
+            generateTail(tail.getValue(), tail.getKey(), slow);
+        }
+        code.finish();
+    }
+
+    /**
+     * Liefert, ob eine Adresse eine Einsprungadresse ist. In einem einzelnen Block
+     * ist das jede Instruktion, damit Sprünge innerhalb des Blocks bleiben.
+     * @param address Die Adresse einer übersetzten Instruktion.
+     * @return Kann ein Abschnitt an dieser Adresse betreten werden?
+     */
+    private boolean isLeader(int address) {
+        return blockStart >= 0 || isLeader[address];
+    }
+
+    /**
+     * Erzeugt das Codestück, das die Instruktion an der Adresse in lokaler Variable 1
+     * interpretiert und danach an der Folgeadresse weitermacht.
+     * @param reload Die Marke, an der die Register neu geladen werden.
+     */
+    private void generateSlow(ClassFile.Label reload) {
+        code.mark(slow);
+        storeRegisters();
+        code.var(ClassFile.ALOAD, 0);
+        code.var(ClassFile.ILOAD, PC);
+        code.ref(ClassFile.INVOKEVIRTUAL, interpretMethod);
+        code.var(ClassFile.ISTORE, PC);
+        code.var(ClassFile.ALOAD, 0);
+        code.ref(ClassFile.INVOKEVIRTUAL, isInvalidatedMethod);
+        code.jump(ClassFile.IFEQ, reload);
+        code.var(ClassFile.ILOAD, PC);
+        code.op(ClassFile.IRETURN);
+    }
+
+    /**
+     * Schreibt alle Register aus den lokalen Variablen in den Registersatz.
+     */
+    private void storeRegisters() {
+        for (int register = 1; register < registerCount; ++register) {
+            code.var(ClassFile.ALOAD, REGISTERS);
+            code.push(register);
+            code.var(ClassFile.ILOAD, local(register));
+            code.op(ClassFile.IASTORE);
+        }
+    }
+
+    /**
+     * Erzeugt ein Codestück außerhalb des Programmflusses, das eine Adresse in
+     * lokale Variable 1 schreibt und zu einer Marke springt.
+     * @param label Die Marke des Codestücks.
+     * @param address Die Adresse.
+     * @param target Die Marke, zu der gesprungen wird.
+     */
+    private void generateTail(ClassFile.Label label, int address, ClassFile.Label target) {
+        code.mark(label);
+        code.push(address);
+        code.var(ClassFile.ISTORE, PC);
+        code.jump(ClassFile.GOTO, target);
+    }
+
+    /**
+     * Liefert die Marke, über die eine Adresse erreicht wird. Liegt sie als
+     * Einsprungadresse im Abschnitt, ist es ihre Marke, ansonsten ein Codestück,
+     * das den Abschnitt mit dieser Adresse verlässt.
+     * @param address Die Adresse.
+     * @return Die Marke.
+     */
+    private ClassFile.Label target(int address) {
+        ClassFile.Label label = labels.get(address);
+        if (label != null) {
+            return label;
+        }
+        label = exits.get(address);
+        if (label == null) {
+            label = new ClassFile.Label();
+            exits.put(address, label);
+        }
+        return label;
+    }
+
+    /**
+     * Liefert die Marke eines Codestücks, das eine Instruktion interpretiert.
+     * Ein einzeln übersetzter Block wird stattdessen vor der Instruktion verlassen.
+     * @param address Die Adresse der Instruktion.
+     * @return Die Marke.
+     */
+    private ClassFile.Label slowPath(int address) {
+        HashMap<Integer, ClassFile.Label> tails = blockStart < 0 ? slows : exits;
+        ClassFile.Label label = tails.get(address);
+        if (label == null) {
+            label = new ClassFile.Label();
+            tails.put(address, label);
+        }
+        return label;
+    }
+
+    /**
+     * Erzeugt einen unbedingten Sprung an eine feste Adresse.
+     * @param address Die Zieladresse.
+     */
+    private void jumpTo(int address) {
+        code.jump(ClassFile.GOTO, target(address));
+    }
+
+    /**
+     * Erzeugt einen Sprung an die Adresse in lokaler Variable 1.
+     */
+    private void jumpIndirect() {
+        code.var(ClassFile.ISTORE, PC);
+        code.jump(ClassFile.GOTO, dispatch);
+    }
+
+    /**
+     * Prüft die Adresse in der lokalen Variablen für Zwischenergebnisse vor einem
+     * Zugriff auf den Hauptspeicher. Liegt sie außerhalb, wird die Instruktion interpretiert.
+     * @param low Die kleinste erlaubte Adresse.
+     * @param address Die Adresse der Instruktion.
+     */
+    private void checkAddress(int low, int address) {
+        ClassFile.Label fail = slowPath(address);
+        code.var(ClassFile.ILOAD, temp);
+        if (low == 0) {
+            code.jump(ClassFile.IFLT, fail);
+        } else {
+            code.push(low);
+            code.jump(ClassFile.IF_ICMPLT, fail);
+        }
+        code.var(ClassFile.ILOAD, temp);
+        code.var(ClassFile.ALOAD, MEMORY);
+        code.op(ClassFile.ARRAYLENGTH);
+        code.jump(ClassFile.IF_ICMPGE, fail);
+    }
+
+    /**
+     * Prüft die Adresse in der lokalen Variablen für Zwischenergebnisse vor einem
+     * Schreibzugriff. Liegt sie außerhalb des Hauptspeichers oder unterhalb der
+     * Schreibgrenze, d.h. im Code, wird die Instruktion nicht hier ausgeführt.
+     * @param address Die Adresse der Instruktion.
+     */
+    private void checkStore(int address) {
+        ClassFile.Label fail = slowPath(address);
+        code.var(ClassFile.ILOAD, temp);
+        code.var(ClassFile.ILOAD, limit);
+        code.jump(ClassFile.IF_ICMPLT, fail);
+        code.var(ClassFile.ILOAD, temp);
+        code.var(ClassFile.ALOAD, MEMORY);
+        code.op(ClassFile.ARRAYLENGTH);
+        code.jump(ClassFile.IF_ICMPGE, fail);
+    }
+
+    /**
+     * Legt die Speicherstelle an der Adresse in der lokalen Variablen für
+     * Zwischenergebnisse auf den Stapel.
+     */
+    private void loadMemory() {
+        code.var(ClassFile.ALOAD, MEMORY);
+        code.var(ClassFile.ILOAD, temp);
+        code.op(ClassFile.IALOAD);
+    }
+
+    /**
+     * Speichert den Wert eines Registers an der Adresse in der lokalen Variablen
+     * für Zwischenergebnisse.
+     * @param register Das Register.
+     */
+    private void storeMemory(int register) {
+        code.var(ClassFile.ALOAD, MEMORY);
+        code.var(ClassFile.ILOAD, temp);
+        code.var(ClassFile.ILOAD, local(register));
+        code.op(ClassFile.IASTORE);
+    }
+
+    /**
+     * Berechnet eine Adresse aus einem Register und einem Abstand in die lokale
+     * Variable für Zwischenergebnisse.
+     * @param register Das Register.
+     * @param offset Der Abstand.
+     */
+    private void computeAddress(int register, int offset) {
+        code.var(ClassFile.ILOAD, local(register));
+        if (offset != 0) {
+            code.push(offset);
+            code.op(ClassFile.IADD);
+        }
+        code.var(ClassFile.ISTORE, temp);
+    }
+
+    /**
+     * Erzeugt den Code einer Instruktion.
+     * @param index Der Index der Instruktion in {@link #addresses addresses}.
+     * @param next Die Adresse hinter der Instruktion.
+     * @return Kann die Ausführung bei der Folgeadresse fortgesetzt werden?
+     */
+    private boolean generateInstruction(int index, int next) {
+        int address = addresses[index];
+        Instruction instruction = instructions[index];
+        int a = params1[index];
+        int b = params2[index];
+        int immediate = immediates[index];
+
+        if (instruction == null) {
+            code.push(address);
+            code.var(ClassFile.ISTORE, PC);
+            code.jump(ClassFile.GOTO, slow);
+            return false;
+        }
+
+        switch (instruction) {
+        case MRI:
+            if (a == 0) {
+                jumpTo(immediate);
+                return false;
+            }
+            code.push(immediate);
+            code.var(ClassFile.ISTORE, local(a));
+            break;
+        case MRR:
+            code.var(ClassFile.ILOAD, local(b));
+            if (a == 0) {
+                jumpIndirect();
+                return false;
+            }
+            code.var(ClassFile.ISTORE, local(a));
+            break;
+        case MRM:
+            computeAddress(b, 0);
+            checkAddress(0, address);
+            loadMemory();
+            if (a == 0) {
+                jumpIndirect();
+                return false;
+            }
+            code.var(ClassFile.ISTORE, local(a));
+            break;
+        case MMR:
+            computeAddress(a, 0);
+            checkStore(address);
+            storeMemory(b);
+            break;
+        case ADD:
+        case SUB:
+        case MUL:
+        case AND:
+        case OR:
+        case XOR:
+        case DIV:
+        case MOD:
+            if (instruction == Instruction.DIV || instruction == Instruction.MOD) {
+                code.var(ClassFile.ILOAD, local(b));
+                code.jump(ClassFile.IFEQ, slowPath(address));
+            }
+            code.var(ClassFile.ILOAD, local(a));
+            code.var(ClassFile.ILOAD, local(b));
+            code.op(arithmetic(instruction));
+            code.var(ClassFile.ISTORE, local(a));
+            break;
+        case ISZ:
+        case ISP:
+        case ISN:
+            ClassFile.Label yes = new ClassFile.Label();
+            ClassFile.Label done = new ClassFile.Label();
+            code.var(ClassFile.ILOAD, local(b));
+            code.jump(instruction == Instruction.ISZ ? ClassFile.IFEQ
+                    : instruction == Instruction.ISP ? ClassFile.IFGT : ClassFile.IFLT, yes);
+            code.push(0);
+            code.jump(ClassFile.GOTO, done);
+            code.mark(yes);
+            code.push(1);
+            code.mark(done);
+            code.var(ClassFile.ISTORE, local(a));
+            break;
+        case JPC:
+            code.var(ClassFile.ILOAD, local(a));
+            code.jump(ClassFile.IFNE, target(immediate));
+            break;
+        case SYS:
+            if (a == 0) {
+                code.var(ClassFile.ALOAD, 0);
+                code.ref(ClassFile.INVOKEVIRTUAL, readMethod);
+                code.var(ClassFile.ISTORE, local(b));
+            } else {
+                code.var(ClassFile.ALOAD, 0);
+                code.var(ClassFile.ILOAD, local(b));
+                code.ref(ClassFile.INVOKEVIRTUAL, writeMethod);
+            }
+            break;
+        case JMT:
+            // Objekt unter Parametern und Rücksprungadresse, daraus VMT und Eintrag
+            computeAddress(2, -a);
+            checkAddress(0, address);
+            loadMemory();
+            code.var(ClassFile.ISTORE, temp);
+            checkAddress(0, address);
+            loadMemory();
+            code.push(immediate);
+            code.op(ClassFile.IADD);
+            code.var(ClassFile.ISTORE, temp);
+            checkAddress(0, address);
+            loadMemory();
+            jumpIndirect();
+            return false;
+        case PSH:
+            computeAddress(a, 1);
+            checkStore(address);
+            code.var(ClassFile.ILOAD, temp);
+            code.var(ClassFile.ISTORE, local(a));
+            storeMemory(b);
+            break;
+        case POP:
+            computeAddress(b, 0);
+            checkAddress(0, address);
+            loadMemory();
+            code.var(ClassFile.ISTORE, local(a));
+            code.iinc(local(b), -1);
+            break;
+        case ADI:
+            code.var(ClassFile.ILOAD, local(a));
+            code.push(immediate);
+            code.op(ClassFile.IADD);
+            code.var(ClassFile.ISTORE, local(a));
+            break;
+        case MRO:
+            computeAddress(b, immediate);
+            checkAddress(0, address);
+            loadMemory();
+            code.var(ClassFile.ISTORE, local(a));
+            break;
+        case MMO:
+            computeAddress(a, immediate);
+            checkStore(address);
+            storeMemory(b);
+            break;
+        case CAL:
+            computeAddress(a, 1);
+            checkStore(address);
+            code.var(ClassFile.ILOAD, temp);
+            code.var(ClassFile.ISTORE, local(a));
+            code.var(ClassFile.ALOAD, MEMORY);
+            code.var(ClassFile.ILOAD, temp);
+            code.push(next);
+            code.op(ClassFile.IASTORE);
+            jumpTo(immediate);
+            return false;
+        case RET:
+            // Rahmen zeigt auf den alten Rahmen, davor liegt die Rücksprungadresse
+            computeAddress(a, 0);
+            checkAddress(1, address);
+            code.var(ClassFile.ILOAD, local(2));
+            code.push(immediate);
+            code.op(ClassFile.ISUB);
+            code.var(ClassFile.ISTORE, local(2));
+            loadMemory();
+            code.var(ClassFile.ISTORE, local(a));
+            code.var(ClassFile.ALOAD, MEMORY);
+            code.var(ClassFile.ILOAD, temp);
+            code.push(1);
+            code.op(ClassFile.ISUB);
+            code.op(ClassFile.IALOAD);
+            jumpIndirect();
+            return false;
+        default:
+            // Vergleichssprünge
+            code.var(ClassFile.ILOAD, local(a));
+            code.var(ClassFile.ILOAD, local(b));
+            code.op(ClassFile.ISUB);
+            code.jump(condition(instruction), target(immediate));
+        }
+        return true;
+    }
+
+    /**
+     * Liefert den JVM-Befehl einer arithmetischen oder logischen Instruktion.
+     * @param instruction Die Instruktion.
+     * @return Der Befehl.
+     */
+    private static int arithmetic(Instruction instruction) {
+        switch (instruction) {
+        case ADD:
+            return ClassFile.IADD;
+        case SUB:
+            return ClassFile.ISUB;
+        case MUL:
+            return ClassFile.IMUL;
+        case DIV:
+            return ClassFile.IDIV;
+        case MOD:
+            return ClassFile.IREM;
+        case AND:
+            return ClassFile.IAND;
+        case OR:
+            return ClassFile.IOR;
+        default:
+            return ClassFile.IXOR;
+        }
+    }
+
+    /**
+     * Liefert den bedingten JVM-Sprung eines Vergleichssprungs, der die Differenz
+     * der beiden Register prüft.
+     * @param instruction Der Vergleichssprung.
+     * @return Der Befehl.
+     */
+    private static int condition(Instruction instruction) {
+        switch (instruction) {
+        case JEQ:
+            return ClassFile.IFEQ;
+        case JNE:
+            return ClassFile.IFNE;
+        case JLT:
+            return ClassFile.IFLT;
+        case JLE:
+            return ClassFile.IFLE;
+        case JGT:
+            return ClassFile.IFGT;
+        default:
+            return ClassFile.IFGE;
+        }
+    }
+}
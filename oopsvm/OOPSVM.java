@@ -1,5 +1,9 @@
 package oopsvm;
 
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
 /**
  * Diese Klasse stellt die Hauptmethode der virtuellen Maschine 
  * für OOPS bereit. Sie wertet die Kommandozeilen-Optionen aus
@@ -11,19 +15,30 @@ class OOPSVM {
      * Sie wertet die Kommandozeilen-Optionen aus und bietet eine Hilfe an, falls diese falsch sind.
      * Sind sie gültig, wird der Assembler benutzt, um den übergebenen Quelltext in ein
      * Maschinenprogramm zu übersetzen. Dieses wird dann von der virtuellen Maschine ausgeführt.
+     * Ist die übergebene Datei ein binäres Abbild (siehe {@link Image}), entfällt das Assemblieren.
+     * Mit der Option -b werden mehrere Programme nebenläufig ausgeführt (siehe {@link BatchRunner}).
      * @param args Die Kommandozeilenargumente. Diese sind im Quelltext der Methode 
      * {@link #usage usage} nachzulesen.
      */
     public static void main(String[] args) {
-        String fileName = null;
+        ArrayList<String> fileNames = new ArrayList<String>();
         boolean showInstructions = false;
         boolean showMemory = false;
         boolean showRegisters = false;
         boolean showFirst = false;
         boolean showSecond = false;
         boolean execution = true;
+        boolean production = false;
+        boolean jvm = false;
+        int jitThreshold = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String resultDirectory = null;
+        String imageFileName = null;
+        String profileFileName = null;
+        String stacksFileName = null;
 
-        for (String arg : args) {
+        for (int i = 0; i < args.length; ++i) {
+            String arg = args[i];
             if (arg.equals("-i")) {
                 showInstructions = true;
             } else if (arg.equals("-m")) {
@@ -34,32 +49,125 @@ class OOPSVM {
                 showFirst = true;
             } else if (arg.equals("-2")) {
                 showSecond = true;
+            } else if (arg.equals("-p")) {
+                production = true;
+            } else if (arg.equals("-j")) {
+                jvm = true;
             } else if (arg.equals("-c")) {
                 execution = false;
+            } else if (arg.equals("-o")) {
+                if (++i < args.length) {
+                    imageFileName = args[i];
+                } else {
+                    System.out.println("Fehlendes Argument fuer " + arg);
+                    usage();
+                }
+            } else if (arg.equals("-b")) {
+                if (++i < args.length) {
+                    resultDirectory = args[i];
+                } else {
+                    System.out.println("Fehlendes Argument fuer " + arg);
+                    usage();
+                }
+            } else if (arg.equals("-t") || arg.equals("-n")) {
+                if (++i < args.length) {
+                    try {
+                        if (arg.equals("-t")) {
+                            jitThreshold = Integer.parseInt(args[i]);
+                        } else {
+                            threads = Integer.parseInt(args[i]);
+                        }
+                    } catch (NumberFormatException e) {
+                        System.out.println("Ungueltige Zahl fuer " + arg + ": " + args[i]);
+                        usage();
+                    }
+                } else {
+                    System.out.println("Fehlendes Argument fuer " + arg);
+                    usage();
+                }
+            } else if (arg.equals("-P") || arg.equals("-F")) {
+                if (++i < args.length) {
+                    if (arg.equals("-P")) {
+                        profileFileName = args[i];
+                    } else {
+                        stacksFileName = args[i];
+                    }
+                } else {
+                    System.out.println("Fehlendes Argument fuer " + arg);
+                    usage();
+                }
             } else if (arg.equals("-h")) {
                 usage();
             } else if (arg.length() > 0 && arg.charAt(0) == '-') {
                 System.out.println("Unbekannte Option " + arg);
                 usage();
-            } else if (fileName != null) {
-                System.out.println("Nur ein Dateiname erlaubt: " + fileName + " vs. " + arg);
-                usage();
             } else {
-                fileName = arg;
+                fileNames.add(arg);
             }
         }
             
-        if (fileName == null) {
+        if (fileNames.isEmpty()) {
             System.out.println("Kein Dateiname angegeben");
             usage();
         }
+
+        if (resultDirectory != null) {
+            if (showInstructions || showMemory || showRegisters || showFirst || showSecond || !execution
+                    || imageFileName != null || profileFileName != null || stacksFileName != null) {
+                System.out.println("Die Option -b ist nur mit -j, -n, -p und -t kombinierbar");
+                usage();
+            }
+            System.exit(runBatch(fileNames, resultDirectory, threads, jvm, jitThreshold));
+        }
+
+        if (fileNames.size() > 1) {
+            System.out.println("Nur ein Dateiname erlaubt: " + fileNames.get(0) + " vs. " + fileNames.get(1));
+            usage();
+        }
+        String fileName = fileNames.get(0);
+        
+        if (production && (showInstructions || showMemory || showRegisters)) {
+            System.out.println("Die Option -p ist nicht mit -i, -m oder -r kombinierbar");
+            usage();
+        }
         
         try {
-            VirtualMachine vm = new VirtualMachine(
-                    new Assembler(showFirst, showSecond).assemble(fileName), new int[8],
+            Image image = Image.load(fileName, showFirst, showSecond);
+            if (imageFileName != null) {
+                image.write(imageFileName);
+            }
+            int[] registers = new int[8];
+            VirtualMachine vm = new VirtualMachine(image.getMemory(), registers,
                     showInstructions, showMemory, showRegisters);
+            if (jvm) {
+                vm.setJvmProgram(new JvmProgram(image, registers.length));
+            }
+            vm.setJitThreshold(jitThreshold);
+            Profiler profiler = null;
+            if (profileFileName != null || stacksFileName != null) {
+                profiler = new Profiler(image);
+                vm.setProfiler(profiler);
+            }
             if (execution) {
-                vm.run(-1, false, false, false);
+                try {
+                    if (production) {
+                        vm.setConsole(new Console(System.in, System.out, Console.DEFAULT_BUFFER_SIZE, false));
+                        vm.runProduction();
+                    } else {
+                        vm.run(-1, false, false, false);
+                    }
+                } finally {
+                    if (profileFileName != null) {
+                        PrintStream out = new PrintStream(profileFileName);
+                        profiler.printReport(out);
+                        out.close();
+                    }
+                    if (stacksFileName != null) {
+                        PrintStream out = new PrintStream(stacksFileName);
+                        profiler.printCollapsedStacks(out);
+                        out.close();
+                    }
+                }
             }
         } catch (Exception e) {
             System.out.println(e.getMessage());
@@ -67,18 +175,63 @@ class OOPSVM {
         }
     }
     
+    /**
+     * Die Methode führt mehrere Programme nebenläufig aus und gibt je Programm
+     * seinen Rückgabewert und seinen Namen aus.
+     * @param fileNames Die Namen der Dateien mit den Programmen.
+     * @param resultDirectory Das Verzeichnis für die Ausgaben der Programme.
+     * @param threads Die Anzahl der Threads.
+     * @param jvm Sollen die Programme vorab in JVM-Bytecode übersetzt werden?
+     * @param jitThreshold Ab wie vielen Sprüngen an eine Adresse wird zur Laufzeit übersetzt (0: nie)?
+     * @return 0, wenn alle Programme fehlerfrei liefen, sonst 1.
+     */
+    private static int runBatch(ArrayList<String> fileNames, String resultDirectory, int threads,
+            boolean jvm, int jitThreshold) {
+        BatchRunner runner = new BatchRunner(threads);
+        runner.setJvm(jvm);
+        runner.setJitThreshold(jitThreshold);
+        try {
+            int[] exitCodes = runner.run(fileNames, new File(resultDirectory));
+            int exitCode = 0;
+            for (int i = 0; i < exitCodes.length; ++i) {
+                System.out.println(exitCodes[i] + " " + fileNames.get(i));
+                exitCode = Math.max(exitCode, exitCodes[i]);
+            }
+            return exitCode;
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            return 1;
+        }
+    }
+
     /**
      * Die Methode gibt eine Hilfe auf der Konsole aus und beendet das Programm.
      */
     private static void usage() {
-        System.out.println("java -jar OOPSVM.jar [-1] [-2] [-c] [-h] [-i] [-m] [-r] <dateiname>");
-        System.out.println("    -1  Ausgabe beim ersten Assemblierungslauf");
-        System.out.println("    -2  Ausgabe beim zweiten Assemblierungslauf");
+        System.out.println("java -jar OOPSVM.jar [-1] [-2] [-c] [-h] [-i] [-j] [-m] [-o <abbild>] [-p] [-P <profil>] [-F <stapel>] [-r] [-t <schwelle>] <dateiname>");
+        System.out.println("java -jar OOPSVM.jar -b <verzeichnis> [-j] [-n <threads>] [-p] [-t <schwelle>] <dateiname> {<dateiname>}");
+        System.out.println("    -1  Ausgabe beim Assemblieren, spaeter definierte Marken noch nicht eingetragen");
+        System.out.println("    -2  Ausgabe des fertig assemblierten Programms");
+        System.out.println("    -b <verzeichnis>  Fuehre alle Programme nebenlaeufig im Produktionsmodus aus.");
+        System.out.println("                      Eingaben kommen aus <dateiname>.in, die Ausgaben jedes");
+        System.out.println("                      Programms landen in <verzeichnis>/<dateiname>.out");
         System.out.println("    -c  Programm wird nur uebersetzt, aber nicht ausgefuehrt");
         System.out.println("    -h  Zeige diese Hilfe");
         System.out.println("    -i  Zeige Instruktionen bei der Ausfuehrung");
+        System.out.println("    -j  Uebersetze das Programm vor der Ausfuehrung in JVM-Bytecode (nicht mit");
+        System.out.println("        -i, -m, -r, -P oder -F, dann wird weiterhin interpretiert)");
         System.out.println("    -m  Zeige Speicher bei der Ausfuehrung");
+        System.out.println("    -n <threads>  Anzahl der Threads fuer -b (Standard: Anzahl der Prozessoren)");
+        System.out.println("    -o <abbild>  Schreibe das Programm als binaeres Abbild, das statt des");
+        System.out.println("                 Quelltexts geladen werden kann (meist mit -c)");
+        System.out.println("    -p  Produktionsmodus: Ausfuehrung ohne Haltepunkte und Ausgaben zur Fehlersuche");
+        System.out.println("    -P <profil>  Zaehle die ausgefuehrten Instruktionen und schreibe ein Profil je");
+        System.out.println("                 Methode und Quelltextzeile sowie den Aufrufgraphen in <profil>");
+        System.out.println("    -F <stapel>  Schreibe die gefalteten Aufrufstapel fuer Flame Graphs in <stapel>");
         System.out.println("    -r  Zeige Registersatz bei der Ausfuehrung");
+        System.out.println("    -t <schwelle>  Uebersetze einen Block zur Laufzeit in JVM-Bytecode, sobald");
+        System.out.println("                   <schwelle> Spruenge an seinen Anfang gefuehrt haben (nicht mit");
+        System.out.println("                   -i, -m, -r, -P oder -F)");
         System.exit(2);
     }
 }
@@ -0,0 +1,420 @@
+package oopsvm;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Die Klasse zählt während der Programmausführung exakt, wie oft jede
+ * Instruktion ausgeführt wurde, und erstellt daraus ein Profil. Die Zähler
+ * werden je Speicheradresse in einem Array geführt und nach der Ausführung
+ * über die Marken des Programms den Methoden und über die Anfangsadressen der
+ * Quelltextzeilen den OOPS-Zeilen zugeordnet.
+ * <p>
+ * Zusätzlich wird ein Aufrufbaum aufgebaut. Ein Sprung gilt als Aufruf, wenn
+ * oben auf dem Stapel die Adresse hinter der Sprunginstruktion liegt, d.h.
+ * vorher wie in der Aufrufsequenz des Übersetzers die Rücksprungadresse
+ * abgelegt wurde. Ein Sprung an die Rücksprungadresse des innersten Aufrufs
+ * beendet diesen. Aus dem Baum entstehen der Aufrufgraph und die gefalteten
+ * Stapel ("collapsed stacks") für Flame Graphs.
+ */
+public class Profiler {
+    /** Der Name für Code, der keiner aufgerufenen Methode zugeordnet werden kann. */
+    private static final String START = "(Start)";
+
+    /** Ein Knoten im Aufrufbaum, d.h. eine Methode in einem bestimmten Aufrufkontext. */
+    private static class Node {
+        /** Der Index der Methode in {@link Profiler#names names}. */
+        final int method;
+
+        /** Der aufrufende Kontext oder null bei der Wurzel. */
+        final Node parent;
+
+        /** Die Anzahl der Aufrufe in diesem Kontext. */
+        long calls;
+
+        /** Die Anzahl der in diesem Kontext selbst ausgeführten Instruktionen. */
+        long self;
+
+        /** Die aufgerufenen Kontexte. */
+        Node[] children = new Node[0];
+
+        /** Die Rücksprungadresse des Aufrufs, der diesen Kontext betreten hat. */
+        int returnAddress;
+
+        /**
+         * Konstruktor.
+         * @param method Der Index der Methode.
+         * @param parent Der aufrufende Kontext.
+         */
+        Node(int method, Node parent) {
+            this.method = method;
+            this.parent = parent;
+        }
+
+        /**
+         * Liefert den Kontext einer aufgerufenen Methode und legt ihn bei Bedarf an.
+         * @param method Der Index der aufgerufenen Methode.
+         * @return Der Kontext.
+         */
+        Node child(int method) {
+            for (Node child : children) {
+                if (child.method == method) {
+                    return child;
+                }
+            }
+            Node child = new Node(method, this);
+            children = Arrays.copyOf(children, children.length + 1);
+            children[children.length - 1] = child;
+            return child;
+        }
+
+        /**
+         * Liefert die Anzahl der Instruktionen dieses Kontexts und aller aufgerufenen.
+         * @return Die Anzahl der Instruktionen.
+         */
+        long total() {
+            long total = self;
+            for (Node child : children) {
+                total += child.total();
+            }
+            return total;
+        }
+    }
+
+    /** Die Ausführungszähler je Speicheradresse. */
+    private final long[] counts;
+
+    /** Die Anfangsadressen der OOPS-Quelltextzeilen. */
+    private final int[] lineAddresses;
+
+    /** Die Namen der Marken je Adresse. */
+    private final HashMap<Integer, String> labels = new HashMap<Integer, String>();
+
+    /** Die Indizes der bisher aufgerufenen Methoden je Einsprungadresse. */
+    private final HashMap<Integer, Integer> methods = new HashMap<Integer, Integer>();
+
+    /** Die Namen der Methoden. Index 0 ist der Programmstart. */
+    private final ArrayList<String> names = new ArrayList<String>();
+
+    /** Die Einsprungadressen der Methoden. */
+    private final ArrayList<Integer> entries = new ArrayList<Integer>();
+
+    /** Die Wurzel des Aufrufbaums. */
+    private final Node root = new Node(0, null);
+
+    /** Der aktuelle Aufrufkontext. */
+    private Node current = root;
+
+    /** Die Anzahl der bisher ausgeführten Instruktionen. */
+    long steps;
+
+    /** Der Stand von {@link #steps steps} beim letzten Aufruf oder Rücksprung. */
+    private long lastSteps;
+
+    /** Der Hauptspeicher der überwachten Maschine. */
+    private int[] memory;
+
+    /** Der Registersatz der überwachten Maschine. */
+    private int[] registers;
+
+    /**
+     * Konstruktor.
+     * @param image Das Programm, dessen Ausführung gemessen werden soll.
+     */
+    public Profiler(Image image) {
+        counts = new long[image.getMemory().length];
+        lineAddresses = image.getLineAddresses();
+        for (Map.Entry<String, Integer> label : image.getLabels().entrySet()) {
+            String name = label.getKey();
+            String old = labels.get(label.getValue());
+            if (old == null || isInternal(old) && !isInternal(name)
+                    || isInternal(old) == isInternal(name) && name.compareTo(old) < 0) {
+                labels.put(label.getValue(), name);
+            }
+        }
+        names.add(START);
+        entries.add(0);
+    }
+
+    /**
+     * Prüft, ob eine Marke vom Übersetzer intern erzeugt wurde, d.h. keine Methode benennt.
+     * @param label Die Marke.
+     * @return Ist die Marke intern?
+     */
+    private static boolean isInternal(String label) {
+        return label.startsWith("_") || label.startsWith("end_") || label.startsWith("start_")
+                || Character.isDigit(label.charAt(label.length() - 1));
+    }
+
+    /**
+     * Verbindet das Profil mit der Maschine, deren Ausführung gemessen wird.
+     * @param memory Der Hauptspeicher.
+     * @param registers Der Registersatz.
+     */
+    void attach(int[] memory, int[] registers) {
+        this.memory = memory;
+        this.registers = registers;
+    }
+
+    /**
+     * Liefert die Ausführungszähler je Speicheradresse.
+     * @return Die Zähler.
+     */
+    long[] getCounts() {
+        return counts;
+    }
+
+    /**
+     * Die Methode wird nach jedem Sprung aufgerufen, der R0 über MRI, MRR,
+     * MRM, JMT, CAL oder RET setzt, und erkennt Aufrufe und Rücksprünge.
+     * {@link #steps steps} muss vorher aktualisiert worden sein.
+     * @param next Die Adresse hinter der Sprunginstruktion.
+     * @param target Das Sprungziel.
+     */
+    void jump(int next, int target) {
+        if (current != root && target == current.returnAddress) {
+            current.self += steps - lastSteps;
+            lastSteps = steps;
+            current = current.parent;
+        } else {
+            int sp = registers[2];
+            if (sp >= 0 && sp < memory.length && memory[sp] == next) {
+                Integer method = methods.get(target);
+                if (method == null) {
+                    method = names.size();
+                    methods.put(target, method);
+                    String name = labels.get(target);
+                    names.add(name != null ? name : String.format("%04x", target));
+                    entries.add(target);
+                }
+                current.self += steps - lastSteps;
+                lastSteps = steps;
+                current = current.child(method);
+                current.returnAddress = next;
+                ++current.calls;
+            }
+        }
+    }
+
+    /**
+     * Ordnet die bis jetzt ausgeführten Instruktionen dem aktuellen Kontext zu.
+     */
+    private void settle() {
+        current.self += steps - lastSteps;
+        lastSteps = steps;
+    }
+
+    /**
+     * Die Methode gibt das flache Profil je Methode, die meistausgeführten
+     * Quelltextzeilen und den Aufrufgraphen aus.
+     * @param out Der Ausgabestrom.
+     */
+    public void printReport(PrintStream out) {
+        settle();
+        int count = names.size();
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+
+        // Flaches Profil: Adressen der Methode mit der nächstkleineren Einsprungadresse zuordnen
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return entries.get(a).compareTo(entries.get(b));
+            }
+        });
+        long[] self = new long[count];
+        for (int i = 0; i < count; ++i) {
+            int end = i + 1 < count ? entries.get(order[i + 1]) : counts.length;
+            for (int address = entries.get(order[i]); address < end; ++address) {
+                self[order[i]] += counts[address];
+            }
+        }
+        long[] calls = new long[count];
+        long[] inclusive = new long[count];
+        HashMap<Long, long[]> edges = new HashMap<Long, long[]>();
+        collect(root, calls, inclusive, edges, new int[count]);
+
+        out.println("Flaches Profil (" + total + " ausgefuehrte Instruktionen)");
+        out.println("  Anteil       eigene    inklusive     Aufrufe  Methode");
+        for (int i : sortByValue(self)) {
+            if (self[i] > 0 || calls[i] > 0) {
+                out.format("%7.2f%% %12d %12d %11d  %s%n", percent(self[i], total), self[i],
+                        i == 0 ? total : inclusive[i], calls[i], names.get(i));
+            }
+        }
+
+        out.println();
+        out.println("Zeilen (Top 20)");
+        out.println("  Anteil  Instruktionen  Zeile");
+        long[] lines = new long[lineAddresses.length + 1];
+        for (int address = 0; address < counts.length; ++address) {
+            if (counts[address] > 0) {
+                lines[getLine(address)] += counts[address];
+            }
+        }
+        int shown = 0;
+        for (int line : sortByValue(lines)) {
+            if (lines[line] == 0 || shown++ == 20) {
+                break;
+            }
+            out.format("%7.2f%% %14d  %s%n", percent(lines[line], total), lines[line],
+                    line == 0 ? "-" : "" + line);
+        }
+
+        out.println();
+        out.println("Aufrufgraph");
+        for (int i : sortByValue(inclusive)) {
+            if (i == 0 || calls[i] == 0) {
+                continue;
+            }
+            out.format("%s: eigene %d, inklusive %d, Aufrufe %d%n", names.get(i), self[i], inclusive[i], calls[i]);
+            for (Map.Entry<Long, long[]> edge : edges.entrySet()) {
+                int caller = (int) (edge.getKey() >> 32);
+                int callee = (int) (long) edge.getKey();
+                if (callee == i) {
+                    out.format("    aufgerufen von %s: %d mal%n", names.get(caller), edge.getValue()[0]);
+                }
+            }
+            for (Map.Entry<Long, long[]> edge : edges.entrySet()) {
+                int caller = (int) (edge.getKey() >> 32);
+                int callee = (int) (long) edge.getKey();
+                if (caller == i) {
+                    out.format("    ruft %s: %d mal, inklusive %d%n", names.get(callee),
+                            edge.getValue()[0], edge.getValue()[1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Die Methode summiert Aufrufe und inklusive Instruktionen je Methode und
+     * je Kante des Aufrufgraphen. Bei Rekursion zählt nur der äußerste Kontext
+     * einer Methode (bzw. Kante) zu den inklusiven Instruktionen.
+     * @param node Der aktuelle Kontext.
+     * @param calls Die Aufrufe je Methode.
+     * @param inclusive Die inklusiven Instruktionen je Methode.
+     * @param edges Die Aufrufe und inklusiven Instruktionen je Paar (Aufrufer, Aufgerufener).
+     * @param active Wie oft ist jede Methode im Pfad zur Wurzel enthalten?
+     * @return Die inklusiven Instruktionen des Kontexts.
+     */
+    private long collect(Node node, long[] calls, long[] inclusive, HashMap<Long, long[]> edges, int[] active) {
+        ++active[node.method];
+        long total = node.self;
+        for (Node child : node.children) {
+            long childTotal = collect(child, calls, inclusive, edges, active);
+            total += childTotal;
+            Long key = (long) node.method << 32 | child.method;
+            long[] edge = edges.get(key);
+            if (edge == null) {
+                edge = new long[2];
+                edges.put(key, edge);
+            }
+            edge[0] += child.calls;
+            if (!isEdgeActive(node, child.method)) {
+                edge[1] += childTotal;
+            }
+        }
+        --active[node.method];
+        calls[node.method] += node.calls;
+        if (active[node.method] == 0) {
+            inclusive[node.method] += total;
+        }
+        return total;
+    }
+
+    /**
+     * Prüft, ob eine Kante im Pfad zur Wurzel bereits vorkommt.
+     * @param caller Der Kontext des Aufrufers.
+     * @param callee Der Index der aufgerufenen Methode.
+     * @return Kommt der Aufruf von callee durch die Methode von caller weiter außen vor?
+     */
+    private static boolean isEdgeActive(Node caller, int callee) {
+        for (Node node = caller; node.parent != null; node = node.parent) {
+            if (node.method == callee && node.parent.method == caller.method) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Die Methode gibt die gefalteten Stapel aus, d.h. eine Zeile je Aufrufkontext
+     * mit den durch Semikolon getrennten Methoden und der Anzahl der in diesem
+     * Kontext selbst ausgeführten Instruktionen. Das Format wird z.B. von
+     * flamegraph.pl verstanden.
+     * @param out Der Ausgabestrom.
+     */
+    public void printCollapsedStacks(PrintStream out) {
+        settle();
+        printCollapsed(out, root, names.get(0));
+    }
+
+    /**
+     * Gibt die gefalteten Stapel eines Teilbaums aus.
+     * @param out Der Ausgabestrom.
+     * @param node Der Kontext.
+     * @param path Der Pfad von der Wurzel zu diesem Kontext.
+     */
+    private void printCollapsed(PrintStream out, Node node, String path) {
+        if (node.self > 0) {
+            out.println(path + " " + node.self);
+        }
+        for (Node child : node.children) {
+            printCollapsed(out, child, path + ";" + names.get(child.method));
+        }
+    }
+
+    /**
+     * Bestimmt die Quelltextzeile zu einer Adresse.
+     * @param address Die Adresse.
+     * @return Die Nummer der Zeile (1-basiert) oder 0, wenn keine bekannt ist.
+     */
+    private int getLine(int address) {
+        int line = Arrays.binarySearch(lineAddresses, address);
+        if (line < 0) {
+            line = -2 - line;
+        }
+        while (line > 0 && lineAddresses[line - 1] == lineAddresses[line]) {
+            --line;
+        }
+        return line + 1;
+    }
+
+    /**
+     * Liefert die Indizes eines Arrays absteigend nach ihren Werten sortiert.
+     * @param values Die Werte.
+     * @return Die Indizes.
+     */
+    private static ArrayList<Integer> sortByValue(final long[] values) {
+        ArrayList<Integer> indices = new ArrayList<Integer>();
+        for (int i = 0; i < values.length; ++i) {
+            indices.add(i);
+        }
+        Collections.sort(indices, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Long.compare(values[b], values[a]);
+            }
+        });
+        return indices;
+    }
+
+    /**
+     * Berechnet einen Anteil in Prozent.
+     * @param value Der Wert.
+     * @param total Die Gesamtmenge.
+     * @return Der Anteil in Prozent.
+     */
+    private static double percent(long value, long total) {
+        return total == 0 ? 0 : 100.0 * value / total;
+    }
+}
@@ -0,0 +1,856 @@
+package oopsvm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Die Klasse implementiert eine zweite, schnellere Ausführungseinheit für die
+ * virtuelle Maschine. Jedes Speicherwort wird beim ersten Ausführen einmalig
+ * in eine vorab dekodierte Form übersetzt, die aus einem kompakten Operationscode,
+ * den Registernummern und einem direkt eingebetteten Operanden (bei MRI, JPC
+ * und den zweiwortigen Instruktionen des erweiterten Befehlssatzes) besteht.
+ * Über diese Form läuft dann eine enge Ausführungsschleife, die weder
+ * Beobachter informiert noch Ausgaben zur Fehlersuche macht.
+ * Instruktionen, die das Register R0 anders als für einen Sprung benutzen,
+ * ungültige Register oder Systemaufrufe verwenden oder fehlerhaft sind, werden
+ * nicht dekodiert, sondern an den Interpreter der virtuellen Maschine delegiert.
+ * Schreibt das Programm in den bereits dekodierten Speicherbereich, werden die
+ * betroffenen Einträge verworfen und bei Bedarf neu dekodiert.
+ * <p>
+ * Häufige Befehlsfolgen des Übersetzers werden beim Dekodieren zu einer einzigen
+ * Operation verschmolzen, die unter der Adresse der ersten Instruktion steht:
+ * das Ablegen auf dem Stapel und der dynamische Aufruf über die VMT ohne JMT.
+ * Das Herunternehmen vom Stapel wird nicht verschmolzen, da die Ausführung
+ * dadurch messbar langsamer wurde. Der Hauptspeicher bleibt dabei unverändert, und
+ * die übrigen Instruktionen der Folge werden weiterhin einzeln dekodiert, so dass
+ * auch in die Mitte einer Folge gesprungen werden kann. Kann eine verschmolzene
+ * Operation nicht vollständig ausgeführt werden, wird nur die erste Instruktion
+ * ausgeführt. Folgen mit Haltepunkten und Ausführungen mit Profil werden nicht
+ * verschmolzen, damit jede Instruktion einzeln sichtbar bleibt.
+ * <p>
+ * Haltepunkte werden als eigener Operationscode dekodiert, an dem die Ausführung
+ * anhält. Nur die erste Instruktion einer Ausführung wird auch an einem Haltepunkt
+ * ausgeführt, damit ein angehaltenes Programm fortgesetzt werden kann.
+ * <p>
+ * Ist die Laufzeitübersetzung eingeschaltet (siehe {@link #setJitThreshold
+ * setJitThreshold}) und wird kein Profil geführt, wird bei jedem genommenen Sprung
+ * gezählt, wie oft das Ziel betreten wurde. Erreicht ein Ziel die Schwelle, übersetzt
+ * der {@link JvmTranslator JvmTranslator} den dort beginnenden Block in JVM-Bytecode,
+ * der fortan statt der Ausführungsschleife benutzt wird. Kalter Code bleibt
+ * interpretiert. Wird in einen übersetzten Block geschrieben oder darin ein Haltepunkt
+ * gesetzt, wird der Block verworfen und der Code wieder interpretiert, bis er erneut
+ * heiß wird.
+ */
+class ThreadedCode {
+    /** Der Eintrag wurde noch nicht dekodiert. */
+    private static final int UNDECODED = 0;
+
+    /** Die Instruktion wird vom Interpreter der virtuellen Maschine ausgeführt. */
+    private static final int SLOW = 1;
+
+    /** MRI reg, num mit reg != R0. */
+    private static final int MRI = 2;
+
+    /** MRI R0, addr, d.h. ein unbedingter Sprung. */
+    private static final int JMP = 3;
+
+    /** MRR reg1, reg2 mit reg1, reg2 != R0. */
+    private static final int MRR = 4;
+
+    /** MRR R0, reg, d.h. ein Sprung an die Adresse in einem Register. */
+    private static final int JMR = 5;
+
+    /** MRM reg1, (reg2) mit reg1, reg2 != R0. */
+    private static final int MRM = 6;
+
+    /** MRM R0, (reg), d.h. ein Sprung an die Adresse in einer Speicherstelle. */
+    private static final int JMM = 7;
+
+    /** MMR (reg1), reg2 mit reg1, reg2 != R0. */
+    private static final int MMR = 8;
+
+    /** Die arithmetischen und logischen Instruktionen ohne Beteiligung von R0. */
+    private static final int ADD = 9;
+    private static final int SUB = 10;
+    private static final int MUL = 11;
+    private static final int DIV = 12;
+    private static final int MOD = 13;
+    private static final int AND = 14;
+    private static final int OR = 15;
+    private static final int XOR = 16;
+    private static final int ISZ = 17;
+    private static final int ISP = 18;
+    private static final int ISN = 19;
+
+    /** JPC reg, addr mit reg != R0. */
+    private static final int JPC = 20;
+
+    /** SYS 0, reg: Zeichen einlesen. */
+    private static final int READ = 21;
+
+    /** SYS 1, reg: Zeichen ausgeben. */
+    private static final int WRITE = 22;
+
+    /** JMT num1, num2: dynamischer Aufruf über die VMT. */
+    private static final int JMT = 23;
+
+    /** 
+     * Die Instruktionen des erweiterten Befehlssatzes ohne Beteiligung von R0
+     * in der Reihenfolge von {@link Instruction Instruction}. Bei RET darf das
+     * Register mit dem Rahmen auch nicht R2 sein.
+     */
+    private static final int PSH = 24;
+    private static final int POP = 25;
+    private static final int ADI = 26;
+    private static final int MRO = 27;
+    private static final int MMO = 28;
+    private static final int JEQ = 29;
+    private static final int JNE = 30;
+    private static final int JLT = 31;
+    private static final int JLE = 32;
+    private static final int JGT = 33;
+    private static final int JGE = 34;
+    private static final int CAL = 35;
+    private static final int RET = 36;
+
+    /** An der Adresse ist ein Haltepunkt gesetzt. */
+    private static final int BREAK = 37;
+
+    /** ADD R2, R1 gefolgt von MMR (R2), reg: Ablegen auf dem Stapel. */
+    private static final int ADD_MMR = 38;
+
+    /**
+     * Der dynamische Aufruf über die VMT aus acht Instruktionen mit zwei Hilfsregistern
+     * reg1 und reg2: MRR reg1, R2; MRI reg2, num1; SUB reg1, reg2; MRM reg2, (reg1);
+     * MRM reg1, (reg2); MRI reg2, num2; ADD reg1, reg2; MRM R0, (reg1).
+     */
+    private static final int DISPATCH = 39;
+
+    /** Die Anzahl der Speicherstellen der längsten verschmolzenen Befehlsfolge. */
+    private static final int MAX_FUSED_LENGTH = 10;
+
+    /** Die virtuelle Maschine, an deren Interpreter seltene Fälle delegiert werden. */
+    private final VirtualMachine vm;
+
+    /** Der Hauptspeicher. */
+    private final int[] memory;
+
+    /** Der Registersatz. */
+    private final int[] registers;
+
+    /** Die dekodierten Operationscodes je Speicheradresse. */
+    private final int[] ops;
+
+    /** Der erste Parameter je Speicheradresse (eine Registernummer). */
+    private final int[] args1;
+
+    /** Der zweite Parameter je Speicheradresse (eine Registernummer oder ein direkter Operand). */
+    private final int[] args2;
+
+    /** Der direkte Operand je Speicheradresse bei Instruktionen, die zusätzlich zwei Register nutzen. */
+    private final int[] args3;
+
+    /**
+     * Alle Adressen unterhalb der Grenze im einzigen Element könnten dekodierte Einträge
+     * oder übersetzte Blöcke betreffen. Die übersetzten Blöcke schreiben nicht selbst
+     * unterhalb dieser Grenze.
+     */
+    private final int[] decodedLimit = new int[1];
+
+    /** Die Anzahl der Sprünge je Zieladresse, ab der der Block dort übersetzt wird, oder 0. */
+    private int jitThreshold;
+
+    /** Die Anzahl der Sprünge je Zieladresse oder null ohne Laufzeitübersetzung. */
+    private int[] heat;
+
+    /** Der übersetzte Block je Anfangsadresse oder null ohne Laufzeitübersetzung. */
+    private CompiledCode[] blocks;
+
+    /**
+     * Der Speicherbereich des übersetzten Blocks je Anfangsadresse. Da Blöcke
+     * Sprüngen folgen, kann er auch Speicherstellen umfassen, die nicht zum Block gehören.
+     */
+    private int[] blockLows;
+    private int[] blockLimits;
+
+    /** Die Anfangsadressen aller übersetzten Blöcke. */
+    private final ArrayList<Integer> blockStarts = new ArrayList<Integer>();
+
+    /** Das Profil, in dem die Ausführung gezählt wird, oder null. */
+    private Profiler profiler;
+
+    /**
+     * Konstruktor.
+     * @param vm Die virtuelle Maschine, an deren Interpreter seltene Fälle delegiert werden.
+     * @param memory Der Hauptspeicher.
+     * @param registers Der Registersatz.
+     */
+    ThreadedCode(VirtualMachine vm, int[] memory, int[] registers) {
+        this.vm = vm;
+        this.memory = memory;
+        this.registers = registers;
+        ops = new int[memory.length];
+        args1 = new int[memory.length];
+        args2 = new int[memory.length];
+        args3 = new int[memory.length];
+    }
+
+    /**
+     * Prüft, ob eine Registernummer ein gültiges Register ungleich R0 bezeichnet.
+     * @param register Die Registernummer.
+     * @return Ist das Register gültig und nicht der Instruktionszeiger?
+     */
+    private boolean isDataRegister(int register) {
+        return register > 0 && register < registers.length;
+    }
+
+    /**
+     * Dekodiert das Speicherwort an einer Adresse.
+     * @param address Die Adresse der Instruktion.
+     * @return Der dekodierte Operationscode.
+     */
+    private int decode(int address) {
+        int word = memory[address];
+        int code = word >> 8 & 0xff;
+        int param1 = word >> 4 & 0x0f;
+        int param2 = word & 0x0f;
+        int op = SLOW;
+        boolean hasImmediate = address + 1 < memory.length;
+
+        if (code < VirtualMachine.INSTRUCTIONS.length) {
+            switch (VirtualMachine.INSTRUCTIONS[code]) {
+            case MRI:
+                if (hasImmediate) {
+                    param2 = memory[address + 1];
+                    if (param1 == 0) {
+                        op = JMP;
+                    } else if (isDataRegister(param1)) {
+                        op = MRI;
+                    }
+                }
+                break;
+            case JPC:
+                if (hasImmediate && isDataRegister(param1)) {
+                    param2 = memory[address + 1];
+                    op = JPC;
+                }
+                break;
+            case MRR:
+                if (isDataRegister(param2)) {
+                    if (param1 == 0) {
+                        op = JMR;
+                    } else if (isDataRegister(param1)) {
+                        op = MRR;
+                    }
+                }
+                break;
+            case MRM:
+                if (isDataRegister(param2)) {
+                    if (param1 == 0) {
+                        op = JMM;
+                    } else if (isDataRegister(param1)) {
+                        op = MRM;
+                    }
+                }
+                break;
+            case JMT:
+                if (hasImmediate) {
+                    param2 = memory[address + 1];
+                    op = JMT;
+                }
+                break;
+            case PSH:
+            case POP:
+                if (isDataRegister(param1) && isDataRegister(param2)) {
+                    op = PSH + code - Instruction.PSH.ordinal();
+                }
+                break;
+            case ADI:
+            case CAL:
+                if (hasImmediate && isDataRegister(param1)) {
+                    param2 = memory[address + 1];
+                    op = PSH + code - Instruction.PSH.ordinal();
+                }
+                break;
+            case RET:
+                if (hasImmediate && isDataRegister(param1) && param1 != 2) {
+                    param2 = memory[address + 1];
+                    op = RET;
+                }
+                break;
+            case MRO:
+            case MMO:
+            case JEQ:
+            case JNE:
+            case JLT:
+            case JLE:
+            case JGT:
+            case JGE:
+                if (hasImmediate && isDataRegister(param1) && isDataRegister(param2)) {
+                    args3[address] = memory[address + 1];
+                    op = PSH + code - Instruction.PSH.ordinal();
+                }
+                break;
+            case SYS:
+                if (isDataRegister(param2)) {
+                    if (param1 == 0) {
+                        op = READ;
+                    } else if (param1 == 1) {
+                        op = WRITE;
+                    }
+                }
+                break;
+            default:
+                if (isDataRegister(param1) && isDataRegister(param2)) {
+                    op = MMR + VirtualMachine.INSTRUCTIONS[code].ordinal() - Instruction.MMR.ordinal();
+                }
+            }
+        }
+        args1[address] = param1;
+        args2[address] = param2;
+        if (vm.hasBreakPoint(address)) {
+            op = BREAK;
+        } else if (profiler == null) {
+            op = fuse(address, op, param1, param2);
+        }
+        ops[address] = op;
+        decodedLimit[0] = Math.max(decodedLimit[0], address + 2);
+        return op;
+    }
+
+    /**
+     * Prüft, ob an einer Adresse eine bestimmte Instruktion steht, an der kein
+     * Haltepunkt gesetzt ist.
+     * @param address Die Adresse.
+     * @param instruction Die erwartete Instruktion.
+     * @param param1 Der erwartete erste Parameter.
+     * @param param2 Der erwartete zweite Parameter.
+     * @return Steht die Instruktion dort?
+     */
+    private boolean matches(int address, Instruction instruction, int param1, int param2) {
+        return address < memory.length && (memory[address] & 0xffff) == (instruction.ordinal() << 8 | param1 << 4 | param2)
+                && !vm.hasBreakPoint(address);
+    }
+
+    /**
+     * Verschmilzt die Instruktion an einer Adresse mit den folgenden, wenn sie eine
+     * der häufigen Befehlsfolgen bilden. Das zweite Register der Folge wird dann
+     * als zweiter Parameter eingetragen.
+     * @param address Die Adresse der ersten Instruktion.
+     * @param op Der dekodierte Operationscode der ersten Instruktion.
+     * @param param1 Der erste Parameter der ersten Instruktion.
+     * @param param2 Der zweite Parameter der ersten Instruktion.
+     * @return Der Operationscode der verschmolzenen Operation oder op.
+     */
+    private int fuse(int address, int op, int param1, int param2) {
+        switch (op) {
+        case ADD:
+            if (param1 == 2 && param2 == 1 && address + 1 < memory.length) {
+                int register = memory[address + 1] & 0x0f;
+                if (isDataRegister(register) && matches(address + 1, Instruction.MMR, 2, register)) {
+                    args2[address] = register;
+                    return ADD_MMR;
+                }
+            }
+            break;
+        case MRR:
+            // reg1 und reg2 dürfen nicht R2 sein, da R2 nur zu Beginn gelesen wird
+            int a = param1;
+            int b = address + 1 < memory.length ? memory[address + 1] >> 4 & 0x0f : 0;
+            if (param2 == 2 && a != 2 && isDataRegister(b) && b != 2 && b != a
+                    && matches(address + 1, Instruction.MRI, b, 0) && address + 7 < memory.length
+                    && matches(address + 3, Instruction.SUB, a, b)
+                    && matches(address + 4, Instruction.MRM, b, a)
+                    && matches(address + 5, Instruction.MRM, a, b)
+                    && matches(address + 6, Instruction.MRI, b, 0)
+                    && matches(address + 8, Instruction.ADD, a, b)
+                    && matches(address + 9, Instruction.MRM, 0, a)) {
+                args2[address] = b;
+                args3[address] = memory[address + 2];
+                return DISPATCH;
+            }
+            break;
+        }
+        return op;
+    }
+
+    /**
+     * Verwirft die dekodierten Einträge, die von einer Speicherstelle abhängen.
+     * Das sind die Instruktion an der Adresse selbst und davor liegende Einträge,
+     * die die Speicherstelle als direkten Operanden oder als Teil einer verschmolzenen
+     * Befehlsfolge nutzen.
+     * @param address Die Adresse der veränderten Speicherstelle.
+     */
+    void invalidate(int address) {
+        if (address < decodedLimit[0]) {
+            discard(address);
+            deoptimize(address);
+        }
+    }
+
+    /**
+     * Verwirft den dekodierten Eintrag einer Adresse und alle davor liegenden
+     * Einträge, die die Speicherstelle mitbenutzen könnten.
+     * @param address Die Adresse.
+     */
+    private void discard(int address) {
+        for (int i = Math.max(address - MAX_FUSED_LENGTH + 1, 0); i <= address; ++i) {
+            ops[i] = UNDECODED;
+        }
+    }
+
+    /**
+     * Vermerkt, dass an einer Adresse ein Haltepunkt gesetzt oder entfernt wurde.
+     * Der Eintrag wird neu dekodiert und ein übersetzter Block, der die Adresse
+     * enthält, verworfen.
+     * @param address Die Adresse des Haltepunkts.
+     */
+    void breakPointChanged(int address) {
+        if (address >= 0 && address < memory.length) {
+            discard(address);
+            deoptimize(address);
+        }
+    }
+
+    /**
+     * Verwirft alle übersetzten Blöcke, die eine Speicherstelle enthalten. Sie werden
+     * wieder interpretiert und neu gezählt.
+     * @param address Die Adresse der Speicherstelle.
+     */
+    private void deoptimize(int address) {
+        if (blocks != null) {
+            for (int i = blockStarts.size() - 1; i >= 0; --i) {
+                int start = blockStarts.get(i);
+                if (blockLows[start] <= address && address < blockLimits[start]) {
+                    blocks[start] = null;
+                    heat[start] = 0;
+                    blockStarts.remove(i);
+                }
+            }
+            heat[address] = 0;
+        }
+    }
+
+    /**
+     * Legt fest, ab wie vielen Sprüngen an dieselbe Adresse der dort beginnende
+     * Block zur Laufzeit in JVM-Bytecode übersetzt wird.
+     * @param threshold Die Anzahl der Sprünge oder 0, wenn nicht übersetzt werden soll.
+     */
+    void setJitThreshold(int threshold) {
+        jitThreshold = threshold;
+        if (threshold > 0 && blocks == null) {
+            heat = new int[memory.length];
+            blocks = new CompiledCode[memory.length];
+            blockLows = new int[memory.length];
+            blockLimits = new int[memory.length];
+        } else if (threshold <= 0) {
+            heat = null;
+            blocks = null;
+            blockLows = null;
+            blockLimits = null;
+            blockStarts.clear();
+        }
+    }
+
+    /**
+     * Übersetzt den Block, der an einer Adresse beginnt. Blöcke beginnen nie an einem
+     * Haltepunkt und enthalten keinen.
+     * @param start Die Anfangsadresse des Blocks.
+     * @return Der übersetzte Block oder null, wenn er nicht übersetzt werden kann.
+     */
+    private CompiledCode compile(int start) {
+        if (vm.hasBreakPoint(start)) {
+            return null;
+        }
+        JvmTranslator translator = new JvmTranslator(vm, memory, registers.length, start);
+        if (translator.isEmpty()) {
+            return null;
+        }
+        CompiledCode block;
+        try {
+            block = JvmProgram.block(translator, registers.length).instantiate(vm, memory, registers, decodedLimit);
+        } catch (Exception e) {
+            // Der Block wird dann weiter interpretiert
+            return null;
+        }
+        blocks[start] = block;
+        blockLows[start] = translator.getCodeStart();
+        blockLimits[start] = translator.getCodeLimit();
+        decodedLimit[0] = Math.max(decodedLimit[0], blockLimits[start]);
+        blockStarts.add(start);
+        return block;
+    }
+
+    /**
+     * Wird bei jedem genommenen Sprung aufgerufen, wenn zur Laufzeit übersetzt wird.
+     * Zählt das Ziel, übersetzt es bei Erreichen der Schwelle und führt übersetzte
+     * Blöcke aus, solange die Ausführung von einem in den nächsten wechselt.
+     * @param pc Das Ziel des Sprungs.
+     * @return Die Adresse, an der die Ausführungsschleife fortgesetzt wird.
+     * @throws Exception Ein Fehler ist aufgetreten.
+     */
+    private int enter(int pc) throws Exception {
+        while (pc >= 0 && pc < memory.length) {
+            CompiledCode block = blocks[pc];
+            if (block == null) {
+                if (++heat[pc] != jitThreshold || (block = compile(pc)) == null) {
+                    return pc;
+                }
+            }
+            registers[0] = pc;
+            int next = block.execute(0, pc);
+            if (next == pc) {
+                // Die erste Instruktion muss die Ausführungsschleife ausführen
+                return pc;
+            }
+            pc = next;
+        }
+        return pc;
+    }
+
+    /**
+     * Legt fest, ob und in welchem Profil die Ausführung gezählt wird.
+     * @param profiler Das Profil oder null, wenn nicht gezählt werden soll.
+     */
+    void setProfiler(Profiler profiler) {
+        if ((profiler == null) != (this.profiler == null)) {
+            // Verschmolzene Operationen nur ohne Profil
+            Arrays.fill(ops, UNDECODED);
+        }
+        this.profiler = profiler;
+    }
+
+    /**
+     * Führt eine einzelne Instruktion mit dem Interpreter der virtuellen Maschine aus.
+     * Dieser prüft alle Parameter und erzeugt gegebenenfalls die passende Fehlermeldung.
+     * @param pc Die Adresse der Instruktion.
+     * @return Die Adresse der nächsten auszuführenden Instruktion.
+     * @throws Exception Ein Fehler ist aufgetreten.
+     */
+    private int executeSlow(int pc) throws Exception {
+        registers[0] = pc;
+        vm.executeInstruction();
+        return registers[0];
+    }
+
+    /**
+     * Führt das Programm im Hauptspeicher ab der Adresse in R0 aus, bis R0 den
+     * gültigen Bereich des Hauptspeichers verlässt oder einen Haltepunkt erreicht.
+     * @param console Die Ein- und Ausgabekanäle für die Systemaufrufe.
+     * @param breakPoints Soll an Haltepunkten angehalten werden?
+     * @throws Exception Ein Fehler ist aufgetreten (Instruktion, Speicherstelle,
+     *         Register oder Systemaufruf ungültig).
+     */
+    void run(Console console, boolean breakPoints) throws Exception {
+        final int[] memory = this.memory;
+        final int[] registers = this.registers;
+        final int[] ops = this.ops;
+        final int[] args1 = this.args1;
+        final int[] args2 = this.args2;
+        final int[] args3 = this.args3;
+        final Profiler profiler = this.profiler;
+        final long[] counts = profiler != null ? profiler.getCounts() : null;
+        final boolean jit = blocks != null && profiler == null;
+        long steps = profiler != null ? profiler.steps : 0;
+        int pc = registers[0];
+        int entry = pc;
+
+        try {
+            loop: while (pc >= 0 && pc < memory.length) {
+                if (counts != null) {
+                    ++counts[pc];
+                    ++steps;
+                }
+                int op = ops[pc];
+                if (op == UNDECODED) {
+                    op = decode(pc);
+                }
+                int a = args1[pc];
+                int b = args2[pc];
+                switch (op) {
+                case MRI:
+                    registers[a] = b;
+                    pc += 2;
+                    break;
+                case JMP:
+                    if (counts != null) {
+                        profiler.steps = steps;
+                        profiler.jump(pc + 2, b);
+                    }
+                    pc = jit ? enter(b) : b;
+                    break;
+                case MRR:
+                    registers[a] = registers[b];
+                    ++pc;
+                    break;
+                case JMR:
+                    if (counts != null) {
+                        profiler.steps = steps;
+                        profiler.jump(pc + 1, registers[b]);
+                    }
+                    pc = jit ? enter(registers[b]) : registers[b];
+                    break;
+                case MRM:
+                    b = registers[b];
+                    if (b < 0 || b >= memory.length) {
+                        pc = executeSlow(pc);
+                    } else {
+                        registers[a] = memory[b];
+                        ++pc;
+                    }
+                    break;
+                case JMM:
+                    b = registers[b];
+                    if (b < 0 || b >= memory.length) {
+                        pc = executeSlow(pc);
+                    } else {
+                        if (counts != null) {
+                            profiler.steps = steps;
+                            profiler.jump(pc + 1, memory[b]);
+                        }
+                        pc = jit ? enter(memory[b]) : memory[b];
+                    }
+                    break;
+                case MMR:
+                    a = registers[a];
+                    if (a < 0 || a >= memory.length) {
+                        pc = executeSlow(pc);
+                    } else {
+                        memory[a] = registers[b];
+                        if (a < decodedLimit[0]) {
+                            invalidate(a);
+                        }
+                        ++pc;
+                    }
+                    break;
+                case ADD:
+                    registers[a] += registers[b];
+                    ++pc;
+                    break;
+                case SUB:
+                    registers[a] -= registers[b];
+                    ++pc;
+                    break;
+                case MUL:
+                    registers[a] *= registers[b];
+                    ++pc;
+                    break;
+                case DIV:
+                    ++pc;
+                    registers[a] /= registers[b];
+                    break;
+                case MOD:
+                    ++pc;
+                    registers[a] %= registers[b];
+                    break;
+                case AND:
+                    registers[a] &= registers[b];
+                    ++pc;
+                    break;
+                case OR:
+                    registers[a] |= registers[b];
+                    ++pc;
+                    break;
+                case XOR:
+                    registers[a] ^= registers[b];
+                    ++pc;
+                    break;
+                case ISZ:
+                    registers[a] = registers[b] == 0 ? 1 : 0;
+                    ++pc;
+                    break;
+                case ISP:
+                    registers[a] = registers[b] > 0 ? 1 : 0;
+                    ++pc;
+                    break;
+                case ISN:
+                    registers[a] = registers[b] < 0 ? 1 : 0;
+                    ++pc;
+                    break;
+                case JPC:
+                    if (registers[a] != 0) {
+                        pc = jit ? enter(b) : b;
+                    } else {
+                        pc += 2;
+                    }
+                    break;
+                case READ:
+                    if (vm.hasRefreshListeners()) {
+                        // Beobachter neu zeichnen lassen, falls auf eine Eingabe gewartet wird
+                        pc = executeSlow(pc);
+                    } else {
+                        ++pc;
+                        registers[b] = console.read();
+                    }
+                    break;
+                case WRITE:
+                    console.write(registers[b]);
+                    ++pc;
+                    break;
+                case JMT:
+                    // Objekt unter Parametern und Rücksprungadresse, daraus VMT und Eintrag
+                    a = registers[2] - a;
+                    a = a >= 0 && a < memory.length ? memory[a] : -1;
+                    a = a >= 0 && a < memory.length ? memory[a] + b : -1;
+                    if (a < 0 || a >= memory.length) {
+                        pc = executeSlow(pc);
+                    } else {
+                        if (counts != null) {
+                            profiler.steps = steps;
+                            profiler.jump(pc + 2, memory[a]);
+                        }
+                        pc = jit ? enter(memory[a]) : memory[a];
+                    }
+                    break;
+                case PSH:
+                    int target = registers[a] + 1;
+                    if (target < 0 || target >= memory.length) {
+                        pc = executeSlow(pc);
+                    } else {
+                        registers[a] = target;
+                        memory[target] = registers[b];
+                        if (target < decodedLimit[0]) {
+                            invalidate(target);
+                        }
+                        ++pc;
+                    }
+                    break;
+                case POP:
+                    target = registers[b];
+                    if (target < 0 || target >= memory.length) {
+                        pc = executeSlow(pc);
+                    } else {
+                        registers[a] = memory[target];
+                        --registers[b];
+                        ++pc;
+                    }
+                    break;
+                case ADI:
+                    registers[a] += b;
+                    pc += 2;
+                    break;
+                case MRO:
+                    target = registers[b] + args3[pc];
+                    if (target < 0 || target >= memory.length) {
+                        pc = executeSlow(pc);
+                    } else {
+                        registers[a] = memory[target];
+                        pc += 2;
+                    }
+                    break;
+                case MMO:
+                    target = registers[a] + args3[pc];
+                    if (target < 0 || target >= memory.length) {
+                        pc = executeSlow(pc);
+                    } else {
+                        memory[target] = registers[b];
+                        if (target < decodedLimit[0]) {
+                            invalidate(target);
+                        }
+                        pc += 2;
+                    }
+                    break;
+                case JEQ:
+                    pc = registers[a] - registers[b] == 0 ? jit ? enter(args3[pc]) : args3[pc] : pc + 2;
+                    break;
+                case JNE:
+                    pc = registers[a] - registers[b] != 0 ? jit ? enter(args3[pc]) : args3[pc] : pc + 2;
+                    break;
+                case JLT:
+                    pc = registers[a] - registers[b] < 0 ? jit ? enter(args3[pc]) : args3[pc] : pc + 2;
+                    break;
+                case JLE:
+                    pc = registers[a] - registers[b] <= 0 ? jit ? enter(args3[pc]) : args3[pc] : pc + 2;
+                    break;
+                case JGT:
+                    pc = registers[a] - registers[b] > 0 ? jit ? enter(args3[pc]) : args3[pc] : pc + 2;
+                    break;
+                case JGE:
+                    pc = registers[a] - registers[b] >= 0 ? jit ? enter(args3[pc]) : args3[pc] : pc + 2;
+                    break;
+                case CAL:
+                    target = registers[a] + 1;
+                    if (target < 0 || target >= memory.length) {
+                        pc = executeSlow(pc);
+                    } else {
+                        registers[a] = target;
+                        memory[target] = pc + 2;
+                        if (target < decodedLimit[0]) {
+                            invalidate(target);
+                        }
+                        if (counts != null) {
+                            profiler.steps = steps;
+                            profiler.jump(pc + 2, b);
+                        }
+                        pc = jit ? enter(b) : b;
+                    }
+                    break;
+                case RET:
+                    // Rahmen zeigt auf den alten Rahmen, davor liegt die Rücksprungadresse
+                    target = registers[a];
+                    if (target < 1 || target >= memory.length) {
+                        pc = executeSlow(pc);
+                    } else {
+                        registers[2] -= b;
+                        registers[a] = memory[target];
+                        if (counts != null) {
+                            profiler.steps = steps;
+                            profiler.jump(pc + 2, memory[target - 1]);
+                        }
+                        pc = jit ? enter(memory[target - 1]) : memory[target - 1];
+                    }
+                    break;
+                case ADD_MMR:
+                    target = registers[2] + registers[1];
+                    if (target < 0 || target >= memory.length) {
+                        // Nur ADD ausführen, MMR erzeugt dann die Fehlermeldung
+                        registers[2] = target;
+                        ++pc;
+                    } else {
+                        registers[2] = target;
+                        memory[target] = registers[b];
+                        if (target < decodedLimit[0]) {
+                            invalidate(target);
+                        }
+                        pc += 2;
+                    }
+                    break;
+                case DISPATCH:
+                    // Objekt unter Parametern und Rücksprungadresse, daraus VMT und Eintrag
+                    target = registers[2] - args3[pc];
+                    int object = target >= 0 && target < memory.length ? memory[target] : -1;
+                    int slot = object >= 0 && object < memory.length ? memory[object] + memory[pc + 7] : -1;
+                    if (slot < 0 || slot >= memory.length) {
+                        // Nur MRR ausführen, die Folge läuft dann einzeln weiter
+                        registers[a] = registers[2];
+                        ++pc;
+                    } else {
+                        registers[a] = slot;
+                        registers[b] = memory[pc + 7];
+                        pc = jit ? enter(memory[slot]) : memory[slot];
+                    }
+                    break;
+                case BREAK:
+                    if (breakPoints && pc != entry) {
+                        break loop;
+                    }
+                    entry = -1;
+                    pc = executeSlow(pc);
+                    break;
+                default:
+                    pc = executeSlow(pc);
+                }
+            }
+        } catch (ArithmeticException | IOException e) {
+            // Fehler bei DIV, MOD oder SYS 0: R0 zeigt wie im Interpreter hinter die Instruktion
+            registers[0] = pc;
+            throw e;
+        } finally {
+            if (profiler != null) {
+                profiler.steps = steps;
+            }
+        }
+        registers[0] = pc;
+    }
+}
@@ -1,7 +1,7 @@
 package oopsvm;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
 
 /**
  * Die Klasse implementiert eine virtuelle Maschine für einen einfachen
@@ -42,48 +42,74 @@ public class VirtualMachine {
     /** Alle Objekte, die über Verändernungen informiert werden wollen, die vollständiges Neuzeichnen erfordern. */
     private ArrayList<RefreshListener> refreshListeners = new ArrayList<RefreshListener>();
     
-    private HashSet<Integer> breakPoints = new HashSet<Integer>();
+    /** 
+     * Die Haltepunkte als Bitfeld über den Hauptspeicher. Bit (a &amp; 63) von
+     * Eintrag (a &gt;&gt; 6) ist gesetzt, wenn an Adresse a angehalten werden soll.
+     */
+    private final long[] breakPoints;
+    
+    /** Die Anzahl der gesetzten Haltepunkte. */
+    private int breakPointCount;
+    
+    /** 
+     * Die schnelle Ausführungseinheit. Sie wird erst bei der ersten unbeobachteten
+     * Programmausführung erzeugt.
+     */
+    private ThreadedCode threadedCode;
+    
+    /** Das im Voraus in JVM-Bytecode übersetzte Programm oder null. */
+    private CompiledCode compiledCode;
 
-    private void executeInstruction() throws Exception {
+    /** Die Anzahl der Sprünge an dieselbe Adresse, ab der zur Laufzeit übersetzt wird, oder 0. */
+    private int jitThreshold;
+    
+    /** Der Heap. Er wird durch den Systemaufruf SYS 3 eingerichtet. */
+    private Heap heap;
+    
+    /** Die Ein- und Ausgabekanäle für die Systemaufrufe. */
+    private Console console = new Console();
+    
+    /** Das Profil, in dem die Ausführung gezählt wird, oder null. */
+    private Profiler profiler;
+
+    /**
+     * Die Methode führt die Instruktion aus, auf die R0 zeigt.
+     * Register und Speicherstellen werden ohne eigene Prüfung benutzt. Ein Zugriff
+     * außerhalb des Registersatzes oder des Hauptspeichers wird erst im Fehlerfall
+     * von {@link #accessError accessError} zugeordnet.
+     * @throws Exception Ein Fehler ist aufgetreten (Instruktion, Speicherstelle,
+     *         Register oder Systemaufruf ungültig).
+     */
+    void executeInstruction() throws Exception {
+        int address = registers[0];
+        Instruction instruction = null;
+        int param1 = 0;
+        int param2 = 0;
+        int immediate = 0;
         try {
-            int address = registers[0];
             int word = memory[registers[0]++];
-            Instruction instruction;
             try {
                 instruction = INSTRUCTIONS[word >> 8 & 0xff];
             } catch (ArrayIndexOutOfBoundsException e) {
                 throw new Exception("Illegale Instruktion: " + String.format("%04x", word >> 8 & 0xff) + 
                         " an Adresse " + String.format("%04x", address));
             }
-            int param1 = word >> 4 & 0x0f;
-            int param2 = word & 0x0f;
+            param1 = word >> 4 & 0x0f;
+            param2 = word & 0x0f;
+            immediate = instruction.hasImmediate() ? memory[registers[0]++] : 0;
             boolean registerChanged = true;
             switch(instruction) {
             case MRI:
-                param2 = memory[registers[0]++];
-                registers[param1] = param2;
+                registers[param1] = immediate;
                 break;
             case MRR:
                 registers[param1] = registers[param2];
                 break;
             case MRM:
-                if (registers[param2] < 0 || registers[param2] >= memory.length) {
-                    throw new Exception("Zugriff auf nicht existierende Speicherstelle " 
-                            + registers[param2] + " an Adresse " + String.format("%04x", address));
-                }
                 registers[param1] = memory[registers[param2]];
                 break;
             case MMR:
-                if (registers[param1] < 0 || registers[param1] >= memory.length) {
-                    throw new Exception("Zugriff auf nicht existierende Speicherstelle " 
-                            + registers[param1] + " an Adresse " + String.format("%04x", address));
-                }
-                memory[registers[param1]] = registers[param2];
-                if (singleStep) {
-                    for (MemoryListener listener : memoryListeners) {
-                        listener.memoryChanged(registers[param1]);
-                    }
-                }
+                writeMemory(registers[param1], registers[param2]);
                 registerChanged = false;
                 break;
             case ADD:
@@ -120,9 +146,8 @@ public class VirtualMachine {
                 registers[param1] = registers[param2] < 0 ? 1 : 0;
                 break;
             case JPC:
-                param2 = memory[registers[0]++];
                 if (registers[param1] != 0) {
-                    registers[0] = param2;
+                    registers[0] = immediate;
                 }
                 registerChanged = false;
                 break;
@@ -130,25 +155,104 @@ public class VirtualMachine {
                 switch (param1) {
                 case 0:
                     --registers[0]; // Nur für Visualisierung während des Wartens auf Eingabe
-                    if (!singleStep && System.in.available() == 0) {
+                    if (!singleStep && !console.isInputAvailable()) {
+                        console.flush();
                         for (RefreshListener listener : refreshListeners) {
                             listener.refresh();
                         }
                     }
-                    registers[param2] = System.in.read();
+                    registers[param2] = console.read();
                     ++registers[0]; // Wieder zurücksetzen
                     break;
                 case 1:
-                    System.out.print((char) registers[param2]);
+                    console.write(registers[param2]);
                     registerChanged = false;
                     break;
+                case 2:
+                    if (heap == null) {
+                        throw new Exception(String.format("Heap nicht eingerichtet an Adresse %04x", address));
+                    }
+                    int collections = heap.getCollections();
+                    int object = heap.allocate(registers[param2]);
+                    registers[param2] = object;
+                    if (singleStep) {
+                        if (collections != heap.getCollections()) {
+                            for (RefreshListener listener : refreshListeners) {
+                                listener.refresh();
+                            }
+                        } else {
+                            for (MemoryListener listener : memoryListeners) {
+                                for (int i = 0; i < memory[memory[object] - 1]; ++i) {
+                                    listener.memoryChanged(object + i);
+                                }
+                            }
+                        }
+                    }
+                    break;
+                case 3:
+                    heap = new Heap(memory, registers, registers[param2]);
+                    registerChanged = false;
+                    if (singleStep) {
+                        for (RefreshListener listener : refreshListeners) {
+                            listener.refresh();
+                        }
+                    }
+                    break;
                 default:
                     throw new Exception("Illegaler Systemaufruf: " + param1);
                 }
+                break;
+            case JMT:
+                // Objekt unter Parametern und Rücksprungadresse, daraus VMT und Eintrag
+                registers[0] = memory[memory[memory[registers[2] - param1]] + immediate];
+                registerChanged = false;
+                break;
+            case PSH:
+                ++registers[param1];
+                writeMemory(registers[param1], registers[param2]);
+                break;
+            case POP:
+                registers[param1] = memory[registers[param2]];
+                --registers[param2];
+                break;
+            case ADI:
+                registers[param1] += immediate;
+                break;
+            case MRO:
+                registers[param1] = memory[registers[param2] + immediate];
+                break;
+            case MMO:
+                writeMemory(registers[param1] + immediate, registers[param2]);
+                registerChanged = false;
+                break;
+            case JEQ:
+            case JNE:
+            case JLT:
+            case JLE:
+            case JGT:
+            case JGE:
+                if (compare(instruction, registers[param1] - registers[param2])) {
+                    registers[0] = immediate;
+                }
+                registerChanged = false;
+                break;
+            case CAL:
+                ++registers[param1];
+                writeMemory(registers[param1], registers[0]);
+                registers[0] = immediate;
+                break;
+            case RET:
+                registers[2] -= immediate;
+                int frame = registers[param1];
+                int oldFrame = memory[frame];
+                registers[0] = memory[frame - 1];
+                registers[param1] = oldFrame;
+                break;
             }
 
             if (showInstructions) {
-                System.out.format("%04x  %s%n", address, instruction.toString(param1, param2));
+                console.flush();
+                System.out.format("%04x  %s%n", address, instruction.toString(param1, param2, immediate));
             }
             
             if (singleStep) {
@@ -162,20 +266,135 @@ public class VirtualMachine {
                         } else if (param1 != 0) {
                             listener.registerChanged(param1);
                         }
+                        if (instruction == Instruction.POP && param2 != 0) {
+                            listener.registerChanged(param2);
+                        } else if (instruction == Instruction.RET) {
+                            listener.registerChanged(2);
+                        }
                     }
                 }
             }
         } catch (ArrayIndexOutOfBoundsException e) {
-            throw new Exception("Zugriff auf nicht existierendes Register " + e.getMessage() + " an Adresse " + (registers[0] - 3));
+            throw accessError(instruction, address, param1, param2, immediate, e);
         }
     }
-    
+
+    /**
+     * Die Methode erzeugt die Fehlermeldung für einen Zugriff außerhalb des Registersatzes
+     * oder des Hauptspeichers. Sie bestimmt aus dem Zustand nach dem Fehler, welcher
+     * Zugriff der Instruktion fehlschlug. Eine Speicherstelle ist nur dann schuld,
+     * wenn alle Register, die vor ihr gelesen werden, existieren.
+     * @param instruction Die ausgeführte Instruktion oder null, wenn sie noch nicht dekodiert war.
+     * @param address Die Adresse der ausgeführten Instruktion.
+     * @param param1 Der erste Parameter der Instruktion.
+     * @param param2 Der zweite Parameter der Instruktion.
+     * @param immediate Der direkte Operand der Instruktion.
+     * @param e Die Ausnahme des fehlgeschlagenen Zugriffs.
+     * @return Die Ausnahme mit der Fehlermeldung.
+     */
+    private Exception accessError(Instruction instruction, int address, int param1, int param2, int immediate,
+            ArrayIndexOutOfBoundsException e) {
+        boolean accessesMemory = instruction != null && (!instruction.hasImmediate() || address + 1 < memory.length);
+        int target = 0;
+        if (accessesMemory) {
+            switch (instruction) {
+            case MRM:
+            case POP:
+                accessesMemory = param2 < registers.length;
+                target = accessesMemory ? registers[param2] : 0;
+                break;
+            case MRO:
+                accessesMemory = param2 < registers.length;
+                target = accessesMemory ? registers[param2] + immediate : 0;
+                break;
+            case MMR:
+            case PSH:
+            case MMO:
+                accessesMemory = param1 < registers.length && param2 < registers.length;
+                target = accessesMemory ? registers[param1] + (instruction == Instruction.MMO ? immediate : 0) : 0;
+                break;
+            case CAL:
+                accessesMemory = param1 < registers.length;
+                target = accessesMemory ? registers[param1] : 0;
+                break;
+            case RET:
+                // Erst der Rahmen, dann die Rücksprungadresse davor
+                accessesMemory = param1 < registers.length;
+                target = accessesMemory ? registers[param1] : 0;
+                if (target >= 0 && target < memory.length) {
+                    --target;
+                }
+                break;
+            case JMT:
+                if (registers.length > 2) {
+                    return new Exception(String.format("Ungültiger dynamischer Aufruf an Adresse %04x", address));
+                }
+                accessesMemory = false;
+                break;
+            default:
+                accessesMemory = false;
+            }
+        }
+        if (accessesMemory && (target < 0 || target >= memory.length)) {
+            return new Exception("Zugriff auf nicht existierende Speicherstelle " 
+                    + target + " an Adresse " + String.format("%04x", address));
+        }
+        return new Exception("Zugriff auf nicht existierendes Register " + e.getMessage() + " an Adresse " + (registers[0] - 3));
+    }
+
+    /**
+     * Die Methode beschreibt eine Speicherstelle. Dekodierte Instruktionen der
+     * schnellen Ausführungseinheit werden dabei verworfen und im Einzelschrittmodus
+     * die Beobachter informiert.
+     * @param target Die Adresse der Speicherstelle.
+     * @param value Der neue Inhalt.
+     * @throws ArrayIndexOutOfBoundsException Die Speicherstelle existiert nicht.
+     */
+    private void writeMemory(int target, int value) {
+        memory[target] = value;
+        if (threadedCode != null) {
+            threadedCode.invalidate(target);
+        }
+        if (compiledCode != null) {
+            compiledCode.invalidate(target);
+        }
+        if (singleStep) {
+            for (MemoryListener listener : memoryListeners) {
+                listener.memoryChanged(target);
+            }
+        }
+    }
+
+    /**
+     * Die Methode prüft die Bedingung eines Vergleichssprungs.
+     * @param instruction Der Vergleichssprung (JEQ, JNE, JLT, JLE, JGT oder JGE).
+     * @param difference Die Differenz der beiden verglichenen Register.
+     * @return Wird gesprungen?
+     */
+    static boolean compare(Instruction instruction, int difference) {
+        switch (instruction) {
+        case JEQ:
+            return difference == 0;
+        case JNE:
+            return difference != 0;
+        case JLT:
+            return difference < 0;
+        case JLE:
+            return difference <= 0;
+        case JGT:
+            return difference > 0;
+        default:
+            return difference >= 0;
+        }
+    }
+
     /**
      * Die Methode gibt den Hauptspeicher aus, wenn {@link #showMemory showMemory}
      * aktiviert ist.
      */
-    private void printMemory() {
+    private void printMemory() throws IOException {
         if (showMemory) {
+            console.flush();
             String text = "";
             for (int m : memory)
                 text += m + " ";
@@ -187,8 +406,9 @@ public class VirtualMachine {
      * Die Methode gibt den Registersatz aus, wenn {@link #showRegisters showRegisters}
      * aktiviert ist.
      */
-    private void printRegisters() {
+    private void printRegisters() throws IOException {
         if (showRegisters) {
+            console.flush();
             String text = "";
             for (int i = 0; i < registers.length; ++i)
                 text += "R" + i + "=" + registers[i] + " ";
@@ -211,11 +431,40 @@ public class VirtualMachine {
         this.showInstructions = showInstructions;
         this.showMemory = showMemory;
         this.showRegisters = showRegisters;
+        breakPoints = new long[(memory.length + 63) >> 6];
         singleStep = true;
     }
     
+    /**
+     * Die Methode prüft, ob eine Programmausführung beobachtet wird, d.h. ob
+     * nach einzelnen Instruktionen Ausgaben erfolgen oder angehalten werden soll.
+     * Nur wenn dies nicht der Fall ist, kann die schnelle Ausführungseinheit
+     * benutzt werden. Haltepunkte und Beobachter beachtet diese selbst, da
+     * Beobachter während einer Ausführung nur beim Warten auf eine Eingabe
+     * informiert werden.
+     * @param untilAddress Führt das Programm bis zum Erreichen dieser Adresse aus.
+     * @param untilJump Hält nach jedem Sprung an.
+     * @param untilReturn Hält bei einem Rücksprung an.
+     * @param stepOver Methodenaufrufe auf einen Schlag ausführen.
+     * @return Wird die Ausführung beobachtet?
+     */
+    private boolean isObserved(int untilAddress, boolean untilJump, boolean untilReturn, boolean stepOver) {
+        return untilAddress >= 0 && untilAddress < memory.length || untilJump || untilReturn || stepOver ||
+                showInstructions || showMemory || showRegisters;
+    }
+
+    /**
+     * Liefert, ob Beobachter vor dem Warten auf eine Eingabe informiert werden müssen.
+     * @return Gibt es Objekte, die über nötiges Neuzeichnen informiert werden möchten?
+     */
+    boolean hasRefreshListeners() {
+        return !refreshListeners.isEmpty();
+    }
+    
     /**
      * Die Methode führt das Programm im Hauptspeicher aus.
+     * Wird die Ausführung nicht beobachtet, wird dafür die schnelle
+     * Ausführungseinheit {@link ThreadedCode ThreadedCode} verwendet.
      * @param untilAddress Führt das Programm bis zum Erreichen dieser Adresse aus.
      *         Ist der Wert eine gültige Speicheradresse, wird aber auch nach jedem
      *         Sprung angehalten.
@@ -233,18 +482,35 @@ public class VirtualMachine {
             throw new Exception(String.format("Register R0 zeigt auf eine Adresse außerhalb des Speichers (%04x).", registers[0]));
         }
 
+        if (!isObserved(untilAddress, untilJump, untilReturn, stepOver)) {
+            runThreaded(true);
+            for (RefreshListener listener : refreshListeners) {
+                listener.refresh();
+            }
+            return;
+        }
+
+        boolean trace = showMemory || showRegisters;
+        boolean stopAtJump = untilJump || untilReturn || stepOver;
         int startR2 = registers[2];
-        while (registers[0] >= 0 && registers[0] < memory.length) {
-            int oldR0 = registers[0];
-            executeInstruction();
-            printMemory();
-            printRegisters();
-            if (registers[0] == untilAddress ||
-                    hasBreakPoint(registers[0]) || 
-                    ((untilJump || untilReturn && registers[2] < startR2 || stepOver && registers[2] <= startR2) &&
-                            registers[0] != oldR0 + 1 && registers[0] != oldR0 + 2)) {
-                break;
+        try {
+            while (registers[0] >= 0 && registers[0] < memory.length) {
+                int oldR0 = registers[0];
+                executeProfiled();
+                if (trace) {
+                    printMemory();
+                    printRegisters();
+                }
+                int r0 = registers[0];
+                if (r0 == untilAddress ||
+                        breakPointCount > 0 && hasBreakPoint(r0) || 
+                        (stopAtJump && (untilJump || untilReturn && registers[2] < startR2 || stepOver && registers[2] <= startR2) &&
+                                r0 != oldR0 + 1 && r0 != oldR0 + 2)) {
+                    break;
+                }
             }
+        } finally {
+            console.flush();
         }
         
         singleStep = true;
@@ -253,6 +519,80 @@ public class VirtualMachine {
         }
     }
     
+    /**
+     * Die Methode führt das Programm im Hauptspeicher im Produktionsmodus aus.
+     * Dabei werden Haltepunkte, Ausgaben zur Fehlersuche und Beobachter ignoriert,
+     * d.h. das Programm läuft immer in der schnellen Ausführungseinheit
+     * {@link ThreadedCode ThreadedCode} bis zu seinem Ende.
+     * @throws Exception Ein Fehler ist aufgetreten (Instruktion, Speicherstelle,
+     *         Register oder Systemaufruf ungültig).
+     */
+    public void runProduction() throws Exception {
+        singleStep = false;
+        
+        if (registers[0] < 0 || registers[0] >= memory.length) {
+            throw new Exception(String.format("Register R0 zeigt auf eine Adresse außerhalb des Speichers (%04x).", registers[0]));
+        }
+        
+        runThreaded(false);
+    }
+    
+    /**
+     * Die Methode führt das Programm in der schnellen Ausführungseinheit aus.
+     * Diese wird bei Bedarf erzeugt. Wurde das Programm in JVM-Bytecode übersetzt
+     * und wird weder ein Profil geführt noch ein Haltepunkt beachtet, läuft es
+     * stattdessen als übersetzter Code, solange dieser nicht durch Schreibzugriffe
+     * ungültig wird.
+     * @param breakPoints Soll an Haltepunkten angehalten werden?
+     * @throws Exception Ein Fehler ist aufgetreten (Instruktion, Speicherstelle,
+     *         Register oder Systemaufruf ungültig).
+     */
+    private void runThreaded(boolean breakPoints) throws Exception {
+        try {
+            if (compiledCode != null && profiler == null && (!breakPoints || breakPointCount == 0) && !compiledCode.isInvalidated()) {
+                compiledCode.run(console);
+                if (registers[0] < 0 || registers[0] >= memory.length) {
+                    return;
+                }
+            }
+            if (threadedCode == null) {
+                threadedCode = new ThreadedCode(this, memory, registers);
+                threadedCode.setProfiler(profiler);
+                threadedCode.setJitThreshold(jitThreshold);
+            }
+            threadedCode.run(console, breakPoints);
+        } finally {
+            singleStep = true;
+            console.flush();
+        }
+    }
+    
+    /**
+     * Die Methode führt die Instruktion aus, auf die R0 zeigt, und zählt sie
+     * im Profil, falls eines gesetzt ist.
+     * @throws Exception Ein Fehler ist aufgetreten (Instruktion, Speicherstelle,
+     *         Register oder Systemaufruf ungültig).
+     */
+    private void executeProfiled() throws Exception {
+        if (profiler == null) {
+            executeInstruction();
+        } else {
+            int address = registers[0];
+            int word = memory[address];
+            ++profiler.getCounts()[address];
+            ++profiler.steps;
+            executeInstruction();
+            int code = word >> 8 & 0xff;
+            if ((word & 0xf0) == 0 && (code == Instruction.MRI.ordinal() 
+                    || code == Instruction.MRR.ordinal() || code == Instruction.MRM.ordinal())) {
+                profiler.jump(address + (code == Instruction.MRI.ordinal() ? 2 : 1), registers[0]);
+            } else if (code == Instruction.JMT.ordinal() || code == Instruction.CAL.ordinal()
+                    || code == Instruction.RET.ordinal()) {
+                profiler.jump(address + 2, registers[0]);
+            }
+        }
+    }
+    
     /**
      * Die Methode führt eine einzelne Instruktion sie aus.
      * @throws Exception Ein Fehler ist aufgetreten (Instruktion, Speicherstelle
@@ -262,9 +602,71 @@ public class VirtualMachine {
         if (registers[0] < 0 || registers[0] >= memory.length) {
             throw new Exception(String.format("Register R0 zeigt auf eine Adresse außerhalb des Speichers (%04x).", registers[0]));
         } else {
-            executeInstruction();
+            try {
+                executeProfiled();
+            } finally {
+                console.flush();
+            }
+        }
+    }
+    
+    /**
+     * Setzt die Ein- und Ausgabekanäle, die von den Systemaufrufen benutzt werden.
+     * Die Ausgabe der bisherigen Kanäle wird zuvor geleert.
+     * @param console Die neuen Ein- und Ausgabekanäle.
+     * @throws IOException Ein Schreibfehler ist aufgetreten.
+     */
+    public void setConsole(Console console) throws IOException {
+        this.console.flush();
+        this.console = console;
+    }
+    
+    /**
+     * Legt fest, dass jede ausgeführte Instruktion in einem Profil gezählt wird.
+     * @param profiler Das Profil oder null, wenn nicht gezählt werden soll.
+     */
+    public void setProfiler(Profiler profiler) {
+        this.profiler = profiler;
+        if (profiler != null) {
+            profiler.attach(memory, registers);
+        }
+        if (threadedCode != null) {
+            threadedCode.setProfiler(profiler);
+        }
+    }
+    
+    /**
+     * Legt fest, dass unbeobachtete Programmausführungen das im Voraus in
+     * JVM-Bytecode übersetzte Programm verwenden. Es muss aus dem Abbild übersetzt
+     * worden sein, mit dem der Hauptspeicher dieser Maschine beginnt.
+     * @param program Das übersetzte Programm oder null, wenn wieder die schnelle
+     *         Ausführungseinheit benutzt werden soll.
+     * @throws Exception Das Programm passt nicht zu Hauptspeicher oder Registersatz.
+     */
+    public void setJvmProgram(JvmProgram program) throws Exception {
+        compiledCode = program == null ? null : program.instantiate(this, memory, registers);
+    }
+    
+    /**
+     * Legt fest, dass unbeobachtete Programmausführungen häufig betretene Blöcke zur
+     * Laufzeit in JVM-Bytecode übersetzen (siehe {@link ThreadedCode ThreadedCode}).
+     * @param threshold Die Anzahl der Sprünge an dieselbe Adresse, ab der der dort
+     *         beginnende Block übersetzt wird, oder 0, wenn nur interpretiert werden soll.
+     */
+    public void setJitThreshold(int threshold) {
+        jitThreshold = threshold;
+        if (threadedCode != null) {
+            threadedCode.setJitThreshold(threshold);
         }
     }
+
+    /**
+     * Liefert die Ein- und Ausgabekanäle, die von den Systemaufrufen benutzt werden.
+     * @return Die Ein- und Ausgabekanäle.
+     */
+    public Console getConsole() {
+        return console;
+    }
     
     /**
      * Fügt ein Objekt hinzu, das über Veränderungen im Speicher informiert werden möchte.
@@ -296,7 +698,13 @@ public class VirtualMachine {
      * @param address Die Adresse, an der das Programm angehalten werden soll.
      */
     public void addBreakPoint(int address) {
-        breakPoints.add(address);
+        if (address >= 0 && address < memory.length && !hasBreakPoint(address)) {
+            breakPoints[address >> 6] |= 1L << address;
+            ++breakPointCount;
+            if (threadedCode != null) {
+                threadedCode.breakPointChanged(address);
+            }
+        }
         for (MemoryListener listener : memoryListeners) {
             listener.memoryChanged(address);
         }
@@ -307,7 +715,13 @@ public class VirtualMachine {
      * @param address Die Adresse, an der das Programm nun nicht mehr angehalten werden soll.
      */
     public void removeBreakPoint(int address) {
-        breakPoints.remove(address);
+        if (hasBreakPoint(address)) {
+            breakPoints[address >> 6] &= ~(1L << address);
+            --breakPointCount;
+            if (threadedCode != null) {
+                threadedCode.breakPointChanged(address);
+            }
+        }
         for (MemoryListener listener : memoryListeners) {
             listener.memoryChanged(address);
         }
@@ -319,6 +733,7 @@ public class VirtualMachine {
      * @return Wurde für die angegebene Adresse ein Haltepunkt gesetzt?
      */
     public boolean hasBreakPoint(int address) {
-        return breakPoints.contains(address);
+        return address >= 0 && address < memory.length && 
+                (breakPoints[address >> 6] & 1L << address) != 0;
     }
  }
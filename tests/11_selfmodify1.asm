@@ -0,0 +1,35 @@
+; Dieses Programm überschreibt eine bereits häufig ausgeführte Instruktion
+; und testet damit, dass dekodierte und übersetzte Blöcke verworfen werden.
+; Das Programm muss ABCDEDCBA@ ausgeben.
+; OOPSVM: -t 1
+; OOPSVM: -j
+; OOPSVM: -j -t 1
+MRI R1, 1
+MRI R5, 64 ; '@'
+MRI R6, 0 ; Anzahl der Durchläufe
+loop:
+step:
+ADD R5, R1 ; wird nach fünf Durchläufen durch SUB R5, R1 ersetzt
+SYS 1, 5
+ADD R6, R1
+MRR R4, R6
+MRI R7, 5
+SUB R4, R7
+ISZ R4, R4
+JPC R4, patch ; nach fünf Durchläufen Code überschreiben
+MRR R4, R6
+MRI R7, 10
+SUB R4, R7
+JPC R4, loop ; nach zehn Durchläufen Ende
+MRI R4, 10
+SYS 1, 4
+MRI R0, _end
+patch:
+MRI R4, alt
+MRM R4, (R4)
+MRI R7, step
+MMR (R7), R4 ; Instruktion an step ersetzen
+MRI R0, loop
+alt:
+SUB R5, R1
+_end: ; Programmende